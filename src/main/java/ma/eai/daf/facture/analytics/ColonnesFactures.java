@@ -0,0 +1,185 @@
+package ma.eai.daf.facture.analytics;
+
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.StatutFacture;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stockage en colonnes des faits factures : une ligne par facture, un tableau primitif par attribut.
+ * <p>
+ * Les fournisseurs sont encodés par dictionnaire, les énumérations par ordinal (0 = absent pour
+ * les attributs facultatifs) et les montants en centimes. Non thread-safe : FactureCube protège
+ * les accès par un verrou lecture/écriture.
+ */
+final class ColonnesFactures {
+
+    private static final StatutFacture[] STATUTS = StatutFacture.values();
+    private static final ModaliteType[] MODALITES = ModaliteType.values();
+    private static final FormeJuridiqueType[] FORMES = FormeJuridiqueType.values();
+    static final String AUCUNE = "AUCUNE";
+
+    // Ligne de chaque facture ; une facture supprimée garde sa ligne, désactivée, jusqu'au rechargement
+    private final Map<Long, Integer> lignes = new HashMap<>();
+
+    // Dictionnaire des fournisseurs
+    private final List<String> fournisseurs = new ArrayList<>();
+    private final Map<String, Integer> codesFournisseurs = new HashMap<>();
+
+    int taille;
+    int actives;
+    boolean[] active;
+    int[] fournisseur;
+    byte[] statut;
+    byte[] modalite;
+    byte[] formeJuridique;
+    int[] jour;          // Date de facture, en jours depuis l'epoch
+    int[] mois;          // Mois de facture : année * 12 + (mois - 1)
+    long[] montantTTC;   // Centimes
+    long[] montantHT;    // Centimes
+
+    private int moisMin = Integer.MAX_VALUE;
+    private int moisMax = Integer.MIN_VALUE;
+
+    ColonnesFactures(int capacite) {
+        allouer(Math.max(capacite, 16));
+    }
+
+    // ===== ÉCRITURE =====
+
+    void ecrire(Long id, String nomFournisseur, StatutFacture statutFacture, ModaliteType modaliteFacture,
+                FormeJuridiqueType forme, LocalDate dateFacture, BigDecimal ht, BigDecimal ttc) {
+        Integer ligne = lignes.get(id);
+        if (ligne == null) {
+            if (taille == active.length) {
+                allouer(taille * 2);
+            }
+            ligne = taille++;
+            lignes.put(id, ligne);
+        }
+        if (!active[ligne]) {
+            active[ligne] = true;
+            actives++;
+        }
+
+        fournisseur[ligne] = coderFournisseur(nomFournisseur);
+        statut[ligne] = (byte) statutFacture.ordinal();
+        modalite[ligne] = (byte) (modaliteFacture != null ? modaliteFacture.ordinal() + 1 : 0);
+        formeJuridique[ligne] = (byte) (forme != null ? forme.ordinal() + 1 : 0);
+        jour[ligne] = (int) dateFacture.toEpochDay();
+        mois[ligne] = dateFacture.getYear() * 12 + dateFacture.getMonthValue() - 1;
+        montantTTC[ligne] = enCentimes(ttc);
+        montantHT[ligne] = enCentimes(ht);
+
+        moisMin = Math.min(moisMin, mois[ligne]);
+        moisMax = Math.max(moisMax, mois[ligne]);
+    }
+
+    void supprimer(Long id) {
+        Integer ligne = lignes.remove(id);
+        if (ligne != null && active[ligne]) {
+            active[ligne] = false;
+            actives--;
+        }
+    }
+
+    int nombreFournisseurs() {
+        return fournisseurs.size();
+    }
+
+    private int coderFournisseur(String nom) {
+        String cle = nom != null ? nom.trim() : "";
+        Integer code = codesFournisseurs.get(cle);
+        if (code == null) {
+            code = fournisseurs.size();
+            fournisseurs.add(cle);
+            codesFournisseurs.put(cle, code);
+        }
+        return code;
+    }
+
+    private void allouer(int capacite) {
+        active = active == null ? new boolean[capacite] : Arrays.copyOf(active, capacite);
+        fournisseur = fournisseur == null ? new int[capacite] : Arrays.copyOf(fournisseur, capacite);
+        statut = statut == null ? new byte[capacite] : Arrays.copyOf(statut, capacite);
+        modalite = modalite == null ? new byte[capacite] : Arrays.copyOf(modalite, capacite);
+        formeJuridique = formeJuridique == null ? new byte[capacite] : Arrays.copyOf(formeJuridique, capacite);
+        jour = jour == null ? new int[capacite] : Arrays.copyOf(jour, capacite);
+        mois = mois == null ? new int[capacite] : Arrays.copyOf(mois, capacite);
+        montantTTC = montantTTC == null ? new long[capacite] : Arrays.copyOf(montantTTC, capacite);
+        montantHT = montantHT == null ? new long[capacite] : Arrays.copyOf(montantHT, capacite);
+    }
+
+    // ===== CODAGE DES DIMENSIONS =====
+
+    /**
+     * Nombre de codes possibles sur une dimension : les codes vont de 0 à cardinalite - 1.
+     */
+    int cardinalite(DimensionCube dimension) {
+        return switch (dimension) {
+            case FOURNISSEUR -> Math.max(fournisseurs.size(), 1);
+            case STATUT -> STATUTS.length;
+            case MODALITE -> MODALITES.length + 1;
+            case FORME_JURIDIQUE -> FORMES.length + 1;
+            case ANNEE -> taille == 0 ? 1 : moisMax / 12 - moisMin / 12 + 1;
+            case MOIS -> taille == 0 ? 1 : moisMax - moisMin + 1;
+        };
+    }
+
+    int code(DimensionCube dimension, int ligne) {
+        return switch (dimension) {
+            case FOURNISSEUR -> fournisseur[ligne];
+            case STATUT -> statut[ligne];
+            case MODALITE -> modalite[ligne];
+            case FORME_JURIDIQUE -> formeJuridique[ligne];
+            case ANNEE -> mois[ligne] / 12 - moisMin / 12;
+            case MOIS -> mois[ligne] - moisMin;
+        };
+    }
+
+    String libelle(DimensionCube dimension, int code) {
+        return switch (dimension) {
+            case FOURNISSEUR -> fournisseurs.get(code);
+            case STATUT -> STATUTS[code].name();
+            case MODALITE -> code == 0 ? AUCUNE : MODALITES[code - 1].name();
+            case FORME_JURIDIQUE -> code == 0 ? AUCUNE : FORMES[code - 1].name();
+            case ANNEE -> String.valueOf(moisMin / 12 + code);
+            case MOIS -> YearMonth.of((moisMin + code) / 12, (moisMin + code) % 12 + 1).toString();
+        };
+    }
+
+    /**
+     * Code correspondant à un libellé de filtre, ou -1 s'il n'existe aucune facture pour ce libellé.
+     */
+    int codeDe(DimensionCube dimension, String libelle) {
+        try {
+            int code = switch (dimension) {
+                case FOURNISSEUR -> codesFournisseurs.getOrDefault(libelle.trim(), -1);
+                case STATUT -> StatutFacture.valueOf(libelle).ordinal();
+                case MODALITE -> AUCUNE.equals(libelle) ? 0 : ModaliteType.valueOf(libelle).ordinal() + 1;
+                case FORME_JURIDIQUE -> AUCUNE.equals(libelle) ? 0 : FormeJuridiqueType.valueOf(libelle).ordinal() + 1;
+                case ANNEE -> Integer.parseInt(libelle) - moisMin / 12;
+                case MOIS -> {
+                    YearMonth ym = YearMonth.parse(libelle);
+                    yield ym.getYear() * 12 + ym.getMonthValue() - 1 - moisMin;
+                }
+            };
+            return code >= 0 && code < cardinalite(dimension) ? code : -1;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Valeur de filtre invalide pour " + dimension + ": " + libelle);
+        }
+    }
+
+    static long enCentimes(BigDecimal montant) {
+        return montant != null ? montant.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue() : 0L;
+    }
+}
@@ -0,0 +1,24 @@
+package ma.eai.daf.facture.analytics;
+
+/**
+ * Axes de regroupement et de filtrage du cube des factures.
+ */
+public enum DimensionCube {
+    FOURNISSEUR("fournisseur"),
+    STATUT("statut"),
+    MODALITE("modalite"),
+    FORME_JURIDIQUE("formeJuridique"),
+    ANNEE("annee"),   // Année de la date de facture
+    MOIS("mois");     // Mois de la date de facture (AAAA-MM)
+
+    private final String champ;
+
+    DimensionCube(String champ) {
+        this.champ = champ;
+    }
+
+    // Nom de la colonne dans les lignes de résultat d'un pivot
+    public String getChamp() {
+        return champ;
+    }
+}
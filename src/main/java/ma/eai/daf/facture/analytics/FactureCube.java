@@ -0,0 +1,415 @@
+package ma.eai.daf.facture.analytics;
+
+import ma.eai.daf.facture.dto.PivotRequeteDto;
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Cube analytique en mémoire des factures.
+ * <p>
+ * Les faits sont chargés au démarrage dans des colonnes primitives ({@link ColonnesFactures})
+ * puis tenus à jour par les {@link FactureModifieeEvent}. Un pivot (regroupement, filtres, sommes)
+ * est un parcours parallèle des colonnes par blocs, sans accès à PostgreSQL.
+ */
+@Component
+@Slf4j
+public class FactureCube {
+
+    private static final int TAILLE_BLOC_MIN = 16_384;
+    // Au-delà, les agrégats partiels passent d'un tableau indexé par groupe à une table de hachage
+    private static final int MAX_GROUPES_DENSES = 4_096;
+
+    private final FactureRepository factureRepository;
+    private final int taillePage;
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    // Un seul rechargement à la fois (ReentrantLock plutôt que synchronized : pas d'épinglage en threads virtuels)
+    private final ReentrantLock verrouChargement = new ReentrantLock();
+    private ColonnesFactures colonnes = new ColonnesFactures(0);
+
+    // Factures modifiées pendant un rechargement complet, rejouées après la bascule
+    private final Set<Long> modifieesPendantChargement = ConcurrentHashMap.newKeySet();
+    private volatile boolean chargementEnCours;
+    private volatile LocalDateTime dernierChargement;
+
+    public FactureCube(FactureRepository factureRepository,
+                       @Value("${analytics.cube.page-size:10000}") int taillePage) {
+        this.factureRepository = factureRepository;
+        this.taillePage = taillePage;
+    }
+
+    // ===== CHARGEMENT ET MISE À JOUR =====
+
+    /**
+     * Recharge toutes les factures par pages (pagination par clé), puis remplace les colonnes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void charger() {
+        verrouChargement.lock();
+        try {
+            chargerColonnes();
+        } finally {
+            verrouChargement.unlock();
+        }
+
+        List<Long> aRejouer = new ArrayList<>(modifieesPendantChargement);
+        modifieesPendantChargement.removeAll(aRejouer);
+        aRejouer.forEach(this::rafraichir);
+    }
+
+    private void chargerColonnes() {
+        long debut = System.currentTimeMillis();
+        chargementEnCours = true;
+        try {
+            ColonnesFactures nouvelles = new ColonnesFactures((int) factureRepository.count());
+            long apresId = 0L;
+            List<Object[]> page;
+            do {
+                page = factureRepository.findFaitsAnalytiques(apresId, PageRequest.of(0, taillePage));
+                for (Object[] fait : page) {
+                    ecrireFait(nouvelles, fait);
+                    apresId = (Long) fait[0];
+                }
+            } while (page.size() == taillePage);
+
+            verrou.writeLock().lock();
+            try {
+                colonnes = nouvelles;
+            } finally {
+                verrou.writeLock().unlock();
+            }
+            dernierChargement = LocalDateTime.now();
+            log.info("🧊 Cube analytique chargé: {} factures, {} fournisseurs en {} ms",
+                    nouvelles.actives, nouvelles.nombreFournisseurs(), System.currentTimeMillis() - debut);
+        } finally {
+            chargementEnCours = false;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        if (chargementEnCours) {
+            modifieesPendantChargement.add(event.getFactureId());
+        }
+        try {
+            if (event.getType() == FactureModifieeEvent.TypeModification.SUPPRESSION) {
+                ecrire(c -> c.supprimer(event.getFactureId()));
+            } else {
+                rafraichir(event.getFactureId());
+            }
+        } catch (Exception e) {
+            log.error("❌ Mise à jour du cube impossible pour la facture {}: {}", event.getFactureId(), e.getMessage());
+        }
+    }
+
+    private void rafraichir(Long factureId) {
+        List<Object[]> fait = factureRepository.findFaitAnalytique(factureId);
+        ecrire(c -> {
+            if (fait.isEmpty()) {
+                c.supprimer(factureId);
+            } else {
+                ecrireFait(c, fait.get(0));
+            }
+        });
+    }
+
+    private static void ecrireFait(ColonnesFactures c, Object[] fait) {
+        c.ecrire((Long) fait[0], (String) fait[1], (StatutFacture) fait[2], (ModaliteType) fait[3],
+                (FormeJuridiqueType) fait[4], (LocalDate) fait[5], (BigDecimal) fait[6], (BigDecimal) fait[7]);
+    }
+
+    private void ecrire(Consumer<ColonnesFactures> modification) {
+        verrou.writeLock().lock();
+        try {
+            modification.accept(colonnes);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    // ===== PIVOT =====
+
+    public Map<String, Object> pivoter(PivotRequeteDto requete) {
+        long debut = System.nanoTime();
+        List<DimensionCube> axes = requete.getGroupBy() != null
+                ? List.copyOf(new LinkedHashSet<>(requete.getGroupBy()))
+                : List.of();
+
+        verrou.readLock().lock();
+        try {
+            ColonnesFactures c = colonnes;
+            Plan plan = new Plan(c, axes, requete);
+
+            int tailleBloc = Math.max(TAILLE_BLOC_MIN,
+                    c.taille / (ForkJoinPool.commonPool().getParallelism() * 4) + 1);
+            int nbBlocs = (c.taille + tailleBloc - 1) / tailleBloc;
+
+            Accumulateur total = IntStream.range(0, nbBlocs).parallel()
+                    .mapToObj(b -> plan.parcourir(b * tailleBloc, Math.min(c.taille, (b + 1) * tailleBloc)))
+                    .reduce(Accumulateur::fusionner)
+                    .orElseGet(plan::nouvelAccumulateur);
+
+            int limite = requete.getLimite() != null && requete.getLimite() >= 0 ? requete.getLimite() : Integer.MAX_VALUE;
+            List<Map<String, Object>> lignes = plan.decoder(total, limite);
+            int nombreGroupes = total.nombreGroupes();
+
+            Map<String, Object> resultat = new LinkedHashMap<>();
+            resultat.put("success", true);
+            resultat.put("lignes", lignes);
+            resultat.put("nombreGroupes", nombreGroupes);
+            resultat.put("facturesAnalysees", c.actives);
+            resultat.put("dureeMs", (System.nanoTime() - debut) / 1_000_000.0);
+            return resultat;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getEtat() {
+        verrou.readLock().lock();
+        try {
+            Map<String, Object> etat = new LinkedHashMap<>();
+            etat.put("factures", colonnes.actives);
+            etat.put("lignes", colonnes.taille);
+            etat.put("fournisseurs", colonnes.nombreFournisseurs());
+            etat.put("dernierChargement", dernierChargement);
+            return etat;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Requête compilée sur un état des colonnes : axes, cardinalités et filtres par code.
+     * La clé d'un groupe est le numéro mixte (base = cardinalité de chaque axe) de ses codes.
+     */
+    private static final class Plan {
+
+        private final ColonnesFactures c;
+        private final DimensionCube[] axes;
+        private final int[] cardinalites;
+        private final long nombreGroupes;
+        private final DimensionCube[] dimensionsFiltrees;
+        private final boolean[][] filtres;
+        private final int jourMin;
+        private final int jourMax;
+
+        Plan(ColonnesFactures c, List<DimensionCube> axes, PivotRequeteDto requete) {
+            this.c = c;
+            this.axes = axes.toArray(DimensionCube[]::new);
+            this.cardinalites = new int[this.axes.length];
+
+            long produit = 1;
+            for (int k = 0; k < this.axes.length; k++) {
+                cardinalites[k] = c.cardinalite(this.axes[k]);
+                if (produit > Long.MAX_VALUE / cardinalites[k]) {
+                    throw new IllegalArgumentException("Trop de combinaisons de regroupement");
+                }
+                produit *= cardinalites[k];
+            }
+            this.nombreGroupes = produit;
+
+            Map<DimensionCube, List<String>> demandes = requete.getFiltres() != null ? requete.getFiltres() : Map.of();
+            this.dimensionsFiltrees = demandes.keySet().toArray(DimensionCube[]::new);
+            this.filtres = new boolean[dimensionsFiltrees.length][];
+            for (int k = 0; k < dimensionsFiltrees.length; k++) {
+                DimensionCube dimension = dimensionsFiltrees[k];
+                filtres[k] = new boolean[c.cardinalite(dimension)];
+                for (String libelle : demandes.get(dimension)) {
+                    int code = c.codeDe(dimension, libelle);
+                    if (code >= 0) {
+                        filtres[k][code] = true;
+                    }
+                }
+            }
+
+            this.jourMin = requete.getDateDebut() != null ? (int) requete.getDateDebut().toEpochDay() : Integer.MIN_VALUE;
+            this.jourMax = requete.getDateFin() != null ? (int) requete.getDateFin().toEpochDay() : Integer.MAX_VALUE;
+        }
+
+        Accumulateur nouvelAccumulateur() {
+            return nombreGroupes <= MAX_GROUPES_DENSES
+                    ? new Accumulateur((int) nombreGroupes)
+                    : new Accumulateur(-1);
+        }
+
+        Accumulateur parcourir(int de, int a) {
+            Accumulateur acc = nouvelAccumulateur();
+            lignes:
+            for (int i = de; i < a; i++) {
+                if (!c.active[i] || c.jour[i] < jourMin || c.jour[i] > jourMax) {
+                    continue;
+                }
+                for (int k = 0; k < dimensionsFiltrees.length; k++) {
+                    if (!filtres[k][c.code(dimensionsFiltrees[k], i)]) {
+                        continue lignes;
+                    }
+                }
+                long cle = 0;
+                for (int k = 0; k < axes.length; k++) {
+                    cle = cle * cardinalites[k] + c.code(axes[k], i);
+                }
+                acc.ajouter(cle, c.montantTTC[i], c.montantHT[i]);
+            }
+            return acc;
+        }
+
+        /**
+         * Trie les groupes par montant TTC décroissant et ne décode en libellés que les {@code limite} premiers.
+         */
+        List<Map<String, Object>> decoder(Accumulateur total, int limite) {
+            int n = total.nombreGroupes();
+            long[][] groupes = new long[n][];
+            int[] rang = {0};
+            total.pourChaque((cle, nombre, ttc, ht) -> groupes[rang[0]++] = new long[]{cle, nombre, ttc, ht});
+            Arrays.sort(groupes, (g1, g2) -> Long.compare(g2[2], g1[2]));
+
+            List<Map<String, Object>> lignes = new ArrayList<>(Math.min(n, limite));
+            for (int g = 0; g < Math.min(n, limite); g++) {
+                long cle = groupes[g][0];
+                Map<String, Object> ligne = new LinkedHashMap<>();
+                long reste = cle;
+                String[] libelles = new String[axes.length];
+                for (int k = axes.length - 1; k >= 0; k--) {
+                    libelles[k] = c.libelle(axes[k], (int) (reste % cardinalites[k]));
+                    reste /= cardinalites[k];
+                }
+                for (int k = 0; k < axes.length; k++) {
+                    ligne.put(axes[k].getChamp(), libelles[k]);
+                }
+                ligne.put("nombreFactures", groupes[g][1]);
+                ligne.put("montantTTC", BigDecimal.valueOf(groupes[g][2], 2));
+                ligne.put("montantHT", BigDecimal.valueOf(groupes[g][3], 2));
+                lignes.add(ligne);
+            }
+            return lignes;
+        }
+    }
+
+    /**
+     * Sommes partielles par groupe : tableaux indexés par clé quand les groupes sont peu nombreux,
+     * sinon table de hachage à adressage ouvert sur des tableaux primitifs (sans objet par groupe).
+     */
+    private static final class Accumulateur {
+
+        private final boolean dense;
+        private long[] cles;        // Mode hachage : clé + 1, 0 = case libre
+        private long[] nombres;
+        private long[] ttc;
+        private long[] ht;
+        private int occupees;
+
+        Accumulateur(int nombreGroupes) {
+            dense = nombreGroupes >= 0;
+            allouer(dense ? nombreGroupes : 1024);
+        }
+
+        private void allouer(int capacite) {
+            cles = dense ? null : new long[capacite];
+            nombres = new long[capacite];
+            ttc = new long[capacite];
+            ht = new long[capacite];
+        }
+
+        void ajouter(long cle, long montantTTC, long montantHT) {
+            ajouter(cle, 1, montantTTC, montantHT);
+        }
+
+        private void ajouter(long cle, long nombre, long montantTTC, long montantHT) {
+            int i = dense ? (int) cle : caseDe(cle);
+            nombres[i] += nombre;
+            ttc[i] += montantTTC;
+            ht[i] += montantHT;
+        }
+
+        private int caseDe(long cle) {
+            int masque = cles.length - 1;
+            int i = (int) (Long.hashCode(cle * 0x9E3779B97F4A7C15L)) & masque;
+            while (cles[i] != 0) {
+                if (cles[i] == cle + 1) {
+                    return i;
+                }
+                i = (i + 1) & masque;
+            }
+            if (occupees * 2 >= cles.length) {
+                agrandir();
+                return caseDe(cle);
+            }
+            cles[i] = cle + 1;
+            occupees++;
+            return i;
+        }
+
+        private void agrandir() {
+            long[] anciennesCles = cles;
+            long[] anciensNombres = nombres;
+            long[] anciensTtc = ttc;
+            long[] anciensHt = ht;
+            allouer(anciennesCles.length * 2);
+            occupees = 0;
+            for (int i = 0; i < anciennesCles.length; i++) {
+                if (anciennesCles[i] != 0) {
+                    ajouter(anciennesCles[i] - 1, anciensNombres[i], anciensTtc[i], anciensHt[i]);
+                }
+            }
+        }
+
+        int nombreGroupes() {
+            if (!dense) {
+                return occupees;
+            }
+            int n = 0;
+            for (long nombre : nombres) {
+                if (nombre > 0) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        Accumulateur fusionner(Accumulateur autre) {
+            autre.pourChaque((cle, nombre, montantTTC, montantHT) -> ajouter(cle, nombre, montantTTC, montantHT));
+            return this;
+        }
+
+        void pourChaque(Visiteur visiteur) {
+            for (int i = 0; i < nombres.length; i++) {
+                if (dense ? nombres[i] > 0 : cles[i] != 0) {
+                    visiteur.visiter(dense ? i : cles[i] - 1, nombres[i], ttc[i], ht[i]);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Visiteur {
+        void visiter(long cle, long nombre, long ttc, long ht);
+    }
+}
@@ -0,0 +1,375 @@
+package ma.eai.daf.facture.analytics;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prévision des décaissements à partir des dates d'échéance des factures en cours de circuit.
+ * <p>
+ * Les montants attendus sont cumulés dans un tableau indexé par jour, une ligne par étape du
+ * circuit : chaque création, transition ou paiement retire la contribution précédente de la
+ * facture et ajoute la nouvelle. Une projection (jour, semaine, mois) est un simple parcours du
+ * tableau, pondéré par la probabilité de paiement de chaque étape.
+ * <p>
+ * Une facture est relue hors du verrou ; deux lectures concurrentes de la même facture sont
+ * départagées par sa date de modification, la plus récente l'emporte. Les factures sorties du
+ * circuit (payées, rejetées, supprimées) ne sont conservées que le temps de départager les
+ * lectures encore en cours, puis purgées : la table ne suit que les factures en circuit.
+ */
+@Component
+@Slf4j
+public class PrevisionDecaissements {
+
+    public enum Granularite {
+        JOUR, SEMAINE, MOIS
+    }
+
+    // Étapes dont les factures donneront lieu à un décaissement
+    private static final StatutFacture[] ETAPES = {
+            StatutFacture.EN_VALIDATION_V1,
+            StatutFacture.EN_VALIDATION_V2,
+            StatutFacture.EN_TRESORERIE,
+            StatutFacture.VALIDEE
+    };
+    private static final int HORIZON_MAX_JOURS = 3 * 366;
+    // Échéances suivies au-delà du chargement : un horizon maximal, plus autant de marge pour les jours
+    // écoulés depuis ; plus loin, la facture est connue mais hors du tableau
+    private static final int INDICE_MAX = 2 * HORIZON_MAX_JOURS;
+    private static final int CAPACITE_INITIALE = 400;
+    // Au-delà, plus aucune lecture antérieure à la sortie du circuit n'est en cours
+    private static final Duration FENETRE_ORDONNANCEMENT = Duration.ofMinutes(10);
+
+    private final FactureRepository factureRepository;
+    private final double[] probabilites;
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    // L'indice 0 regroupe tout ce qui était déjà échu au chargement ; l'indice 1 est le jour du chargement
+    private long origine;
+    private long[][] montants = new long[ETAPES.length][CAPACITE_INITIALE];
+    private int[][] nombres = new int[ETAPES.length][CAPACITE_INITIALE];
+    private final Map<Long, Engagement> engagements = new HashMap<>();
+
+    public PrevisionDecaissements(FactureRepository factureRepository,
+                                  @Value("${prevision.decaissements.probabilite.en-validation-v1:0.6}") double probaV1,
+                                  @Value("${prevision.decaissements.probabilite.en-validation-v2:0.8}") double probaV2,
+                                  @Value("${prevision.decaissements.probabilite.en-tresorerie:0.95}") double probaTresorerie,
+                                  @Value("${prevision.decaissements.probabilite.validee:1.0}") double probaValidee) {
+        this.factureRepository = factureRepository;
+        this.probabilites = new double[]{probaV1, probaV2, probaTresorerie, probaValidee};
+        this.origine = LocalDate.now().toEpochDay() - 1;
+    }
+
+    // ===== CHARGEMENT ET MISE À JOUR =====
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void charger() {
+        long debut = System.currentTimeMillis();
+        verrou.writeLock().lock();
+        try {
+            origine = LocalDate.now().toEpochDay() - 1;
+            montants = new long[ETAPES.length][CAPACITE_INITIALE];
+            nombres = new int[ETAPES.length][CAPACITE_INITIALE];
+            engagements.clear();
+
+            for (Object[] ligne : factureRepository.findEngagements(Arrays.asList(ETAPES))) {
+                appliquer(ligne);
+            }
+            log.info("💸 Prévision des décaissements chargée: {} factures en circuit en {} ms",
+                    engagements.values().stream().filter(Engagement::enCircuit).count(),
+                    System.currentTimeMillis() - debut);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        Long factureId = event.getFactureId();
+        try {
+            // Lecture hors du verrou : les projections ne l'attendent pas
+            List<Object[]> lignes = event.getType() == FactureModifieeEvent.TypeModification.SUPPRESSION
+                    ? List.of()
+                    : factureRepository.findEngagement(factureId);
+
+            verrou.writeLock().lock();
+            try {
+                if (lignes.isEmpty()) {
+                    // Supprimée : aucune lecture antérieure ne doit la faire réapparaître
+                    retirer(factureId);
+                    engagements.put(factureId, Engagement.horsCircuit(LocalDateTime.MAX));
+                } else {
+                    appliquer(lignes.get(0));
+                }
+            } finally {
+                verrou.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("❌ Mise à jour de la prévision impossible pour la facture {}: {}",
+                    factureId, e.getMessage());
+        }
+    }
+
+    /**
+     * Retire les factures sorties du circuit depuis plus que la fenêtre d'ordonnancement.
+     */
+    @Scheduled(fixedDelayString = "${prevision.decaissements.purge-intervalle:PT10M}")
+    public void purger() {
+        int purgees = purger(FENETRE_ORDONNANCEMENT);
+        if (purgees > 0) {
+            log.debug("💸 Prévision: {} factures hors circuit purgées", purgees);
+        }
+    }
+
+    int purger(Duration fenetre) {
+        long limite = System.nanoTime() - fenetre.toNanos();
+        verrou.writeLock().lock();
+        try {
+            int avant = engagements.size();
+            engagements.values().removeIf(engagement ->
+                    !engagement.enCircuit() && engagement.getEnregistrement() - limite <= 0);
+            return avant - engagements.size();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private void appliquer(Object[] ligne) {
+        Long factureId = (Long) ligne[0];
+        LocalDateTime modification = (LocalDateTime) ligne[4];
+        Engagement connu = engagements.get(factureId);
+        if (connu != null && connu.estPlusRecentQue(modification)) {
+            // Lecture dépassée par celle d'un événement plus récent, déjà appliquée
+            return;
+        }
+        retirer(factureId);
+
+        int etape = etape((StatutFacture) ligne[1]);
+        LocalDate echeance = (LocalDate) ligne[2];
+        BigDecimal montantTTC = (BigDecimal) ligne[3];
+        if (etape < 0 || montantTTC == null) {
+            // Conservée pour ordonner les lectures suivantes, sans contribution
+            engagements.put(factureId, Engagement.horsCircuit(modification));
+            return;
+        }
+
+        int indice = indice(echeance != null ? echeance.toEpochDay() : origine + 1);
+        if (indice > INDICE_MAX) {
+            engagements.put(factureId, Engagement.horsCircuit(modification));
+            return;
+        }
+        Engagement engagement = new Engagement(etape, indice,
+                montantTTC.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue(), modification, 0L);
+        assurerCapacite(indice + 1);
+        montants[etape][indice] += engagement.getCentimes();
+        nombres[etape][indice]++;
+        engagements.put(factureId, engagement);
+    }
+
+    private void retirer(Long factureId) {
+        Engagement ancien = engagements.remove(factureId);
+        if (ancien != null && ancien.getEtape() >= 0) {
+            montants[ancien.getEtape()][ancien.getIndice()] -= ancien.getCentimes();
+            nombres[ancien.getEtape()][ancien.getIndice()]--;
+        }
+    }
+
+    private int indice(long jour) {
+        return (int) Math.max(0, jour - origine);
+    }
+
+    private void assurerCapacite(int capacite) {
+        if (capacite <= montants[0].length) {
+            return;
+        }
+        int nouvelle = Math.min(Math.max(capacite, montants[0].length * 2), INDICE_MAX + 1);
+        for (int e = 0; e < ETAPES.length; e++) {
+            montants[e] = Arrays.copyOf(montants[e], nouvelle);
+            nombres[e] = Arrays.copyOf(nombres[e], nouvelle);
+        }
+    }
+
+    private static int etape(StatutFacture statut) {
+        for (int e = 0; e < ETAPES.length; e++) {
+            if (ETAPES[e] == statut) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    // ===== PROJECTIONS =====
+
+    /**
+     * Décaissements attendus à partir d'aujourd'hui sur {@code horizonJours} jours, regroupés
+     * par jour, semaine (lundi à dimanche) ou mois. Ce qui est déjà échu et non payé est
+     * rapporté à part.
+     */
+    public Map<String, Object> projeter(Granularite granularite, int horizonJours) {
+        if (horizonJours < 1 || horizonJours > HORIZON_MAX_JOURS) {
+            throw new IllegalArgumentException("L'horizon doit être compris entre 1 et " + HORIZON_MAX_JOURS + " jours");
+        }
+        LocalDate aujourdhui = LocalDate.now();
+        LocalDate fin = aujourdhui.plusDays(horizonJours - 1L);
+
+        verrou.readLock().lock();
+        try {
+            int indiceAujourdhui = indice(aujourdhui.toEpochDay());
+
+            Periode echu = new Periode(null, aujourdhui.minusDays(1));
+            for (int i = 0; i < Math.min(indiceAujourdhui, montants[0].length); i++) {
+                echu.ajouter(i);
+            }
+
+            List<Map<String, Object>> periodes = new ArrayList<>();
+            Periode total = new Periode(aujourdhui, fin);
+            Periode courante = null;
+            for (LocalDate jour = aujourdhui; !jour.isAfter(fin); jour = jour.plusDays(1)) {
+                // La première semaine ou le premier mois commence aujourd'hui
+                LocalDate debutPeriode = debutPeriode(jour, granularite);
+                if (debutPeriode.isBefore(aujourdhui)) {
+                    debutPeriode = aujourdhui;
+                }
+                if (courante == null || !courante.debut.equals(debutPeriode)) {
+                    if (courante != null) {
+                        periodes.add(courante.toMap());
+                    }
+                    courante = new Periode(debutPeriode, null);
+                }
+                int i = indiceAujourdhui + (int) (jour.toEpochDay() - aujourdhui.toEpochDay());
+                courante.fin = jour;
+                if (i < montants[0].length) {
+                    courante.ajouter(i);
+                    total.ajouter(i);
+                }
+            }
+            if (courante != null) {
+                periodes.add(courante.toMap());
+            }
+
+            Map<String, Object> probabilitesParEtape = new LinkedHashMap<>();
+            for (int e = 0; e < ETAPES.length; e++) {
+                probabilitesParEtape.put(ETAPES[e].name(), probabilites[e]);
+            }
+
+            Map<String, Object> resultat = new LinkedHashMap<>();
+            resultat.put("success", true);
+            resultat.put("dateDebut", aujourdhui.toString());
+            resultat.put("dateFin", fin.toString());
+            resultat.put("granularite", granularite.name());
+            resultat.put("probabilites", probabilitesParEtape);
+            resultat.put("echuNonPaye", echu.toMap());
+            resultat.put("periodes", periodes);
+            resultat.put("total", total.toMap());
+            return resultat;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private static LocalDate debutPeriode(LocalDate jour, Granularite granularite) {
+        return switch (granularite) {
+            case JOUR -> jour;
+            case SEMAINE -> jour.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MOIS -> jour.withDayOfMonth(1);
+        };
+    }
+
+    /**
+     * Cumul d'une période, étape par étape (appelé sous le verrou de lecture).
+     */
+    private final class Periode {
+
+        private final LocalDate debut;
+        private LocalDate fin;
+        private final long[] montantsParEtape = new long[ETAPES.length];
+        private final long[] nombresParEtape = new long[ETAPES.length];
+
+        Periode(LocalDate debut, LocalDate fin) {
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        void ajouter(int indice) {
+            for (int e = 0; e < ETAPES.length; e++) {
+                montantsParEtape[e] += montants[e][indice];
+                nombresParEtape[e] += nombres[e][indice];
+            }
+        }
+
+        Map<String, Object> toMap() {
+            long brut = 0;
+            long nombre = 0;
+            double pondere = 0;
+            Map<String, Object> parEtape = new LinkedHashMap<>();
+            for (int e = 0; e < ETAPES.length; e++) {
+                brut += montantsParEtape[e];
+                nombre += nombresParEtape[e];
+                pondere += montantsParEtape[e] * probabilites[e];
+                parEtape.put(ETAPES[e].name(), Map.of(
+                        "nombre", nombresParEtape[e],
+                        "montant", BigDecimal.valueOf(montantsParEtape[e], 2)));
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (debut != null) {
+                map.put("debut", debut.toString());
+            }
+            map.put("fin", fin.toString());
+            map.put("nombreFactures", nombre);
+            map.put("montantBrut", BigDecimal.valueOf(brut, 2));
+            map.put("montantPondere", BigDecimal.valueOf(Math.round(pondere), 2));
+            map.put("parEtape", parEtape);
+            return map;
+        }
+    }
+
+    /**
+     * Contribution actuelle d'une facture au tableau : étape, jour et montant en centimes, avec la
+     * date de modification lue. Étape -1 : facture connue mais sans contribution (hors circuit,
+     * échéance au-delà du tableau ou supprimée), conservée depuis {@code enregistrement} (nanoTime)
+     * jusqu'à la purge.
+     */
+    @lombok.Value
+    private static class Engagement {
+        int etape;
+        int indice;
+        long centimes;
+        LocalDateTime modification;
+        long enregistrement;
+
+        static Engagement horsCircuit(LocalDateTime modification) {
+            return new Engagement(-1, -1, 0L, modification, System.nanoTime());
+        }
+
+        boolean enCircuit() {
+            return etape >= 0;
+        }
+
+        boolean estPlusRecentQue(LocalDateTime autre) {
+            return modification != null && (autre == null || autre.isBefore(modification));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ma.eai.daf.facture.cache;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Invalidation grossière des caches statistiques : chaque événement vide entièrement
+ * les caches dont les agrégats peuvent avoir changé.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class QueryCacheInvalidationListener {
+
+    private final CacheManager cacheManager;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        switch (event.getType()) {
+            // Fournisseur, montant ou validateurs assignés ont pu changer
+            case CREATION, MODIFICATION, SUPPRESSION -> vider(
+                    QueryCaches.TOP_FOURNISSEURS,
+                    QueryCaches.PERFORMANCE_V1,
+                    QueryCaches.PERFORMANCE_V2,
+                    QueryCaches.PERFORMANCE_TRESORIERS,
+                    QueryCaches.EVOLUTION_PAIEMENTS,
+                    QueryCaches.DELAI_MOYEN_PAIEMENT);
+            case TRANSITION -> {
+                if (event.estPaiement()) {
+                    vider(QueryCaches.PERFORMANCE_TRESORIERS,
+                            QueryCaches.EVOLUTION_PAIEMENTS,
+                            QueryCaches.DELAI_MOYEN_PAIEMENT);
+                } else if (event.getNouveauStatut() == StatutFacture.EN_TRESORERIE) {
+                    // Un trésorier peut avoir été assigné automatiquement
+                    vider(QueryCaches.PERFORMANCE_TRESORIERS);
+                }
+            }
+        }
+    }
+
+    private void vider(String... noms) {
+        for (String nom : noms) {
+            Cache cache = cacheManager.getCache(nom);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+        log.debug("🧹 Caches statistiques vidés: {}", String.join(", ", noms));
+    }
+}
@@ -0,0 +1,17 @@
+package ma.eai.daf.facture.cache;
+
+/**
+ * Noms des caches de résultats de requêtes statistiques (voir {@code QueryCacheConfig}).
+ */
+public final class QueryCaches {
+
+    public static final String TOP_FOURNISSEURS = "top-fournisseurs";
+    public static final String PERFORMANCE_V1 = "performance-v1";
+    public static final String PERFORMANCE_V2 = "performance-v2";
+    public static final String PERFORMANCE_TRESORIERS = "performance-tresoriers";
+    public static final String EVOLUTION_PAIEMENTS = "evolution-paiements";
+    public static final String DELAI_MOYEN_PAIEMENT = "delai-moyen-paiement";
+
+    private QueryCaches() {
+    }
+}
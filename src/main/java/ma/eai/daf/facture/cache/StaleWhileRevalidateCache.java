@@ -0,0 +1,173 @@
+package ma.eai.daf.facture.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache Spring borné en taille avec rafraîchissement en arrière-plan ("stale-while-revalidate").
+ * <p>
+ * Une entrée est fraîche pendant {@code ttl}. Au-delà, elle reste servie telle quelle pendant
+ * {@code ttl * facteurPeremption} tandis qu'un seul recalcul est lancé sur l'exécuteur de rafraîchissement ;
+ * passé ce délai, elle est supprimée et le prochain appel recalcule de façon synchrone.
+ * Les calculs concurrents d'une même clé sont dédoublonnés.
+ * <p>
+ * Un calcul (synchrone ou en arrière-plan) commencé avant un {@code evict}/{@code clear} a pu lire les
+ * données d'avant l'invalidation : son résultat est rendu à l'appelant mais n'est pas conservé.
+ * <p>
+ * Prévu pour {@code @Cacheable(sync = true)} : le rafraîchissement réutilise le chargeur fourni par l'appel.
+ */
+@Slf4j
+public class StaleWhileRevalidateCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final long ttlMs;
+    private final Cache<Object, Entree> store;
+    private final Executor refreshExecutor;
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> enCours = new ConcurrentHashMap<>();
+    // Incrémentée à chaque invalidation, avant de vider le cache
+    private final AtomicLong generation = new AtomicLong();
+
+    public StaleWhileRevalidateCache(String name, Duration ttl, int facteurPeremption, long maximumSize,
+                                     Executor refreshExecutor) {
+        super(true);
+        this.name = name;
+        this.ttlMs = ttl.toMillis();
+        this.refreshExecutor = refreshExecutor;
+        this.store = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.multipliedBy(Math.max(1, facteurPeremption)))
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return store;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Entree entree = store.getIfPresent(key);
+        return entree != null ? entree.valeur() : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Entree entree = store.getIfPresent(key);
+        if (entree != null) {
+            if (System.currentTimeMillis() - entree.ecritLe() > ttlMs) {
+                rafraichirEnArrierePlan(key, valueLoader);
+            }
+            return (T) fromStoreValue(entree.valeur());
+        }
+        return (T) fromStoreValue(charger(key, valueLoader));
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store.put(key, new Entree(toStoreValue(value), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void evict(Object key) {
+        generation.incrementAndGet();
+        // Les appels suivants ne doivent pas attendre un calcul commencé avant l'invalidation
+        enCours.remove(key);
+        store.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        enCours.clear();
+        store.invalidateAll();
+    }
+
+    public long size() {
+        return store.estimatedSize();
+    }
+
+    // ===== CHARGEMENT =====
+
+    private Object charger(Object key, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existant = enCours.putIfAbsent(key, future);
+        if (existant != null) {
+            // Un autre appel calcule déjà cette clé : on attend son résultat
+            try {
+                return existant.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            Object valeur = calculer(key, valueLoader);
+            future.complete(valeur);
+            return valeur;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            enCours.remove(key, future);
+        }
+    }
+
+    private void rafraichirEnArrierePlan(Object key, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (enCours.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    future.complete(calculer(key, valueLoader));
+                    log.debug("🔄 Cache {} rafraîchi pour {}", name, key);
+                } catch (Exception e) {
+                    // La valeur périmée reste servie jusqu'à son expiration
+                    future.completeExceptionally(e);
+                    log.warn("⚠️ Échec du rafraîchissement du cache {} pour {}: {}", name, key, e.getMessage());
+                } finally {
+                    enCours.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            enCours.remove(key, future);
+            future.cancel(false);
+        }
+    }
+
+    private Object calculer(Object key, Callable<?> valueLoader) throws Exception {
+        long generationLue = generation.get();
+        Object valeur = toStoreValue(valueLoader.call());
+        if (generation.get() != generationLue) {
+            log.debug("🗑️ Cache {} invalidé pendant le calcul de {} : résultat non conservé", name, key);
+            return valeur;
+        }
+        Entree entree = new Entree(valeur, System.currentTimeMillis());
+        store.put(key, entree);
+        // Invalidation entre la vérification et l'écriture : l'entrée est retirée ici ou par le clear/evict
+        if (generation.get() != generationLue) {
+            store.asMap().remove(key, entree);
+        }
+        return valeur;
+    }
+
+    private record Entree(Object valeur, long ecritLe) {
+    }
+}
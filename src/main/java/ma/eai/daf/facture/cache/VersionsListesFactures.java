@@ -0,0 +1,132 @@
+package ma.eai.daf.facture.cache;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compteurs de modification des listes de factures, pour des ETags calculés sans lire les factures.
+ * <p>
+ * Un compteur par statut (files de travail partagées) et un par utilisateur (créateur, validateurs,
+ * trésorier : ses listes personnelles), incrémentés après chaque commit. Une modification ou une
+ * suppression peut retirer une facture à un utilisateur qu'on ne connaît plus : elle change la
+ * génération de tous les compteurs par utilisateur.
+ * <p>
+ * Les listes et le détail affichent aussi les noms des utilisateurs, modifiables sans toucher aux
+ * factures : une modification d'utilisateur change la version des référentiels, reprise par tous
+ * les ETags (listes et détail). Le rattachement en masse des factures aux fournisseurs ne se fait
+ * qu'au démarrage, dont l'identifiant fait aussi partie de ces ETags.
+ * <p>
+ * L'ETag porte aussi l'identifiant du démarrage (les compteurs repartent de zéro) et la date du
+ * jour (jours avant échéance et retards changent à minuit). Le compteur est lu avant la requête :
+ * une modification concurrente donne au pire un ETag déjà périmé, jamais une liste périmée.
+ */
+@Component
+@Slf4j
+public class VersionsListesFactures {
+
+    private final FactureRepository factureRepository;
+
+    private final String demarrage = UUID.randomUUID().toString().substring(0, 8);
+    private final Map<StatutFacture, AtomicLong> parStatut = new EnumMap<>(StatutFacture.class);
+    private final Map<Long, AtomicLong> parUtilisateur = new ConcurrentHashMap<>();
+    private final AtomicLong generationUtilisateurs = new AtomicLong();
+    private final AtomicLong versionReferentiels = new AtomicLong();
+
+    public VersionsListesFactures(FactureRepository factureRepository) {
+        this.factureRepository = factureRepository;
+        for (StatutFacture statut : StatutFacture.values()) {
+            parStatut.put(statut, new AtomicLong());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        if (event.getAncienStatut() != null) {
+            parStatut.get(event.getAncienStatut()).incrementAndGet();
+        }
+        if (event.getNouveauStatut() != null && event.getNouveauStatut() != event.getAncienStatut()) {
+            parStatut.get(event.getNouveauStatut()).incrementAndGet();
+        }
+
+        switch (event.getType()) {
+            // Les intervenants n'ont pu qu'être ajoutés : ceux d'aujourd'hui suffisent
+            case CREATION, TRANSITION -> {
+                try {
+                    for (Object[] intervenants : factureRepository.findIntervenants(event.getFactureId())) {
+                        for (Object userId : intervenants) {
+                            if (userId != null) {
+                                compteur((Long) userId).incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("⚠️ Intervenants de la facture {} illisibles: {}", event.getFactureId(), e.getMessage());
+                    generationUtilisateurs.incrementAndGet();
+                }
+            }
+            // Réaffectation ou suppression : les anciens intervenants sont inconnus
+            case MODIFICATION, SUPPRESSION -> generationUtilisateurs.incrementAndGet();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUtilisateurModifie(UtilisateurModifieEvent event) {
+        generationUtilisateurs.incrementAndGet();
+        versionReferentiels.incrementAndGet();
+    }
+
+    /**
+     * Version des données affichées avec une facture sans en faire partie (noms des utilisateurs,
+     * rattachement au fournisseur), à inclure dans l'ETag du détail.
+     */
+    public String versionReferentiels() {
+        return demarrage + "." + versionReferentiels.get();
+    }
+
+    /**
+     * ETag d'une liste personnelle, éventuellement complétée par des files partagées
+     * (factures en trésorerie non assignées par exemple).
+     */
+    public String etagUtilisateur(String liste, Long userId, StatutFacture... statuts) {
+        StringBuilder etag = new StringBuilder("W/\"")
+                .append(liste).append('-').append(demarrage)
+                .append("-u").append(userId)
+                .append('.').append(generationUtilisateurs.get())
+                .append('.').append(compteur(userId).get());
+        return terminer(etag, statuts);
+    }
+
+    /**
+     * ETag d'une file partagée, définie par les statuts qu'elle contient.
+     */
+    public String etagStatuts(String liste, List<StatutFacture> statuts) {
+        StringBuilder etag = new StringBuilder("W/\"").append(liste).append('-').append(demarrage)
+                .append("-r").append(versionReferentiels.get());
+        return terminer(etag, statuts.toArray(StatutFacture[]::new));
+    }
+
+    private String terminer(StringBuilder etag, StatutFacture... statuts) {
+        for (StatutFacture statut : statuts) {
+            etag.append("-s").append(statut.ordinal()).append('.').append(parStatut.get(statut).get());
+        }
+        return etag.append('-').append(LocalDate.now()).append('"').toString();
+    }
+
+    private AtomicLong compteur(Long userId) {
+        return parUtilisateur.computeIfAbsent(Objects.requireNonNull(userId), id -> new AtomicLong());
+    }
+}
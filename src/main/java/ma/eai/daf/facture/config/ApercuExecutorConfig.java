@@ -0,0 +1,39 @@
+package ma.eai.daf.facture.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool dédié au rendu des aperçus de pièces jointes.
+ * Le rendu PDF est coûteux en CPU et en mémoire : peu de threads, une file bornée, et au-delà
+ * la demande est simplement abandonnée (l'aperçu sera redemandé à la première consultation).
+ */
+@Configuration
+@Slf4j
+public class ApercuExecutorConfig {
+
+    public static final String APERCU_EXECUTOR = "apercuExecutor";
+
+    @Bean(name = APERCU_EXECUTOR, destroyMethod = "shutdown")
+    public ThreadPoolExecutor apercuExecutor(
+            @Value("${application.file.previews.threads:1}") int threads,
+            @Value("${application.file.previews.queue-capacity:200}") int queueCapacity) {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("apercu-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        log.info("🖼️ Pool de rendu des aperçus: {} threads, file de {}", threads, queueCapacity);
+        return executor;
+    }
+}
@@ -23,6 +23,8 @@ public class AuthenticationConfig {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
         authProvider.setPasswordEncoder(passwordEncoder);
+        // Ré-encodage transparent du mot de passe si les paramètres de hash ont changé
+        authProvider.setUserDetailsPasswordService(userDetailsService);
         return authProvider;
     }
 
@@ -0,0 +1,43 @@
+package ma.eai.daf.facture.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool dédié à la vérification des mots de passe (BCrypt).
+ * Borné en threads et en file d'attente : au-delà, la connexion est refusée immédiatement (429)
+ * au lieu de consommer le CPU des threads Tomcat qui servent les utilisateurs déjà connectés.
+ * Le pool reste sur des threads de plateforme en mode threads virtuels : le hash est borné par le CPU.
+ */
+@Configuration
+@Slf4j
+public class LoginExecutorConfig {
+
+    public static final String LOGIN_EXECUTOR = "loginExecutor";
+
+    @Bean(name = LOGIN_EXECUTOR, destroyMethod = "shutdown")
+    public ThreadPoolExecutor loginExecutor(
+            @Value("${security.login.threads:0}") int threads,
+            @Value("${security.login.queue-capacity:100}") int queueCapacity) {
+
+        // Par défaut : la moitié des cœurs, pour laisser du CPU au reste de l'API
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("login-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        log.info("🔐 Pool de vérification des mots de passe: {} threads, file de {}", poolSize, queueCapacity);
+        return executor;
+    }
+}
@@ -0,0 +1,78 @@
+package ma.eai.daf.facture.config;
+
+import ma.eai.daf.facture.cache.QueryCaches;
+import ma.eai.daf.facture.cache.StaleWhileRevalidateCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache des résultats des requêtes statistiques (agrégations sur toute la table des factures).
+ * Chaque cache a sa propre durée de fraîcheur ; l'invalidation sur les transitions du workflow
+ * est assurée par {@code QueryCacheInvalidationListener}.
+ */
+@Configuration
+@EnableCaching
+public class QueryCacheConfig {
+
+    @Value("${query-cache.max-size:200}")
+    private long maxSize;
+
+    // Une entrée périmée reste servie (et rafraîchie en arrière-plan) jusqu'à ttl * facteur
+    @Value("${query-cache.stale-factor:4}")
+    private int facteurPeremption;
+
+    @Value("${query-cache.ttl.top-fournisseurs:PT10M}")
+    private Duration ttlTopFournisseurs;
+
+    @Value("${query-cache.ttl.performance-validateurs:PT10M}")
+    private Duration ttlPerformanceValidateurs;
+
+    @Value("${query-cache.ttl.performance-tresoriers:PT10M}")
+    private Duration ttlPerformanceTresoriers;
+
+    @Value("${query-cache.ttl.evolution-paiements:PT30M}")
+    private Duration ttlEvolutionPaiements;
+
+    @Value("${query-cache.ttl.delai-moyen-paiement:PT30M}")
+    private Duration ttlDelaiMoyenPaiement;
+
+    // Hors autowiring par type : réservé aux caches de requêtes
+    @Bean(destroyMethod = "shutdown", autowireCandidate = false)
+    public ThreadPoolExecutor queryCacheRefreshExecutor() {
+        // Rafraîchissements rares et dédoublonnés : deux threads suffisent, le surplus est ignoré
+        return new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(50),
+                new CustomizableThreadFactory("query-cache-refresh-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public CacheManager cacheManager() {
+        ThreadPoolExecutor queryCacheRefreshExecutor = queryCacheRefreshExecutor();
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(
+                cache(QueryCaches.TOP_FOURNISSEURS, ttlTopFournisseurs, queryCacheRefreshExecutor),
+                cache(QueryCaches.PERFORMANCE_V1, ttlPerformanceValidateurs, queryCacheRefreshExecutor),
+                cache(QueryCaches.PERFORMANCE_V2, ttlPerformanceValidateurs, queryCacheRefreshExecutor),
+                cache(QueryCaches.PERFORMANCE_TRESORIERS, ttlPerformanceTresoriers, queryCacheRefreshExecutor),
+                cache(QueryCaches.EVOLUTION_PAIEMENTS, ttlEvolutionPaiements, queryCacheRefreshExecutor),
+                cache(QueryCaches.DELAI_MOYEN_PAIEMENT, ttlDelaiMoyenPaiement, queryCacheRefreshExecutor)
+        ));
+        return cacheManager;
+    }
+
+    private StaleWhileRevalidateCache cache(String name, Duration ttl, ThreadPoolExecutor executor) {
+        return new StaleWhileRevalidateCache(name, ttl, facteurPeremption, maxSize, executor);
+    }
+}
@@ -5,7 +5,8 @@ package ma.eai.daf.facture.config;
 import ma.eai.daf.facture.security.JwtAuthenticationEntryPoint;
 import ma.eai.daf.facture.security.JwtAuthenticationFilter;
 import ma.eai.daf.facture.security.JwtTokenProvider;
-import ma.eai.daf.facture.security.CustomUserDetailsService;
+import ma.eai.daf.facture.security.TokenRevocationService;
+import ma.eai.daf.facture.security.UserSecurityCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -30,12 +31,13 @@ import java.util.List;
 public class SecurityConfig {
 
     private final JwtTokenProvider jwtTokenProvider;
-    private final CustomUserDetailsService userDetailsService;
+    private final UserSecurityCache userSecurityCache;
+    private final TokenRevocationService tokenRevocationService;
     private final JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
 
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(jwtTokenProvider, userDetailsService);
+        return new JwtAuthenticationFilter(jwtTokenProvider, userSecurityCache, tokenRevocationService);
     }
 
     @Bean
@@ -60,6 +62,9 @@ public class SecurityConfig {
                         // ===== ENDPOINTS ADMIN UNIQUEMENT =====
                         .requestMatchers("/api/admin/**").hasRole("ADMIN")
 
+                        // ===== ANALYSES (CUBE EN MÉMOIRE) =====
+                        .requestMatchers("/api/analytics/**").hasAnyRole("T1", "ADMIN")
+
                         // ===== ENDPOINTS SIMPLE (LECTURE GÉNÉRALE) =====
                         .requestMatchers(HttpMethod.GET, "/api/simple/**").hasAnyRole("U1", "V1", "V2", "T1", "ADMIN")
 
@@ -70,6 +75,7 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.DELETE, "/api/factures/**").hasRole("U1")
                         .requestMatchers("/api/factures/mes-factures").hasRole("U1")
                         .requestMatchers("/api/factures/*/soumettre-v1").hasRole("U1")
+                        .requestMatchers("/api/uploads/**").hasRole("U1")
 
                         // Validation V1 (V1 uniquement)
                         .requestMatchers("/api/factures/en-attente-v1").hasRole("V1")
@@ -84,6 +90,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/factures/*/payer").hasRole("T1")
                         .requestMatchers("/api/factures/*/generer-reference-paiement").hasRole("T1")
                         .requestMatchers("/api/factures/*/peut-etre-payee").hasRole("T1")
+                        .requestMatchers("/api/factures/balance-agee").hasAnyRole("T1", "ADMIN")
 
                         // Consultation générale (tous les rôles connectés)
                         .requestMatchers(HttpMethod.GET, "/api/factures/**").hasAnyRole("U1", "V1", "V2", "T1", "ADMIN")
@@ -124,8 +131,10 @@ public class SecurityConfig {
                 "https://votre-frontend.com"
         ));
 
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        configuration.setExposedHeaders(List.of("ETag", "Location", "Content-Range", "Accept-Ranges",
+                "Upload-Offset", "Upload-Length", "Upload-Expires"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
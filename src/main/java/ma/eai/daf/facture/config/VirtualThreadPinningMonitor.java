@@ -0,0 +1,72 @@
+package ma.eai.daf.facture.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Garde-fou du mode threads virtuels : journalise chaque épinglage d'un thread virtuel sur son
+ * thread porteur (bloc synchronized ou appel natif pendant une opération bloquante) au-delà du seuil.
+ * Un épinglage dans un chemin JDBC annule le gain des threads virtuels et doit être corrigé.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(name = "virtual-threads.pinning-monitor.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class VirtualThreadPinningMonitor implements DisposableBean {
+
+    private static final String EVENEMENT_EPINGLAGE = "jdk.VirtualThreadPinned";
+    private static final int NB_FRAMES_LOG = 8;
+
+    private final Duration seuil;
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(@Value("${virtual-threads.pinning-monitor.threshold:PT0.02S}") Duration seuil) {
+        this.seuil = seuil;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void demarrer() {
+        try {
+            stream = new RecordingStream();
+            stream.enable(EVENEMENT_EPINGLAGE).withThreshold(seuil).withStackTrace();
+            stream.onEvent(EVENEMENT_EPINGLAGE, this::journaliser);
+            stream.startAsync();
+            log.info("🧵 Surveillance des épinglages de threads virtuels active (seuil {} ms)", seuil.toMillis());
+        } catch (Exception e) {
+            log.warn("⚠️ Impossible de démarrer la surveillance des épinglages: {}", e.getMessage());
+        }
+    }
+
+    private void journaliser(RecordedEvent event) {
+        String pile = "";
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            pile = frames.stream()
+                    .limit(NB_FRAMES_LOG)
+                    .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber())
+                    .collect(Collectors.joining("\n    at ", "\n    at ", ""));
+        }
+        log.warn("🧵 Thread virtuel épinglé pendant {} ms{}", event.getDuration().toMillis(), pile);
+    }
+
+    @Override
+    public void destroy() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
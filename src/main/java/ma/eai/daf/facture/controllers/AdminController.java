@@ -1,6 +1,13 @@
 package ma.eai.daf.facture.controllers;
 
+import ma.eai.daf.facture.dto.UserDto;
 import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.recherche.FactureIndex;
+import ma.eai.daf.facture.services.CompactagePiecesJointesService;
+import ma.eai.daf.facture.services.FactureRollupService;
+import ma.eai.daf.facture.services.RappelEcheanceService;
+import ma.eai.daf.facture.services.SegmentsPiecesJointes;
+import ma.eai.daf.facture.services.UserCacheService;
 import ma.eai.daf.facture.services.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,7 +17,6 @@ import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,14 +28,20 @@ import java.util.Map;
 public class AdminController {
 
     private final UserService userService;
+    private final UserCacheService userCacheService;
+    private final FactureRollupService factureRollupService;
+    private final RappelEcheanceService rappelEcheanceService;
+    private final CompactagePiecesJointesService compactagePiecesJointesService;
+    private final SegmentsPiecesJointes segmentsPiecesJointes;
+    private final FactureIndex factureIndex;
 
     @GetMapping("/users")
-    public ResponseEntity<List<Map<String, Object>>> getAllUsers() {
+    public ResponseEntity<List<UserDto>> getAllUsers() {
         try {
             log.info("📋 Récupération de tous les utilisateurs pour l'admin");
 
             List<User> users = userService.getAllUsers();
-            List<Map<String, Object>> result = users.stream()
+            List<UserDto> result = users.stream()
                     .map(this::mapUserToDto)
                     .toList();
 
@@ -43,13 +55,13 @@ public class AdminController {
     }
 
     @GetMapping("/users/{id}")
-    public ResponseEntity<Map<String, Object>> getUserById(@PathVariable Long id) {
+    public ResponseEntity<UserDto> getUserById(@PathVariable Long id) {
         try {
             log.info("📋 Récupération de l'utilisateur {}", id);
 
             return userService.getUserById(id)
                     .map(user -> {
-                        Map<String, Object> result = mapUserToDto(user);
+                        UserDto result = mapUserToDto(user);
                         log.info("✅ Utilisateur {} récupéré", id);
                         return ResponseEntity.ok(result);
                     })
@@ -150,6 +162,75 @@ public class AdminController {
         }
     }
 
+    @GetMapping("/cache/statistiques")
+    public ResponseEntity<Map<String, Object>> getStatistiquesCache() {
+        try {
+            return ResponseEntity.ok(userCacheService.getStatistiques());
+        } catch (Exception e) {
+            log.error("❌ Erreur lors de la récupération des statistiques du cache", e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "success", false,
+                    "message", "Erreur lors de la récupération des statistiques du cache"
+            ));
+        }
+    }
+
+    @GetMapping("/rollups")
+    public ResponseEntity<Map<String, Object>> getEtatRollups() {
+        return ResponseEntity.ok(factureRollupService.getEtat());
+    }
+
+    @GetMapping("/rappels")
+    public ResponseEntity<Map<String, Object>> getEtatRappels() {
+        return ResponseEntity.ok(rappelEcheanceService.getEtat());
+    }
+
+    @GetMapping("/pieces-jointes/segments")
+    public ResponseEntity<Map<String, Object>> getEtatSegments() {
+        return ResponseEntity.ok(segmentsPiecesJointes.getEtat());
+    }
+
+    @PostMapping("/pieces-jointes/compacter")
+    public ResponseEntity<Map<String, Object>> compacterPiecesJointes() {
+        log.info("🗄️ Compactage des pièces jointes froides demandé");
+        return ResponseEntity.ok(compactagePiecesJointesService.compacter());
+    }
+
+    @GetMapping("/recherche")
+    public ResponseEntity<Map<String, Object>> getEtatIndexRecherche() {
+        return ResponseEntity.ok(factureIndex.getEtat());
+    }
+
+    @PostMapping("/recherche/reconstruire")
+    public ResponseEntity<Map<String, Object>> reconstruireIndexRecherche() {
+        try {
+            log.info("🔎 Reconstruction de l'index plein texte demandée");
+            factureIndex.reconstruire();
+            return ResponseEntity.ok(factureIndex.getEtat());
+        } catch (Exception e) {
+            log.error("❌ Erreur lors de la reconstruction de l'index plein texte", e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "success", false,
+                    "message", "Erreur lors de la reconstruction de l'index plein texte"
+            ));
+        }
+    }
+
+    @PostMapping("/rollups/reconstruire")
+    public ResponseEntity<Map<String, Object>> reconstruireRollups() {
+        try {
+            log.info("📊 Reconstruction de l'agrégat des factures demandée");
+            factureRollupService.reconstruire();
+            return ResponseEntity.ok(factureRollupService.getEtat());
+        } catch (Exception e) {
+            log.error("❌ Erreur lors de la reconstruction de l'agrégat des factures", e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "success", false,
+                    "message", "Erreur lors de la reconstruction de l'agrégat des factures"
+            ));
+        }
+    }
+
     @GetMapping("/statistiques")
     public ResponseEntity<Map<String, Object>> getStatistiques() {
         try {
@@ -175,46 +256,22 @@ public class AdminController {
         }
     }
 
-    // ===== MÉTHODE DE MAPPING CORRIGÉE =====
-
-    private Map<String, Object> mapUserToDto(User user) {
-        Map<String, Object> userMap = new HashMap<>();
-
-        try {
-            userMap.put("id", user.getId());
-            userMap.put("nom", user.getNom() != null ? user.getNom() : "");
-            userMap.put("prenom", user.getPrenom() != null ? user.getPrenom() : "");
-            userMap.put("email", user.getEmail() != null ? user.getEmail() : "");
-            userMap.put("nomComplet", user.getNomComplet() != null ? user.getNomComplet() : "");
-            userMap.put("role", user.getRole() != null ? user.getRole().name() : "");
-            userMap.put("actif", user.isActif());
-
-            // ✅ CORRECTION : Utilisation des bonnes méthodes
-            userMap.put("nbFacturesCreees", safeGetInteger(user.getNombreFacturesCreees()));
-            userMap.put("nbFacturesValideesN1", safeGetInteger(user.getNombreFacturesValideesN1()));
-            userMap.put("nbFacturesValideesN2", safeGetInteger(user.getNombreFacturesValideesN2()));
-            userMap.put("nbFacturesTraitees", safeGetInteger(user.getNombreFacturesTraitees()));
-
-        } catch (Exception e) {
-            log.error("❌ Erreur lors du mapping de l'utilisateur {}: {}", user.getId(), e.getMessage());
-            // Valeurs par défaut en cas d'erreur
-            userMap.put("nbFacturesCreees", 0);
-            userMap.put("nbFacturesValideesN1", 0);
-            userMap.put("nbFacturesValideesN2", 0);
-            userMap.put("nbFacturesTraitees", 0);
-        }
-
-        return userMap;
-    }
-
-    // ===== MÉTHODE UTILITAIRE =====
-
-    private Integer safeGetInteger(int value) {
-        try {
-            return value;
-        } catch (Exception e) {
-            log.warn("⚠️ Erreur lors de la récupération d'une valeur entière: {}", e.getMessage());
-            return 0;
-        }
+    // ===== MAPPING =====
+
+    private UserDto mapUserToDto(User user) {
+        return UserDto.builder()
+                .id(user.getId())
+                .nom(user.getNom() != null ? user.getNom() : "")
+                .prenom(user.getPrenom() != null ? user.getPrenom() : "")
+                .email(user.getEmail() != null ? user.getEmail() : "")
+                .nomComplet(user.getNomComplet() != null ? user.getNomComplet() : "")
+                .role(user.getRole())
+                .actif(user.isActif())
+                // Compteurs déjà protégés contre le chargement paresseux côté entité
+                .nbFacturesCreees(user.getNombreFacturesCreees())
+                .nbFacturesValideesN1(user.getNombreFacturesValideesN1())
+                .nbFacturesValideesN2(user.getNombreFacturesValideesN2())
+                .nbFacturesTraitees(user.getNombreFacturesTraitees())
+                .build();
     }
 }
\ No newline at end of file
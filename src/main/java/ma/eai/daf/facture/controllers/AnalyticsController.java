@@ -0,0 +1,95 @@
+package ma.eai.daf.facture.controllers;
+
+import ma.eai.daf.facture.analytics.FactureCube;
+import ma.eai.daf.facture.analytics.PrevisionDecaissements;
+import ma.eai.daf.facture.dto.PivotRequeteDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/analytics")
+@RequiredArgsConstructor
+@Slf4j
+public class AnalyticsController {
+
+    private final FactureCube factureCube;
+    private final PrevisionDecaissements previsionDecaissements;
+
+    /**
+     * Pivot libre sur les factures : regroupement, filtres et sommes calculés en mémoire.
+     */
+    @PostMapping("/pivot")
+    @PreAuthorize("hasAnyAuthority('ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> pivoter(@RequestBody PivotRequeteDto requete) {
+        try {
+            Map<String, Object> resultat = factureCube.pivoter(requete);
+            log.debug("📊 Pivot {} calculé en {} ms", requete.getGroupBy(), resultat.get("dureeMs"));
+            return ResponseEntity.ok(resultat);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("❌ Erreur lors du calcul du pivot", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("Erreur lors du calcul du pivot"));
+        }
+    }
+
+    @GetMapping("/cube")
+    @PreAuthorize("hasAnyAuthority('ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEtatCube() {
+        return ResponseEntity.ok(factureCube.getEtat());
+    }
+
+    @PostMapping("/cube/recharger")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> rechargerCube() {
+        try {
+            factureCube.charger();
+            return ResponseEntity.ok(factureCube.getEtat());
+        } catch (Exception e) {
+            log.error("❌ Erreur lors du rechargement du cube analytique", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("Erreur lors du rechargement du cube"));
+        }
+    }
+
+    /**
+     * Décaissements attendus par jour, semaine ou mois, pondérés par étape du circuit.
+     */
+    @GetMapping("/decaissements")
+    @PreAuthorize("hasAnyAuthority('ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPrevisionDecaissements(
+            @RequestParam(defaultValue = "SEMAINE") PrevisionDecaissements.Granularite granularite,
+            @RequestParam(defaultValue = "90") int horizon) {
+        try {
+            return ResponseEntity.ok(previsionDecaissements.projeter(granularite, horizon));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("❌ Erreur lors du calcul de la prévision des décaissements", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("Erreur lors du calcul de la prévision"));
+        }
+    }
+
+    @PostMapping("/decaissements/recharger")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> rechargerPrevisionDecaissements() {
+        try {
+            previsionDecaissements.charger();
+            return ResponseEntity.ok(previsionDecaissements.projeter(PrevisionDecaissements.Granularite.MOIS, 90));
+        } catch (Exception e) {
+            log.error("❌ Erreur lors du rechargement de la prévision des décaissements", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("Erreur lors du rechargement de la prévision"));
+        }
+    }
+
+    private Map<String, Object> createErrorResponse(String message) {
+        return Map.of(
+                "success", false,
+                "message", message
+        );
+    }
+}
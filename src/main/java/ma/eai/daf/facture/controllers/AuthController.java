@@ -3,10 +3,16 @@
 package ma.eai.daf.facture.controllers;
 
 import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.security.CustomUserDetailsService;
+import ma.eai.daf.facture.security.JwtClaims;
 import ma.eai.daf.facture.security.JwtTokenProvider;
+import ma.eai.daf.facture.security.LoginThrottle;
+import ma.eai.daf.facture.security.TokenRevocationService;
 import ma.eai.daf.facture.services.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -16,6 +22,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -23,7 +30,11 @@ import jakarta.validation.constraints.Size;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @RestController
 @RequestMapping("/auth")
@@ -35,9 +46,36 @@ public class AuthController {
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
     private final AuthenticationManager authenticationManager;
+    private final LoginThrottle loginThrottle;
+    private final TokenRevocationService tokenRevocationService;
+    private final ThreadPoolExecutor loginExecutor;
+
+    private static final long LOGIN_RETRY_AFTER_SECONDS = 2;
 
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@Valid @RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> login(@Valid @RequestBody LoginRequest loginRequest,
+                                                                        HttpServletRequest request) {
+        String ip = request.getRemoteAddr();
+
+        // Refus immédiat, sans calcul de hash, si le compte ou l'IP a dépassé son quota d'échecs
+        long delai = loginThrottle.delaiAvantNouvelleTentative(loginRequest.getEmail(), ip);
+        if (delai > 0) {
+            log.warn("Connexion limitée pour {} depuis {} ({}s)", loginRequest.getEmail(), ip, delai);
+            return CompletableFuture.completedFuture(tooManyRequests(delai,
+                    "Trop de tentatives de connexion, veuillez réessayer plus tard"));
+        }
+
+        // La vérification BCrypt s'exécute sur le pool dédié, pas sur le thread Tomcat
+        try {
+            return CompletableFuture.supplyAsync(() -> authentifier(loginRequest, ip), loginExecutor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Pool de connexion saturé, tentative refusée pour: {}", loginRequest.getEmail());
+            return CompletableFuture.completedFuture(tooManyRequests(LOGIN_RETRY_AFTER_SECONDS,
+                    "Service de connexion surchargé, veuillez réessayer dans quelques instants"));
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> authentifier(LoginRequest loginRequest, String ip) {
         try {
             log.info("Tentative de connexion pour l'utilisateur: {}", loginRequest.getEmail());
 
@@ -49,12 +87,12 @@ public class AuthController {
                     )
             );
 
-            // Générer le token JWT
-            String token = jwtTokenProvider.generateToken(authentication);
+            // L'utilisateur a déjà été chargé par l'AuthenticationManager : pas de seconde lecture
+            User user = ((CustomUserDetailsService.CustomUserPrincipal) authentication.getPrincipal()).getUser();
+            loginThrottle.enregistrerSucces(loginRequest.getEmail());
 
-            // Récupérer les informations utilisateur
-            User user = userService.getUserByEmail(loginRequest.getEmail())
-                    .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
+            // Générer le token JWT
+            String token = jwtTokenProvider.generateToken(user);
 
             log.info("Connexion réussie pour l'utilisateur: {} ({})", user.getNomComplet(), user.getRole());
 
@@ -63,7 +101,7 @@ public class AuthController {
             response.put("message", "Connexion réussie");
             response.put("token", token);
             response.put("tokenType", "Bearer");
-            response.put("expiresIn", 86400); // 24 heures en secondes
+            response.put("expiresIn", jwtTokenProvider.getExpirationInSeconds());
 
             Map<String, Object> userInfo = new HashMap<>();
             userInfo.put("id", user.getId());
@@ -79,6 +117,7 @@ public class AuthController {
             return ResponseEntity.ok(response);
 
         } catch (BadCredentialsException e) {
+            loginThrottle.enregistrerEchec(loginRequest.getEmail(), ip);
             log.warn("Échec de connexion - Identifiants incorrects pour: {}", loginRequest.getEmail());
             return ResponseEntity.badRequest().body(createErrorResponse("Email ou mot de passe incorrect"));
         } catch (Exception e) {
@@ -96,11 +135,13 @@ public class AuthController {
 
             String token = authHeader.substring(7);
 
-            if (!jwtTokenProvider.validateToken(token)) {
+            Optional<JwtClaims> claimsOpt = jwtTokenProvider.parseToken(token)
+                    .filter(claims -> !tokenRevocationService.estRevoque(claims));
+            if (claimsOpt.isEmpty()) {
                 return ResponseEntity.badRequest().body(createErrorResponse("Token invalide ou expiré"));
             }
 
-            String email = jwtTokenProvider.getUsernameFromToken(token);
+            String email = claimsOpt.get().getEmail();
             User user = userService.getUserByEmail(email)
                     .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
 
@@ -108,15 +149,20 @@ public class AuthController {
                 return ResponseEntity.badRequest().body(createErrorResponse("Compte utilisateur désactivé"));
             }
 
+            // Un token émis avant un changement de rôle ou de mot de passe ne peut pas être rafraîchi
+            if (!Objects.equals(user.getSecurityStamp(), claimsOpt.get().getSecurityStamp())) {
+                return ResponseEntity.badRequest().body(createErrorResponse("Token invalide ou expiré"));
+            }
+
             // Générer un nouveau token
-            String newToken = jwtTokenProvider.generateToken(email);
+            String newToken = jwtTokenProvider.generateToken(user);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "Token rafraîchi avec succès");
             response.put("token", newToken);
             response.put("tokenType", "Bearer");
-            response.put("expiresIn", 86400);
+            response.put("expiresIn", jwtTokenProvider.getExpirationInSeconds());
 
             return ResponseEntity.ok(response);
 
@@ -127,7 +173,14 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<Map<String, Object>> logout() {
+    public ResponseEntity<Map<String, Object>> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        // Révoquer le token côté serveur jusqu'à son expiration
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            jwtTokenProvider.parseToken(authHeader.substring(7))
+                    .ifPresent(tokenRevocationService::revoquerToken);
+        }
+
         // Nettoyer le contexte de sécurité
         SecurityContextHolder.clearContext();
 
@@ -186,16 +239,14 @@ public class AuthController {
             }
 
             String token = authHeader.substring(7);
-            boolean isValid = jwtTokenProvider.validateToken(token);
+            Optional<JwtClaims> claimsOpt = jwtTokenProvider.parseToken(token)
+                    .filter(claims -> !tokenRevocationService.estRevoque(claims));
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("valid", isValid);
+            response.put("valid", claimsOpt.isPresent());
 
-            if (isValid) {
-                String email = jwtTokenProvider.getUsernameFromToken(token);
-                response.put("email", email);
-            }
+            claimsOpt.ifPresent(claims -> response.put("email", claims.getEmail()));
 
             return ResponseEntity.ok(response);
 
@@ -234,15 +285,17 @@ public class AuthController {
                 return ResponseEntity.badRequest().body(createErrorResponse("Le nouveau mot de passe doit contenir au moins 6 caractères"));
             }
 
-            // Mettre à jour le mot de passe
-            user.setMotDePasse(passwordEncoder.encode(request.getNewPassword()));
-            userService.saveUser(user);
+            // Mettre à jour le mot de passe ; l'ancienne empreinte est révoquée avec les tokens existants
+            User savedUser = userService.changerMotDePasse(user.getId(), request.getNewPassword());
 
             log.info("Mot de passe modifié pour l'utilisateur: {}", email);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "Mot de passe modifié avec succès");
+            response.put("token", jwtTokenProvider.generateToken(savedUser));
+            response.put("tokenType", "Bearer");
+            response.put("expiresIn", jwtTokenProvider.getExpirationInSeconds());
 
             return ResponseEntity.ok(response);
 
@@ -279,6 +332,12 @@ public class AuthController {
 
     // ===== MÉTHODES UTILITAIRES =====
 
+    private ResponseEntity<Map<String, Object>> tooManyRequests(long retryAfterSeconds, String message) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(createErrorResponse(message));
+    }
+
     private Map<String, Object> createErrorResponse(String message) {
         Map<String, Object> errorResponse = new HashMap<>();
         errorResponse.put("success", false);
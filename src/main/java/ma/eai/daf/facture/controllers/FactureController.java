@@ -1,26 +1,47 @@
 package ma.eai.daf.facture.controllers;
 
+import ma.eai.daf.facture.cache.VersionsListesFactures;
 import ma.eai.daf.facture.dto.FactureCreateDto;
+import ma.eai.daf.facture.dto.FactureListeDto;
 import ma.eai.daf.facture.dto.FactureUpdateDto;
 import ma.eai.daf.facture.dto.PaiementDto;
 import ma.eai.daf.facture.dto.ValidationDto;
 import ma.eai.daf.facture.entities.Facture;
 import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.enums.ModaliteType;
 import ma.eai.daf.facture.enums.StatutFacture;
 import ma.eai.daf.facture.mappers.FactureMapper;
+import ma.eai.daf.facture.recherche.FactureIndex;
+import ma.eai.daf.facture.recherche.SuggestionsFournisseurs;
+import ma.eai.daf.facture.security.AuthenticatedUser;
+import ma.eai.daf.facture.services.AnnuaireUtilisateursService;
+import ma.eai.daf.facture.services.BalanceAgeeService;
+import ma.eai.daf.facture.services.DoublonFactureService;
 import ma.eai.daf.facture.services.FactureService;
+import ma.eai.daf.facture.services.ListeFacturesEnFlux;
 import ma.eai.daf.facture.services.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/factures")
@@ -28,9 +49,22 @@ import java.util.Map;
 @Slf4j
 public class FactureController {
 
+    // Statuts des files partagées, pour leurs ETags (voir les requêtes correspondantes)
+    private static final List<StatutFacture> STATUTS_URGENTES = List.of(
+            StatutFacture.EN_VALIDATION_V1, StatutFacture.EN_VALIDATION_V2, StatutFacture.EN_TRESORERIE);
+    private static final List<StatutFacture> STATUTS_EN_RETARD = Arrays.stream(StatutFacture.values())
+            .filter(statut -> statut != StatutFacture.PAYEE)
+            .toList();
+
     private final FactureService factureService;
     private final UserService userService;
     private final FactureMapper factureMapper;
+    private final AnnuaireUtilisateursService annuaireUtilisateursService;
+    private final BalanceAgeeService balanceAgeeService;
+    private final FactureIndex factureIndex;
+    private final SuggestionsFournisseurs suggestionsFournisseurs;
+    private final VersionsListesFactures versionsListes;
+    private final ListeFacturesEnFlux listeFacturesEnFlux;
     @PostMapping("/test")
     public ResponseEntity<Map<String, Object>> createFactureTest(
             @Valid @RequestBody FactureCreateDto factureDto,
@@ -56,30 +90,21 @@ public class FactureController {
 
     @GetMapping("/donnees-reference")
     @PreAuthorize("hasAuthority('ROLE_U1')")
-    public ResponseEntity<Map<String, Object>> getDonneesReferenceSaisie() {
+    public ResponseEntity<Map<String, Object>> getDonneesReferenceSaisie(WebRequest webRequest) {
         try {
-            log.info("📋 Récupération des données de référence");
-
-            List<User> validateursV1 = userService.getValidateursV1();
-            List<User> validateursV2 = userService.getValidateursV2();
-            List<User> tresoriers = userService.getTresoriers();
-
-            log.info("📊 Trouvé: {} V1, {} V2, {} trésoriers",
-                    validateursV1.size(), validateursV2.size(), tresoriers.size());
-
-            Map<String, Object> donnees = Map.of(
-                    "validateursV1", validateursV1.stream()
-                            .map(this::mapUserForSelection)
-                            .toList(),
-                    "validateursV2", validateursV2.stream()
-                            .map(this::mapUserForSelection)
-                            .toList(),
-                    "tresoriers", tresoriers.stream()
-                            .map(this::mapUserForSelection)
-                            .toList()
-            );
+            AnnuaireUtilisateursService.Annuaire annuaire = annuaireUtilisateursService.getAnnuaire();
+
+            // Le navigateur revalide avec If-None-Match : 304 tant que l'annuaire n'a pas changé
+            if (webRequest.checkNotModified(annuaire.getEtag())) {
+                return null;
+            }
+
+            log.debug("📋 Données de référence servies depuis l'annuaire (ETag {})", annuaire.getEtag());
 
-            return ResponseEntity.ok(donnees);
+            return ResponseEntity.ok()
+                    .eTag(annuaire.getEtag())
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(annuaire.getDonneesReference());
         } catch (Exception e) {
             log.error("❌ Erreur récupération données de référence", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
@@ -88,10 +113,28 @@ public class FactureController {
         }
     }
 
+    /**
+     * Suggestions de fournisseurs pendant la saisie, classées par fréquence récente.
+     * Réponse en mémoire : le client peut interroger à chaque frappe (avec anti-rebond) et
+     * abandonner les requêtes dépassées.
+     */
+    @GetMapping("/fournisseurs/suggestions")
+    @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<List<Map<String, Object>>> suggererFournisseurs(
+            @RequestParam(name = "q") String saisie,
+            @RequestParam(defaultValue = "10") int limite) {
+        List<Map<String, Object>> suggestions = suggestionsFournisseurs.suggerer(saisie,
+                Math.max(1, Math.min(limite, suggestionsFournisseurs.getTop())));
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(30)).cachePrivate())
+                .body(suggestions);
+    }
+
     @PostMapping
     @PreAuthorize("hasAuthority('ROLE_U1')")
     public ResponseEntity<Map<String, Object>> createFacture(
             @Valid @RequestBody FactureCreateDto factureDto,
+            @RequestParam(defaultValue = "false") boolean forcerDoublon,
             Authentication authentication) {
 
         try {
@@ -99,7 +142,7 @@ public class FactureController {
             log.info("Création d'une nouvelle facture par l'utilisateur {}", userId);
 
             Facture facture = factureMapper.toEntity(factureDto);
-            Facture savedFacture = factureService.createFacture(facture, userId);
+            Facture savedFacture = factureService.createFacture(facture, userId, forcerDoublon);
 
             log.info("Facture {} créée avec succès par l'utilisateur {}",
                     savedFacture.getNumero(), userId);
@@ -111,6 +154,13 @@ public class FactureController {
                     "numero", savedFacture.getNumero()
             ));
 
+        } catch (DoublonFactureService.DoublonException e) {
+            log.warn("Doublon probable refusé: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>(createErrorResponse(e.getMessage()));
+            response.put("doublon", true);
+            response.put("factureExistanteId", e.getFactureExistanteId());
+            response.put("numeroExistant", e.getNumeroExistant());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
         } catch (IllegalArgumentException e) {
             log.warn("Données invalides pour la création de facture: {}", e.getMessage());
             return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
@@ -127,14 +177,18 @@ public class FactureController {
 
     @GetMapping("/mes-factures")
     @PreAuthorize("hasAuthority('ROLE_U1')")
-    public ResponseEntity<List<Map<String, Object>>> getMesFactures(Authentication authentication) {
+    public ResponseEntity<List<FactureListeDto>> getMesFactures(Authentication authentication, WebRequest webRequest) {
         try {
             Long userId = getCurrentUserId(authentication);
+            String etag = versionsListes.etagUtilisateur("mes-factures", userId);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
             List<Facture> factures = factureService.getFacturesParCreateur(userId);
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.debug("Récupération de {} factures pour l'utilisateur {}", result.size(), userId);
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (RuntimeException e) {
             log.warn("Utilisateur non trouvé: {}", e.getMessage());
@@ -226,14 +280,18 @@ public class FactureController {
 
     @GetMapping("/en-attente-v1")
     @PreAuthorize("hasAuthority('ROLE_V1')")
-    public ResponseEntity<List<Map<String, Object>>> getFacturesEnAttenteV1(Authentication authentication) {
+    public ResponseEntity<List<FactureListeDto>> getFacturesEnAttenteV1(Authentication authentication, WebRequest webRequest) {
         try {
             Long userId = getCurrentUserId(authentication);
+            String etag = versionsListes.etagUtilisateur("en-attente-v1", userId);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
             List<Facture> factures = factureService.getFacturesEnAttenteV1(userId);
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.debug("Récupération de {} factures en attente V1 pour l'utilisateur {}", result.size(), userId);
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des factures en attente V1", e);
@@ -277,14 +335,18 @@ public class FactureController {
 
     @GetMapping("/en-attente-v2")
     @PreAuthorize("hasAuthority('ROLE_V2')")
-    public ResponseEntity<List<Map<String, Object>>> getFacturesEnAttenteV2(Authentication authentication) {
+    public ResponseEntity<List<FactureListeDto>> getFacturesEnAttenteV2(Authentication authentication, WebRequest webRequest) {
         try {
             Long userId = getCurrentUserId(authentication);
+            String etag = versionsListes.etagUtilisateur("en-attente-v2", userId);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
             List<Facture> factures = factureService.getFacturesEnAttenteV2(userId);
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.debug("Récupération de {} factures en attente V2 pour l'utilisateur {}", result.size(), userId);
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des factures en attente V2", e);
@@ -328,10 +390,19 @@ public class FactureController {
 
     @GetMapping("/en-attente-tresorerie")
     @PreAuthorize("hasAuthority('ROLE_T1')")
-    public ResponseEntity<List<Map<String, Object>>> getFacturesEnAttenteTresorerie(Authentication authentication) {
+    public ResponseEntity<?> getFacturesEnAttenteTresorerie(Authentication authentication, WebRequest webRequest,
+                                                            @RequestParam(defaultValue = "false") boolean flux) {
         try {
             Long userId = getCurrentUserId(authentication);
+            String etag = versionsListes.etagUtilisateur("en-attente-tresorerie", userId, StatutFacture.EN_TRESORERIE);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
             log.info("📋 Récupération factures trésorerie pour utilisateur {}", userId);
+            if (flux) {
+                return reponseFlux(etag, "en-attente-tresorerie",
+                        () -> factureService.streamFacturesEnAttenteTresorerie(userId));
+            }
 
             // Option 1: Factures spécifiquement assignées au trésorier
             List<Facture> factures = factureService.getFacturesEnAttenteTresorerie(userId);
@@ -342,10 +413,10 @@ public class FactureController {
                 log.info("📋 Aucune facture assignée, récupération de toutes les factures EN_TRESORERIE");
             }
 
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.info("✅ {} factures en attente trésorerie récupérées", result.size());
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (Exception e) {
             log.error("❌ Erreur lors de la récupération des factures en attente trésorerie", e);
@@ -451,12 +522,27 @@ public class FactureController {
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
-    public ResponseEntity<Map<String, Object>> getFactureById(@PathVariable Long id) {
+    public ResponseEntity<?> getFactureById(@PathVariable Long id, WebRequest webRequest) {
         try {
+            // ETag fort tiré de la date de modification et de la version des utilisateurs et
+            // fournisseurs affichés : 304 sans charger la facture
+            String etag = factureService.getDateModification(id)
+                    .map(dateModification -> "\"" + id + "-" + dateModification.toString().replaceAll("\\D", "")
+                            + "-" + versionsListes.versionReferentiels() + "-" + LocalDate.now() + "\"")
+                    .orElse(null);
+            if (etag != null && webRequest.checkNotModified(etag)) {
+                return null;
+            }
+
             return factureService.getFactureById(id)
                     .map(facture -> {
                         log.debug("Récupération des détails de la facture {}", id);
-                        return ResponseEntity.ok(factureMapper.toDetailDto(facture));
+                        ResponseEntity.BodyBuilder reponse = ResponseEntity.ok()
+                                .cacheControl(CacheControl.noCache().cachePrivate());
+                        if (etag != null) {
+                            reponse.eTag(etag);
+                        }
+                        return reponse.body(factureMapper.toDetailDto(facture));
                     })
                     .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
@@ -469,14 +555,18 @@ public class FactureController {
 
     @GetMapping("/mes-taches")
     @PreAuthorize("hasAnyAuthority('ROLE_V1', 'ROLE_V2', 'ROLE_T1')")
-    public ResponseEntity<List<Map<String, Object>>> getMesTaches(Authentication authentication) {
+    public ResponseEntity<List<FactureListeDto>> getMesTaches(Authentication authentication, WebRequest webRequest) {
         try {
             Long userId = getCurrentUserId(authentication);
+            String etag = versionsListes.etagUtilisateur("mes-taches", userId);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
             List<Facture> factures = factureService.getFacturesEnAttenteForUser(userId);
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.debug("Récupération de {} tâches pour l'utilisateur {}", result.size(), userId);
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des tâches", e);
@@ -486,13 +576,21 @@ public class FactureController {
 
     @GetMapping("/urgentes")
     @PreAuthorize("hasAnyAuthority('ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
-    public ResponseEntity<List<Map<String, Object>>> getFacturesUrgentes() {
+    public ResponseEntity<?> getFacturesUrgentes(WebRequest webRequest,
+                                                 @RequestParam(defaultValue = "false") boolean flux) {
         try {
+            String etag = versionsListes.etagStatuts("urgentes", STATUTS_URGENTES);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+            if (flux) {
+                return reponseFlux(etag, "urgentes", factureService::streamFacturesUrgentes);
+            }
             List<Facture> factures = factureService.getFacturesUrgentes();
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.debug("Récupération de {} factures urgentes", result.size());
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des factures urgentes", e);
@@ -502,13 +600,21 @@ public class FactureController {
 
     @GetMapping("/en-retard")
     @PreAuthorize("hasAnyAuthority('ROLE_T1', 'ROLE_ADMIN')")
-    public ResponseEntity<List<Map<String, Object>>> getFacturesEnRetard() {
+    public ResponseEntity<?> getFacturesEnRetard(WebRequest webRequest,
+                                                 @RequestParam(defaultValue = "false") boolean flux) {
         try {
+            String etag = versionsListes.etagStatuts("en-retard", STATUTS_EN_RETARD);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+            if (flux) {
+                return reponseFlux(etag, "en-retard", factureService::streamFacturesEnRetard);
+            }
             List<Facture> factures = factureService.getFacturesEnRetard();
-            List<Map<String, Object>> result = factureMapper.toListDtoList(factures);
+            List<FactureListeDto> result = factureMapper.toListDtoList(factures);
 
             log.debug("Récupération de {} factures en retard", result.size());
-            return ResponseEntity.ok(result);
+            return reponseListe(etag, result);
 
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des factures en retard", e);
@@ -516,6 +622,58 @@ public class FactureController {
         }
     }
 
+    /**
+     * Balance âgée des factures non payées par fournisseur (0-30, 31-60, 61-90, +90 jours de retard)
+     */
+    @GetMapping("/balance-agee")
+    @PreAuthorize("hasAnyAuthority('ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getBalanceAgee(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateReference) {
+        try {
+            Map<String, Object> balance = balanceAgeeService.calculer(
+                    dateReference != null ? dateReference : LocalDate.now());
+            return ResponseEntity.ok(balance);
+
+        } catch (Exception e) {
+            log.error("Erreur lors du calcul de la balance âgée", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Erreur lors du calcul de la balance âgée")
+            );
+        }
+    }
+
+    /**
+     * Recherche plein texte (numéro, fournisseur, désignation, commentaires, référence de commande,
+     * période, motif) avec facettes par statut et modalité
+     */
+    @GetMapping("/recherche")
+    @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> rechercherFactures(
+            @RequestParam(name = "q", required = false) String texte,
+            @RequestParam(required = false) StatutFacture statut,
+            @RequestParam(required = false) ModaliteType modalite,
+            @RequestParam(defaultValue = "50") int limite) {
+        try {
+            long debut = System.nanoTime();
+            FactureIndex.Resultat resultat = factureIndex.rechercher(texte, statut, modalite,
+                    Math.max(1, Math.min(limite, 200)));
+            long dureeRecherche = (System.nanoTime() - debut) / 1_000_000;
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("factures", factureMapper.toListDtoList(factureService.getFacturesByIds(resultat.getIds())));
+            response.put("total", resultat.getTotal());
+            response.put("facettes", resultat.getFacettes());
+            response.put("dureeRechercheMs", dureeRecherche);
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("Erreur lors de la recherche de factures", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Erreur lors de la recherche de factures")
+            );
+        }
+    }
+
     @GetMapping("/tableau-bord")
     @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
     public ResponseEntity<Map<String, Object>> getTableauBord(Authentication authentication) {
@@ -589,6 +747,10 @@ public class FactureController {
     // ===== MÉTHODES UTILITAIRES =====
 
     private Long getCurrentUserId(Authentication authentication) {
+        // L'identifiant est porté par le token : aucune lecture de daf_users
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return principal.getId();
+        }
         try {
             String email = authentication.getName();
             return userService.getUserByEmail(email)
@@ -600,13 +762,28 @@ public class FactureController {
         }
     }
 
-    private Map<String, Object> mapUserForSelection(User user) {
-        return Map.of(
-                "id", user.getId(),
-                "nomComplet", user.getNomComplet(),
-                "email", user.getEmail(),
-                "role", user.getRole().name()
-        );
+    /**
+     * Liste avec son ETag : le client revalide à chaque fois (If-None-Match) et reçoit 304 tant
+     * que la liste n'a pas changé.
+     */
+    private ResponseEntity<List<FactureListeDto>> reponseListe(String etag, List<FactureListeDto> result) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(result);
+    }
+
+    /**
+     * Même tableau que reponseListe, écrit ligne à ligne depuis un curseur (?flux=true) :
+     * pour les écrans qui demandent des milliers de factures
+     */
+    private ResponseEntity<StreamingResponseBody> reponseFlux(String etag, String liste,
+                                                              Supplier<Stream<Facture>> requete) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(listeFacturesEnFlux.ecrire(liste, requete));
     }
 
     private Map<String, Object> createErrorResponse(String message) {
@@ -1,9 +1,11 @@
 package ma.eai.daf.facture.controllers;
 
 import ma.eai.daf.facture.dto.NotificationDto;
+import ma.eai.daf.facture.dto.NotificationListeDto;
 import ma.eai.daf.facture.entities.Notification;
 import ma.eai.daf.facture.entities.User;
 import ma.eai.daf.facture.mappers.NotificationMapper;
+import ma.eai.daf.facture.security.AuthenticatedUser;
 import ma.eai.daf.facture.services.NotificationService;
 import ma.eai.daf.facture.services.UserService;
 import lombok.RequiredArgsConstructor;
@@ -29,34 +31,24 @@ public class NotificationController {
 
     @GetMapping
     @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
-    public ResponseEntity<Map<String, Object>> getMesNotifications(Authentication authentication) {
+    public ResponseEntity<NotificationListeDto> getMesNotifications(Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
         List<Notification> notifications = notificationService.getNotificationsUser(userId);
 
         List<NotificationDto> notificationDtos = notificationMapper.toDtoList(notifications);
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("data", notificationDtos);
-        response.put("total", notifications.size());
-
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(NotificationListeDto.of(notificationDtos));
     }
 
     @GetMapping("/non-lues")
     @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
-    public ResponseEntity<Map<String, Object>> getNotificationsNonLues(Authentication authentication) {
+    public ResponseEntity<NotificationListeDto> getNotificationsNonLues(Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
         List<Notification> notifications = notificationService.getNotificationsNonLues(userId);
 
         List<NotificationDto> notificationDtos = notificationMapper.toDtoList(notifications);
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("data", notificationDtos);
-        response.put("total", notifications.size());
-
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(NotificationListeDto.of(notificationDtos));
     }
 
     @GetMapping("/count-non-lues")
@@ -65,11 +57,10 @@ public class NotificationController {
         Long userId = getCurrentUserId(authentication);
         long count = notificationService.countNotificationsNonLues(userId);
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("count", count);
-
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "count", count
+        ));
     }
 
     // ===== GESTION DES NOTIFICATIONS =====
@@ -134,7 +125,7 @@ public class NotificationController {
 
     @GetMapping("/urgentes")
     @PreAuthorize("hasAnyAuthority('ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
-    public ResponseEntity<Map<String, Object>> getNotificationsUrgentes(Authentication authentication) {
+    public ResponseEntity<NotificationListeDto> getNotificationsUrgentes(Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
 
         // Récupérer toutes les notifications non lues de l'utilisateur
@@ -147,12 +138,7 @@ public class NotificationController {
 
         List<NotificationDto> notificationDtos = notificationMapper.toDtoList(notificationsUrgentes);
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("data", notificationDtos);
-        response.put("total", notificationsUrgentes.size());
-
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(NotificationListeDto.of(notificationDtos));
     }
 
     @GetMapping("/par-facture/{factureId}")
@@ -237,6 +223,10 @@ public class NotificationController {
     // ===== MÉTHODES UTILITAIRES =====
 
     private Long getCurrentUserId(Authentication authentication) {
+        // L'identifiant est porté par le token : aucune lecture de daf_users
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return principal.getId();
+        }
         String email = authentication.getName();
         return userService.getUserByEmail(email)
                 .map(User::getId)
@@ -0,0 +1,278 @@
+package ma.eai.daf.facture.controllers;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.security.AuthenticatedUser;
+import ma.eai.daf.facture.services.ApercuPieceJointeService;
+import ma.eai.daf.facture.services.FactureService;
+import ma.eai.daf.facture.services.PieceJointeStockage;
+import ma.eai.daf.facture.services.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dépôt et téléchargement de la pièce jointe d'une facture.
+ * <p>
+ * Le dépôt lit le corps brut de la requête (pas de multipart) : le fichier passe directement
+ * du réseau au disque. Le téléchargement gère les requêtes partielles (Range) et délègue l'envoi
+ * à Tomcat en sendfile quand le connecteur le permet, sinon à FileChannel.transferTo.
+ */
+@RestController
+@RequestMapping("/api/factures/{id}/piece-jointe")
+@RequiredArgsConstructor
+@Slf4j
+public class PieceJointeController {
+
+    // Attributs de requête du sendfile de Tomcat (org.apache.tomcat.util.net.Constants)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FICHIER = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_DEBUT = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FIN = "org.apache.tomcat.sendfile.end";
+    private static final String NOSNIFF = "X-Content-Type-Options";
+
+    private final FactureService factureService;
+    private final PieceJointeStockage stockage;
+    private final UserService userService;
+    private final ApercuPieceJointeService apercuService;
+
+    @PutMapping
+    @PreAuthorize("hasAuthority('ROLE_U1')")
+    public ResponseEntity<Map<String, Object>> deposer(
+            @PathVariable Long id,
+            @RequestParam String nom,
+            HttpServletRequest request,
+            Authentication authentication) {
+        try {
+            Long userId = getCurrentUserId(authentication);
+            factureService.verifierDepotPieceJointe(id, userId);
+
+            String nomFichier = StringUtils.getFilename(StringUtils.cleanPath(nom));
+            if (!StringUtils.hasText(nomFichier)) {
+                return ResponseEntity.badRequest().body(createErrorResponse("Le nom du fichier est obligatoire"));
+            }
+
+            PieceJointeStockage.Stockee fichier = stockage.stocker(request.getInputStream());
+            factureService.attacherPieceJointe(id, userId, nomFichier, fichier);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Pièce jointe enregistrée");
+            response.put("nom", nomFichier);
+            response.put("taille", fichier.getTaille());
+            response.put("empreinte", fichier.getEmpreinte());
+            response.put("dejaStockee", !fichier.isNouveau());
+            return ResponseEntity.ok(response);
+
+        } catch (PieceJointeStockage.FichierTropVolumineuxException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("❌ Erreur lors de l'enregistrement de la pièce jointe de la facture {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Erreur lors de l'enregistrement de la pièce jointe")
+            );
+        } catch (RuntimeException e) {
+            log.warn("Pièce jointe refusée pour la facture {}: {}", id, e.getMessage());
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
+    public void telecharger(@PathVariable Long id,
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        response.setHeader(NOSNIFF, "nosniff");
+        Facture facture = factureService.getFactureById(id).orElse(null);
+        if (facture == null || facture.getPieceJointeChemin() == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        PieceJointeStockage.Contenu contenu = stockage.localiser(facture.getPieceJointeChemin()).orElse(null);
+        if (contenu == null) {
+            log.warn("⚠️ Pièce jointe introuvable sur disque pour la facture {}: {}", id, facture.getPieceJointeChemin());
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // Le contenu est adressé par son empreinte : elle sert d'ETag fort
+        String etag = "\"" + PieceJointeStockage.empreinte(facture.getPieceJointeChemin()) + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long taille = contenu.getTaille();
+        long debut = 0;
+        long longueur = taille;
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            try {
+                List<HttpRange> plages = HttpRange.parseRanges(range);
+                // Plusieurs plages (multipart/byteranges) : le fichier complet est renvoyé
+                if (plages.size() == 1) {
+                    debut = plages.get(0).getRangeStart(taille);
+                    longueur = plages.get(0).getRangeEnd(taille) - debut + 1;
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE,
+                            "bytes " + debut + "-" + (debut + longueur - 1) + "/" + taille);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + taille);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+        }
+
+        // Seuls PDF, PNG et JPEG s'affichent dans le navigateur ; le reste (types enregistrés avant la
+        // détection par signature compris) est téléchargé sans interprétation possible
+        String typeMime = facture.getPieceJointeTypeMime();
+        boolean affichable = typeMime != null && PieceJointeStockage.TYPES_AFFICHABLES.contains(typeMime);
+        response.setContentType(affichable ? typeMime : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        ContentDisposition.Builder disposition = affichable ? ContentDisposition.inline() : ContentDisposition.attachment();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition
+                .filename(facture.getPieceJointeNom() != null ? facture.getPieceJointeNom() : "piece-jointe",
+                        StandardCharsets.UTF_8)
+                .build().toString());
+        response.setContentLengthLong(longueur);
+
+        if (!"HEAD".equalsIgnoreCase(request.getMethod())) {
+            envoyer(contenu, debut, longueur, request, response);
+        }
+    }
+
+    /**
+     * Vignette ou aperçu basse résolution de la première page. 202 tant que le rendu est en
+     * cours, 503 si le pool de rendu est saturé, 404 si le fichier ne permet pas d'aperçu.
+     */
+    @GetMapping("/{format}")
+    @PreAuthorize("hasAnyAuthority('ROLE_U1', 'ROLE_V1', 'ROLE_V2', 'ROLE_T1', 'ROLE_ADMIN')")
+    public ResponseEntity<?> getApercu(@PathVariable Long id,
+                                       @PathVariable String format,
+                                       WebRequest webRequest) throws IOException {
+        ApercuPieceJointeService.Format demande = ApercuPieceJointeService.Format.depuis(format).orElse(null);
+        if (demande == null) {
+            return ResponseEntity.badRequest().body(createErrorResponse("Format d'aperçu inconnu: " + format
+                    + " (attendu: vignette ou apercu)"));
+        }
+        Facture facture = factureService.getFactureById(id).orElse(null);
+        if (facture == null || facture.getPieceJointeChemin() == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String chemin = facture.getPieceJointeChemin();
+        PieceJointeStockage.Contenu apercu = apercuService.trouver(chemin, demande).orElse(null);
+        if (apercu == null) {
+            return switch (apercuService.planifier(chemin, facture.getPieceJointeTypeMime(), facture.getPieceJointeNom())) {
+                case EN_COURS -> ResponseEntity.accepted()
+                        .header(HttpHeaders.RETRY_AFTER, "2")
+                        .body(createErrorResponse("Aperçu en cours de génération"));
+                case SATURE -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "30")
+                        .body(createErrorResponse("Génération des aperçus saturée, réessayez plus tard"));
+                case IMPOSSIBLE -> ResponseEntity.notFound().build();
+            };
+        }
+
+        // L'aperçu dérive d'un contenu immuable : l'empreinte suffit comme ETag
+        String etag = "\"" + PieceJointeStockage.empreinte(chemin) + "-" + demande.getSuffixe() + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePrivate())
+                .contentType(MediaType.IMAGE_JPEG)
+                .contentLength(apercu.getTaille())
+                .body(apercu.isCompacte()
+                        ? new InputStreamResource(stockage.ouvrir(apercu))
+                        : new FileSystemResource(apercu.getFichier()));
+    }
+
+    /**
+     * Envoi sans copie en mémoire : sendfile de Tomcat (le connecteur écrit le fichier directement
+     * sur la socket) ou, à défaut, transferTo vers le flux de la réponse. Un contenu non compressé
+     * d'un segment s'envoie de la même façon, décalé de sa position dans le segment.
+     */
+    private void envoyer(PieceJointeStockage.Contenu contenu, long debut, long longueur,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (contenu.isCompresse()) {
+            try (InputStream entree = stockage.ouvrir(contenu)) {
+                StreamUtils.copyRange(entree, response.getOutputStream(), debut, debut + longueur - 1);
+            }
+            return;
+        }
+
+        debut += contenu.getPosition();
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FICHIER, contenu.getFichier().toString());
+            request.setAttribute(SENDFILE_DEBUT, debut);
+            request.setAttribute(SENDFILE_FIN, debut + longueur);
+            return;
+        }
+
+        try (FileChannel canal = FileChannel.open(contenu.getFichier(), StandardOpenOption.READ)) {
+            WritableByteChannel sortie = Channels.newChannel(response.getOutputStream());
+            long envoye = 0;
+            while (envoye < longueur) {
+                long transfere = canal.transferTo(debut + envoye, longueur - envoye, sortie);
+                if (transfere <= 0) {
+                    break;
+                }
+                envoye += transfere;
+            }
+        }
+    }
+
+    private Long getCurrentUserId(Authentication authentication) {
+        // L'identifiant est porté par le token : aucune lecture de daf_users
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return principal.getId();
+        }
+        return userService.getUserByEmail(authentication.getName())
+                .map(User::getId)
+                .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
+    }
+
+    private Map<String, Object> createErrorResponse(String message) {
+        return Map.of(
+                "success", false,
+                "message", message,
+                "timestamp", System.currentTimeMillis()
+        );
+    }
+}
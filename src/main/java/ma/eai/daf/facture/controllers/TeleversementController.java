@@ -0,0 +1,209 @@
+package ma.eai.daf.facture.controllers;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.security.AuthenticatedUser;
+import ma.eai.daf.facture.services.PieceJointeStockage;
+import ma.eai.daf.facture.services.TeleversementService;
+import ma.eai.daf.facture.services.TeleversementService.Televersement;
+import ma.eai.daf.facture.services.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Téléversement reprenable des pièces jointes (en-têtes inspirés de tus 1.0).
+ * <ul>
+ *   <li>POST /api/uploads?factureId=&amp;nom= avec Upload-Length : ouvre un téléversement</li>
+ *   <li>HEAD /api/uploads/{id} : Upload-Offset, position de reprise d'un envoi séquentiel</li>
+ *   <li>PATCH /api/uploads/{id} avec Upload-Offset et Content-Length : écrit un morceau</li>
+ *   <li>POST /api/uploads/{id}/terminer : associe le fichier complet à la facture (peut être relancé après un échec)</li>
+ *   <li>DELETE /api/uploads/{id} : abandonne le téléversement</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasAuthority('ROLE_U1')")
+public class TeleversementController {
+
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_EXPIRES = "Upload-Expires";
+
+    private final TeleversementService televersementService;
+    private final UserService userService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> ouvrir(
+            @RequestParam Long factureId,
+            @RequestParam String nom,
+            @RequestHeader(UPLOAD_LENGTH) long taille,
+            Authentication authentication) {
+        try {
+            String nomFichier = StringUtils.getFilename(StringUtils.cleanPath(nom));
+            if (!StringUtils.hasText(nomFichier)) {
+                return ResponseEntity.badRequest().body(createErrorResponse("Le nom du fichier est obligatoire"));
+            }
+
+            Televersement televersement = televersementService.creer(factureId, getCurrentUserId(authentication),
+                    nomFichier, taille);
+
+            return ResponseEntity.created(URI.create("/api/uploads/" + televersement.getId()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .header(UPLOAD_EXPIRES, televersement.getExpiration().toString())
+                    .body(toDto(televersement));
+
+        } catch (PieceJointeStockage.FichierTropVolumineuxException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("❌ Erreur lors de l'ouverture du téléversement pour la facture {}", factureId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Erreur lors de l'ouverture du téléversement"));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getPosition(@PathVariable String id, Authentication authentication) {
+        try {
+            Televersement televersement = televersementService.getTeleversement(id, getCurrentUserId(authentication));
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, String.valueOf(televersement.getPosition()))
+                    .header(UPLOAD_LENGTH, String.valueOf(televersement.getTaille()))
+                    .header(UPLOAD_EXPIRES, televersement.getExpiration().toString())
+                    .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                    .build();
+        } catch (TeleversementService.TeleversementIntrouvableException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * État détaillé, dont les plages reçues : un client qui envoie en parallèle ne renvoie que les trous.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getEtat(@PathVariable String id, Authentication authentication) {
+        try {
+            return ResponseEntity.ok(toDto(televersementService.getTeleversement(id, getCurrentUserId(authentication))));
+        } catch (TeleversementService.TeleversementIntrouvableException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @PatchMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> ecrire(
+            @PathVariable String id,
+            @RequestHeader(UPLOAD_OFFSET) long position,
+            HttpServletRequest request,
+            Authentication authentication) {
+        long longueur = request.getContentLengthLong();
+        if (longueur < 0) {
+            return ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).body(
+                    createErrorResponse("L'en-tête Content-Length est obligatoire"));
+        }
+        try {
+            long reprise = televersementService.ecrire(id, getCurrentUserId(authentication),
+                    position, longueur, request.getInputStream());
+            return ResponseEntity.noContent()
+                    .header(UPLOAD_OFFSET, String.valueOf(reprise))
+                    .build();
+
+        } catch (TeleversementService.TeleversementIntrouvableException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createErrorResponse(e.getMessage()));
+        } catch (TeleversementService.PositionInvalideException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            // Connexion coupée : ce qui a été reçu est conservé, le client reprend depuis HEAD
+            log.warn("Morceau interrompu pour le téléversement {} à la position {}: {}", id, position, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Envoi du morceau interrompu"));
+        }
+    }
+
+    @PostMapping("/{id}/terminer")
+    public ResponseEntity<Map<String, Object>> terminer(@PathVariable String id, Authentication authentication) {
+        try {
+            Facture facture = televersementService.terminer(id, getCurrentUserId(authentication));
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Pièce jointe enregistrée");
+            response.put("factureId", facture.getId());
+            response.put("nom", facture.getPieceJointeNom());
+            response.put("taille", facture.getPieceJointeTaille());
+            return ResponseEntity.ok(response);
+
+        } catch (TeleversementService.TeleversementIntrouvableException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createErrorResponse(e.getMessage()));
+        } catch (TeleversementService.FinalisationEnCoursException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("❌ Erreur lors de la finalisation du téléversement {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Erreur lors de la finalisation du téléversement"));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> annuler(@PathVariable String id, Authentication authentication) {
+        try {
+            televersementService.annuler(id, getCurrentUserId(authentication));
+            return ResponseEntity.noContent().build();
+        } catch (TeleversementService.TeleversementIntrouvableException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createErrorResponse(e.getMessage()));
+        } catch (TeleversementService.FinalisationEnCoursException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("❌ Erreur lors de l'annulation du téléversement {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    createErrorResponse("Erreur lors de l'annulation du téléversement"));
+        }
+    }
+
+    private Map<String, Object> toDto(Televersement televersement) {
+        Map<String, Object> dto = new HashMap<>();
+        dto.put("id", televersement.getId());
+        dto.put("factureId", televersement.getFactureId());
+        dto.put("nom", televersement.getNom());
+        dto.put("taille", televersement.getTaille());
+        dto.put("position", televersement.getPosition());
+        dto.put("plagesRecues", televersement.getPlagesRecues());
+        dto.put("expiration", televersement.getExpiration().toString());
+        return dto;
+    }
+
+    private Long getCurrentUserId(Authentication authentication) {
+        // L'identifiant est porté par le token : aucune lecture de daf_users
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return principal.getId();
+        }
+        return userService.getUserByEmail(authentication.getName())
+                .map(User::getId)
+                .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
+    }
+
+    private Map<String, Object> createErrorResponse(String message) {
+        return Map.of(
+                "success", false,
+                "message", message,
+                "timestamp", System.currentTimeMillis()
+        );
+    }
+}
@@ -6,14 +6,17 @@ import ma.eai.daf.facture.dto.UserUpdateDto;
 import ma.eai.daf.facture.entities.User;
 import ma.eai.daf.facture.enums.RoleType;
 import ma.eai.daf.facture.mappers.UserMapper;
+import ma.eai.daf.facture.services.AnnuaireUtilisateursService;
 import ma.eai.daf.facture.services.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.validation.Valid;
 import java.util.List;
@@ -27,6 +30,7 @@ public class UserController {
 
     private final UserService userService;
     private final UserMapper userMapper;
+    private final AnnuaireUtilisateursService annuaireUtilisateursService;
 
     // ===== ENDPOINTS ADMIN =====
 
@@ -169,11 +173,13 @@ public class UserController {
 
     @GetMapping("/validateurs-v1")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_U1')")
-    public ResponseEntity<List<UserDto>> getValidateursV1() {
+    public ResponseEntity<List<UserDto>> getValidateursV1(WebRequest webRequest) {
         try {
-            List<User> users = userService.getValidateursV1();
-            List<UserDto> userDtos = userMapper.toSelectionDtoList(users);
-            return ResponseEntity.ok(userDtos);
+            AnnuaireUtilisateursService.Annuaire annuaire = annuaireUtilisateursService.getAnnuaire();
+            if (webRequest.checkNotModified(annuaire.getEtag())) {
+                return null;
+            }
+            return annuaireResponse(annuaire).body(annuaire.getValidateursV1());
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des validateurs V1", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of());
@@ -182,11 +188,13 @@ public class UserController {
 
     @GetMapping("/validateurs-v2")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_U1')")
-    public ResponseEntity<List<UserDto>> getValidateursV2() {
+    public ResponseEntity<List<UserDto>> getValidateursV2(WebRequest webRequest) {
         try {
-            List<User> users = userService.getValidateursV2();
-            List<UserDto> userDtos = userMapper.toSelectionDtoList(users);
-            return ResponseEntity.ok(userDtos);
+            AnnuaireUtilisateursService.Annuaire annuaire = annuaireUtilisateursService.getAnnuaire();
+            if (webRequest.checkNotModified(annuaire.getEtag())) {
+                return null;
+            }
+            return annuaireResponse(annuaire).body(annuaire.getValidateursV2());
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des validateurs V2", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of());
@@ -195,11 +203,13 @@ public class UserController {
 
     @GetMapping("/tresoriers")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_U1')")
-    public ResponseEntity<List<UserDto>> getTresoriers() {
+    public ResponseEntity<List<UserDto>> getTresoriers(WebRequest webRequest) {
         try {
-            List<User> users = userService.getTresoriers();
-            List<UserDto> userDtos = userMapper.toSelectionDtoList(users);
-            return ResponseEntity.ok(userDtos);
+            AnnuaireUtilisateursService.Annuaire annuaire = annuaireUtilisateursService.getAnnuaire();
+            if (webRequest.checkNotModified(annuaire.getEtag())) {
+                return null;
+            }
+            return annuaireResponse(annuaire).body(annuaire.getTresoriers());
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des trésoriers", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of());
@@ -274,6 +284,12 @@ public class UserController {
 
     // ===== MÉTHODES UTILITAIRES =====
 
+    private ResponseEntity.BodyBuilder annuaireResponse(AnnuaireUtilisateursService.Annuaire annuaire) {
+        return ResponseEntity.ok()
+                .eTag(annuaire.getEtag())
+                .cacheControl(CacheControl.noCache().cachePrivate());
+    }
+
     private Map<String, Object> createErrorResponse(String message) {
         return Map.of(
                 "success", false,
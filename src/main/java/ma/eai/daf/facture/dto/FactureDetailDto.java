@@ -0,0 +1,73 @@
+package ma.eai.daf.facture.dto;
+
+import lombok.Builder;
+
+import java.math.BigDecimal;
+
+/**
+ * Détail complet d'une facture.
+ * <p>
+ * Les types des composants sont connus à la compilation : Jackson résout le sérialiseur de chaque
+ * champ une fois pour toutes, au lieu d'inspecter chaque valeur d'une Map. Les dates restent des
+ * chaînes (vides si absentes) pour garder le format de l'API.
+ */
+@Builder
+public record FactureDetailDto(
+        // Informations de base
+        Long id,
+        String numero,
+        String nomFournisseur,
+        Long fournisseurId,
+        String formeJuridique,
+
+        // Dates
+        String dateFacture,
+        String dateReception,
+        String dateEcheance,
+        String dateLivraison,
+
+        // Montants
+        BigDecimal montantHT,
+        BigDecimal tauxTVA,
+        BigDecimal montantTVA,
+        BigDecimal montantTTC,
+        BigDecimal rasTVA,
+
+        // Modalité et références
+        String modalite,
+        boolean refacturable,
+        String designation,
+        String refCommande,
+        String periode,
+
+        // Statut et commentaires
+        String statut,
+        String commentaires,
+
+        // Dates de traçabilité
+        String dateCreation,
+        String dateModification,
+
+        // Utilisateurs
+        UtilisateurSelectionDto createur,
+        UtilisateurSelectionDto validateur1,
+        UtilisateurSelectionDto validateur2,
+        UtilisateurSelectionDto tresorier,
+
+        // Dates de validation
+        String dateValidationV1,
+        String dateValidationV2,
+
+        // Paiement
+        String referencePaiement,
+        String datePaiement,
+
+        // Métriques et statuts
+        long joursAvantEcheance,
+        boolean estEnRetard,
+        boolean peutEtreModifiee,
+        boolean peutEtreValideeParV1,
+        boolean peutEtreValideeParV2,
+        boolean peutEtreTraiteeParTresorier
+) {
+}
@@ -0,0 +1,117 @@
+package ma.eai.daf.facture.dto;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ligne d'une liste de factures (mes factures, files de validation, trésorerie, recherche).
+ * <p>
+ * Sérialisée par un sérialiseur écrit à la main : ni table de hachage par ligne, ni introspection,
+ * noms de champs pré-encodés et dates écrites chiffre par chiffre sans chaîne intermédiaire.
+ * Le JSON produit est celui de l'ancienne Map : chaîne vide pour un numéro ou une date absents,
+ * 0 pour un montant absent.
+ */
+@JsonSerialize(using = FactureListeDto.Serialiseur.class)
+public record FactureListeDto(
+        Long id,
+        String numero,
+        String nomFournisseur,
+        BigDecimal montantTTC,
+        LocalDate dateFacture,
+        LocalDate dateEcheance,
+        StatutFacture statut,
+        String createurNom,
+        long joursAvantEcheance,
+        boolean estEnRetard
+) {
+
+    public static class Serialiseur extends StdSerializer<FactureListeDto> {
+
+        private static final SerializableString ID = new SerializedString("id");
+        private static final SerializableString NUMERO = new SerializedString("numero");
+        private static final SerializableString NOM_FOURNISSEUR = new SerializedString("nomFournisseur");
+        private static final SerializableString MONTANT_TTC = new SerializedString("montantTTC");
+        private static final SerializableString DATE_FACTURE = new SerializedString("dateFacture");
+        private static final SerializableString DATE_ECHEANCE = new SerializedString("dateEcheance");
+        private static final SerializableString STATUT = new SerializedString("statut");
+        private static final SerializableString CREATEUR_NOM = new SerializedString("createurNom");
+        private static final SerializableString JOURS_AVANT_ECHEANCE = new SerializedString("joursAvantEcheance");
+        private static final SerializableString EST_EN_RETARD = new SerializedString("estEnRetard");
+
+        public Serialiseur() {
+            super(FactureListeDto.class);
+        }
+
+        @Override
+        public void serialize(FactureListeDto facture, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            // Un seul tampon pour les deux dates de la ligne
+            char[] tampon = new char[10];
+
+            gen.writeStartObject(facture);
+            gen.writeFieldName(ID);
+            if (facture.id() != null) {
+                gen.writeNumber(facture.id());
+            } else {
+                gen.writeNull();
+            }
+            gen.writeFieldName(NUMERO);
+            gen.writeString(facture.numero() != null ? facture.numero() : "");
+            gen.writeFieldName(NOM_FOURNISSEUR);
+            gen.writeString(facture.nomFournisseur());
+            gen.writeFieldName(MONTANT_TTC);
+            if (facture.montantTTC() != null) {
+                gen.writeNumber(facture.montantTTC());
+            } else {
+                gen.writeNumber(0);
+            }
+            gen.writeFieldName(DATE_FACTURE);
+            ecrireDate(gen, facture.dateFacture(), tampon);
+            gen.writeFieldName(DATE_ECHEANCE);
+            ecrireDate(gen, facture.dateEcheance(), tampon);
+            gen.writeFieldName(STATUT);
+            gen.writeString(facture.statut().name());
+            gen.writeFieldName(CREATEUR_NOM);
+            gen.writeString(facture.createurNom());
+            gen.writeFieldName(JOURS_AVANT_ECHEANCE);
+            gen.writeNumber(facture.joursAvantEcheance());
+            gen.writeFieldName(EST_EN_RETARD);
+            gen.writeBoolean(facture.estEnRetard());
+            gen.writeEndObject();
+        }
+
+        // Même rendu que LocalDate.toString() (aaaa-mm-jj), chaîne vide si absente
+        private static void ecrireDate(JsonGenerator gen, LocalDate date, char[] tampon) throws IOException {
+            if (date == null) {
+                gen.writeString("");
+                return;
+            }
+            int annee = date.getYear();
+            if (annee < 1000 || annee > 9999) {
+                gen.writeString(date.toString());
+                return;
+            }
+            chiffres(tampon, 0, annee, 4);
+            tampon[4] = '-';
+            chiffres(tampon, 5, date.getMonthValue(), 2);
+            tampon[7] = '-';
+            chiffres(tampon, 8, date.getDayOfMonth(), 2);
+            gen.writeString(tampon, 0, 10);
+        }
+
+        private static void chiffres(char[] tampon, int debut, int valeur, int longueur) {
+            for (int i = debut + longueur - 1; i >= debut; i--) {
+                tampon[i] = (char) ('0' + valeur % 10);
+                valeur /= 10;
+            }
+        }
+    }
+}
@@ -1,26 +1,24 @@
 package ma.eai.daf.facture.dto;
 
-import lombok.Data;
 import lombok.Builder;
 import java.time.LocalDateTime;
 
-@Data
 @Builder
-public class NotificationDto {
+public record NotificationDto(
+        Long id,
+        String titre,
+        String message,
+        LocalDateTime dateEnvoi,
+        LocalDateTime dateLecture,
+        boolean lue,
+        boolean urgence,
 
-    private Long id;
-    private String titre;
-    private String message;
-    private LocalDateTime dateEnvoi;
-    private LocalDateTime dateLecture;
-    private boolean lue;
-    private boolean urgence;
+        // Informations sur la facture liée
+        Long factureId,
+        String factureNumero,
 
-    // Informations sur la facture liée
-    private Long factureId;
-    private String factureNumero;
-
-    // Informations sur le destinataire
-    private Long destinataireId;
-    private String destinataireNom;
-}
\ No newline at end of file
+        // Informations sur le destinataire
+        Long destinataireId,
+        String destinataireNom
+) {
+}
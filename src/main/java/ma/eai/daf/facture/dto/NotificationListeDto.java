@@ -0,0 +1,17 @@
+package ma.eai.daf.facture.dto;
+
+import java.util.List;
+
+/**
+ * Réponse des listes de notifications, interrogées à chaque rafraîchissement de l'interface.
+ */
+public record NotificationListeDto(
+        boolean success,
+        List<NotificationDto> data,
+        int total
+) {
+
+    public static NotificationListeDto of(List<NotificationDto> notifications) {
+        return new NotificationListeDto(true, notifications, notifications.size());
+    }
+}
@@ -0,0 +1,30 @@
+package ma.eai.daf.facture.dto;
+
+import ma.eai.daf.facture.analytics.DimensionCube;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PivotRequeteDto {
+
+    // Axes de regroupement, dans l'ordre des colonnes du résultat (aucun = total global)
+    private List<DimensionCube> groupBy;
+
+    // Valeurs acceptées par dimension, ex. {"STATUT": ["EN_TRESORERIE", "PAYEE"]}
+    private Map<DimensionCube, List<String>> filtres;
+
+    // Période sur la date de facture (bornes incluses)
+    private LocalDate dateDebut;
+    private LocalDate dateFin;
+
+    // Nombre maximal de lignes, triées par montant TTC décroissant
+    private Integer limite;
+}
@@ -1,36 +1,35 @@
 package ma.eai.daf.facture.dto;
 
 import ma.eai.daf.facture.enums.RoleType;
-import lombok.Data;
 import lombok.Builder;
 import jakarta.validation.constraints.*;
 
-@Data
 @Builder
-public class UserDto {
+public record UserDto(
 
-    private Long id;
+        Long id,
 
-    @NotBlank(message = "Le nom est obligatoire")
-    @Size(max = 100, message = "Le nom ne peut pas dépasser 100 caractères")
-    private String nom;
+        @NotBlank(message = "Le nom est obligatoire")
+        @Size(max = 100, message = "Le nom ne peut pas dépasser 100 caractères")
+        String nom,
 
-    @Size(max = 100, message = "Le prénom ne peut pas dépasser 100 caractères")
-    private String prenom;
+        @Size(max = 100, message = "Le prénom ne peut pas dépasser 100 caractères")
+        String prenom,
 
-    @NotBlank(message = "L'email est obligatoire")
-    @Email(message = "L'email doit être valide")
-    @Size(max = 150, message = "L'email ne peut pas dépasser 150 caractères")
-    private String email;
+        @NotBlank(message = "L'email est obligatoire")
+        @Email(message = "L'email doit être valide")
+        @Size(max = 150, message = "L'email ne peut pas dépasser 150 caractères")
+        String email,
 
-    @NotNull(message = "Le rôle est obligatoire")
-    private RoleType role;
+        @NotNull(message = "Le rôle est obligatoire")
+        RoleType role,
 
-    private boolean actif = true;
+        boolean actif,
 
-    private String nomComplet;
-    private int nbFacturesCreees;
-    private int nbFacturesValideesN1;
-    private int nbFacturesValideesN2;
-    private int nbFacturesTraitees;
-}
\ No newline at end of file
+        String nomComplet,
+        int nbFacturesCreees,
+        int nbFacturesValideesN1,
+        int nbFacturesValideesN2,
+        int nbFacturesTraitees
+) {
+}
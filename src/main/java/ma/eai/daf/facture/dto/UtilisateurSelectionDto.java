@@ -0,0 +1,14 @@
+package ma.eai.daf.facture.dto;
+
+import ma.eai.daf.facture.enums.RoleType;
+
+/**
+ * Utilisateur tel qu'affiché dans une facture ou une liste de sélection.
+ */
+public record UtilisateurSelectionDto(
+        Long id,
+        String nomComplet,
+        String email,
+        RoleType role
+) {
+}
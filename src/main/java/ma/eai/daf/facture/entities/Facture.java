@@ -48,6 +48,11 @@ public class Facture {
     @Column(name = "nom_fournisseur", nullable = false, length = 200)
     private String nomFournisseur;
 
+    // Fournisseur du référentiel (nullable le temps de la migration des factures existantes)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "fournisseur_id")
+    private Fournisseur fournisseur;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "forme_juridique")
     private FormeJuridiqueType formeJuridique;
@@ -122,6 +127,13 @@ public class Facture {
     @Column(name = "etranger_local", length = 50)
     private String etrangerLocal;
 
+    // Rappels d'échéance déjà envoyés : plus petit seuil notifié (jours avant échéance) et échéance concernée
+    @Column(name = "seuil_rappel_envoye")
+    private Integer seuilRappelEnvoye;
+
+    @Column(name = "echeance_rappelee")
+    private LocalDate echeanceRappelee;
+
     // ===== STATUT ===
     @Enumerated(EnumType.STRING)
     @Column(name = "statut", nullable = false)
@@ -178,7 +190,10 @@ public class Facture {
         calculerMontants();
     }
 
-    private void calculerMontants() {
+    /**
+     * Calcule TVA et TTC à partir du HT (aussi appelé avant l'insertion, pour la détection des doublons).
+     */
+    public void calculerMontants() {
         if (montantHT != null && tauxTVA != null) {
             montantTVA = montantHT.multiply(tauxTVA).divide(BigDecimal.valueOf(100));
             montantTTC = montantHT.add(montantTVA);
@@ -217,13 +232,22 @@ public class Facture {
 
     // Calcul du nombre de jours avant échéance
     public long getJoursAvantEcheance() {
+        return getJoursAvantEcheance(LocalDate.now());
+    }
+
+    // Variante à date de référence fixe, pour calculer une liste entière sur la même date
+    public long getJoursAvantEcheance(LocalDate dateReference) {
         if (dateEcheance == null) return 0;
-        return LocalDate.now().until(dateEcheance, java.time.temporal.ChronoUnit.DAYS);
+        return dateReference.until(dateEcheance, java.time.temporal.ChronoUnit.DAYS);
     }
 
     // Vérifier si la facture est en retard
     public boolean estEnRetard() {
-        return dateEcheance != null && LocalDate.now().isAfter(dateEcheance) && !estPayee();
+        return estEnRetard(LocalDate.now());
+    }
+
+    public boolean estEnRetard(LocalDate dateReference) {
+        return dateEcheance != null && dateReference.isAfter(dateEcheance) && !estPayee();
     }
 
     public void setCreateur(User createur) {
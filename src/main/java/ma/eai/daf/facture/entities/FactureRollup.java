@@ -0,0 +1,57 @@
+package ma.eai.daf.facture.entities;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import lombok.*;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Agrégat des factures par (jour, statut, fournisseur, modalité), maintenu de façon incrémentale
+ * dans la transaction de chaque changement d'état (voir FactureRollupService).
+ * <p>
+ * Le jour de référence est la date de paiement pour une facture payée, sinon sa date d'échéance
+ * (à défaut sa date de facture) : les statistiques trésorerie et l'évolution des paiements
+ * se lisent ainsi directement sur cette dimension.
+ */
+@Entity
+@Table(name = "daf_rollup_factures",
+        uniqueConstraints = @UniqueConstraint(name = "uk_rollup_factures_cle",
+                columnNames = {"jour", "statut", "fournisseur_id", "modalite"}),
+        indexes = @Index(name = "idx_rollup_factures_statut_jour", columnList = "statut, jour"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FactureRollup {
+
+    // Valeur de la colonne modalite pour les factures sans modalité (la clé unique exige une valeur)
+    public static final String MODALITE_AUCUNE = "AUCUNE";
+    public static final long FOURNISSEUR_INCONNU = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ide_rollup")
+    private Long id;
+
+    @Column(name = "jour", nullable = false)
+    private LocalDate jour;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false)
+    private StatutFacture statut;
+
+    // Identifiant du référentiel des fournisseurs (FOURNISSEUR_INCONNU pour une facture pas encore rattachée)
+    @Column(name = "fournisseur_id", nullable = false)
+    private Long fournisseurId;
+
+    @Column(name = "modalite", nullable = false, length = 20)
+    private String modalite;
+
+    @Column(name = "nombre_factures", nullable = false)
+    private Long nombreFactures;
+
+    @Column(name = "montant_ttc", nullable = false, precision = 19, scale = 2)
+    private BigDecimal montantTTC;
+}
@@ -0,0 +1,82 @@
+package ma.eai.daf.facture.entities;
+
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import lombok.*;
+import jakarta.persistence.*;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Référentiel des fournisseurs. Les factures y sont rattachées par clé étrangère : les agrégats
+ * par fournisseur regroupent sur l'identifiant et les variantes d'écriture d'un même nom
+ * (casse, accents, ponctuation) désignent le même fournisseur.
+ */
+@Entity
+@Table(name = "daf_fournisseurs",
+        uniqueConstraints = @UniqueConstraint(name = "uk_fournisseur_nom_normalise", columnNames = "nom_normalise"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Fournisseur {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ide_fournisseur")
+    private Long id;
+
+    // Nom canonique : première écriture rencontrée
+    @Column(name = "nom", nullable = false, length = 200)
+    private String nom;
+
+    // Clé de rapprochement des variantes d'écriture (voir normaliser)
+    @Column(name = "nom_normalise", nullable = false, length = 200)
+    private String nomNormalise;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "forme_juridique")
+    private FormeJuridiqueType formeJuridique;
+
+    // Modalité appliquée aux nouvelles factures saisies sans modalité
+    @Enumerated(EnumType.STRING)
+    @Column(name = "modalite_par_defaut")
+    private ModaliteType modaliteParDefaut;
+
+    @Column(name = "actif")
+    @Builder.Default
+    private boolean actif = true;
+
+    @Column(name = "date_creation", nullable = false)
+    private LocalDateTime dateCreation;
+
+    @PrePersist
+    protected void onCreate() {
+        if (dateCreation == null) {
+            dateCreation = LocalDateTime.now();
+        }
+        if (nomNormalise == null) {
+            nomNormalise = normaliser(nom);
+        }
+    }
+
+    /**
+     * Majuscules, sans accents ni ponctuation, espaces réduits : "Société Générale, S.A." → "SOCIETE GENERALE S A".
+     */
+    public static String normaliser(String nom) {
+        if (nom == null) {
+            return "";
+        }
+        String sansAccents = Normalizer.normalize(nom, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sansAccents.toUpperCase(Locale.ROOT)
+                .replaceAll("[^A-Z0-9]+", " ")
+                .trim();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Fournisseur{id=%d, nom='%s'}", id, nom);
+    }
+}
@@ -0,0 +1,52 @@
+package ma.eai.daf.facture.entities;
+
+import ma.eai.daf.facture.enums.TypeRevocation;
+import lombok.*;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Révocation persistée d'un token (jti) ou d'une empreinte de sécurité.
+ * La table reste petite : une ligne n'est utile que jusqu'à l'expiration des tokens qu'elle vise.
+ */
+@Entity
+@Table(name = "daf_revoked_tokens",
+        indexes = {
+                @Index(name = "idx_revoked_date_revocation", columnList = "date_revocation"),
+                @Index(name = "idx_revoked_date_expiration", columnList = "date_expiration")
+        })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ide_revocation")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 20)
+    private TypeRevocation type;
+
+    @Column(name = "valeur", nullable = false, length = 64)
+    private String valeur;
+
+    @Column(name = "ide_user")
+    private Long userId;
+
+    @Column(name = "date_revocation", nullable = false)
+    private LocalDateTime dateRevocation;
+
+    @Column(name = "date_expiration", nullable = false)
+    private LocalDateTime dateExpiration;
+
+    @PrePersist
+    protected void onCreate() {
+        if (dateRevocation == null) {
+            dateRevocation = LocalDateTime.now();
+        }
+    }
+}
@@ -3,14 +3,26 @@ package ma.eai.daf.facture.entities;
 import ma.eai.daf.facture.enums.RoleType;
 import lombok.*;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 @Entity
 @Table(name = "daf_users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.CACHE_REGION_EMAIL)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class User {
 
+    // Régions du cache de second niveau (configurées dans application.conf)
+    public static final String CACHE_REGION = "users";
+    public static final String CACHE_REGION_EMAIL = "users-email";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "ide_user")
@@ -22,6 +34,8 @@ public class User {
     @Column(name = "prenom", length = 100)
     private String prenom;
 
+    // Identifiant naturel : les recherches par email passent par le cache de second niveau
+    @NaturalId(mutable = true)
     @Column(name = "email", nullable = false, unique = true, length = 150)
     private String email;
 
@@ -35,6 +49,14 @@ public class User {
     @Column(name = "role", nullable = false)
     private RoleType role;
 
+    /**
+     * Empreinte de sécurité embarquée dans les tokens JWT.
+     * Elle change à chaque modification sensible (rôle, activation, mot de passe, email),
+     * ce qui invalide les tokens émis auparavant.
+     */
+    @Column(name = "security_stamp", length = 64)
+    private String securityStamp;
+
     // ===== RELATIONS BIDIRECTIONNELLES AVEC FACTURE =====
 
     @OneToMany(mappedBy = "createur", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
@@ -82,6 +104,10 @@ public class User {
         return role == RoleType.ADMIN;
     }
 
+    public void renouvelerSecurityStamp() {
+        this.securityStamp = UUID.randomUUID().toString();
+    }
+
     // ===== MÉTHODES POUR MAINTENIR LA COHÉRENCE BIDIRECTIONNELLE =====
 
     public void addFactureCreee(Facture facture) {
@@ -198,6 +224,15 @@ public class User {
         }
     }
 
+    // ===== MÉTHODES LIFECYCLE =====
+
+    @PrePersist
+    private void prePersist() {
+        if (securityStamp == null) {
+            renouvelerSecurityStamp();
+        }
+    }
+
     // ===== MÉTHODES POUR ÉVITER LES ERREURS DE LAZY LOADING =====
 
     @PostLoad
@@ -0,0 +1,43 @@
+package ma.eai.daf.facture.enums;
+
+/**
+ * Tranches de la balance âgée, en jours de retard par rapport à la date d'échéance.
+ */
+public enum TrancheAnciennete {
+    NON_ECHU(Long.MIN_VALUE, -1, "Non échu"),
+    J0_30(0, 30, "0 à 30 jours"),
+    J31_60(31, 60, "31 à 60 jours"),
+    J61_90(61, 90, "61 à 90 jours"),
+    PLUS_90(91, Long.MAX_VALUE, "Plus de 90 jours");
+
+    private final long joursMin;
+    private final long joursMax;
+    private final String description;
+
+    TrancheAnciennete(long joursMin, long joursMax, String description) {
+        this.joursMin = joursMin;
+        this.joursMax = joursMax;
+        this.description = description;
+    }
+
+    public static TrancheAnciennete de(long joursRetard) {
+        for (TrancheAnciennete tranche : values()) {
+            if (joursRetard <= tranche.joursMax) {
+                return tranche;
+            }
+        }
+        return PLUS_90;
+    }
+
+    public long getJoursMin() {
+        return joursMin;
+    }
+
+    public long getJoursMax() {
+        return joursMax;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
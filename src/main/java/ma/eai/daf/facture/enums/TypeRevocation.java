@@ -0,0 +1,6 @@
+package ma.eai.daf.facture.enums;
+
+public enum TypeRevocation {
+    TOKEN,          // Un token précis (jti), ex. déconnexion
+    SECURITY_STAMP  // Tous les tokens portant une empreinte de sécurité donnée
+}
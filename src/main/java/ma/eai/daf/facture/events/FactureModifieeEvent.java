@@ -0,0 +1,28 @@
+package ma.eai.daf.facture.events;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import lombok.Value;
+
+/**
+ * Publié par {@code FactureService} à chaque création, modification, suppression ou transition
+ * de workflow d'une facture. Les caches et vues dérivés des factures l'écoutent après le commit.
+ */
+@Value
+public class FactureModifieeEvent {
+
+    public enum TypeModification {
+        CREATION,
+        MODIFICATION,
+        SUPPRESSION,
+        TRANSITION
+    }
+
+    Long factureId;
+    TypeModification type;
+    StatutFacture ancienStatut;
+    StatutFacture nouveauStatut;
+
+    public boolean estPaiement() {
+        return nouveauStatut == StatutFacture.PAYEE && ancienStatut != StatutFacture.PAYEE;
+    }
+}
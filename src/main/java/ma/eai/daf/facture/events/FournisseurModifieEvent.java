@@ -0,0 +1,13 @@
+package ma.eai.daf.facture.events;
+
+import lombok.Value;
+
+/**
+ * Publié à chaque modification d'un fournisseur du référentiel (nom, forme juridique, modalité par
+ * défaut, activation). Les vues dérivées du référentiel l'écoutent après le commit.
+ */
+@Value
+public class FournisseurModifieEvent {
+
+    Long fournisseurId;
+}
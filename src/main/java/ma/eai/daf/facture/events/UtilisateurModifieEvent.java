@@ -0,0 +1,20 @@
+package ma.eai.daf.facture.events;
+
+import lombok.Value;
+
+/**
+ * Publié par {@code UserService} à chaque création, modification ou suppression d'utilisateur.
+ * Les caches qui dépendent de daf_users l'écoutent après le commit pour s'invalider.
+ */
+@Value
+public class UtilisateurModifieEvent {
+
+    public enum TypeModification {
+        CREATION,
+        MODIFICATION,
+        SUPPRESSION
+    }
+
+    Long userId;
+    TypeModification type;
+}
@@ -1,17 +1,20 @@
 package ma.eai.daf.facture.mappers;
 
 import ma.eai.daf.facture.dto.FactureCreateDto;
+import ma.eai.daf.facture.dto.FactureDetailDto;
+import ma.eai.daf.facture.dto.FactureListeDto;
 import ma.eai.daf.facture.dto.FactureUpdateDto;
+import ma.eai.daf.facture.dto.UtilisateurSelectionDto;
 import ma.eai.daf.facture.entities.Facture;
 import ma.eai.daf.facture.entities.User;
 import ma.eai.daf.facture.services.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
@@ -108,122 +111,133 @@ public class FactureMapper {
         }
     }
 
-    // ===== ENTITY TO DTO MAPS =====
+    // ===== ENTITY TO DTO =====
 
     /**
      * Conversion pour les listes de factures (vue simplifiée)
      */
-    public Map<String, Object> toListDto(Facture facture) {
+    public FactureListeDto toListDto(Facture facture) {
+        return toListDto(facture, LocalDate.now());
+    }
+
+    public FactureListeDto toListDto(Facture facture, LocalDate dateReference) {
         if (facture == null) {
             return null;
         }
 
-        Map<String, Object> dto = new HashMap<>();
-        dto.put("id", facture.getId());
-        dto.put("numero", facture.getNumero() != null ? facture.getNumero() : "");
-        dto.put("nomFournisseur", facture.getNomFournisseur());
-        dto.put("montantTTC", facture.getMontantTTC() != null ? facture.getMontantTTC() : 0);
-        dto.put("dateFacture", facture.getDateFacture() != null ? facture.getDateFacture().toString() : "");
-        dto.put("dateEcheance", facture.getDateEcheance() != null ? facture.getDateEcheance().toString() : "");
-        dto.put("statut", facture.getStatut().name());
-        dto.put("createurNom", facture.getCreateur().getNomComplet());
-        dto.put("joursAvantEcheance", facture.getJoursAvantEcheance());
-        dto.put("estEnRetard", facture.estEnRetard());
-
-        return dto;
+        return new FactureListeDto(
+                facture.getId(),
+                facture.getNumero(),
+                facture.getNomFournisseur(),
+                facture.getMontantTTC(),
+                facture.getDateFacture(),
+                facture.getDateEcheance(),
+                facture.getStatut(),
+                facture.getCreateur().getNomComplet(),
+                facture.getJoursAvantEcheance(dateReference),
+                facture.estEnRetard(dateReference)
+        );
     }
 
-    public List<Map<String, Object>> toListDtoList(List<Facture> factures) {
+    public List<FactureListeDto> toListDtoList(List<Facture> factures) {
         if (factures == null) {
             return null;
         }
-        return factures.stream()
-                .map(this::toListDto)
-                .collect(Collectors.toList());
+        // Une seule date de référence pour toute la liste
+        LocalDate dateReference = LocalDate.now();
+        List<FactureListeDto> dtos = new ArrayList<>(factures.size());
+        for (Facture facture : factures) {
+            dtos.add(toListDto(facture, dateReference));
+        }
+        return dtos;
     }
 
     /**
      * Conversion pour les détails complets de facture
      */
-    public Map<String, Object> toDetailDto(Facture facture) {
+    public FactureDetailDto toDetailDto(Facture facture) {
         if (facture == null) {
             return null;
         }
 
-        Map<String, Object> dto = new HashMap<>();
-
-        // Informations de base
-        dto.put("id", facture.getId());
-        dto.put("numero", facture.getNumero() != null ? facture.getNumero() : "");
-        dto.put("nomFournisseur", facture.getNomFournisseur());
-        dto.put("formeJuridique", facture.getFormeJuridique() != null ? facture.getFormeJuridique().name() : null);
-
-        // Dates
-        dto.put("dateFacture", facture.getDateFacture() != null ? facture.getDateFacture().toString() : "");
-        dto.put("dateReception", facture.getDateReception() != null ? facture.getDateReception().toString() : "");
-        dto.put("dateEcheance", facture.getDateEcheance() != null ? facture.getDateEcheance().toString() : "");
-        dto.put("dateLivraison", facture.getDateLivraison() != null ? facture.getDateLivraison().toString() : "");
-
-        // Montants
-        dto.put("montantHT", facture.getMontantHT() != null ? facture.getMontantHT() : 0);
-        dto.put("tauxTVA", facture.getTauxTVA() != null ? facture.getTauxTVA() : 0);
-        dto.put("montantTVA", facture.getMontantTVA() != null ? facture.getMontantTVA() : 0);
-        dto.put("montantTTC", facture.getMontantTTC() != null ? facture.getMontantTTC() : 0);
-        dto.put("rasTVA", facture.getRasTVA() != null ? facture.getRasTVA() : 0);
-
-        // Modalité et références
-        dto.put("modalite", facture.getModalite() != null ? facture.getModalite().name() : null);
-        dto.put("refacturable", facture.getRefacturable() != null ? facture.getRefacturable() : false);
-        dto.put("designation", facture.getDesignation() != null ? facture.getDesignation() : "");
-        dto.put("refCommande", facture.getRefCommande() != null ? facture.getRefCommande() : "");
-        dto.put("periode", facture.getPeriode() != null ? facture.getPeriode() : "");
-
-        // Statut et commentaires
-        dto.put("statut", facture.getStatut().name());
-        dto.put("commentaires", facture.getCommentaires() != null ? facture.getCommentaires() : "");
-
-        // Dates de traçabilité
-        dto.put("dateCreation", facture.getDateCreation() != null ? facture.getDateCreation().toString() : "");
-        dto.put("dateModification", facture.getDateModification() != null ? facture.getDateModification().toString() : "");
-
-        // Utilisateurs
-        dto.put("createur", facture.getCreateur() != null ? mapUserForSelection(facture.getCreateur()) : null);
-        dto.put("validateur1", facture.getValidateur1() != null ? mapUserForSelection(facture.getValidateur1()) : null);
-        dto.put("validateur2", facture.getValidateur2() != null ? mapUserForSelection(facture.getValidateur2()) : null);
-        dto.put("tresorier", facture.getTresorier() != null ? mapUserForSelection(facture.getTresorier()) : null);
-
-        // Dates de validation
-        dto.put("dateValidationV1", facture.getDateValidationV1() != null ? facture.getDateValidationV1().toString() : "");
-        dto.put("dateValidationV2", facture.getDateValidationV2() != null ? facture.getDateValidationV2().toString() : "");
-
-        // Paiement
-        dto.put("referencePaiement", facture.getReferencePaiement() != null ? facture.getReferencePaiement() : "");
-        dto.put("datePaiement", facture.getDatePaiement() != null ? facture.getDatePaiement().toString() : "");
-
-        // Métriques et statuts
-        dto.put("joursAvantEcheance", facture.getJoursAvantEcheance());
-        dto.put("estEnRetard", facture.estEnRetard());
-        dto.put("peutEtreModifiee", facture.peutEtreModifiee());
-        dto.put("peutEtreValideeParV1", facture.peutEtreValideeParV1());
-        dto.put("peutEtreValideeParV2", facture.peutEtreValideeParV2());
-        dto.put("peutEtreTraiteeParTresorier", facture.peutEtreTraiteeParTresorier());
-
-        return dto;
+        return FactureDetailDto.builder()
+                // Informations de base
+                .id(facture.getId())
+                .numero(texte(facture.getNumero()))
+                .nomFournisseur(facture.getNomFournisseur())
+                .fournisseurId(facture.getFournisseur() != null ? facture.getFournisseur().getId() : null)
+                .formeJuridique(facture.getFormeJuridique() != null ? facture.getFormeJuridique().name() : null)
+
+                // Dates
+                .dateFacture(date(facture.getDateFacture()))
+                .dateReception(date(facture.getDateReception()))
+                .dateEcheance(date(facture.getDateEcheance()))
+                .dateLivraison(date(facture.getDateLivraison()))
+
+                // Montants
+                .montantHT(montant(facture.getMontantHT()))
+                .tauxTVA(montant(facture.getTauxTVA()))
+                .montantTVA(montant(facture.getMontantTVA()))
+                .montantTTC(montant(facture.getMontantTTC()))
+                .rasTVA(montant(facture.getRasTVA()))
+
+                // Modalité et références
+                .modalite(facture.getModalite() != null ? facture.getModalite().name() : null)
+                .refacturable(Boolean.TRUE.equals(facture.getRefacturable()))
+                .designation(texte(facture.getDesignation()))
+                .refCommande(texte(facture.getRefCommande()))
+                .periode(texte(facture.getPeriode()))
+
+                // Statut et commentaires
+                .statut(facture.getStatut().name())
+                .commentaires(texte(facture.getCommentaires()))
+
+                // Dates de traçabilité
+                .dateCreation(date(facture.getDateCreation()))
+                .dateModification(date(facture.getDateModification()))
+
+                // Utilisateurs
+                .createur(mapUserForSelection(facture.getCreateur()))
+                .validateur1(mapUserForSelection(facture.getValidateur1()))
+                .validateur2(mapUserForSelection(facture.getValidateur2()))
+                .tresorier(mapUserForSelection(facture.getTresorier()))
+
+                // Dates de validation
+                .dateValidationV1(date(facture.getDateValidationV1()))
+                .dateValidationV2(date(facture.getDateValidationV2()))
+
+                // Paiement
+                .referencePaiement(texte(facture.getReferencePaiement()))
+                .datePaiement(date(facture.getDatePaiement()))
+
+                // Métriques et statuts
+                .joursAvantEcheance(facture.getJoursAvantEcheance())
+                .estEnRetard(facture.estEnRetard())
+                .peutEtreModifiee(facture.peutEtreModifiee())
+                .peutEtreValideeParV1(facture.peutEtreValideeParV1())
+                .peutEtreValideeParV2(facture.peutEtreValideeParV2())
+                .peutEtreTraiteeParTresorier(facture.peutEtreTraiteeParTresorier())
+                .build();
     }
 
     // ===== UTILITY METHODS =====
 
-    private Map<String, Object> mapUserForSelection(User user) {
+    private UtilisateurSelectionDto mapUserForSelection(User user) {
         if (user == null) {
             return null;
         }
+        return new UtilisateurSelectionDto(user.getId(), user.getNomComplet(), user.getEmail(), user.getRole());
+    }
+
+    private static String texte(String valeur) {
+        return valeur != null ? valeur : "";
+    }
 
-        Map<String, Object> userMap = new HashMap<>();
-        userMap.put("id", user.getId());
-        userMap.put("nomComplet", user.getNomComplet());
-        userMap.put("email", user.getEmail());
-        userMap.put("role", user.getRole().name());
+    private static String date(Object date) {
+        return date != null ? date.toString() : "";
+    }
 
-        return userMap;
+    private static BigDecimal montant(BigDecimal montant) {
+        return montant != null ? montant : BigDecimal.ZERO;
     }
 }
\ No newline at end of file
@@ -0,0 +1,467 @@
+package ma.eai.daf.facture.recherche;
+
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.fr.FrenchLightStemFilter;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.util.ElisionFilter;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.StringDocValuesReaderState;
+import org.apache.lucene.facet.StringValueFacetCounts;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index plein texte embarqué (Lucene) des champs libres des factures : numéro, fournisseur,
+ * désignation, commentaires, référence de commande, période et motif.
+ * <p>
+ * L'index est tenu à jour par les {@link FactureModifieeEvent} et rendu visible en quasi temps
+ * réel (réouverture du lecteur en moins d'une seconde). Il ne contient que de quoi retrouver les
+ * ids : les factures sont ensuite relues en base et converties par le mapper des listes.
+ * Il se reconstruit entièrement depuis PostgreSQL (index vide au démarrage ou à la demande).
+ * <p>
+ * Les écritures ne deviennent durables qu'au commit périodique : chaque commit enregistre la plus
+ * récente date de modification indexée, et au démarrage les factures modifiées depuis sont
+ * réindexées. Si le nombre de documents ne correspond plus à la base (suppressions perdues),
+ * l'index est reconstruit.
+ */
+@Component
+@Slf4j
+public class FactureIndex {
+
+    private static final String ID = "id";
+    private static final String STATUT = "statut";
+    private static final String MODALITE = "modalite";
+    // Donnée de commit : date de modification la plus récente déjà indexée
+    private static final String DERNIERE_MODIFICATION = "derniereModification";
+    // Une transaction peut valider après une autre plus récente : la reprise remonte un peu avant
+    private static final Duration MARGE_REPRISE = Duration.ofMinutes(5);
+    private static final int VERROUS_FACTURES = 64;
+
+    // Champs texte et poids dans la recherche
+    private static final Map<String, Float> CHAMPS = Map.of(
+            "numero", 4f,
+            "fournisseur", 3f,
+            "refCommande", 3f,
+            "designation", 2f,
+            "commentaires", 1f,
+            "periode", 1f,
+            "sortOuStatut", 1f);
+
+    private final FactureRepository factureRepository;
+    private final int taillePage;
+    private final Analyzer analyseur = new AnalyseurFrancais();
+
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ControlledRealTimeReopenThread<IndexSearcher> reouverture;
+
+    // Un seul rechargement à la fois (ReentrantLock plutôt que synchronized : pas d'épinglage en threads virtuels)
+    private final ReentrantLock verrouChargement = new ReentrantLock();
+    private final Set<Long> modifieesPendantChargement = ConcurrentHashMap.newKeySet();
+    // Lecture en base et écriture dans l'index d'une même facture, une à la fois : deux événements
+    // successifs ne peuvent pas écrire dans le désordre (la dernière lecture voit le dernier commit)
+    private final ReentrantLock[] verrousFactures = new ReentrantLock[VERROUS_FACTURES];
+    private final AtomicReference<LocalDateTime> derniereModification = new AtomicReference<>();
+    private volatile boolean chargementEnCours;
+    private volatile LocalDateTime dernierChargement;
+
+    // État des facettes, valable pour un lecteur donné
+    private volatile EtatFacettes etatFacettes;
+
+    public FactureIndex(FactureRepository factureRepository,
+                        @Value("${recherche.index.repertoire:./index/factures}") String repertoire,
+                        @Value("${recherche.index.page-size:5000}") int taillePage) throws IOException {
+        this.factureRepository = factureRepository;
+        this.taillePage = taillePage;
+
+        IndexWriterConfig config = new IndexWriterConfig(analyseur)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        this.writer = new IndexWriter(FSDirectory.open(Paths.get(repertoire).toAbsolutePath()), config);
+        this.searcherManager = new SearcherManager(writer, null);
+
+        // Lecteur rouvert au plus tard après 1 s, en 25 ms quand une recherche attend une écriture
+        this.reouverture = new ControlledRealTimeReopenThread<>(writer, searcherManager, 1.0, 0.025);
+        this.reouverture.setName("index-factures-reouverture");
+        this.reouverture.setDaemon(true);
+        this.reouverture.start();
+
+        for (int i = 0; i < VERROUS_FACTURES; i++) {
+            verrousFactures[i] = new ReentrantLock();
+        }
+        Map<String, String> donneesCommit = new HashMap<>();
+        Iterable<Map.Entry<String, String>> commit = writer.getLiveCommitData();
+        if (commit != null) {
+            commit.forEach(entree -> donneesCommit.put(entree.getKey(), entree.getValue()));
+        }
+        if (donneesCommit.containsKey(DERNIERE_MODIFICATION)) {
+            derniereModification.set(LocalDateTime.parse(donneesCommit.get(DERNIERE_MODIFICATION)));
+        }
+    }
+
+    // ===== CHARGEMENT ET MISE À JOUR =====
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void charger() {
+        if (writer.getDocStats().numDocs == 0 || derniereModification.get() == null) {
+            reconstruire();
+            return;
+        }
+
+        // Modifications indexées après le dernier commit, perdues par un arrêt brutal
+        long debut = System.currentTimeMillis();
+        List<Object[]> modifiees = factureRepository.findDocumentsRechercheModifiesDepuis(
+                derniereModification.get().minus(MARGE_REPRISE));
+        try {
+            for (Object[] ligne : modifiees) {
+                indexer(ligne);
+            }
+            valider();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long documents = writer.getDocStats().numDocs;
+        long factures = factureRepository.count();
+        if (documents != factures) {
+            log.warn("⚠️ Index plein texte désynchronisé ({} documents pour {} factures), reconstruction",
+                    documents, factures);
+            reconstruire();
+            return;
+        }
+        log.info("🔎 Index plein texte ouvert: {} factures, {} réindexées depuis le dernier commit en {} ms",
+                documents, modifiees.size(), System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Reconstruit l'index depuis la base, par pages (pagination par clé).
+     * Pendant la reconstruction, les recherches ne voient qu'une partie des factures.
+     */
+    public void reconstruire() {
+        verrouChargement.lock();
+        try {
+            long debut = System.currentTimeMillis();
+            chargementEnCours = true;
+            try {
+                writer.deleteAll();
+                derniereModification.set(null);
+                long apresId = 0L;
+                long nombre = 0;
+                List<Object[]> page;
+                do {
+                    page = factureRepository.findDocumentsRecherche(apresId, PageRequest.of(0, taillePage));
+                    for (Object[] ligne : page) {
+                        indexer(ligne);
+                        apresId = (Long) ligne[0];
+                    }
+                    nombre += page.size();
+                } while (page.size() == taillePage);
+
+                valider();
+                searcherManager.maybeRefresh();
+                dernierChargement = LocalDateTime.now();
+                log.info("🔎 Index plein texte reconstruit: {} factures en {} ms",
+                        nombre, System.currentTimeMillis() - debut);
+            } finally {
+                chargementEnCours = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            verrouChargement.unlock();
+        }
+
+        // Les factures modifiées pendant la reconstruction ont pu être écrasées par une lecture plus ancienne
+        List<Long> aRejouer = new ArrayList<>(modifieesPendantChargement);
+        modifieesPendantChargement.removeAll(aRejouer);
+        aRejouer.forEach(this::rafraichir);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        if (chargementEnCours) {
+            modifieesPendantChargement.add(event.getFactureId());
+        }
+        if (event.getType() == FactureModifieeEvent.TypeModification.SUPPRESSION) {
+            supprimer(event.getFactureId());
+        } else {
+            rafraichir(event.getFactureId());
+        }
+    }
+
+    private void rafraichir(Long factureId) {
+        ReentrantLock verrou = verrou(factureId);
+        verrou.lock();
+        try {
+            List<Object[]> ligne = factureRepository.findDocumentRecherche(factureId);
+            if (ligne.isEmpty()) {
+                writer.deleteDocuments(new Term(ID, factureId.toString()));
+            } else {
+                indexer(ligne.get(0));
+            }
+        } catch (Exception e) {
+            log.error("❌ Mise à jour de l'index impossible pour la facture {}: {}", factureId, e.getMessage());
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private void supprimer(Long factureId) {
+        ReentrantLock verrou = verrou(factureId);
+        verrou.lock();
+        try {
+            writer.deleteDocuments(new Term(ID, factureId.toString()));
+        } catch (IOException e) {
+            log.error("❌ Suppression de l'index impossible pour la facture {}: {}", factureId, e.getMessage());
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private ReentrantLock verrou(Long factureId) {
+        return verrousFactures[Math.floorMod(factureId.hashCode(), VERROUS_FACTURES)];
+    }
+
+    // id, numero, fournisseur, designation, commentaires, refCommande, periode, sortOuStatut, statut, modalite,
+    // dateModification
+    private void indexer(Object[] ligne) throws IOException {
+        String id = ligne[0].toString();
+        Document document = new Document();
+        document.add(new StringField(ID, id, Field.Store.YES));
+        ajouterTexte(document, "numero", ligne[1]);
+        ajouterTexte(document, "fournisseur", ligne[2]);
+        ajouterTexte(document, "designation", ligne[3]);
+        ajouterTexte(document, "commentaires", ligne[4]);
+        ajouterTexte(document, "refCommande", ligne[5]);
+        ajouterTexte(document, "periode", ligne[6]);
+        ajouterTexte(document, "sortOuStatut", ligne[7]);
+        ajouterFacette(document, STATUT, ligne[8]);
+        ajouterFacette(document, MODALITE, ligne[9]);
+        writer.updateDocument(new Term(ID, id), document);
+
+        LocalDateTime modification = (LocalDateTime) ligne[10];
+        if (modification != null) {
+            derniereModification.accumulateAndGet(modification,
+                    (courante, nouvelle) -> courante == null || nouvelle.isAfter(courante) ? nouvelle : courante);
+        }
+    }
+
+    private static void ajouterTexte(Document document, String champ, Object valeur) {
+        if (valeur != null) {
+            document.add(new TextField(champ, valeur.toString(), Field.Store.NO));
+        }
+    }
+
+    private static void ajouterFacette(Document document, String champ, Object valeur) {
+        if (valeur != null) {
+            String nom = ((Enum<?>) valeur).name();
+            document.add(new StringField(champ, nom, Field.Store.NO));
+            document.add(new SortedDocValuesField(champ, new BytesRef(nom)));
+        }
+    }
+
+    /**
+     * Les écritures sont visibles dès la réouverture du lecteur ; le commit les rend durables, avec
+     * la date de modification jusqu'à laquelle l'index est à jour.
+     */
+    @Scheduled(fixedDelayString = "${recherche.index.commit-intervalle:PT1M}")
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                valider();
+            }
+        } catch (IOException e) {
+            log.error("❌ Commit de l'index plein texte impossible: {}", e.getMessage());
+        }
+    }
+
+    // La date est lue avant le commit : elle ne désigne que des documents qu'il contient
+    private void valider() throws IOException {
+        LocalDateTime modification = derniereModification.get();
+        if (modification != null) {
+            writer.setLiveCommitData(Map.of(DERNIERE_MODIFICATION, modification.toString()).entrySet());
+        }
+        writer.commit();
+    }
+
+    @PreDestroy
+    public void fermer() throws IOException {
+        reouverture.close();
+        searcherManager.close();
+        writer.close();
+    }
+
+    // ===== RECHERCHE =====
+
+    /**
+     * Recherche plein texte (syntaxe simple : mots, "expression exacte", préfixe*, -exclusion).
+     * Les facettes sont comptées sur le texte seul, pour montrer la répartition avant filtrage.
+     */
+    public Resultat rechercher(String texte, StatutFacture statut, ModaliteType modalite, int limite) throws IOException {
+        Query requeteTexte = requeteTexte(texte);
+
+        BooleanQuery.Builder filtree = new BooleanQuery.Builder().add(requeteTexte, BooleanClause.Occur.MUST);
+        if (statut != null) {
+            filtree.add(new TermQuery(new Term(STATUT, statut.name())), BooleanClause.Occur.FILTER);
+        }
+        if (modalite != null) {
+            filtree.add(new TermQuery(new Term(MODALITE, modalite.name())), BooleanClause.Occur.FILTER);
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            // Nombre exact de résultats (par défaut Lucene s'arrête de compter au-delà de 1000)
+            TopDocs resultats = searcher.search(filtree.build(), new TopScoreDocCollectorManager(limite, Integer.MAX_VALUE));
+            List<Long> ids = new ArrayList<>(resultats.scoreDocs.length);
+            for (ScoreDoc scoreDoc : resultats.scoreDocs) {
+                ids.add(Long.valueOf(searcher.storedFields().document(scoreDoc.doc).get(ID)));
+            }
+
+            FacetsCollector facettes = searcher.search(requeteTexte, new FacetsCollectorManager());
+            EtatFacettes etat = etatFacettes(searcher.getIndexReader());
+            Map<String, Map<String, Long>> comptes = new LinkedHashMap<>();
+            comptes.put(STATUT, compter(etat.statut, facettes, STATUT));
+            comptes.put(MODALITE, compter(etat.modalite, facettes, MODALITE));
+
+            return new Resultat(ids, resultats.totalHits.value, comptes);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private Query requeteTexte(String texte) {
+        if (!StringUtils.hasText(texte)) {
+            return new MatchAllDocsQuery();
+        }
+        SimpleQueryParser parser = new SimpleQueryParser(analyseur, CHAMPS);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query requete = parser.parse(texte);
+        // Texte réduit à rien par l'analyse (mots vides seuls) : aucun résultat plutôt que tout
+        return requete != null ? requete : new BooleanQuery.Builder().build();
+    }
+
+    private EtatFacettes etatFacettes(IndexReader reader) throws IOException {
+        EtatFacettes etat = etatFacettes;
+        if (etat == null || etat.reader != reader) {
+            etat = new EtatFacettes(reader,
+                    new StringDocValuesReaderState(reader, STATUT),
+                    new StringDocValuesReaderState(reader, MODALITE));
+            etatFacettes = etat;
+        }
+        return etat;
+    }
+
+    private static Map<String, Long> compter(StringDocValuesReaderState etat, FacetsCollector facettes, String champ)
+            throws IOException {
+        Map<String, Long> comptes = new LinkedHashMap<>();
+        FacetResult resultat = new StringValueFacetCounts(etat, facettes).getTopChildren(Integer.MAX_VALUE, champ);
+        if (resultat != null) {
+            for (LabelAndValue valeur : resultat.labelValues) {
+                comptes.put(valeur.label, valeur.value.longValue());
+            }
+        }
+        return comptes;
+    }
+
+    public Map<String, Object> getEtat() {
+        Map<String, Object> etat = new HashMap<>();
+        etat.put("documents", writer.getDocStats().numDocs);
+        etat.put("chargementEnCours", chargementEnCours);
+        etat.put("dernierChargement", dernierChargement != null ? dernierChargement.toString() : null);
+        LocalDateTime modification = derniereModification.get();
+        etat.put("derniereModification", modification != null ? modification.toString() : null);
+        return etat;
+    }
+
+    // ===== TYPES =====
+
+    @lombok.Value
+    public static class Resultat {
+        List<Long> ids;
+        long total;
+        Map<String, Map<String, Long>> facettes;
+    }
+
+    private record EtatFacettes(IndexReader reader,
+                                StringDocValuesReaderState statut,
+                                StringDocValuesReaderState modalite) {
+    }
+
+    /**
+     * Analyse insensible à la casse et aux accents, avec élision (l', d') et racinisation légère :
+     * « Prestations » trouve « prestation », « electricite » trouve « Électricité ».
+     */
+    private static class AnalyseurFrancais extends Analyzer {
+
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            StandardTokenizer source = new StandardTokenizer();
+            TokenStream filtre = new ElisionFilter(source, FrenchAnalyzer.DEFAULT_ARTICLES);
+            filtre = new LowerCaseFilter(filtre);
+            filtre = new ASCIIFoldingFilter(filtre);
+            filtre = new FrenchLightStemFilter(filtre);
+            return new TokenStreamComponents(source, filtre);
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+        }
+    }
+}
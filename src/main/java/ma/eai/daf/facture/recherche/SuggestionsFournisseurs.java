@@ -0,0 +1,373 @@
+package ma.eai.daf.facture.recherche;
+
+import ma.eai.daf.facture.entities.Fournisseur;
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FournisseurModifieEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import ma.eai.daf.facture.repositories.FournisseurRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Suggestions de fournisseurs pendant la saisie, servies par un arbre de préfixes en mémoire.
+ * <p>
+ * Chaque nom normalisé est inséré à partir de chacun de ses mots : « GEN » propose « SOCIETE
+ * GENERALE ». Les fournisseurs sont classés par un nombre de factures amorti dans le temps (une
+ * facture compte moitié moins après une demi-vie) : le score, tenu en logarithme par rapport à
+ * une origine fixe, ne fait qu'augmenter. Chaque nœud garde donc ses {@value #TOP} meilleurs
+ * fournisseurs, tenus à jour à chaque facture : une suggestion est une descente de quelques nœuds,
+ * sans tri ni accès à la base.
+ * <p>
+ * Un fournisseur renommé ou désactivé ({@link FournisseurModifieEvent}) ne peut pas être retiré
+ * des meilleurs de chaque nœud : l'arbre est reconstruit depuis les entrées en mémoire, scores
+ * conservés. Le rechargement complet de la nuit rattrape les modifications faites hors application.
+ */
+@Component
+@Slf4j
+public class SuggestionsFournisseurs {
+
+    private static final int TOP = 10;
+    // Au-delà, les préfixes plus longs sont filtrés parmi les meilleurs du nœud le plus profond
+    private static final int PROFONDEUR_MAX = 32;
+    private static final LocalDate ORIGINE = LocalDate.of(2020, 1, 1);
+
+    private final FournisseurRepository fournisseurRepository;
+    private final FactureRepository factureRepository;
+    private final double poidsParJour;
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private Noeud racine = new Noeud();
+    private Map<Long, Entree> entrees = new HashMap<>();
+
+    public SuggestionsFournisseurs(FournisseurRepository fournisseurRepository,
+                                   FactureRepository factureRepository,
+                                   @Value("${fournisseurs.suggestions.demi-vie:P90D}") Duration demiVie) {
+        this.fournisseurRepository = fournisseurRepository;
+        this.factureRepository = factureRepository;
+        this.poidsParJour = Math.log(2) / demiVie.toDays();
+    }
+
+    // ===== CHARGEMENT ET MISE À JOUR =====
+
+    /**
+     * Construit l'arbre depuis le référentiel et les factures regroupées par fournisseur et par mois.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${fournisseurs.suggestions.rechargement-cron:0 45 2 * * *}")
+    public void charger() {
+        long debut = System.currentTimeMillis();
+        Map<Long, Entree> nouvellesEntrees = new HashMap<>();
+
+        for (Object[] fournisseur : fournisseurRepository.findSuggestionsActives()) {
+            nouvellesEntrees.put((Long) fournisseur[0], new Entree((Long) fournisseur[0], (String) fournisseur[1],
+                    (FormeJuridiqueType) fournisseur[2], (ModaliteType) fournisseur[3]));
+        }
+        // fournisseur, année, mois, nombre : le milieu du mois sert de date à toutes ses factures
+        for (Object[] mois : factureRepository.countParFournisseurEtMois()) {
+            Entree entree = nouvellesEntrees.get((Long) mois[0]);
+            if (entree != null) {
+                LocalDate milieu = LocalDate.of((Integer) mois[1], (Integer) mois[2], 15);
+                entree.ajouter(milieu, ((Long) mois[3]).intValue());
+            }
+        }
+        Noeud nouvelleRacine = construire(nouvellesEntrees);
+
+        verrou.writeLock().lock();
+        try {
+            racine = nouvelleRacine;
+            entrees = nouvellesEntrees;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+        log.info("🔤 Suggestions de fournisseurs: {} fournisseurs indexés en {} ms",
+                nouvellesEntrees.size(), System.currentTimeMillis() - debut);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        if (event.getType() != FactureModifieeEvent.TypeModification.CREATION
+                && event.getType() != FactureModifieeEvent.TypeModification.MODIFICATION) {
+            return;
+        }
+        try {
+            List<Object[]> lignes = factureRepository.findFournisseurSuggestion(event.getFactureId());
+            if (lignes.isEmpty()) {
+                return;
+            }
+            Object[] ligne = lignes.get(0);
+            Long fournisseurId = (Long) ligne[0];
+            LocalDate dateCreation = ((LocalDateTime) ligne[4]).toLocalDate();
+
+            verrou.writeLock().lock();
+            try {
+                Entree entree = entrees.get(fournisseurId);
+                if (entree == null) {
+                    // Nouveau fournisseur (ou rattaché par une modification)
+                    entree = new Entree(fournisseurId, (String) ligne[1], (FormeJuridiqueType) ligne[2], (ModaliteType) ligne[3]);
+                    entree.ajouter(dateCreation, 1);
+                    entrees.put(fournisseurId, entree);
+                    inserer(racine, entree);
+                } else if (event.getType() == FactureModifieeEvent.TypeModification.CREATION) {
+                    entree.ajouter(dateCreation, 1);
+                    remonter(racine, entree);
+                }
+            } finally {
+                verrou.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("❌ Mise à jour des suggestions impossible pour la facture {}: {}", event.getFactureId(), e.getMessage());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFournisseurModifie(FournisseurModifieEvent event) {
+        try {
+            List<Object[]> lignes = fournisseurRepository.findSuggestionActive(event.getFournisseurId());
+
+            verrou.writeLock().lock();
+            try {
+                Entree ancienne = entrees.get(event.getFournisseurId());
+                if (lignes.isEmpty()) {
+                    // Désactivé (ou supprimé)
+                    if (entrees.remove(event.getFournisseurId()) == null) {
+                        return;
+                    }
+                } else {
+                    Object[] ligne = lignes.get(0);
+                    Entree entree = new Entree((Long) ligne[0], (String) ligne[1],
+                            (FormeJuridiqueType) ligne[2], (ModaliteType) ligne[3]);
+                    if (ancienne != null) {
+                        entree.reprendre(ancienne);
+                    }
+                    entrees.put(entree.id, entree);
+                }
+                racine = construire(entrees);
+            } finally {
+                verrou.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("❌ Mise à jour des suggestions impossible pour le fournisseur {}: {}",
+                    event.getFournisseurId(), e.getMessage());
+        }
+    }
+
+    // ===== SUGGESTIONS =====
+
+    public List<Map<String, Object>> suggerer(String saisie, int limite) {
+        String prefixe = Fournisseur.normaliser(saisie);
+        if (prefixe.isEmpty()) {
+            return List.of();
+        }
+
+        List<Map<String, Object>> suggestions = new ArrayList<>(limite);
+        verrou.readLock().lock();
+        try {
+            Noeud noeud = racine;
+            for (int i = 0; i < Math.min(prefixe.length(), PROFONDEUR_MAX) && noeud != null; i++) {
+                noeud = noeud.enfant(prefixe.charAt(i));
+            }
+            if (noeud == null) {
+                return List.of();
+            }
+            for (int i = 0; i < noeud.nombreMeilleurs && suggestions.size() < limite; i++) {
+                Entree entree = noeud.meilleurs[i];
+                if (prefixe.length() <= PROFONDEUR_MAX || entree.commencePar(prefixe)) {
+                    suggestions.add(entree.toDto());
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        return suggestions;
+    }
+
+    public int getTop() {
+        return TOP;
+    }
+
+    // ===== ARBRE =====
+
+    private static Noeud construire(Map<Long, Entree> entrees) {
+        Noeud racine = new Noeud();
+        entrees.values().forEach(entree -> inserer(racine, entree));
+        return racine;
+    }
+
+    private static void inserer(Noeud racine, Entree entree) {
+        for (int debut : entree.debutsDeMots) {
+            Noeud noeud = racine;
+            int fin = Math.min(entree.nomNormalise.length(), debut + PROFONDEUR_MAX);
+            for (int i = debut; i < fin; i++) {
+                noeud = noeud.enfantOuCreer(entree.nomNormalise.charAt(i));
+                noeud.proposer(entree);
+            }
+        }
+    }
+
+    // Le score a augmenté : l'entrée peut entrer dans les meilleurs d'un nœud ou y monter
+    private static void remonter(Noeud racine, Entree entree) {
+        for (int debut : entree.debutsDeMots) {
+            Noeud noeud = racine;
+            int fin = Math.min(entree.nomNormalise.length(), debut + PROFONDEUR_MAX);
+            for (int i = debut; i < fin && noeud != null; i++) {
+                noeud = noeud.enfant(entree.nomNormalise.charAt(i));
+                if (noeud != null) {
+                    noeud.proposer(entree);
+                }
+            }
+        }
+    }
+
+    private static class Noeud {
+
+        // Enfants triés par caractère (recherche dichotomique) : peu de mémoire par nœud
+        private char[] caracteres = new char[0];
+        private Noeud[] enfants = new Noeud[0];
+
+        // Meilleurs fournisseurs sous ce préfixe, par score décroissant
+        private final Entree[] meilleurs = new Entree[TOP];
+        private int nombreMeilleurs;
+
+        Noeud enfant(char c) {
+            int i = Arrays.binarySearch(caracteres, c);
+            return i >= 0 ? enfants[i] : null;
+        }
+
+        Noeud enfantOuCreer(char c) {
+            int i = Arrays.binarySearch(caracteres, c);
+            if (i >= 0) {
+                return enfants[i];
+            }
+            int position = -i - 1;
+            char[] nouveauxCaracteres = new char[caracteres.length + 1];
+            Noeud[] nouveauxEnfants = new Noeud[enfants.length + 1];
+            System.arraycopy(caracteres, 0, nouveauxCaracteres, 0, position);
+            System.arraycopy(enfants, 0, nouveauxEnfants, 0, position);
+            System.arraycopy(caracteres, position, nouveauxCaracteres, position + 1, caracteres.length - position);
+            System.arraycopy(enfants, position, nouveauxEnfants, position + 1, enfants.length - position);
+            Noeud enfant = new Noeud();
+            nouveauxCaracteres[position] = c;
+            nouveauxEnfants[position] = enfant;
+            caracteres = nouveauxCaracteres;
+            enfants = nouveauxEnfants;
+            return enfant;
+        }
+
+        /**
+         * Place l'entrée parmi les meilleurs si son score le permet. Les scores ne font que
+         * croître : une entrée évincée ne peut revenir qu'en augmentant elle-même, ce qui repasse ici.
+         */
+        void proposer(Entree entree) {
+            int position = -1;
+            for (int i = 0; i < nombreMeilleurs; i++) {
+                if (meilleurs[i] == entree) {
+                    position = i;
+                    break;
+                }
+            }
+            if (position < 0) {
+                if (nombreMeilleurs == TOP) {
+                    if (entree.score <= meilleurs[TOP - 1].score) {
+                        return;
+                    }
+                    position = TOP - 1;
+                } else {
+                    position = nombreMeilleurs++;
+                }
+                meilleurs[position] = entree;
+            }
+            while (position > 0 && meilleurs[position - 1].score < entree.score) {
+                meilleurs[position] = meilleurs[position - 1];
+                meilleurs[--position] = entree;
+            }
+        }
+    }
+
+    private class Entree {
+
+        private final Long id;
+        private final String nom;
+        private final String nomNormalise;
+        private final FormeJuridiqueType formeJuridique;
+        private final ModaliteType modaliteParDefaut;
+        private final int[] debutsDeMots;
+
+        // log(somme des exp(poidsParJour * jours depuis l'origine)) sur les factures du fournisseur
+        private double score = Double.NEGATIVE_INFINITY;
+        private int nombreFactures;
+        private LocalDate derniereFacture;
+
+        Entree(Long id, String nom, FormeJuridiqueType formeJuridique, ModaliteType modaliteParDefaut) {
+            this.id = id;
+            this.nom = nom;
+            this.nomNormalise = Fournisseur.normaliser(nom);
+            this.formeJuridique = formeJuridique;
+            this.modaliteParDefaut = modaliteParDefaut;
+
+            List<Integer> debuts = new ArrayList<>();
+            for (int i = 0; i < nomNormalise.length(); i++) {
+                if (i == 0 || nomNormalise.charAt(i - 1) == ' ') {
+                    debuts.add(i);
+                }
+            }
+            this.debutsDeMots = debuts.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        void ajouter(LocalDate date, int nombre) {
+            double poids = poidsParJour * ChronoUnit.DAYS.between(ORIGINE, date) + Math.log(nombre);
+            score = score == Double.NEGATIVE_INFINITY
+                    ? poids
+                    : Math.max(score, poids) + Math.log1p(Math.exp(-Math.abs(score - poids)));
+            nombreFactures += nombre;
+            if (derniereFacture == null || date.isAfter(derniereFacture)) {
+                derniereFacture = date;
+            }
+        }
+
+        // Fournisseur renommé : l'historique des factures est conservé
+        void reprendre(Entree ancienne) {
+            score = ancienne.score;
+            nombreFactures = ancienne.nombreFactures;
+            derniereFacture = ancienne.derniereFacture;
+        }
+
+        boolean commencePar(String prefixe) {
+            for (int debut : debutsDeMots) {
+                if (nomNormalise.startsWith(prefixe, debut)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Map<String, Object> toDto() {
+            Map<String, Object> dto = new LinkedHashMap<>();
+            dto.put("id", id);
+            dto.put("nom", nom);
+            dto.put("formeJuridique", formeJuridique != null ? formeJuridique.name() : null);
+            dto.put("modaliteParDefaut", modaliteParDefaut != null ? modaliteParDefaut.name() : null);
+            dto.put("nombreFactures", nombreFactures);
+            dto.put("derniereFacture", derniereFacture != null ? derniereFacture.toString() : null);
+            return dto;
+        }
+    }
+}
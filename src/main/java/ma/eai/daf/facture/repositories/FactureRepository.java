@@ -1,20 +1,30 @@
 package ma.eai.daf.facture.repositories;
 
 import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.Fournisseur;
 import ma.eai.daf.facture.entities.User;
 import ma.eai.daf.facture.enums.StatutFacture;
 import ma.eai.daf.facture.enums.ModaliteType;
 import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.cache.QueryCaches;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface FactureRepository extends JpaRepository<Facture, Long> {
@@ -101,6 +111,9 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
 
     boolean existsByNumero(String numero);
 
+    // Contenu stocké encore associé à une facture (stockage adressé par contenu, partagé entre factures)
+    boolean existsByPieceJointeChemin(String pieceJointeChemin);
+
     // ===== RECHERCHE PAR DATES =====
 
     @Query("SELECT f FROM Facture f WHERE f.dateFacture BETWEEN :dateDebut AND :dateFin")
@@ -194,14 +207,145 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
     List<Facture> findFacturesUrgentes(@Param("dateActuelle") LocalDate dateActuelle,
                                        @Param("dateLimite") LocalDate dateLimite);
 
+    // ===== RÉFÉRENTIEL FOURNISSEURS =====
+
+    @Query("SELECT DISTINCT f.nomFournisseur FROM Facture f WHERE f.fournisseur IS NULL")
+    List<String> findNomsFournisseursNonRattaches();
+
+    @Modifying
+    @Query("UPDATE Facture f SET f.fournisseur = :fournisseur " +
+            "WHERE f.fournisseur IS NULL AND f.nomFournisseur = :nomFournisseur")
+    int rattacherFournisseur(@Param("fournisseur") Fournisseur fournisseur,
+                             @Param("nomFournisseur") String nomFournisseur);
+
+    // ===== DÉTECTION DES DOUBLONS =====
+
+    @Query("SELECT f.id, f.numero, f.nomFournisseur, f.dateFacture, f.montantTTC, f.refCommande " +
+            "FROM Facture f WHERE f.dateFacture >= :depuis AND f.statut <> 'REJETEE'")
+    List<Object[]> findEmpreintesDepuis(@Param("depuis") LocalDate depuis);
+
+    // ===== RAPPELS D'ÉCHÉANCE =====
+
+    @Query("SELECT f.id, f.dateEcheance, f.seuilRappelEnvoye, f.echeanceRappelee FROM Facture f " +
+            "WHERE f.dateEcheance >= :depuis AND f.statut NOT IN ('PAYEE', 'REJETEE')")
+    List<Object[]> findEcheancesOuvertes(@Param("depuis") LocalDate depuis);
+
+    @Query("SELECT f.id, f.dateEcheance, f.seuilRappelEnvoye, f.echeanceRappelee FROM Facture f " +
+            "WHERE f.id = :id AND f.dateEcheance IS NOT NULL AND f.statut NOT IN ('PAYEE', 'REJETEE')")
+    List<Object[]> findEcheanceOuverte(@Param("id") Long id);
+
+    // Sans effet (0) si ce rappel est déjà parti ou si la facture a changé entre-temps (payée, échéance modifiée)
+    @Modifying
+    @Query("UPDATE Facture f SET f.seuilRappelEnvoye = :seuil, f.echeanceRappelee = :echeance " +
+            "WHERE f.id = :id AND f.dateEcheance = :echeance AND f.statut NOT IN ('PAYEE', 'REJETEE') " +
+            "AND (f.echeanceRappelee IS NULL OR f.echeanceRappelee <> :echeance OR f.seuilRappelEnvoye > :seuil)")
+    int marquerRappelEnvoye(@Param("id") Long id,
+                            @Param("echeance") LocalDate echeance,
+                            @Param("seuil") int seuil);
+
+    // ===== PRÉVISION DES DÉCAISSEMENTS =====
+
+    // La date de modification ordonne les lectures concurrentes d'une même facture
+    @Query("SELECT f.id, f.statut, COALESCE(f.dateEcheance, f.dateFacture), f.montantTTC, f.dateModification " +
+            "FROM Facture f WHERE f.statut IN :statuts")
+    List<Object[]> findEngagements(@Param("statuts") Collection<StatutFacture> statuts);
+
+    @Query("SELECT f.id, f.statut, COALESCE(f.dateEcheance, f.dateFacture), f.montantTTC, f.dateModification " +
+            "FROM Facture f WHERE f.id = :id")
+    List<Object[]> findEngagement(@Param("id") Long id);
+
+    // ===== INDEX PLEIN TEXTE =====
+
+    // Par pages ordonnées sur l'id (pagination par clé)
+    @Query("SELECT f.id, f.numero, COALESCE(fo.nom, f.nomFournisseur), f.designation, f.commentaires, " +
+            "f.refCommande, f.periode, f.sortOuStatut, f.statut, f.modalite, f.dateModification " +
+            "FROM Facture f LEFT JOIN f.fournisseur fo WHERE f.id > :apresId ORDER BY f.id")
+    List<Object[]> findDocumentsRecherche(@Param("apresId") Long apresId, Pageable pageable);
+
+    @Query("SELECT f.id, f.numero, COALESCE(fo.nom, f.nomFournisseur), f.designation, f.commentaires, " +
+            "f.refCommande, f.periode, f.sortOuStatut, f.statut, f.modalite, f.dateModification " +
+            "FROM Facture f LEFT JOIN f.fournisseur fo WHERE f.id = :id")
+    List<Object[]> findDocumentRecherche(@Param("id") Long id);
+
+    // Factures modifiées depuis le dernier commit de l'index (reprise après un arrêt brutal)
+    @Query("SELECT f.id, f.numero, COALESCE(fo.nom, f.nomFournisseur), f.designation, f.commentaires, " +
+            "f.refCommande, f.periode, f.sortOuStatut, f.statut, f.modalite, f.dateModification " +
+            "FROM Facture f LEFT JOIN f.fournisseur fo WHERE f.dateModification > :depuis")
+    List<Object[]> findDocumentsRechercheModifiesDepuis(@Param("depuis") LocalDateTime depuis);
+
+    // Hydratation des résultats de recherche pour le mapper des listes
+    @Query("SELECT f FROM Facture f JOIN FETCH f.createur WHERE f.id IN :ids")
+    List<Facture> findAvecCreateurByIdIn(@Param("ids") Collection<Long> ids);
+
+    // ===== VERSIONS (ETags) =====
+
+    @Query("SELECT f.dateModification FROM Facture f WHERE f.id = :id")
+    Optional<LocalDateTime> findDateModificationById(@Param("id") Long id);
+
+    // Créateur, validateurs et trésorier : les utilisateurs dont les listes contiennent la facture
+    @Query("SELECT c.id, v1.id, v2.id, t.id FROM Facture f JOIN f.createur c " +
+            "LEFT JOIN f.validateur1 v1 LEFT JOIN f.validateur2 v2 LEFT JOIN f.tresorier t WHERE f.id = :id")
+    List<Object[]> findIntervenants(@Param("id") Long id);
+
+    // ===== SUGGESTIONS DE FOURNISSEURS =====
+
+    @Query("SELECT f.fournisseur.id, YEAR(f.dateCreation), MONTH(f.dateCreation), COUNT(f) FROM Facture f " +
+            "WHERE f.fournisseur IS NOT NULL " +
+            "GROUP BY f.fournisseur.id, YEAR(f.dateCreation), MONTH(f.dateCreation)")
+    List<Object[]> countParFournisseurEtMois();
+
+    @Query("SELECT fo.id, fo.nom, fo.formeJuridique, fo.modaliteParDefaut, f.dateCreation " +
+            "FROM Facture f JOIN f.fournisseur fo WHERE f.id = :id AND fo.actif = true")
+    List<Object[]> findFournisseurSuggestion(@Param("id") Long id);
+
+    // ===== PIÈCES JOINTES FROIDES =====
+    // Un même contenu peut être joint à plusieurs factures : il n'est froid que si toutes sont closes depuis la limite
+
+    @Query("SELECT f.id, f.pieceJointeChemin FROM Facture f " +
+            "WHERE f.id > :apresId AND f.pieceJointeChemin IS NOT NULL " +
+            "AND f.statut IN :statuts AND f.dateModification < :limite " +
+            "AND NOT EXISTS (SELECT 1 FROM Facture h WHERE h.pieceJointeChemin = f.pieceJointeChemin " +
+            "AND (h.statut NOT IN :statuts OR h.dateModification >= :limite)) ORDER BY f.id")
+    List<Object[]> findPiecesJointesFroides(@Param("apresId") Long apresId,
+                                            @Param("statuts") Collection<StatutFacture> statuts,
+                                            @Param("limite") LocalDateTime limite,
+                                            Pageable pageable);
+
+    // ===== FAITS DU CUBE ANALYTIQUE =====
+    // Le fournisseur est désigné par son nom canonique (nom saisi tant que la facture n'est pas rattachée)
+
+    // Par pages ordonnées sur l'id (pagination par clé)
+    @Query("SELECT f.id, COALESCE(fo.nom, f.nomFournisseur), f.statut, f.modalite, f.formeJuridique, " +
+            "f.dateFacture, f.montantHT, f.montantTTC " +
+            "FROM Facture f LEFT JOIN f.fournisseur fo WHERE f.id > :apresId ORDER BY f.id")
+    List<Object[]> findFaitsAnalytiques(@Param("apresId") Long apresId, Pageable pageable);
+
+    @Query("SELECT f.id, COALESCE(fo.nom, f.nomFournisseur), f.statut, f.modalite, f.formeJuridique, " +
+            "f.dateFacture, f.montantHT, f.montantTTC " +
+            "FROM Facture f LEFT JOIN f.fournisseur fo WHERE f.id = :id")
+    List<Object[]> findFaitAnalytique(@Param("id") Long id);
+
+    // ===== STATISTIQUES SUR L'AGRÉGAT (daf_rollup_factures) =====
+    // Ces requêtes lisent l'agrégat : leur coût dépend du nombre de cellules, pas de factures.
+    // Les agrégats par fournisseur regroupent sur fournisseur_id (index couvrant) puis joignent le nom.
+
     // Top fournisseurs par nombre de factures
-    @Query("SELECT f.nomFournisseur, COUNT(f) as nombreFactures, SUM(f.montantTTC) as montantTotal " +
-            "FROM Facture f " +
-            "GROUP BY f.nomFournisseur " +
-            "ORDER BY COUNT(f) DESC")
+    @Cacheable(cacheNames = QueryCaches.TOP_FOURNISSEURS, sync = true)
+    @Query(value = """
+    select coalesce(fo.nom, ''), a.nombre_factures, a.montant_total
+    from (select r.fournisseur_id,
+                 cast(sum(r.nombre_factures) as bigint) as nombre_factures,
+                 sum(r.montant_ttc) as montant_total
+          from daf_rollup_factures r
+          where r.nombre_factures > 0
+          group by r.fournisseur_id) a
+    left join daf_fournisseurs fo on fo.ide_fournisseur = a.fournisseur_id
+    order by a.nombre_factures desc
+""", nativeQuery = true)
     List<Object[]> getTopFournisseursParNombreFactures();
 
     // Performance des validateurs
+    @Cacheable(cacheNames = QueryCaches.PERFORMANCE_V1, sync = true)
     @Query("SELECT u.nom, u.prenom, COUNT(f) as nombreValidations " +
             "FROM User u LEFT JOIN u.facturesValideesN1 f " +
             "WHERE u.role = 'V1' " +
@@ -209,6 +353,7 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
             "ORDER BY COUNT(f) DESC")
     List<Object[]> getPerformanceValidateursV1();
 
+    @Cacheable(cacheNames = QueryCaches.PERFORMANCE_V2, sync = true)
     @Query("SELECT u.nom, u.prenom, COUNT(f) as nombreValidations " +
             "FROM User u LEFT JOIN u.facturesValideesN2 f " +
             "WHERE u.role = 'V2' " +
@@ -216,14 +361,16 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
             "ORDER BY COUNT(f) DESC")
     List<Object[]> getPerformanceValidateursV2();
     /**
-     * Statistiques pour le tableau de bord trésorerie
+     * Statistiques pour le tableau de bord trésorerie.
+     * Le jour de l'agrégat est l'échéance pour les factures en attente et la date de paiement pour les payées.
      */
     @Query("SELECT " +
-            "COUNT(CASE WHEN f.statut = 'EN_TRESORERIE' THEN 1 END) as enAttente, " +
-            "COUNT(CASE WHEN f.statut = 'EN_TRESORERIE' AND f.dateEcheance <= :dateLimiteUrgent THEN 1 END) as urgent, " +
-            "COALESCE(SUM(CASE WHEN f.statut = 'EN_TRESORERIE' THEN f.montantTTC ELSE 0 END), 0) as montantTotal, " +
-            "COUNT(CASE WHEN f.statut = 'PAYEE' AND f.datePaiement >= :debutMois THEN 1 END) as traitees " +
-            "FROM Facture f")
+            "COALESCE(SUM(CASE WHEN r.statut = 'EN_TRESORERIE' THEN r.nombreFactures ELSE 0 END), 0) as enAttente, " +
+            "COALESCE(SUM(CASE WHEN r.statut = 'EN_TRESORERIE' AND r.jour <= :dateLimiteUrgent THEN r.nombreFactures ELSE 0 END), 0) as urgent, " +
+            "COALESCE(SUM(CASE WHEN r.statut = 'EN_TRESORERIE' THEN r.montantTTC ELSE 0 END), 0) as montantTotal, " +
+            "COALESCE(SUM(CASE WHEN r.statut = 'PAYEE' AND r.jour >= :debutMois THEN r.nombreFactures ELSE 0 END), 0) as traitees " +
+            "FROM FactureRollup r " +
+            "WHERE r.statut IN ('EN_TRESORERIE', 'PAYEE')")
     Object[] getStatistiquesTresorerie(@Param("dateLimiteUrgent") LocalDate dateLimiteUrgent,
                                        @Param("debutMois") LocalDate debutMois);
 
@@ -259,6 +406,7 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
     /**
      * Performance des trésoriers (nombre de factures traitées)
      */
+    @Cacheable(cacheNames = QueryCaches.PERFORMANCE_TRESORIERS, sync = true)
     @Query("SELECT u.nom, u.prenom, COUNT(f) as nombrePaiements, " +
             "COALESCE(SUM(f.montantTTC), 0) as montantTotal " +
             "FROM User u LEFT JOIN u.facturesTraitees f " +
@@ -271,28 +419,35 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
     /**
      * Top fournisseurs par montant en attente trésorerie
      */
-    @Query("SELECT f.nomFournisseur, COUNT(f) as nombreFactures, " +
-            "COALESCE(SUM(f.montantTTC), 0) as montantTotal " +
-            "FROM Facture f " +
-            "WHERE f.statut = 'EN_TRESORERIE' " +
-            "GROUP BY f.nomFournisseur " +
-            "ORDER BY SUM(f.montantTTC) DESC")
+    @Query(value = """
+    select coalesce(fo.nom, ''), a.nombre_factures, a.montant_total
+    from (select r.fournisseur_id,
+                 cast(sum(r.nombre_factures) as bigint) as nombre_factures,
+                 coalesce(sum(r.montant_ttc), 0) as montant_total
+          from daf_rollup_factures r
+          where r.statut = 'EN_TRESORERIE' and r.nombre_factures > 0
+          group by r.fournisseur_id) a
+    left join daf_fournisseurs fo on fo.ide_fournisseur = a.fournisseur_id
+    order by a.montant_total desc
+""", nativeQuery = true)
     List<Object[]> getTopFournisseursEnAttenteTresorerie();
 
     /**
      * Évolution des paiements par mois
      */
+    @Cacheable(cacheNames = QueryCaches.EVOLUTION_PAIEMENTS, sync = true)
     @Query("SELECT " +
-            "YEAR(f.datePaiement) as annee, " +
-            "MONTH(f.datePaiement) as mois, " +
-            "COUNT(f) as nombrePaiements, " +
-            "COALESCE(SUM(f.montantTTC), 0) as montantTotal " +
-            "FROM Facture f " +
-            "WHERE f.statut = 'PAYEE' AND f.datePaiement >= :dateDebut " +
-            "GROUP BY YEAR(f.datePaiement), MONTH(f.datePaiement) " +
-            "ORDER BY YEAR(f.datePaiement) DESC, MONTH(f.datePaiement) DESC")
+            "YEAR(r.jour) as annee, " +
+            "MONTH(r.jour) as mois, " +
+            "SUM(r.nombreFactures) as nombrePaiements, " +
+            "COALESCE(SUM(r.montantTTC), 0) as montantTotal " +
+            "FROM FactureRollup r " +
+            "WHERE r.statut = 'PAYEE' AND r.jour >= :dateDebut AND r.nombreFactures > 0 " +
+            "GROUP BY YEAR(r.jour), MONTH(r.jour) " +
+            "ORDER BY YEAR(r.jour) DESC, MONTH(r.jour) DESC")
     List<Object[]> getEvolutionPaiementsParMois(@Param("dateDebut") LocalDate dateDebut);
 
+    @Cacheable(cacheNames = QueryCaches.DELAI_MOYEN_PAIEMENT, sync = true)
     @Query(value = """
     select avg(extract(day from (f.date_paiement - f.date_validation_v2)))
     from daf_factures f
@@ -350,6 +505,47 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
             "ORDER BY f.dateEcheance ASC, f.dateCreation DESC")
     List<Object[]> getDonneesExportTresorerie();
 
+    // ===== LECTURE EN FLUX =====
+    // Curseur lu par paquets de 500 lignes, entités en lecture seule (pas d'instantané pour le dirty checking).
+    // À consommer dans une transaction et à fermer.
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Facture f JOIN FETCH f.createur WHERE f.statut = 'EN_TRESORERIE' AND " +
+            "(f.tresorier = :tresorier OR f.tresorier IS NULL) " +
+            "ORDER BY f.dateCreation DESC")
+    Stream<Facture> streamFacturesEnAttenteTresorerie(@Param("tresorier") User tresorier);
+
+    @Query("SELECT CASE WHEN COUNT(f) > 0 THEN true ELSE false END FROM Facture f " +
+            "WHERE f.statut = 'EN_TRESORERIE' AND (f.tresorier = :tresorier OR f.tresorier IS NULL)")
+    boolean existsFacturesEnAttenteTresorerie(@Param("tresorier") User tresorier);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Facture f JOIN FETCH f.createur WHERE f.statut = :statut ORDER BY f.dateCreation DESC")
+    Stream<Facture> streamByStatut(@Param("statut") StatutFacture statut);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Facture f JOIN FETCH f.createur WHERE " +
+            "f.dateEcheance BETWEEN :dateActuelle AND :dateLimite AND " +
+            "f.statut IN ('EN_VALIDATION_V1', 'EN_VALIDATION_V2', 'EN_TRESORERIE')")
+    Stream<Facture> streamFacturesUrgentes(@Param("dateActuelle") LocalDate dateActuelle,
+                                           @Param("dateLimite") LocalDate dateLimite);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Facture f JOIN FETCH f.createur WHERE f.dateEcheance < :dateActuelle AND f.statut != 'PAYEE'")
+    Stream<Facture> streamFacturesEnRetard(@Param("dateActuelle") LocalDate dateActuelle);
+
     // ===== REQUÊTES DE NETTOYAGE =====
 
     /**
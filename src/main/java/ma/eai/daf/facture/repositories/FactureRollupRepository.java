@@ -0,0 +1,77 @@
+package ma.eai.daf.facture.repositories;
+
+import ma.eai.daf.facture.entities.FactureRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface FactureRollupRepository extends JpaRepository<FactureRollup, Long> {
+
+    /**
+     * Ajoute un delta (positif ou négatif) à une cellule de l'agrégat, en la créant si besoin.
+     * L'upsert verrouille uniquement la ligne concernée.
+     */
+    @Modifying
+    @Query(value = """
+    insert into daf_rollup_factures (jour, statut, fournisseur_id, modalite, nombre_factures, montant_ttc)
+    values (:jour, :statut, :fournisseurId, :modalite, :nombre, :montant)
+    on conflict (jour, statut, fournisseur_id, modalite) do update
+    set nombre_factures = daf_rollup_factures.nombre_factures + excluded.nombre_factures,
+        montant_ttc = daf_rollup_factures.montant_ttc + excluded.montant_ttc
+""", nativeQuery = true)
+    int appliquerDelta(@Param("jour") LocalDate jour,
+                       @Param("statut") String statut,
+                       @Param("fournisseurId") long fournisseurId,
+                       @Param("modalite") String modalite,
+                       @Param("nombre") long nombre,
+                       @Param("montant") BigDecimal montant);
+
+    // ===== BALANCE ÂGÉE =====
+
+    /**
+     * Encours non payé par fournisseur et jour d'échéance : quelques milliers de lignes au plus,
+     * réparties ensuite en tranches d'ancienneté pour une date de référence donnée.
+     */
+    @Query("SELECT r.fournisseurId, fo.nom, r.jour, SUM(r.nombreFactures), SUM(r.montantTTC) " +
+            "FROM FactureRollup r LEFT JOIN Fournisseur fo ON fo.id = r.fournisseurId " +
+            "WHERE r.statut NOT IN ('PAYEE', 'REJETEE') AND r.nombreFactures > 0 " +
+            "GROUP BY r.fournisseurId, fo.nom, r.jour")
+    List<Object[]> getEncoursParFournisseurEtJour();
+
+    // ===== RECONSTRUCTION =====
+
+    /**
+     * Bloque les upserts concurrents jusqu'à la fin de la reconstruction : une transaction
+     * qui a déjà appliqué son delta est attendue, les suivantes appliquent le leur après.
+     */
+    @Modifying
+    @Query(value = "lock table daf_rollup_factures in exclusive mode", nativeQuery = true)
+    void verrouiller();
+
+    @Modifying
+    @Query(value = "delete from daf_rollup_factures", nativeQuery = true)
+    int viderTout();
+
+    // Le jour de référence doit rester identique à FactureRollupService.jourDeReference
+    @Modifying
+    @Query(value = """
+    insert into daf_rollup_factures (jour, statut, fournisseur_id, modalite, nombre_factures, montant_ttc)
+    select case when f.statut = 'PAYEE' and f.date_paiement is not null then f.date_paiement
+                else coalesce(f.date_echeance, f.date_facture, cast(f.date_creation as date)) end,
+           f.statut,
+           coalesce(f.fournisseur_id, 0),
+           coalesce(f.modalite, 'AUCUNE'),
+           count(*),
+           coalesce(sum(f.montant_ttc), 0)
+    from daf_factures f
+    group by 1, 2, 3, 4
+""", nativeQuery = true)
+    int recalculerDepuisFactures();
+}
@@ -0,0 +1,40 @@
+package ma.eai.daf.facture.repositories;
+
+import ma.eai.daf.facture.entities.Fournisseur;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FournisseurRepository extends JpaRepository<Fournisseur, Long> {
+
+    Optional<Fournisseur> findByNomNormalise(String nomNormalise);
+
+    // Référentiel des suggestions de saisie
+    @Query("SELECT fo.id, fo.nom, fo.formeJuridique, fo.modaliteParDefaut FROM Fournisseur fo WHERE fo.actif = true")
+    List<Object[]> findSuggestionsActives();
+
+    @Query("SELECT fo.id, fo.nom, fo.formeJuridique, fo.modaliteParDefaut FROM Fournisseur fo " +
+            "WHERE fo.id = :id AND fo.actif = true")
+    List<Object[]> findSuggestionActive(@Param("id") Long id);
+
+    /**
+     * Crée le fournisseur s'il n'existe pas encore ; sans effet (ni erreur) si une saisie
+     * concurrente l'a créé entre-temps.
+     */
+    @Modifying
+    @Query(value = """
+    insert into daf_fournisseurs (nom, nom_normalise, forme_juridique, modalite_par_defaut, actif, date_creation)
+    values (:nom, :nomNormalise, :formeJuridique, :modalite, true, now())
+    on conflict (nom_normalise) do nothing
+""", nativeQuery = true)
+    int creerSiAbsent(@Param("nom") String nom,
+                      @Param("nomNormalise") String nomNormalise,
+                      @Param("formeJuridique") String formeJuridique,
+                      @Param("modalite") String modalite);
+}
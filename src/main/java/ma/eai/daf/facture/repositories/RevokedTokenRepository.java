@@ -0,0 +1,25 @@
+package ma.eai.daf.facture.repositories;
+
+import ma.eai.daf.facture.entities.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+
+    // Révocations encore actives (chargement au démarrage)
+    List<RevokedToken> findByDateExpirationAfter(LocalDateTime date);
+
+    // Révocations récentes, éventuellement émises par une autre instance
+    List<RevokedToken> findByDateRevocationAfterAndDateExpirationAfter(LocalDateTime depuis, LocalDateTime maintenant);
+
+    @Modifying
+    @Query("DELETE FROM RevokedToken r WHERE r.dateExpiration < :date")
+    int supprimerExpirees(@Param("date") LocalDateTime date);
+}
@@ -0,0 +1,13 @@
+package ma.eai.daf.facture.repositories;
+
+import ma.eai.daf.facture.entities.User;
+
+import java.util.Optional;
+
+/**
+ * Recherche d'un utilisateur par son identifiant naturel (email), servie par le cache de second niveau.
+ */
+public interface UserNaturalIdRepository {
+
+    Optional<User> findByEmail(String email);
+}
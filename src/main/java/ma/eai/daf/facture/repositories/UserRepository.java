@@ -2,20 +2,20 @@ package ma.eai.daf.facture.repositories;
 
 import ma.eai.daf.facture.entities.User;
 import ma.eai.daf.facture.enums.RoleType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
-import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-
-    // Recherche de base
-    Optional<User> findByEmail(String email);
+public interface UserRepository extends JpaRepository<User, Long>, UserNaturalIdRepository {
 
+    // Recherche de base (findByEmail : voir UserNaturalIdRepository)
     boolean existsByEmail(String email);
 
     List<User> findByRole(RoleType role);
@@ -23,22 +23,27 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findByActifTrue();
 
     // Recherche par rôle et statut actif
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT u FROM User u WHERE u.role = :role AND u.actif = true ORDER BY u.nom, u.prenom")
     List<User> findActiveUsersByRole(@Param("role") RoleType role);
 
     // Recherche des validateurs V1 actifs
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT u FROM User u WHERE u.role = 'V1' AND u.actif = true ORDER BY u.nom, u.prenom")
     List<User> findValidateursV1Actifs();
 
     // Recherche des validateurs V2 actifs
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT u FROM User u WHERE u.role = 'V2' AND u.actif = true ORDER BY u.nom, u.prenom")
     List<User> findValidateursV2Actifs();
 
     // Recherche des trésoriers actifs
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT u FROM User u WHERE u.role = 'T1' AND u.actif = true ORDER BY u.nom, u.prenom")
     List<User> findTresoriersActifs();
 
     // Recherche des utilisateurs de saisie actifs
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT u FROM User u WHERE u.role = 'U1' AND u.actif = true ORDER BY u.nom, u.prenom")
     List<User> findUtilisateursSaisieActifs();
 
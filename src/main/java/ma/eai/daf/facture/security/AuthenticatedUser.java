@@ -0,0 +1,61 @@
+package ma.eai.daf.facture.security;
+
+import ma.eai.daf.facture.enums.RoleType;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Principal léger construit à partir des claims du token JWT.
+ * Contrairement à {@link CustomUserDetailsService.CustomUserPrincipal}, il ne porte pas l'entité User :
+ * les contrôleurs obtiennent l'id de l'utilisateur connecté sans requête supplémentaire.
+ */
+@Getter
+public class AuthenticatedUser implements UserDetails {
+
+    private static final Map<RoleType, List<GrantedAuthority>> AUTHORITIES = new EnumMap<>(RoleType.class);
+
+    static {
+        for (RoleType role : RoleType.values()) {
+            AUTHORITIES.put(role, List.of(new SimpleGrantedAuthority("ROLE_" + role.name())));
+        }
+    }
+
+    private final Long id;
+    private final String email;
+    private final RoleType role;
+    private final String tokenId;
+
+    public AuthenticatedUser(Long id, String email, RoleType role, String tokenId) {
+        this.id = id;
+        this.email = email;
+        this.role = role;
+        this.tokenId = tokenId;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return AUTHORITIES.get(role);
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AuthenticatedUser{id=%d, email='%s', role=%s}", id, email, role);
+    }
+}
@@ -0,0 +1,74 @@
+package ma.eai.daf.facture.security;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Roue temporelle hachée : chaque élément est rangé dans la case de son instant d'expiration,
+ * et chaque avancée de la roue ne parcourt que les cases écoulées depuis la précédente.
+ * Les éléments dont l'expiration dépasse un tour de roue restent dans leur case jusqu'au bon tour.
+ */
+final class ExpirationWheel<K> {
+
+    private final long tickMs;
+    private final ArrayDeque<Entree<K>>[] cases;
+    private long tickCourant;
+
+    @SuppressWarnings("unchecked")
+    ExpirationWheel(long tickMs, int nbCases, long maintenant) {
+        this.tickMs = tickMs;
+        this.cases = new ArrayDeque[nbCases];
+        for (int i = 0; i < nbCases; i++) {
+            cases[i] = new ArrayDeque<>();
+        }
+        this.tickCourant = maintenant / tickMs;
+    }
+
+    synchronized void planifier(K cle, long expiration) {
+        // Une expiration déjà passée sera traitée à la prochaine avancée
+        long tick = Math.max(expiration / tickMs, tickCourant + 1);
+        cases[indice(tick)].addLast(new Entree<>(cle, tick));
+    }
+
+    /**
+     * Avance la roue jusqu'à {@code maintenant} et retourne les éléments expirés.
+     */
+    synchronized List<K> avancer(long maintenant) {
+        long cible = maintenant / tickMs;
+        List<K> expires = new ArrayList<>();
+        // Au-delà d'un tour complet, chaque case n'a besoin d'être visitée qu'une fois
+        long pas = Math.min(cible - tickCourant, cases.length);
+
+        for (long i = 1; i <= pas; i++) {
+            Iterator<Entree<K>> it = cases[indice(tickCourant + i)].iterator();
+            while (it.hasNext()) {
+                Entree<K> entree = it.next();
+                if (entree.tick <= cible) {
+                    expires.add(entree.cle);
+                    it.remove();
+                }
+            }
+        }
+        if (cible > tickCourant) {
+            tickCourant = cible;
+        }
+        return expires;
+    }
+
+    synchronized int taille() {
+        int taille = 0;
+        for (ArrayDeque<Entree<K>> c : cases) {
+            taille += c.size();
+        }
+        return taille;
+    }
+
+    private int indice(long tick) {
+        return (int) Math.floorMod(tick, (long) cases.length);
+    }
+
+    private record Entree<K>(K cle, long tick) {
+    }
+}
@@ -8,20 +8,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
-import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
+
 @RequiredArgsConstructor
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
-    private final UserDetailsService userDetailsService;
+    private final UserSecurityCache userSecurityCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final WebAuthenticationDetailsSource detailsSource = new WebAuthenticationDetailsSource();
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -31,15 +32,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromToken(jwt);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-                UsernamePasswordAuthenticationToken authentication =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            if (StringUtils.hasText(jwt)) {
+                tokenProvider.parseToken(jwt)
+                        .flatMap(this::authentifier)
+                        .ifPresent(principal -> {
+                            UsernamePasswordAuthenticationToken authentication =
+                                    new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+                            authentication.setDetails(detailsSource.buildDetails(request));
 
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+                            SecurityContextHolder.getContext().setAuthentication(authentication);
+                        });
             }
         } catch (Exception ex) {
             log.error("Could not set user authentication in security context", ex);
@@ -48,6 +50,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Construit le principal à partir des claims et de l'état de l'utilisateur en cache.
+     * Les tokens sans id utilisateur (émis avant l'ajout des claims) sont refusés.
+     */
+    private Optional<AuthenticatedUser> authentifier(JwtClaims claims) {
+        if (claims.getUserId() == null) {
+            log.debug("Token sans identifiant utilisateur refusé pour {}", claims.getEmail());
+            return Optional.empty();
+        }
+
+        // Vérification en mémoire, sans accès à la base
+        if (tokenRevocationService.estRevoque(claims)) {
+            log.debug("Token révoqué refusé pour l'utilisateur {}", claims.getUserId());
+            return Optional.empty();
+        }
+
+        return userSecurityCache.get(claims.getUserId())
+                .filter(state -> {
+                    boolean accepte = state.accepte(claims);
+                    if (!accepte) {
+                        log.debug("Token obsolète refusé pour l'utilisateur {}", claims.getUserId());
+                    }
+                    return accepte;
+                })
+                .map(state -> new AuthenticatedUser(state.getId(), state.getEmail(), state.getRole(),
+                        claims.getTokenId()));
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
@@ -55,4 +85,4 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package ma.eai.daf.facture.security;
+
+import ma.eai.daf.facture.enums.RoleType;
+import lombok.Value;
+
+import java.util.Date;
+
+/**
+ * Contenu d'un token JWT, extrait en une seule lecture par {@link JwtTokenProvider#parseToken(String)}.
+ */
+@Value
+public class JwtClaims {
+
+    String tokenId;
+    String email;
+    Long userId;
+    RoleType role;
+    String securityStamp;
+    Date expiration;
+}
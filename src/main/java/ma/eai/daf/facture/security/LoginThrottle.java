@@ -0,0 +1,155 @@
+package ma.eai.daf.facture.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limitation des tentatives de connexion échouées par compte et par adresse IP,
+ * sur une fenêtre glissante.
+ * <p>
+ * Les compteurs sont répartis sur un nombre fixe de segments, chacun protégé par son propre verrou,
+ * pour éviter un verrou global pendant les pics de connexion.
+ */
+@Component
+@Slf4j
+public class LoginThrottle {
+
+    private static final int NB_SEGMENTS = 64;
+    // Au-delà de cette taille, un segment purge ses clés expirées
+    private static final int SEUIL_PURGE_SEGMENT = 1024;
+
+    private final Segment[] segmentsCompte = creerSegments();
+    private final Segment[] segmentsIp = creerSegments();
+
+    private final long fenetreMs;
+    private final int maxEchecsParCompte;
+    private final int maxEchecsParIp;
+
+    public LoginThrottle(@Value("${security.login.throttle.window:PT15M}") Duration fenetre,
+                         @Value("${security.login.throttle.max-failures-per-account:5}") int maxEchecsParCompte,
+                         @Value("${security.login.throttle.max-failures-per-ip:50}") int maxEchecsParIp) {
+        this.fenetreMs = fenetre.toMillis();
+        this.maxEchecsParCompte = maxEchecsParCompte;
+        this.maxEchecsParIp = maxEchecsParIp;
+    }
+
+    /**
+     * @return le délai en secondes avant une nouvelle tentative, ou 0 si la tentative est autorisée
+     */
+    public long delaiAvantNouvelleTentative(String email, String ip) {
+        long maintenant = System.currentTimeMillis();
+        long delaiCompte = delai(segmentsCompte, cleCompte(email), maxEchecsParCompte, maintenant);
+        long delaiIp = delai(segmentsIp, ip, maxEchecsParIp, maintenant);
+        return Math.max(delaiCompte, delaiIp);
+    }
+
+    public void enregistrerEchec(String email, String ip) {
+        long maintenant = System.currentTimeMillis();
+        enregistrer(segmentsCompte, cleCompte(email), maxEchecsParCompte, maintenant);
+        enregistrer(segmentsIp, ip, maxEchecsParIp, maintenant);
+    }
+
+    public void enregistrerSucces(String email) {
+        String cle = cleCompte(email);
+        if (cle == null) {
+            return;
+        }
+        Segment segment = segment(segmentsCompte, cle);
+        segment.lock.lock();
+        try {
+            segment.echecs.remove(cle);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // ===== MÉTHODES UTILITAIRES =====
+
+    private long delai(Segment[] segments, String cle, int max, long maintenant) {
+        if (cle == null) {
+            return 0;
+        }
+        Segment segment = segment(segments, cle);
+        segment.lock.lock();
+        try {
+            ArrayDeque<Long> echecs = segment.echecs.get(cle);
+            if (echecs == null) {
+                return 0;
+            }
+            purger(echecs, maintenant);
+            if (echecs.size() < max) {
+                return 0;
+            }
+            // Le plus ancien échec de la fenêtre détermine quand une place se libère
+            long liberation = echecs.peekFirst() + fenetreMs;
+            return Math.max(1, (liberation - maintenant + 999) / 1000);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private void enregistrer(Segment[] segments, String cle, int max, long maintenant) {
+        if (cle == null) {
+            return;
+        }
+        Segment segment = segment(segments, cle);
+        segment.lock.lock();
+        try {
+            if (segment.echecs.size() > SEUIL_PURGE_SEGMENT) {
+                segment.echecs.values().forEach(echecs -> purger(echecs, maintenant));
+                segment.echecs.values().removeIf(ArrayDeque::isEmpty);
+            }
+
+            ArrayDeque<Long> echecs = segment.echecs.computeIfAbsent(cle, k -> new ArrayDeque<>());
+            purger(echecs, maintenant);
+            echecs.addLast(maintenant);
+            // Seuls les "max" derniers échecs sont utiles au calcul
+            while (echecs.size() > max) {
+                echecs.pollFirst();
+            }
+            if (echecs.size() == max) {
+                log.warn("🚫 Trop d'échecs de connexion pour {}", cle);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private void purger(ArrayDeque<Long> echecs, long maintenant) {
+        long limite = maintenant - fenetreMs;
+        while (!echecs.isEmpty() && echecs.peekFirst() <= limite) {
+            echecs.pollFirst();
+        }
+    }
+
+    private static String cleCompte(String email) {
+        return email != null ? email.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static Segment segment(Segment[] segments, String cle) {
+        int h = cle.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (NB_SEGMENTS - 1)];
+    }
+
+    private static Segment[] creerSegments() {
+        Segment[] segments = new Segment[NB_SEGMENTS];
+        for (int i = 0; i < NB_SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        return segments;
+    }
+
+    private static final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, ArrayDeque<Long>> echecs = new HashMap<>();
+    }
+}
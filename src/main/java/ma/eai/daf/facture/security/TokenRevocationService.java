@@ -0,0 +1,213 @@
+package ma.eai.daf.facture.security;
+
+import ma.eai.daf.facture.entities.RevokedToken;
+import ma.eai.daf.facture.enums.TypeRevocation;
+import ma.eai.daf.facture.repositories.RevokedTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Liste de révocation des tokens JWT.
+ * <p>
+ * Les révocations sont conservées en mémoire (vérification en temps constant dans
+ * {@link JwtAuthenticationFilter}) et persistées dans daf_revoked_tokens pour survivre aux
+ * redémarrages et être relues par les autres instances. Une roue temporelle retire chaque
+ * révocation de la mémoire à l'expiration des tokens qu'elle vise.
+ */
+@Service
+@Slf4j
+public class TokenRevocationService {
+
+    // Marge de relecture : une révocation commitée tardivement par une autre instance n'est pas manquée
+    private static final Duration MARGE_SYNCHRO = Duration.ofMinutes(1);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final UserSecurityCache userSecurityCache;
+    private final JwtTokenProvider jwtTokenProvider;
+
+    // Valeur : instant d'expiration (ms) de la révocation
+    private final ConcurrentHashMap<String, Long> tokensRevoques = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> stampsRevoques = new ConcurrentHashMap<>();
+    private final ExpirationWheel<Revocation> roue;
+
+    private volatile LocalDateTime derniereSynchro = LocalDateTime.now();
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository,
+                                  UserSecurityCache userSecurityCache,
+                                  JwtTokenProvider jwtTokenProvider,
+                                  @Value("${security.revocation.wheel-tick:PT1M}") Duration tick,
+                                  @Value("${security.revocation.wheel-size:512}") int nbCases) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.userSecurityCache = userSecurityCache;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.roue = new ExpirationWheel<>(tick.toMillis(), nbCases, System.currentTimeMillis());
+    }
+
+    // ===== VÉRIFICATION (CHEMIN CRITIQUE) =====
+
+    public boolean estRevoque(JwtClaims claims) {
+        return (claims.getTokenId() != null && tokensRevoques.containsKey(claims.getTokenId()))
+                || (claims.getSecurityStamp() != null && stampsRevoques.containsKey(claims.getSecurityStamp()));
+    }
+
+    // ===== RÉVOCATION =====
+
+    /**
+     * Révoque un token précis jusqu'à son expiration (déconnexion).
+     */
+    @Transactional
+    public void revoquerToken(JwtClaims claims) {
+        if (claims.getTokenId() == null) {
+            return;
+        }
+        LocalDateTime expiration = claims.getExpiration() != null
+                ? toLocalDateTime(claims.getExpiration().getTime())
+                : LocalDateTime.now().plusSeconds(jwtTokenProvider.getExpirationInSeconds());
+
+        persister(TypeRevocation.TOKEN, claims.getTokenId(), claims.getUserId(), expiration);
+        log.info("🔒 Token {} révoqué pour l'utilisateur {}", claims.getTokenId(), claims.getUserId());
+    }
+
+    /**
+     * Révoque tous les tokens portant l'empreinte donnée. Un token vit au plus jwt.expiration,
+     * la révocation peut donc être oubliée passé ce délai.
+     */
+    @Transactional
+    public void revoquerSecurityStamp(Long userId, String securityStamp) {
+        if (securityStamp == null) {
+            return;
+        }
+        LocalDateTime expiration = LocalDateTime.now().plusSeconds(jwtTokenProvider.getExpirationInSeconds());
+
+        persister(TypeRevocation.SECURITY_STAMP, securityStamp, userId, expiration);
+        log.info("🔒 Tokens de l'utilisateur {} révoqués (empreinte renouvelée)", userId);
+    }
+
+    private void persister(TypeRevocation type, String valeur, Long userId, LocalDateTime expiration) {
+        RevokedToken revokedToken = revokedTokenRepository.save(RevokedToken.builder()
+                .type(type)
+                .valeur(valeur)
+                .userId(userId)
+                .dateExpiration(expiration)
+                .build());
+
+        // La révocation ne devient effective en mémoire qu'une fois la transaction validée
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    appliquer(revokedToken);
+                }
+            });
+        } else {
+            appliquer(revokedToken);
+        }
+    }
+
+    // ===== CHARGEMENT, SYNCHRONISATION ET ÉVICTION =====
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void chargerAuDemarrage() {
+        LocalDateTime maintenant = LocalDateTime.now();
+        List<RevokedToken> actives = revokedTokenRepository.findByDateExpirationAfter(maintenant);
+        actives.forEach(this::appliquer);
+        derniereSynchro = maintenant;
+        log.info("🔒 {} révocations actives chargées", actives.size());
+    }
+
+    /**
+     * Relit les révocations récentes pour propager celles émises par les autres instances.
+     */
+    @Scheduled(fixedDelayString = "${security.revocation.sync-interval:PT10S}",
+            initialDelayString = "${security.revocation.sync-interval:PT10S}")
+    public void synchroniser() {
+        try {
+            LocalDateTime maintenant = LocalDateTime.now();
+            List<RevokedToken> recentes = revokedTokenRepository
+                    .findByDateRevocationAfterAndDateExpirationAfter(derniereSynchro.minus(MARGE_SYNCHRO), maintenant);
+
+            int nouvelles = 0;
+            for (RevokedToken revokedToken : recentes) {
+                if (appliquer(revokedToken)) {
+                    nouvelles++;
+                    // L'état de sécurité en cache de cet utilisateur peut être périmé sur cette instance
+                    userSecurityCache.invalider(revokedToken.getUserId());
+                }
+            }
+            derniereSynchro = maintenant;
+
+            if (nouvelles > 0) {
+                log.debug("🔒 {} nouvelles révocations synchronisées", nouvelles);
+            }
+        } catch (Exception e) {
+            log.error("❌ Erreur lors de la synchronisation des révocations", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.revocation.wheel-tick:PT1M}")
+    public void evincerExpirees() {
+        List<Revocation> expirees = roue.avancer(System.currentTimeMillis());
+        for (Revocation revocation : expirees) {
+            map(revocation.type()).remove(revocation.valeur(), revocation.expiration());
+        }
+        if (!expirees.isEmpty()) {
+            log.debug("🧹 {} révocations expirées retirées de la mémoire", expirees.size());
+        }
+    }
+
+    @Scheduled(cron = "${security.revocation.purge-cron:0 0 * * * *}")
+    @Transactional
+    public void purgerTable() {
+        int supprimees = revokedTokenRepository.supprimerExpirees(LocalDateTime.now());
+        if (supprimees > 0) {
+            log.info("🧹 {} révocations expirées supprimées de la base", supprimees);
+        }
+    }
+
+    public int getNombreRevocationsActives() {
+        return tokensRevoques.size() + stampsRevoques.size();
+    }
+
+    // ===== MÉTHODES UTILITAIRES =====
+
+    /**
+     * @return true si la révocation n'était pas encore connue de cette instance
+     */
+    private boolean appliquer(RevokedToken revokedToken) {
+        long expiration = revokedToken.getDateExpiration().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (expiration <= System.currentTimeMillis()) {
+            return false;
+        }
+        Long precedente = map(revokedToken.getType()).putIfAbsent(revokedToken.getValeur(), expiration);
+        if (precedente == null) {
+            roue.planifier(new Revocation(revokedToken.getType(), revokedToken.getValeur(), expiration), expiration);
+            return true;
+        }
+        return false;
+    }
+
+    private ConcurrentHashMap<String, Long> map(TypeRevocation type) {
+        return type == TypeRevocation.TOKEN ? tokensRevoques : stampsRevoques;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMs) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMs), ZoneId.systemDefault());
+    }
+
+    private record Revocation(TypeRevocation type, String valeur, Long expiration) {
+    }
+}
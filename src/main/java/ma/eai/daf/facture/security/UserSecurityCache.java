@@ -0,0 +1,100 @@
+package ma.eai.daf.facture.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent;
+import ma.eai.daf.facture.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache borné de l'état de sécurité des utilisateurs (rôle, activation, empreinte).
+ * Une requête authentifiée ne lit daf_users qu'en cas d'absence dans le cache ;
+ * les entrées sont invalidées après le commit de toute modification d'un utilisateur.
+ * <p>
+ * Un chargement commencé avant une invalidation a pu lire l'état d'avant le commit : il n'est
+ * conservé que si la génération de l'utilisateur n'a pas changé entre-temps.
+ */
+@Component
+@Slf4j
+public class UserSecurityCache {
+
+    private static final int TRANCHES = 1024;
+
+    private final UserRepository userRepository;
+    private final Cache<Long, UserSecurityState> cache;
+    // Générations par tranche d'identifiants, incrémentées à chaque invalidation (mémoire bornée)
+    private final AtomicLongArray generations = new AtomicLongArray(TRANCHES);
+
+    public UserSecurityCache(UserRepository userRepository,
+                             @Value("${security.user-cache.max-size:10000}") long maxSize,
+                             @Value("${security.user-cache.ttl:PT5M}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Optional<UserSecurityState> get(Long userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        UserSecurityState state = cache.getIfPresent(userId);
+        if (state == null) {
+            // Chargement hors de cache.get(key, loader) : le loader s'exécuterait sous le verrou
+            // du ConcurrentHashMap et épinglerait un thread virtuel pendant l'appel JDBC
+            int tranche = tranche(userId);
+            long generation = generations.get(tranche);
+            state = charger(userId);
+            if (state != null) {
+                cache.put(userId, state);
+                // Invalidation pendant le chargement : l'état lu est peut-être antérieur au commit.
+                // L'invalidation incrémente la génération avant de vider l'entrée, l'une des deux
+                // vérifications retire donc toujours un état périmé.
+                if (generations.get(tranche) != generation) {
+                    cache.asMap().remove(userId, state);
+                }
+            }
+        }
+        return Optional.ofNullable(state);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUtilisateurModifie(UtilisateurModifieEvent event) {
+        invalider(event.getUserId());
+    }
+
+    public void invalider(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        generations.incrementAndGet(tranche(userId));
+        cache.invalidate(userId);
+        log.debug("🔐 État de sécurité invalidé pour l'utilisateur {}", userId);
+    }
+
+    public void invaliderTout() {
+        for (int i = 0; i < TRANCHES; i++) {
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    private static int tranche(Long userId) {
+        return (int) (userId & (TRANCHES - 1));
+    }
+
+    private UserSecurityState charger(Long userId) {
+        log.debug("🔍 Chargement de l'état de sécurité de l'utilisateur {}", userId);
+        return userRepository.findById(userId)
+                .map(UserSecurityState::of)
+                .orElse(null);
+    }
+}
@@ -0,0 +1,36 @@
+package ma.eai.daf.facture.security;
+
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.enums.RoleType;
+import lombok.Value;
+
+import java.util.Objects;
+
+/**
+ * État d'un utilisateur nécessaire à l'authentification d'une requête.
+ * Conservé en cache par {@link UserSecurityCache} pour éviter une lecture de daf_users à chaque appel.
+ */
+@Value
+public class UserSecurityState {
+
+    Long id;
+    String email;
+    RoleType role;
+    String securityStamp;
+    boolean actif;
+
+    public static UserSecurityState of(User user) {
+        return new UserSecurityState(user.getId(), user.getEmail(), user.getRole(),
+                user.getSecurityStamp(), user.isActif());
+    }
+
+    /**
+     * Un token reste valable tant que le compte est actif et que son rôle et son empreinte
+     * correspondent à l'état courant de l'utilisateur.
+     */
+    public boolean accepte(JwtClaims claims) {
+        return actif
+                && role == claims.getRole()
+                && Objects.equals(securityStamp, claims.getSecurityStamp());
+    }
+}
@@ -0,0 +1,134 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.dto.UserDto;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent;
+import ma.eai.daf.facture.mappers.UserMapper;
+import ma.eai.daf.facture.repositories.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Annuaire en mémoire des validateurs V1, V2 et des trésoriers actifs, utilisé par le formulaire de saisie.
+ * Il est chargé à la première lecture puis servi depuis la mémoire jusqu'à la prochaine
+ * modification d'un utilisateur ({@link UtilisateurModifieEvent}).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AnnuaireUtilisateursService {
+
+    private final UserRepository userRepository;
+    private final UserMapper userMapper;
+
+    private volatile Annuaire annuaire;
+    // Incrémentée à chaque invalidation : un chargement concurrent d'une version antérieure n'est pas conservé
+    private long generation;
+
+    public Annuaire getAnnuaire() {
+        Annuaire courant = annuaire;
+        if (courant != null) {
+            return courant;
+        }
+        return charger();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUtilisateurModifie(UtilisateurModifieEvent event) {
+        invalider();
+        log.debug("📇 Annuaire invalidé suite à la {} de l'utilisateur {}",
+                event.getType().name().toLowerCase(), event.getUserId());
+    }
+
+    public synchronized void invalider() {
+        generation++;
+        annuaire = null;
+    }
+
+    private Annuaire charger() {
+        long generationChargee;
+        synchronized (this) {
+            if (annuaire != null) {
+                return annuaire;
+            }
+            generationChargee = generation;
+        }
+
+        List<User> validateursV1 = userRepository.findValidateursV1Actifs();
+        List<User> validateursV2 = userRepository.findValidateursV2Actifs();
+        List<User> tresoriers = userRepository.findTresoriersActifs();
+        Annuaire nouvelAnnuaire = construire(validateursV1, validateursV2, tresoriers);
+
+        log.info("📇 Annuaire chargé: {} V1, {} V2, {} trésoriers (ETag {})",
+                validateursV1.size(), validateursV2.size(), tresoriers.size(), nouvelAnnuaire.getEtag());
+
+        synchronized (this) {
+            if (generation == generationChargee) {
+                annuaire = nouvelAnnuaire;
+            }
+        }
+        return nouvelAnnuaire;
+    }
+
+    private Annuaire construire(List<User> validateursV1, List<User> validateursV2, List<User> tresoriers) {
+        StringBuilder empreinte = new StringBuilder();
+        appendEmpreinte(empreinte, validateursV1);
+        appendEmpreinte(empreinte, validateursV2);
+        appendEmpreinte(empreinte, tresoriers);
+        String etag = "\"" + DigestUtils.md5DigestAsHex(empreinte.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+
+        Map<String, Object> donneesReference = Map.of(
+                "validateursV1", validateursV1.stream().map(this::mapUserForSelection).toList(),
+                "validateursV2", validateursV2.stream().map(this::mapUserForSelection).toList(),
+                "tresoriers", tresoriers.stream().map(this::mapUserForSelection).toList()
+        );
+
+        return new Annuaire(
+                etag,
+                donneesReference,
+                List.copyOf(userMapper.toSelectionDtoList(validateursV1)),
+                List.copyOf(userMapper.toSelectionDtoList(validateursV2)),
+                List.copyOf(userMapper.toSelectionDtoList(tresoriers))
+        );
+    }
+
+    private void appendEmpreinte(StringBuilder empreinte, List<User> users) {
+        for (User user : users) {
+            empreinte.append(user.getId()).append('|')
+                    .append(user.getNomComplet()).append('|')
+                    .append(user.getEmail()).append('|')
+                    .append(user.getRole()).append('\n');
+        }
+        empreinte.append("--\n");
+    }
+
+    private Map<String, Object> mapUserForSelection(User user) {
+        return Map.of(
+                "id", user.getId(),
+                "nomComplet", user.getNomComplet(),
+                "email", user.getEmail(),
+                "role", user.getRole().name()
+        );
+    }
+
+    /**
+     * Instantané immuable de l'annuaire ; l'ETag est dérivé du contenu et reste donc
+     * identique d'un redémarrage ou d'une instance à l'autre.
+     */
+    @Value
+    public static class Annuaire {
+        String etag;
+        Map<String, Object> donneesReference;
+        List<UserDto> validateursV1;
+        List<UserDto> validateursV2;
+        List<UserDto> tresoriers;
+    }
+}
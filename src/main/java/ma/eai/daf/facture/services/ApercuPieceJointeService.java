@@ -0,0 +1,292 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.config.ApercuExecutorConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Aperçus des pièces jointes : vignette de la première page et aperçu basse résolution.
+ * <p>
+ * Le rendu est lancé après le commit de l'association du fichier à une facture, sur un pool
+ * borné : le dépôt n'attend jamais le rendu. Les images sont rangées à côté du fichier original
+ * dans le stockage adressé par contenu, donc calculées une seule fois par contenu.
+ * <p>
+ * Les dimensions sont bornées avant tout décodage : une image source trop grande est refusée, une
+ * grande image est décodée sous-échantillonnée, et la page PDF est rendue dans un cadre limité.
+ */
+@Service
+@Slf4j
+public class ApercuPieceJointeService {
+
+    public enum Format {
+        VIGNETTE("vignette", 240),
+        APERCU("apercu", 1024);
+
+        private final String suffixe;
+        private final int largeur;
+
+        Format(String suffixe, int largeur) {
+            this.suffixe = suffixe;
+            this.largeur = largeur;
+        }
+
+        public String getSuffixe() {
+            return suffixe;
+        }
+
+        public static Optional<Format> depuis(String suffixe) {
+            for (Format format : values()) {
+                if (format.suffixe.equalsIgnoreCase(suffixe)) {
+                    return Optional.of(format);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Issue d'une demande de rendu.
+     */
+    public enum Planification {
+        EN_COURS,     // Aperçus disponibles, ou rendu planifié ou en cours
+        IMPOSSIBLE,   // Format non géré ou rendu déjà en échec
+        SATURE        // Pool des aperçus plein : la demande peut être renouvelée plus tard
+    }
+
+    // Au-delà, l'image source n'est pas décodée (une image de 20 000 × 20 000 occupe 1,6 Go décodée)
+    private static final long PIXELS_SOURCE_MAX = 50_000_000L;
+    // Hauteur maximale d'un aperçu, en multiple de sa largeur (page PDF très étroite et très haute)
+    private static final int RAPPORT_HAUTEUR_MAX = 4;
+
+    private final PieceJointeStockage stockage;
+    private final ThreadPoolExecutor executor;
+
+    // Contenus en cours de rendu, et contenus dont le rendu a échoué (PDF corrompu, format inconnu)
+    private final Set<String> enCours = ConcurrentHashMap.newKeySet();
+    private final Set<String> echecs = ConcurrentHashMap.newKeySet();
+
+    public ApercuPieceJointeService(PieceJointeStockage stockage,
+                                    @Qualifier(ApercuExecutorConfig.APERCU_EXECUTOR) ThreadPoolExecutor executor) {
+        this.stockage = stockage;
+        this.executor = executor;
+    }
+
+    /**
+     * Planifie le rendu une fois la transaction courante validée.
+     */
+    public void planifierApresCommit(String chemin, String typeMime, String nom) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    planifier(chemin, typeMime, nom);
+                }
+            });
+        } else {
+            planifier(chemin, typeMime, nom);
+        }
+    }
+
+    /**
+     * Lance le rendu s'il n'est ni fait, ni en cours.
+     */
+    public Planification planifier(String chemin, String typeMime, String nom) {
+        if (!estGere(typeMime, nom) || echecs.contains(chemin)) {
+            return Planification.IMPOSSIBLE;
+        }
+        if (trouver(chemin, Format.VIGNETTE).isPresent() && trouver(chemin, Format.APERCU).isPresent()) {
+            return Planification.EN_COURS;
+        }
+        if (!enCours.add(chemin)) {
+            return Planification.EN_COURS;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generer(chemin, estPdf(typeMime, nom));
+                } finally {
+                    enCours.remove(chemin);
+                }
+            });
+            return Planification.EN_COURS;
+        } catch (RejectedExecutionException e) {
+            enCours.remove(chemin);
+            log.warn("⚠️ Pool des aperçus saturé, rendu de {} différé", chemin);
+            return Planification.SATURE;
+        }
+    }
+
+    public Optional<PieceJointeStockage.Contenu> trouver(String chemin, Format format) {
+        try {
+            return stockage.localiser(cheminApercu(chemin, format));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Chemin de l'aperçu dans le stockage, à côté du fichier original.
+     */
+    public static String cheminApercu(String chemin, Format format) {
+        return chemin + "." + format.suffixe + ".jpg";
+    }
+
+    // ===== RENDU =====
+
+    private void generer(String chemin, boolean pdf) {
+        long debut = System.currentTimeMillis();
+        try {
+            PieceJointeStockage.Contenu source = stockage.localiser(chemin)
+                    .orElseThrow(() -> new IOException("Pièce jointe introuvable"));
+            BufferedImage apercu = rendre(source, pdf, Format.APERCU.largeur);
+            ecrire(apercu, fichierApercu(chemin, Format.APERCU));
+            ecrire(redimensionner(apercu, Format.VIGNETTE.largeur), fichierApercu(chemin, Format.VIGNETTE));
+            log.info("🖼️ Aperçus de {} générés en {} ms", PieceJointeStockage.empreinte(chemin),
+                    System.currentTimeMillis() - debut);
+        } catch (Exception e) {
+            echecs.add(chemin);
+            log.warn("⚠️ Aperçu impossible pour {}: {}", chemin, e.getMessage());
+        }
+    }
+
+    private BufferedImage rendre(PieceJointeStockage.Contenu source, boolean pdf, int largeur) throws IOException {
+        if (pdf) {
+            // Le PDF est lu depuis le fichier, sans être chargé entièrement en mémoire, sauf s'il a été compacté
+            try (PDDocument document = source.isCompacte()
+                    ? Loader.loadPDF(new RandomAccessReadBuffer(stockage.ouvrir(source)))
+                    : Loader.loadPDF(source.getFichier().toFile())) {
+                if (document.getNumberOfPages() == 0) {
+                    throw new IOException("Document PDF sans page");
+                }
+                return new PDFRenderer(document).renderImage(0, echellePage(document.getPage(0), largeur), ImageType.RGB);
+            }
+        }
+        try (InputStream entree = stockage.ouvrir(source)) {
+            return redimensionner(lireImage(entree, largeur), largeur);
+        }
+    }
+
+    /**
+     * Échelle de rendu de la page : sa largeur devient {@code largeur}, sans que sa hauteur
+     * dépasse {@code RAPPORT_HAUTEUR_MAX × largeur}.
+     */
+    static float echellePage(PDPage page, int largeur) throws IOException {
+        PDRectangle boite = page.getCropBox();
+        boolean tournee = page.getRotation() % 180 != 0;
+        float largeurPage = tournee ? boite.getHeight() : boite.getWidth();
+        float hauteurPage = tournee ? boite.getWidth() : boite.getHeight();
+        if (!(largeurPage > 0) || !(hauteurPage > 0)) {
+            throw new IOException("Page PDF sans dimensions");
+        }
+        return Math.min(largeur / largeurPage, (float) RAPPORT_HAUTEUR_MAX * largeur / hauteurPage);
+    }
+
+    /**
+     * Décode l'image après avoir lu ses dimensions dans l'en-tête : refusée au-delà de
+     * {@code PIXELS_SOURCE_MAX}, sous-échantillonnée quand elle dépasse largement la largeur visée.
+     */
+    private static BufferedImage lireImage(InputStream entree, int largeur) throws IOException {
+        try (ImageInputStream flux = ImageIO.createImageInputStream(entree)) {
+            Iterator<ImageReader> lecteurs = flux != null ? ImageIO.getImageReaders(flux) : null;
+            if (lecteurs == null || !lecteurs.hasNext()) {
+                throw new IOException("Format d'image non reconnu");
+            }
+            ImageReader lecteur = lecteurs.next();
+            try {
+                lecteur.setInput(flux, true, true);
+                long largeurSource = lecteur.getWidth(0);
+                long hauteurSource = lecteur.getHeight(0);
+                if (largeurSource * hauteurSource > PIXELS_SOURCE_MAX) {
+                    throw new IOException("Image trop grande pour un aperçu (" + largeurSource + " × " + hauteurSource + ")");
+                }
+                ImageReadParam parametres = lecteur.getDefaultReadParam();
+                int pas = (int) Math.max(1, Math.max(largeurSource / (2L * largeur),
+                        hauteurSource / (2L * RAPPORT_HAUTEUR_MAX * largeur)));
+                parametres.setSourceSubsampling(pas, pas, 0, 0);
+                return lecteur.read(0, parametres);
+            } finally {
+                lecteur.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage redimensionner(BufferedImage image, int largeur) {
+        // Même borne de hauteur que le rendu d'une page PDF
+        float echelle = Math.min(1f, Math.min((float) largeur / image.getWidth(),
+                (float) RAPPORT_HAUTEUR_MAX * largeur / image.getHeight()));
+        int largeurCible = Math.max(1, Math.round(image.getWidth() * echelle));
+        int hauteurCible = Math.max(1, Math.round(image.getHeight() * echelle));
+
+        BufferedImage resultat = new BufferedImage(largeurCible, hauteurCible, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resultat.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, largeurCible, hauteurCible);
+            g.drawImage(image, 0, 0, largeurCible, hauteurCible, null);
+        } finally {
+            g.dispose();
+        }
+        return resultat;
+    }
+
+    // Écriture dans un fichier temporaire puis déplacement : un aperçu visible est toujours complet
+    private static void ecrire(BufferedImage image, Path cible) throws IOException {
+        Path temporaire = Files.createTempFile(Files.createDirectories(cible.getParent()), "apercu-", ".tmp");
+        try {
+            if (!ImageIO.write(image, "jpg", temporaire.toFile())) {
+                throw new IOException("Encodeur JPEG indisponible");
+            }
+            Files.move(temporaire, cible, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    private Path fichierApercu(String chemin, Format format) {
+        return stockage.resoudre(cheminApercu(chemin, format));
+    }
+
+    private static boolean estGere(String typeMime, String nom) {
+        String type = typeMime != null ? typeMime.toLowerCase(Locale.ROOT) : "";
+        return estPdf(type, nom) || type.startsWith("image/png") || type.startsWith("image/jpeg")
+                || type.startsWith("image/gif") || type.startsWith("image/bmp");
+    }
+
+    private static boolean estPdf(String typeMime, String nom) {
+        return (typeMime != null && typeMime.toLowerCase(Locale.ROOT).startsWith("application/pdf"))
+                || (nom != null && nom.toLowerCase(Locale.ROOT).endsWith(".pdf"));
+    }
+}
@@ -0,0 +1,129 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.FactureRollup;
+import ma.eai.daf.facture.enums.TrancheAnciennete;
+import ma.eai.daf.facture.repositories.FactureRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Balance âgée des factures non payées, par fournisseur et tranche de retard.
+ * <p>
+ * Le calcul part de l'agrégat daf_rollup_factures, dont le jour de référence est la date
+ * d'échéance pour une facture non payée : chaque ligne (fournisseur, jour) est classée une seule
+ * fois dans sa tranche, sur une date de référence unique pour tout l'état.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class BalanceAgeeService {
+
+    private static final TrancheAnciennete[] TRANCHES = TrancheAnciennete.values();
+
+    private final FactureRollupRepository rollupRepository;
+
+    public Map<String, Object> calculer(LocalDate dateReference) {
+        long debut = System.currentTimeMillis();
+
+        Map<Long, Ligne> lignes = new HashMap<>();
+        Ligne totaux = new Ligne(null, null);
+
+        for (Object[] encours : rollupRepository.getEncoursParFournisseurEtJour()) {
+            Long fournisseurId = (Long) encours[0];
+            LocalDate echeance = (LocalDate) encours[2];
+            long nombre = ((Number) encours[3]).longValue();
+            BigDecimal montant = (BigDecimal) encours[4];
+
+            int tranche = TrancheAnciennete.de(ChronoUnit.DAYS.between(echeance, dateReference)).ordinal();
+            lignes.computeIfAbsent(fournisseurId, id -> new Ligne(id, (String) encours[1]))
+                    .ajouter(tranche, nombre, montant);
+            totaux.ajouter(tranche, nombre, montant);
+        }
+
+        // Les fournisseurs avec le plus gros encours échu en premier
+        List<Map<String, Object>> fournisseurs = new ArrayList<>(lignes.size());
+        lignes.values().stream()
+                .sorted(Comparator.comparing(Ligne::montantEchu).reversed()
+                        .thenComparing(Ligne::montantTotal, Comparator.reverseOrder()))
+                .forEach(ligne -> fournisseurs.add(ligne.toMap()));
+
+        List<Map<String, Object>> tranches = new ArrayList<>(TRANCHES.length);
+        for (TrancheAnciennete tranche : TRANCHES) {
+            tranches.add(Map.of("code", tranche.name(), "libelle", tranche.getDescription()));
+        }
+
+        Map<String, Object> balance = new LinkedHashMap<>();
+        balance.put("dateReference", dateReference.toString());
+        balance.put("tranches", tranches);
+        balance.put("fournisseurs", fournisseurs);
+        balance.put("totaux", totaux.toMap());
+
+        log.debug("📅 Balance âgée au {}: {} fournisseurs en {} ms",
+                dateReference, fournisseurs.size(), System.currentTimeMillis() - debut);
+        return balance;
+    }
+
+    /**
+     * Encours d'un fournisseur (ou total général), tranche par tranche.
+     */
+    private static final class Ligne {
+
+        private final Long fournisseurId;
+        private final String fournisseur;
+        private final long[] nombres = new long[TRANCHES.length];
+        private final BigDecimal[] montants = new BigDecimal[TRANCHES.length];
+
+        Ligne(Long fournisseurId, String fournisseur) {
+            this.fournisseurId = fournisseurId;
+            this.fournisseur = fournisseur;
+            Arrays.fill(montants, BigDecimal.ZERO);
+        }
+
+        void ajouter(int tranche, long nombre, BigDecimal montant) {
+            nombres[tranche] += nombre;
+            montants[tranche] = montants[tranche].add(montant);
+        }
+
+        BigDecimal montantTotal() {
+            return Arrays.stream(montants).reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+
+        BigDecimal montantEchu() {
+            return montantTotal().subtract(montants[TrancheAnciennete.NON_ECHU.ordinal()]);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (fournisseurId != null) {
+                map.put("fournisseurId", fournisseurId == FactureRollup.FOURNISSEUR_INCONNU ? null : fournisseurId);
+                map.put("fournisseur", fournisseur != null ? fournisseur : "Fournisseur non référencé");
+            }
+
+            Map<String, Object> parTranche = new LinkedHashMap<>();
+            for (TrancheAnciennete tranche : TRANCHES) {
+                parTranche.put(tranche.name(), Map.of(
+                        "nombre", nombres[tranche.ordinal()],
+                        "montant", montants[tranche.ordinal()]));
+            }
+            map.put("tranches", parTranche);
+            map.put("nombreFactures", Arrays.stream(nombres).sum());
+            map.put("montantEchu", montantEchu());
+            map.put("montantTotal", montantTotal());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compactage en tâche de fond des pièces jointes froides : celles des factures payées ou rejetées
+ * sans modification depuis plus d'un an, avec leurs aperçus.
+ * <p>
+ * Chaque passage compacte au plus {@code octets-par-passage} octets, en reprenant le parcours des
+ * factures là où le précédent s'est arrêté : les entrées/sorties disque restent bornées. Les
+ * fichiers volumineux ne sont pas concernés, seuls les petits fichiers pèsent sur les inodes et
+ * les sauvegardes.
+ * <p>
+ * Un fichier compacté reste sur disque pendant {@code delai-suppression} : un téléchargement qui
+ * l'a déjà localisé (ou confié au sendfile de Tomcat) le lit jusqu'au bout. Il est supprimé par
+ * un passage suivant ; après un redémarrage, les fichiers isolés déjà présents dans un segment
+ * sont repris de la même façon.
+ */
+@Service
+@Slf4j
+public class CompactagePiecesJointesService {
+
+    // Pas de statut d'archivage : les statuts terminaux en tiennent lieu
+    private static final List<StatutFacture> STATUTS_CLOS = List.of(StatutFacture.PAYEE, StatutFacture.REJETEE);
+    private static final int TAILLE_PAGE = 500;
+
+    private final FactureRepository factureRepository;
+    private final PieceJointeStockage stockage;
+    private final SegmentsPiecesJointes segments;
+    private final boolean actif;
+    private final Duration anciennete;
+    private final long octetsParPassage;
+    private final long tailleMaxFichier;
+    private final Duration delaiSuppression;
+
+    private final ReentrantLock passage = new ReentrantLock();
+    private long curseur = 0;
+    // Fichiers isolés déjà compactés -> instant à partir duquel ils peuvent être supprimés
+    private final Map<Path, Instant> suppressionsDifferees = new LinkedHashMap<>();
+
+    public CompactagePiecesJointesService(FactureRepository factureRepository,
+                                          PieceJointeStockage stockage,
+                                          SegmentsPiecesJointes segments,
+                                          @Value("${application.file.segments.actif:true}") boolean actif,
+                                          @Value("${application.file.segments.anciennete:P365D}") Duration anciennete,
+                                          @Value("${application.file.segments.octets-par-passage:256MB}") DataSize octetsParPassage,
+                                          @Value("${application.file.segments.taille-max-fichier:16MB}") DataSize tailleMaxFichier,
+                                          @Value("${application.file.segments.delai-suppression:PT10M}") Duration delaiSuppression) {
+        this.factureRepository = factureRepository;
+        this.stockage = stockage;
+        this.segments = segments;
+        this.actif = actif;
+        this.anciennete = anciennete;
+        this.octetsParPassage = octetsParPassage.toBytes();
+        this.tailleMaxFichier = tailleMaxFichier.toBytes();
+        this.delaiSuppression = delaiSuppression;
+    }
+
+    @Scheduled(fixedDelayString = "${application.file.segments.intervalle:PT1H}",
+            initialDelayString = "${application.file.segments.delai-initial:PT10M}")
+    public void compacterPlanifie() {
+        if (actif) {
+            compacter();
+        }
+    }
+
+    public Map<String, Object> compacter() {
+        Map<String, Object> resultat = new HashMap<>();
+        if (!passage.tryLock()) {
+            resultat.put("message", "Compactage déjà en cours");
+            return resultat;
+        }
+        try {
+            long debut = System.currentTimeMillis();
+            int supprimes = supprimerDifferes();
+            LocalDateTime limite = LocalDateTime.now().minus(anciennete);
+            Map<String, Path> lot = new LinkedHashMap<>();
+            long octets = 0;
+
+            parcours:
+            while (true) {
+                List<Object[]> page = factureRepository.findPiecesJointesFroides(curseur, STATUTS_CLOS, limite,
+                        PageRequest.of(0, TAILLE_PAGE));
+                for (Object[] ligne : page) {
+                    curseur = (Long) ligne[0];
+                    octets += retenir((String) ligne[1], lot);
+                    if (octets >= octetsParPassage) {
+                        break parcours;
+                    }
+                }
+                if (page.size() < TAILLE_PAGE) {
+                    // Fin du parcours : le prochain passage repart du début
+                    curseur = 0;
+                    break;
+                }
+            }
+
+            List<String> compactes = lot.isEmpty() ? List.of() : segments.ajouter(lot);
+            for (String chemin : compactes) {
+                differerSuppression(lot.get(chemin));
+            }
+
+            if (!compactes.isEmpty()) {
+                log.info("🗄️ {} fichiers froids compactés ({} octets) en {} ms",
+                        compactes.size(), octets, System.currentTimeMillis() - debut);
+            }
+            resultat.put("fichiers", compactes.size());
+            resultat.put("fichiersSupprimes", supprimes);
+            resultat.put("segments", segments.getEtat());
+            return resultat;
+
+        } catch (IOException e) {
+            log.error("❌ Erreur lors du compactage des pièces jointes: {}", e.getMessage());
+            resultat.put("message", "Erreur lors du compactage des pièces jointes");
+            return resultat;
+        } finally {
+            passage.unlock();
+        }
+    }
+
+    // Le fichier original et ses aperçus, s'ils sont encore isolés et assez petits
+    private long retenir(String chemin, Map<String, Path> lot) throws IOException {
+        long octets = 0;
+        for (String candidat : List.of(chemin,
+                ApercuPieceJointeService.cheminApercu(chemin, ApercuPieceJointeService.Format.VIGNETTE),
+                ApercuPieceJointeService.cheminApercu(chemin, ApercuPieceJointeService.Format.APERCU))) {
+            if (lot.containsKey(candidat)) {
+                continue;
+            }
+            Path fichier = stockage.resoudre(candidat);
+            if (segments.trouver(candidat).isPresent()) {
+                // Compacté avant un redémarrage, pendant le délai de suppression
+                if (Files.exists(fichier)) {
+                    differerSuppression(fichier);
+                }
+                continue;
+            }
+            if (Files.isRegularFile(fichier) && Files.size(fichier) <= tailleMaxFichier) {
+                lot.put(candidat, fichier);
+                octets += Files.size(fichier);
+            }
+        }
+        return octets;
+    }
+
+    private void differerSuppression(Path fichier) {
+        suppressionsDifferees.putIfAbsent(fichier, Instant.now().plus(delaiSuppression));
+    }
+
+    private int supprimerDifferes() throws IOException {
+        Instant maintenant = Instant.now();
+        int supprimes = 0;
+        var iterateur = suppressionsDifferees.entrySet().iterator();
+        while (iterateur.hasNext()) {
+            Map.Entry<Path, Instant> suppression = iterateur.next();
+            if (suppression.getValue().isAfter(maintenant)) {
+                // Ordre d'insertion : les suivantes sont plus récentes
+                break;
+            }
+            if (Files.deleteIfExists(suppression.getKey())) {
+                supprimes++;
+            }
+            iterateur.remove();
+        }
+        return supprimes;
+    }
+}
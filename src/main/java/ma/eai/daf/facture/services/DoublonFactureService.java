@@ -0,0 +1,296 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.Fournisseur;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Détection des factures saisies deux fois (même facture fournisseur, numéro interne différent).
+ * <p>
+ * Chaque facture récente est indexée par son empreinte (fournisseur normalisé, date, montant TTC,
+ * référence commande) : la vérification à la saisie est une simple recherche dans une table de
+ * hachage. L'empreinte est réservée dès la vérification, ce qui bloque aussi deux saisies
+ * simultanées de la même facture ; l'index n'est mis à jour qu'au commit.
+ * <p>
+ * Les doublons acceptés (forcés ou en mode SIGNALER) sont rangés dans une file par empreinte :
+ * si la facture qui détient l'empreinte est supprimée ou rejetée, le premier d'entre eux la
+ * reprend, sans parcourir l'historique.
+ */
+@Service
+@Slf4j
+public class DoublonFactureService {
+
+    public enum Mode {
+        BLOQUER,   // La saisie d'un doublon probable est refusée (sauf forçage explicite)
+        SIGNALER   // La saisie est acceptée et le doublon journalisé
+    }
+
+    // Empreinte réservée par une saisie dont la transaction n'est pas encore terminée
+    private static final Reference EN_COURS = new Reference(-1L, "en cours de saisie");
+
+    private final FactureRepository factureRepository;
+    private final Mode mode;
+    private final Period fenetre;
+
+    private final ConcurrentHashMap<Empreinte, Reference> index = new ConcurrentHashMap<>();
+    // Doublons acceptés qui ne détiennent pas leur empreinte, dans l'ordre où ils la reprendront
+    private final ConcurrentHashMap<Empreinte, Deque<Reference>> doublons = new ConcurrentHashMap<>();
+    // Toutes les factures indexées, avec l'empreinte sous laquelle elles sont rangées
+    private final ConcurrentHashMap<Long, Indexation> empreintesParFacture = new ConcurrentHashMap<>();
+
+    public DoublonFactureService(FactureRepository factureRepository,
+                                 @Value("${factures.doublons.mode:BLOQUER}") Mode mode,
+                                 @Value("${factures.doublons.fenetre:P2Y}") Period fenetre) {
+        this.factureRepository = factureRepository;
+        this.mode = mode;
+        this.fenetre = fenetre;
+    }
+
+    // ===== VÉRIFICATION À LA SAISIE =====
+
+    /**
+     * Vérifie une nouvelle facture (montants déjà calculés) et réserve son empreinte
+     * jusqu'à la fin de la transaction courante.
+     *
+     * @param forcer saisie confirmée par l'utilisateur malgré un doublon signalé
+     */
+    public void verifierCreation(Facture facture, boolean forcer) {
+        Empreinte empreinte = Empreinte.de(facture);
+        Reference existante = index.putIfAbsent(empreinte, EN_COURS);
+
+        if (existante != null) {
+            signalerOuBloquer(facture, existante, forcer);
+            // Doublon accepté : indexé au commit sans prendre l'empreinte de la facture existante
+            apresCommit(() -> indexer(facture, empreinte));
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED && facture.getId() != null) {
+                    index.replace(empreinte, EN_COURS, new Reference(facture.getId(), facture.getNumero()));
+                    empreintesParFacture.put(facture.getId(), new Indexation(empreinte, facture.getNumero()));
+                } else {
+                    // Un doublon accepté pendant la réservation reprend l'empreinte libérée
+                    index.computeIfPresent(empreinte, (cle, reference) ->
+                            reference == EN_COURS ? depiler(cle) : reference);
+                }
+            }
+        });
+    }
+
+    /**
+     * Vérifie une facture modifiée : sa nouvelle empreinte ne doit pas être celle d'une autre facture.
+     */
+    public void verifierModification(Facture facture) {
+        Empreinte empreinte = Empreinte.de(facture);
+        Reference existante = index.get(empreinte);
+
+        if (existante != null && !facture.getId().equals(existante.getFactureId())) {
+            // Accepté en mode SIGNALER : rangé parmi les doublons de cette empreinte
+            signalerOuBloquer(facture, existante, false);
+        }
+
+        apresCommit(() -> indexer(facture, empreinte));
+    }
+
+    /**
+     * Retire une facture supprimée ou rejetée : elle peut être ressaisie.
+     */
+    public void retirer(Long factureId) {
+        apresCommit(() -> {
+            Indexation indexation = empreintesParFacture.remove(factureId);
+            if (indexation != null) {
+                desindexer(factureId, indexation.getEmpreinte());
+            }
+        });
+    }
+
+    private void indexer(Facture facture, Empreinte empreinte) {
+        if (facture.getId() == null) {
+            return;
+        }
+        Indexation ancienne = empreintesParFacture.put(facture.getId(), new Indexation(empreinte, facture.getNumero()));
+        if (ancienne != null) {
+            if (ancienne.getEmpreinte().equals(empreinte)) {
+                return;
+            }
+            desindexer(facture.getId(), ancienne.getEmpreinte());
+        }
+        ranger(empreinte, new Reference(facture.getId(), facture.getNumero()));
+    }
+
+    /**
+     * La facture prend l'empreinte si elle est libre, sinon elle attend derrière les doublons déjà acceptés.
+     */
+    private void ranger(Empreinte empreinte, Reference facture) {
+        index.compute(empreinte, (cle, reference) -> {
+            if (reference == null) {
+                return facture;
+            }
+            doublons.computeIfAbsent(cle, k -> new ArrayDeque<>()).addLast(facture);
+            return reference;
+        });
+    }
+
+    /**
+     * Libère l'empreinte seulement si elle appartient encore à cette facture ; le premier doublon
+     * accepté la reprend alors. Un doublon retiré quitte simplement la file de son empreinte.
+     */
+    private void desindexer(Long factureId, Empreinte empreinte) {
+        index.computeIfPresent(empreinte, (cle, reference) -> {
+            if (factureId.equals(reference.getFactureId())) {
+                return depiler(cle);
+            }
+            doublons.computeIfPresent(cle, (k, file) -> {
+                file.removeIf(doublon -> factureId.equals(doublon.getFactureId()));
+                return file.isEmpty() ? null : file;
+            });
+            return reference;
+        });
+    }
+
+    // Appelé sous le verrou de l'empreinte dans l'index : la file ne change pas entre-temps
+    private Reference depiler(Empreinte empreinte) {
+        Deque<Reference> file = doublons.get(empreinte);
+        if (file == null) {
+            return null;
+        }
+        Reference suivant = file.pollFirst();
+        if (file.isEmpty()) {
+            doublons.remove(empreinte);
+        }
+        return suivant;
+    }
+
+    private void signalerOuBloquer(Facture facture, Reference existante, boolean forcer) {
+        if (mode == Mode.BLOQUER && !forcer) {
+            throw new DoublonException(existante);
+        }
+        log.warn("⚠️ Doublon probable accepté{}: {} / {} du {} ({} TTC), facture existante {}",
+                forcer ? " (forcé)" : "", facture.getNomFournisseur(), facture.getRefCommande(),
+                facture.getDateFacture(), facture.getMontantTTC(), existante.getNumero());
+    }
+
+    private void apresCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // ===== CHARGEMENT ET PURGE =====
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void charger() {
+        long debut = System.currentTimeMillis();
+        List<Object[]> empreintes = factureRepository.findEmpreintesDepuis(LocalDate.now().minus(fenetre));
+        for (Object[] ligne : empreintes) {
+            Long id = (Long) ligne[0];
+            Empreinte empreinte = new Empreinte((String) ligne[2], (LocalDate) ligne[3],
+                    (BigDecimal) ligne[4], (String) ligne[5]);
+            if (empreintesParFacture.putIfAbsent(id, new Indexation(empreinte, (String) ligne[1])) == null) {
+                ranger(empreinte, new Reference(id, (String) ligne[1]));
+            }
+        }
+        log.info("🔎 Index des doublons chargé: {} factures depuis {} en {} ms",
+                empreintesParFacture.size(), LocalDate.now().minus(fenetre), System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Les factures sorties de la fenêtre ne sont plus comparées : l'index reste borné.
+     */
+    @Scheduled(cron = "${factures.doublons.purge-cron:0 15 3 * * *}")
+    public void purger() {
+        LocalDate limite = LocalDate.now().minus(fenetre);
+        empreintesParFacture.entrySet().removeIf(entree -> {
+            // Les factures d'une même empreinte ont la même date : elles sortent ensemble de la fenêtre
+            Empreinte empreinte = entree.getValue().getEmpreinte();
+            if (empreinte.getDateFacture().isBefore(limite)) {
+                index.remove(empreinte);
+                doublons.remove(empreinte);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // ===== EMPREINTE =====
+
+    @lombok.Value
+    static class Empreinte {
+        String fournisseur;
+        LocalDate dateFacture;
+        long montantCentimes;
+        String refCommande;
+
+        Empreinte(String nomFournisseur, LocalDate dateFacture, BigDecimal montantTTC, String refCommande) {
+            this.fournisseur = Fournisseur.normaliser(nomFournisseur);
+            this.dateFacture = dateFacture;
+            this.montantCentimes = montantTTC != null
+                    ? montantTTC.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue()
+                    : 0L;
+            this.refCommande = Fournisseur.normaliser(refCommande);
+        }
+
+        static Empreinte de(Facture facture) {
+            return new Empreinte(facture.getNomFournisseur(), facture.getDateFacture(),
+                    facture.getMontantTTC(), facture.getRefCommande());
+        }
+    }
+
+    @lombok.Value
+    static class Indexation {
+        Empreinte empreinte;
+        String numero;
+    }
+
+    @lombok.Value
+    public static class Reference {
+        Long factureId;
+        String numero;
+    }
+
+    /**
+     * Saisie refusée : la facture existe déjà sous un autre numéro.
+     */
+    @Getter
+    public static class DoublonException extends RuntimeException {
+
+        private final Long factureExistanteId;
+        private final String numeroExistant;
+
+        DoublonException(Reference existante) {
+            super(existante == EN_COURS
+                    ? "Cette facture est en cours de saisie par un autre utilisateur"
+                    : "Cette facture semble déjà saisie sous le numéro " + existante.getNumero());
+            this.factureExistanteId = existante == EN_COURS ? null : existante.getFactureId();
+            this.numeroExistant = existante.getNumero();
+        }
+    }
+}
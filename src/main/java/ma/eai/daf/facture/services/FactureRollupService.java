@@ -0,0 +1,161 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.cache.QueryCaches;
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.FactureRollup;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.repositories.FactureRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Maintenance de l'agrégat daf_rollup_factures.
+ * <p>
+ * Chaque changement d'état d'une facture retire sa contribution de l'ancienne cellule et l'ajoute
+ * à la nouvelle, dans la même transaction que la modification : l'agrégat ne peut pas diverger
+ * d'un commit ou d'un rollback. La reconstruction complète corrige les écritures faites hors
+ * FactureService (initialisation des données, scripts).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FactureRollupService {
+
+    private final FactureRollupRepository rollupRepository;
+    private final CacheManager cacheManager;
+
+    private volatile LocalDateTime derniereReconstruction;
+    private volatile int cellulesReconstruites;
+
+    // ===== MAINTENANCE INCRÉMENTALE =====
+
+    /**
+     * Photographie la contribution actuelle d'une facture, à prendre avant de la modifier.
+     */
+    public Contribution capturer(Facture facture) {
+        return facture != null ? Contribution.de(facture) : null;
+    }
+
+    /**
+     * Déplace la contribution d'une facture ; {@code avant} est null à la création,
+     * {@code apres} à la suppression. Doit s'exécuter dans la transaction appelante.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enregistrer(Contribution avant, Contribution apres) {
+        if (Objects.equals(avant, apres)) {
+            return;
+        }
+        if (avant != null) {
+            appliquer(avant, -1, avant.getMontantTTC().negate());
+        }
+        if (apres != null) {
+            appliquer(apres, 1, apres.getMontantTTC());
+        }
+    }
+
+    private void appliquer(Contribution contribution, long nombre, BigDecimal montant) {
+        rollupRepository.appliquerDelta(contribution.getJour(), contribution.getStatut().name(),
+                contribution.getFournisseurId(), contribution.getModalite(), nombre, montant);
+    }
+
+    // ===== RECONSTRUCTION =====
+
+    /**
+     * Recalcule entièrement l'agrégat depuis daf_factures (au démarrage, chaque nuit ou à la demande).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${rollup.rebuild-cron:0 30 2 * * *}")
+    @Transactional
+    public void reconstruire() {
+        long debut = System.currentTimeMillis();
+
+        rollupRepository.verrouiller();
+        rollupRepository.viderTout();
+        int cellules = rollupRepository.recalculerDepuisFactures();
+
+        derniereReconstruction = LocalDateTime.now();
+        cellulesReconstruites = cellules;
+
+        // Les statistiques en cache ont pu être calculées sur un agrégat qui avait divergé
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                viderCachesStatistiques();
+            }
+        });
+
+        log.info("📊 Agrégat des factures reconstruit: {} cellules en {} ms",
+                cellules, System.currentTimeMillis() - debut);
+    }
+
+    public Map<String, Object> getEtat() {
+        Map<String, Object> etat = new LinkedHashMap<>();
+        etat.put("cellules", rollupRepository.count());
+        etat.put("derniereReconstruction", derniereReconstruction);
+        etat.put("cellulesReconstruites", cellulesReconstruites);
+        return etat;
+    }
+
+    private void viderCachesStatistiques() {
+        for (String nom : new String[]{QueryCaches.TOP_FOURNISSEURS, QueryCaches.EVOLUTION_PAIEMENTS}) {
+            Cache cache = cacheManager.getCache(nom);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Contribution d'une facture à l'agrégat : sa cellule et son montant.
+     */
+    @Value
+    public static class Contribution {
+        LocalDate jour;
+        StatutFacture statut;
+        long fournisseurId;
+        String modalite;
+        BigDecimal montantTTC;
+
+        static Contribution de(Facture facture) {
+            return new Contribution(
+                    jourDeReference(facture),
+                    facture.getStatut(),
+                    facture.getFournisseur() != null ? facture.getFournisseur().getId() : FactureRollup.FOURNISSEUR_INCONNU,
+                    facture.getModalite() != null ? facture.getModalite().name() : FactureRollup.MODALITE_AUCUNE,
+                    facture.getMontantTTC() != null ? facture.getMontantTTC() : BigDecimal.ZERO
+            );
+        }
+
+        // Doit rester identique à l'expression de FactureRollupRepository.recalculerDepuisFactures
+        private static LocalDate jourDeReference(Facture facture) {
+            if (facture.getStatut() == StatutFacture.PAYEE && facture.getDatePaiement() != null) {
+                return facture.getDatePaiement();
+            }
+            if (facture.getDateEcheance() != null) {
+                return facture.getDateEcheance();
+            }
+            if (facture.getDateFacture() != null) {
+                return facture.getDateFacture();
+            }
+            return facture.getDateCreation() != null ? facture.getDateCreation().toLocalDate() : LocalDate.now();
+        }
+    }
+}
@@ -1,21 +1,31 @@
 package ma.eai.daf.facture.services;
 
 import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.Fournisseur;
 import ma.eai.daf.facture.entities.User;
 import ma.eai.daf.facture.entities.ValidationFacture;
 import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
 import ma.eai.daf.facture.repositories.FactureRepository;
 import ma.eai.daf.facture.repositories.UserRepository;
 import ma.eai.daf.facture.repositories.ValidationFactureRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -27,6 +37,12 @@ public class FactureService {
     private final UserRepository userRepository;
     private final ValidationFactureRepository validationRepository;
     private final NotificationService notificationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FactureRollupService rollupService;
+    private final FournisseurService fournisseurService;
+    private final DoublonFactureService doublonFactureService;
+    private final ApercuPieceJointeService apercuService;
+    private final PieceJointeStockage stockage;
 
     // ===== CRUD DE BASE =====
 
@@ -38,11 +54,40 @@ public class FactureService {
         return factureRepository.findById(id);
     }
 
+    /**
+     * Version de la facture pour son ETag, sans la charger
+     */
+    public Optional<LocalDateTime> getDateModification(Long id) {
+        return factureRepository.findDateModificationById(id);
+    }
+
+    /**
+     * Factures dans l'ordre des ids donnés (résultats de recherche classés par pertinence)
+     */
+    public List<Facture> getFacturesByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Facture> parId = factureRepository.findAvecCreateurByIdIn(ids).stream()
+                .collect(Collectors.toMap(Facture::getId, Function.identity()));
+        return ids.stream()
+                .map(parId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
     public Optional<Facture> getFactureByNumero(String numero) {
         return factureRepository.findByNumero(numero);
     }
 
     public Facture createFacture(Facture facture, Long createurId) {
+        return createFacture(facture, createurId, false);
+    }
+
+    /**
+     * @param forcerDoublon saisie confirmée malgré un doublon probable signalé
+     */
+    public Facture createFacture(Facture facture, Long createurId, boolean forcerDoublon) {
         User createur = userRepository.findById(createurId)
                 .orElseThrow(() -> new RuntimeException("Créateur non trouvé"));
 
@@ -50,10 +95,15 @@ public class FactureService {
             throw new RuntimeException("Seuls les utilisateurs U1 peuvent créer des factures");
         }
 
-        validateValidateurs(facture);
+        // Avant toute requête : la facture, déjà rattachée aux validateurs chargés, peut être insérée au premier vidage
         facture.setCreateur(createur);
         facture.setStatut(StatutFacture.SAISIE);
 
+        validateValidateurs(facture);
+        rattacherFournisseur(facture);
+        facture.calculerMontants();
+        doublonFactureService.verifierCreation(facture, forcerDoublon);
+
         Facture savedFacture = factureRepository.saveAndFlush(facture);
 
         if (facture.getNumero() == null || facture.getNumero().trim().isEmpty()) {
@@ -61,6 +111,8 @@ public class FactureService {
         }
 
         factureRepository.save(facture);
+        rollupService.enregistrer(null, rollupService.capturer(savedFacture));
+        publierEvenement(savedFacture.getId(), TypeModification.CREATION, null, StatutFacture.SAISIE);
         log.info("✅ Nouvelle facture créée: {} par {}", savedFacture.getNumero(), createur.getNomComplet());
 
         return savedFacture;
@@ -74,6 +126,8 @@ public class FactureService {
             throw new RuntimeException("Cette facture ne peut plus être modifiée");
         }
 
+        FactureRollupService.Contribution avant = rollupService.capturer(facture);
+
         // Mise à jour des champs modifiables
         facture.setNomFournisseur(factureUpdate.getNomFournisseur());
         facture.setFormeJuridique(factureUpdate.getFormeJuridique());
@@ -102,8 +156,14 @@ public class FactureService {
         }
 
         validateValidateurs(facture);
+        rattacherFournisseur(facture);
 
-        return factureRepository.save(facture);
+        // Flush pour que l'échéance et les montants recalculés au @PreUpdate soient agrégés
+        Facture savedFacture = factureRepository.saveAndFlush(facture);
+        doublonFactureService.verifierModification(savedFacture);
+        rollupService.enregistrer(avant, rollupService.capturer(savedFacture));
+        publierEvenement(id, TypeModification.MODIFICATION, facture.getStatut(), facture.getStatut());
+        return savedFacture;
     }
 
     public void deleteFacture(Long id) {
@@ -114,10 +174,57 @@ public class FactureService {
             throw new RuntimeException("Cette facture ne peut plus être supprimée");
         }
 
+        rollupService.enregistrer(rollupService.capturer(facture), null);
+        doublonFactureService.retirer(id);
         factureRepository.deleteById(id);
+        publierEvenement(id, TypeModification.SUPPRESSION, facture.getStatut(), null);
         log.info("Facture supprimée: {}", facture.getNumero());
     }
 
+    /**
+     * Associe un fichier déjà stocké (voir PieceJointeStockage) à la facture, en remplacement
+     * de la pièce jointe précédente.
+     */
+    public Facture attacherPieceJointe(Long factureId, Long createurId, String nom,
+                                       PieceJointeStockage.Stockee fichier) throws IOException {
+        Facture facture = verifierDepotPieceJointe(factureId, createurId);
+        // Le type servi au téléchargement vient du contenu, jamais de l'en-tête du client
+        String typeMime = stockage.detecterType(fichier.getChemin());
+
+        facture.setPieceJointeNom(nom);
+        facture.setPieceJointeChemin(fichier.getChemin());
+        facture.setPieceJointeTaille(fichier.getTaille());
+        facture.setPieceJointeTypeMime(typeMime);
+
+        Facture savedFacture = factureRepository.save(facture);
+        apercuService.planifierApresCommit(fichier.getChemin(), typeMime, nom);
+        publierEvenement(factureId, TypeModification.MODIFICATION, facture.getStatut(), facture.getStatut());
+        log.info("📎 Pièce jointe {} associée à la facture {}", nom, facture.getNumero());
+        return savedFacture;
+    }
+
+    /**
+     * Vérifie qu'un fichier peut être joint à la facture, avant même d'en recevoir le contenu.
+     */
+    @Transactional(readOnly = true)
+    public Facture verifierDepotPieceJointe(Long factureId, Long createurId) {
+        Facture facture = factureRepository.findById(factureId)
+                .orElseThrow(() -> new RuntimeException("Facture non trouvée"));
+
+        if (!facture.getCreateur().getId().equals(createurId)) {
+            throw new RuntimeException("Seul le créateur peut joindre un fichier à la facture");
+        }
+        if (!facture.peutEtreModifiee()) {
+            throw new RuntimeException("Cette facture ne peut plus être modifiée");
+        }
+        return facture;
+    }
+
+    @Transactional(readOnly = true)
+    public boolean estPieceJointeUtilisee(String chemin) {
+        return factureRepository.existsByPieceJointeChemin(chemin);
+    }
+
     // ===== WORKFLOW DE VALIDATION =====
 
     public Facture soumettreValidationV1(Long factureId, Long createurId) {
@@ -136,12 +243,15 @@ public class FactureService {
             throw new RuntimeException("Aucun validateur V1 assigné");
         }
 
+        FactureRollupService.Contribution avant = rollupService.capturer(facture);
         facture.setStatut(StatutFacture.EN_VALIDATION_V1);
         Facture savedFacture = factureRepository.save(facture);
+        rollupService.enregistrer(avant, rollupService.capturer(savedFacture));
 
         // Créer trace de validation
         createValidationTrace(facture, facture.getCreateur(), StatutFacture.SAISIE,
                 StatutFacture.EN_VALIDATION_V1, "Soumission pour validation V1", true, "U1");
+        publierEvenement(factureId, TypeModification.TRANSITION, StatutFacture.SAISIE, StatutFacture.EN_VALIDATION_V1);
 
         // Notification au validateur V1
         notificationService.notifierValidationV1(facture);
@@ -173,6 +283,7 @@ public class FactureService {
 
         StatutFacture ancienStatut = facture.getStatut();
         StatutFacture nouveauStatut;
+        FactureRollupService.Contribution avant = rollupService.capturer(facture);
 
         if (approuve) {
             if (facture.getValidateur2() == null) {
@@ -185,6 +296,7 @@ public class FactureService {
             notificationService.notifierValidationV2(facture);
         } else {
             nouveauStatut = StatutFacture.REJETEE;
+            doublonFactureService.retirer(factureId);
             facture.setSortOuStatut("Rejetée par V1: " + commentaire);
 
             // Notification au créateur
@@ -193,9 +305,11 @@ public class FactureService {
 
         facture.setStatut(nouveauStatut);
         Facture savedFacture = factureRepository.save(facture);
+        rollupService.enregistrer(avant, rollupService.capturer(savedFacture));
 
         // Créer trace de validation
         createValidationTrace(facture, validateur, ancienStatut, nouveauStatut, commentaire, approuve, "V1");
+        publierEvenement(factureId, TypeModification.TRANSITION, ancienStatut, nouveauStatut);
 
         log.info("Facture {} {} par V1 {}", facture.getNumero(),
                 approuve ? "validée" : "rejetée", validateur.getNomComplet());
@@ -224,6 +338,7 @@ public class FactureService {
 
         StatutFacture ancienStatut = facture.getStatut();
         StatutFacture nouveauStatut;
+        FactureRollupService.Contribution avant = rollupService.capturer(facture);
 
         if (approuve) {
             nouveauStatut = StatutFacture.EN_TRESORERIE;
@@ -239,6 +354,7 @@ public class FactureService {
             notificationService.notifierTresorerie(facture);
         } else {
             nouveauStatut = StatutFacture.REJETEE;
+            doublonFactureService.retirer(factureId);
             facture.setSortOuStatut("Rejetée par V2: " + commentaire);
 
             // Notification au créateur
@@ -247,9 +363,11 @@ public class FactureService {
 
         facture.setStatut(nouveauStatut);
         Facture savedFacture = factureRepository.save(facture);
+        rollupService.enregistrer(avant, rollupService.capturer(savedFacture));
 
         // Créer trace de validation
         createValidationTrace(facture, validateur, ancienStatut, nouveauStatut, commentaire, approuve, "V2");
+        publierEvenement(factureId, TypeModification.TRANSITION, ancienStatut, nouveauStatut);
 
         log.info("Facture {} {} par V2 {}", facture.getNumero(),
                 approuve ? "validée" : "rejetée", validateur.getNomComplet());
@@ -281,6 +399,7 @@ public class FactureService {
         }
 
         StatutFacture ancienStatut = facture.getStatut();
+        FactureRollupService.Contribution avant = rollupService.capturer(facture);
 
         // Mettre à jour la facture
         facture.setStatut(StatutFacture.PAYEE);
@@ -303,10 +422,12 @@ public class FactureService {
         }
 
         Facture savedFacture = factureRepository.save(facture);
+        rollupService.enregistrer(avant, rollupService.capturer(savedFacture));
 
         // Créer trace de validation
         createValidationTrace(facture, tresorier, ancienStatut, StatutFacture.PAYEE,
                 commentaire != null ? commentaire : "Paiement traité", true, "T1");
+        publierEvenement(factureId, TypeModification.TRANSITION, ancienStatut, StatutFacture.PAYEE);
 
         // Notification au créateur et validateurs
         notificationService.notifierPaiement(facture);
@@ -393,6 +514,30 @@ public class FactureService {
         return factureRepository.findFacturesEnRetard(LocalDate.now());
     }
 
+    // ===== LECTURE EN FLUX =====
+    // Pour les grandes listes : à consommer dans la transaction de l'appelant, puis fermer
+
+    /**
+     * Factures en attente pour un trésorier, ou toutes celles en trésorerie s'il n'en a aucune
+     */
+    public Stream<Facture> streamFacturesEnAttenteTresorerie(Long tresorierId) {
+        User tresorier = userRepository.findById(tresorierId)
+                .orElseThrow(() -> new RuntimeException("Trésorier non trouvé"));
+        if (factureRepository.existsFacturesEnAttenteTresorerie(tresorier)) {
+            return factureRepository.streamFacturesEnAttenteTresorerie(tresorier);
+        }
+        return factureRepository.streamByStatut(StatutFacture.EN_TRESORERIE);
+    }
+
+    public Stream<Facture> streamFacturesUrgentes() {
+        LocalDate dateActuelle = LocalDate.now();
+        return factureRepository.streamFacturesUrgentes(dateActuelle, dateActuelle.plusDays(7));
+    }
+
+    public Stream<Facture> streamFacturesEnRetard() {
+        return factureRepository.streamFacturesEnRetard(LocalDate.now());
+    }
+
     /**
      * Récupère les factures par statut avec tri par date de création
      */
@@ -428,6 +573,31 @@ public class FactureService {
         }
     }
 
+    /**
+     * Rattache la facture au référentiel des fournisseurs et complète la modalité
+     * et la forme juridique à partir des valeurs connues du fournisseur.
+     */
+    private void rattacherFournisseur(Facture facture) {
+        Fournisseur fournisseur = fournisseurService.resoudre(facture.getNomFournisseur(),
+                facture.getFormeJuridique(), facture.getModalite());
+        facture.setFournisseur(fournisseur);
+
+        if (facture.getModalite() == null) {
+            facture.setModalite(fournisseur.getModaliteParDefaut());
+        }
+        if (facture.getFormeJuridique() == null) {
+            facture.setFormeJuridique(fournisseur.getFormeJuridique());
+        }
+    }
+
+    /**
+     * Les écouteurs (caches statistiques, vues dérivées) sont notifiés après le commit.
+     */
+    private void publierEvenement(Long factureId, TypeModification type,
+                                  StatutFacture ancienStatut, StatutFacture nouveauStatut) {
+        eventPublisher.publishEvent(new FactureModifieeEvent(factureId, type, ancienStatut, nouveauStatut));
+    }
+
     private String generateNumeroFacture(Long idFacture) {
         String prefix = "FACT" + LocalDate.now().getYear() +
                 String.format("%02d", LocalDate.now().getMonthValue()) +
@@ -0,0 +1,121 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Fournisseur;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Migration vers le référentiel des fournisseurs, rejouable à chaque démarrage :
+ * rattache les factures sans fournisseur (existantes ou issues de l'initialisation) et crée
+ * les index couvrants ou partiels que JPA ne sait pas décrire. Migre aussi l'agrégat
+ * {@code daf_rollup_factures} créé avant le référentiel (clé sur le nom du fournisseur). S'exécute avant la reconstruction de
+ * l'agrégat et le chargement du cube (ApplicationReadyEvent).
+ * <p>
+ * Les index sont créés avec {@code CONCURRENTLY}, hors transaction (connexion en auto-commit) :
+ * la création ne bloque pas les écritures sur des tables déjà volumineuses.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Order(3) // Après l'initialisation des factures de test
+public class FournisseurMigrationService implements CommandLineRunner {
+
+    private final FactureRepository factureRepository;
+    private final FournisseurService fournisseurService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Override
+    public void run(String... args) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> migrerAgregat());
+        creerIndex("idx_factures_fournisseur_statut",
+                "on daf_factures (fournisseur_id, statut) include (montant_ttc)");
+        creerIndex("idx_rollup_factures_fournisseur",
+                "on daf_rollup_factures (statut, fournisseur_id) include (nombre_factures, montant_ttc)");
+        // Recherche des autres factures d'un même contenu (compactage, téléversements abandonnés)
+        creerIndex("idx_factures_piece_jointe_chemin",
+                "on daf_factures (piece_jointe_chemin) include (statut, date_modification) "
+                        + "where piece_jointe_chemin is not null");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> rattacherFactures());
+    }
+
+    // ===== AGRÉGAT =====
+
+    /**
+     * L'agrégat était d'abord indexé par le nom du fournisseur (colonne {@code fournisseur} NOT NULL,
+     * dans la clé unique) : ddl-auto=update ajoute {@code fournisseur_id} sans retirer l'ancienne
+     * colonne ni l'ancienne contrainte, et toute insertion échoue. L'agrégat se reconstruit
+     * entièrement au démarrage : il est vidé, puis sa clé est refaite sur {@code fournisseur_id}.
+     */
+    private void migrerAgregat() {
+        Integer ancienneColonne = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns " +
+                        "where table_schema = current_schema() and table_name = 'daf_rollup_factures' " +
+                        "and column_name = 'fournisseur'", Integer.class);
+        if (ancienneColonne == null || ancienneColonne == 0) {
+            return;
+        }
+
+        log.warn("⚠️ Agrégat des factures indexé par nom de fournisseur, migration vers fournisseur_id");
+        jdbcTemplate.execute("truncate table daf_rollup_factures");
+        jdbcTemplate.execute("alter table daf_rollup_factures drop constraint if exists uk_rollup_factures_cle");
+        jdbcTemplate.execute("alter table daf_rollup_factures drop column fournisseur");
+        jdbcTemplate.execute("alter table daf_rollup_factures add column if not exists fournisseur_id bigint");
+        jdbcTemplate.execute("alter table daf_rollup_factures alter column fournisseur_id set not null");
+        jdbcTemplate.execute("alter table daf_rollup_factures add constraint uk_rollup_factures_cle " +
+                "unique (jour, statut, fournisseur_id, modalite)");
+    }
+
+    // ===== INDEX =====
+
+    /**
+     * CREATE INDEX CONCURRENTLY ne peut pas s'exécuter dans une transaction : JdbcTemplate est appelé
+     * ici hors de toute transaction Spring. Un index laissé invalide par une création interrompue
+     * est supprimé puis recréé, sinon "if not exists" le conserverait tel quel.
+     */
+    private void creerIndex(String nom, String definition) {
+        List<Boolean> valide = jdbcTemplate.queryForList(
+                "select i.indisvalid from pg_index i join pg_class c on c.oid = i.indexrelid where c.relname = ?",
+                Boolean.class, nom);
+        if (!valide.isEmpty() && Boolean.TRUE.equals(valide.get(0))) {
+            return;
+        }
+        if (!valide.isEmpty()) {
+            log.warn("⚠️ Index {} invalide (création interrompue), reconstruction", nom);
+            jdbcTemplate.execute("drop index concurrently if exists " + nom);
+        }
+        long debut = System.currentTimeMillis();
+        jdbcTemplate.execute("create index concurrently if not exists " + nom + " " + definition);
+        log.info("🗂️ Index {} créé en {} ms", nom, System.currentTimeMillis() - debut);
+    }
+
+    // ===== RATTACHEMENT =====
+
+    private void rattacherFactures() {
+        List<String> noms = factureRepository.findNomsFournisseursNonRattaches();
+        if (noms.isEmpty()) {
+            return;
+        }
+
+        int rattachees = 0;
+        for (String nom : noms) {
+            if (Fournisseur.normaliser(nom).isEmpty()) {
+                log.warn("⚠️ Nom de fournisseur inexploitable, factures non rattachées: '{}'", nom);
+                continue;
+            }
+            Fournisseur fournisseur = fournisseurService.resoudre(nom, null, null);
+            rattachees += factureRepository.rattacherFournisseur(fournisseur, nom);
+        }
+        log.info("🏢 Migration fournisseurs: {} factures rattachées à partir de {} noms", rattachees, noms.size());
+    }
+}
@@ -0,0 +1,57 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Fournisseur;
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.events.FournisseurModifieEvent;
+import ma.eai.daf.facture.repositories.FournisseurRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class FournisseurService {
+
+    private final FournisseurRepository fournisseurRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Retrouve le fournisseur correspondant à un nom saisi (variantes d'écriture comprises)
+     * ou le crée. La forme juridique et la modalité par défaut sont complétées si elles manquent.
+     */
+    public Fournisseur resoudre(String nom, FormeJuridiqueType formeJuridique, ModaliteType modalite) {
+        String nomNormalise = Fournisseur.normaliser(nom);
+        if (nomNormalise.isEmpty()) {
+            throw new RuntimeException("Le nom du fournisseur est obligatoire");
+        }
+
+        Fournisseur fournisseur = fournisseurRepository.findByNomNormalise(nomNormalise)
+                .orElseGet(() -> {
+                    fournisseurRepository.creerSiAbsent(nom.trim(), nomNormalise,
+                            formeJuridique != null ? formeJuridique.name() : null,
+                            modalite != null ? modalite.name() : null);
+                    log.info("🏢 Nouveau fournisseur référencé: {}", nom.trim());
+                    return fournisseurRepository.findByNomNormalise(nomNormalise)
+                            .orElseThrow(() -> new RuntimeException("Fournisseur non trouvé: " + nom));
+                });
+
+        boolean complete = false;
+        if (fournisseur.getFormeJuridique() == null && formeJuridique != null) {
+            fournisseur.setFormeJuridique(formeJuridique);
+            complete = true;
+        }
+        if (fournisseur.getModaliteParDefaut() == null && modalite != null) {
+            fournisseur.setModaliteParDefaut(modalite);
+            complete = true;
+        }
+        if (complete) {
+            eventPublisher.publishEvent(new FournisseurModifieEvent(fournisseur.getId()));
+        }
+        return fournisseur;
+    }
+}
@@ -0,0 +1,101 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.dto.FactureListeDto;
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.mappers.FactureMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Écriture en flux des grandes listes de factures (trésorerie, urgentes, en retard).
+ * <p>
+ * Les factures sont lues sur un curseur, converties et écrites une à une dans la réponse, puis
+ * détachées de la session : la mémoire ne dépend pas du nombre de lignes et le premier octet part
+ * avec la première facture lue. Le JSON est le même tableau que celui de la réponse classique.
+ * <p>
+ * Le corps est écrit après le retour du contrôleur, hors de son thread : la transaction en lecture
+ * seule qu'exige le curseur est ouverte au moment de l'écriture.
+ */
+@Component
+@Slf4j
+public class ListeFacturesEnFlux {
+
+    private final FactureMapper factureMapper;
+    private final ObjectWriter writer;
+    private final TransactionTemplate transaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public ListeFacturesEnFlux(FactureMapper factureMapper,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager) {
+        this.factureMapper = factureMapper;
+        // Sérialiseur résolu une seule fois, sans vidage du tampon après chaque ligne
+        this.writer = objectMapper.writerFor(FactureListeDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setReadOnly(true);
+    }
+
+    public StreamingResponseBody ecrire(String liste, Supplier<Stream<Facture>> requete) {
+        return sortie -> {
+            long debut = System.currentTimeMillis();
+            try {
+                Integer lignes = transaction.execute(statut -> ecrireLignes(sortie, requete));
+                log.info("✅ Liste {} écrite en flux: {} factures en {} ms",
+                        liste, lignes, System.currentTimeMillis() - debut);
+            } catch (RuntimeException e) {
+                // Statut 200 déjà envoyé : le client reçoit un tableau JSON tronqué, donc invalide
+                log.error("❌ Écriture en flux de la liste {} interrompue: {}", liste, e.getMessage());
+                throw e;
+            }
+        };
+    }
+
+    private int ecrireLignes(OutputStream sortie, Supplier<Stream<Facture>> requete) {
+        // Une seule date de référence pour toute la liste
+        LocalDate dateReference = LocalDate.now();
+        int lignes = 0;
+
+        try (Stream<Facture> factures = requete.get();
+             JsonGenerator gen = writer.createGenerator(sortie)) {
+            // La réponse HTTP est fermée par Spring, pas par le générateur
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.writeStartArray();
+
+            Iterator<Facture> curseur = factures.iterator();
+            while (curseur.hasNext()) {
+                Facture facture = curseur.next();
+                writer.writeValue(gen, factureMapper.toListDto(facture, dateReference));
+                // La session ne garde pas les factures déjà écrites
+                entityManager.detach(facture);
+                if (++lignes == 1) {
+                    gen.flush();
+                }
+            }
+
+            gen.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lignes;
+    }
+}
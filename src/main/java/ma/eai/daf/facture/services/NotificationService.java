@@ -3,12 +3,14 @@ package ma.eai.daf.facture.services;
 import ma.eai.daf.facture.entities.Facture;
 import ma.eai.daf.facture.entities.Notification;
 import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.repositories.FactureRepository;
 import ma.eai.daf.facture.repositories.NotificationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Service
@@ -18,6 +20,7 @@ import java.util.List;
 public class NotificationService {
 
     private final NotificationRepository notificationRepository;
+    private final FactureRepository factureRepository;
 
     // ===== NOTIFICATIONS WORKFLOW =====
 
@@ -102,6 +105,18 @@ public class NotificationService {
         log.info("Notification échéance proche envoyée pour facture {}", facture.getNumero());
     }
 
+    /**
+     * Rappel d'échéance, envoyé au plus une fois par facture, échéance et seuil : le marquage
+     * conditionnel en base fait foi, y compris après un redémarrage.
+     */
+    public boolean envoyerRappelEcheance(Long factureId, LocalDate echeance, int seuil) {
+        if (factureRepository.marquerRappelEnvoye(factureId, echeance, seuil) == 0) {
+            return false;
+        }
+        factureRepository.findById(factureId).ifPresent(this::notifierEcheanceProche);
+        return true;
+    }
+
     // ===== GESTION DES NOTIFICATIONS =====
 
     public List<Notification> getNotificationsNonLues(Long userId) {
@@ -0,0 +1,286 @@
+package ma.eai.daf.facture.services;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Stockage des pièces jointes adressé par contenu.
+ * <p>
+ * Le fichier reçu est écrit sur disque par blocs pendant que son SHA-256 est calculé, puis
+ * rangé sous {@code sha256/ab/cd/<empreinte>} : un même scan joint à plusieurs factures n'est
+ * stocké qu'une fois. La mémoire utilisée ne dépend pas de la taille du fichier.
+ * <p>
+ * Un fichier peut ensuite être déplacé dans un segment ({@link SegmentsPiecesJointes}) : son
+ * chemin ne change pas, {@link #localiser(String)} indique où le lire.
+ */
+@Service
+@Slf4j
+public class PieceJointeStockage {
+
+    private static final String ALGORITHME = "SHA-256";
+    private static final String PREFIXE = "sha256";
+    private static final int TAILLE_TAMPON = 64 * 1024;
+
+    // Types servis tels quels au téléchargement ; tout autre contenu part en application/octet-stream
+    public static final Set<String> TYPES_AFFICHABLES = Set.of(
+            MediaType.APPLICATION_PDF_VALUE, MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE);
+    private static final byte[] SIGNATURE_PDF = {'%', 'P', 'D', 'F', '-'};
+    private static final byte[] SIGNATURE_PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+    private static final byte[] SIGNATURE_JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+
+    private final Path racine;
+    private final long tailleMax;
+    private final SegmentsPiecesJointes segments;
+
+    public PieceJointeStockage(@Value("${application.file.uploads.photos-output-path:./uploads}") String racine,
+                               @Value("${application.file.uploads.max-size:200MB}") DataSize tailleMax,
+                               SegmentsPiecesJointes segments) {
+        this.racine = Paths.get(racine).toAbsolutePath().normalize();
+        this.tailleMax = tailleMax.toBytes();
+        this.segments = segments;
+    }
+
+    /**
+     * Écrit le flux dans un fichier temporaire en calculant son empreinte, puis le range à son
+     * adresse définitive (ou le supprime si ce contenu est déjà stocké).
+     */
+    public Stockee stocker(InputStream contenu) throws IOException {
+        Path temporaire = Files.createTempFile(repertoire("tmp"), "upload-", ".part");
+        try {
+            MessageDigest digest = MessageDigest.getInstance(ALGORITHME);
+            long taille = 0;
+            byte[] tampon = new byte[TAILLE_TAMPON];
+            try (OutputStream sortie = Files.newOutputStream(temporaire)) {
+                int lus;
+                while ((lus = contenu.read(tampon)) != -1) {
+                    taille += lus;
+                    if (taille > tailleMax) {
+                        throw new FichierTropVolumineuxException(tailleMax);
+                    }
+                    digest.update(tampon, 0, lus);
+                    sortie.write(tampon, 0, lus);
+                }
+            }
+            if (taille == 0) {
+                throw new RuntimeException("Le fichier est vide");
+            }
+
+            return ranger(temporaire, HexFormat.of().formatHex(digest.digest()), taille);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    /**
+     * Range un fichier déjà complet sur disque (téléversement par morceaux) : son empreinte est
+     * calculée en une lecture séquentielle, puis il est déplacé, ou supprimé s'il est déjà stocké.
+     */
+    public Stockee stockerFichier(Path source) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(ALGORITHME);
+            long taille = 0;
+            byte[] tampon = new byte[TAILLE_TAMPON];
+            try (InputStream entree = Files.newInputStream(source)) {
+                int lus;
+                while ((lus = entree.read(tampon)) != -1) {
+                    taille += lus;
+                    digest.update(tampon, 0, lus);
+                }
+            }
+            return ranger(source, HexFormat.of().formatHex(digest.digest()), taille);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    /**
+     * Sous-répertoire de travail du stockage (même système de fichiers : les déplacements sont atomiques).
+     */
+    public Path repertoire(String nom) throws IOException {
+        return Files.createDirectories(racine.resolve(nom));
+    }
+
+    public long getTailleMax() {
+        return tailleMax;
+    }
+
+    private Stockee ranger(Path fichier, String empreinte, long taille) throws IOException {
+        String chemin = PREFIXE + "/" + empreinte.substring(0, 2) + "/" + empreinte.substring(2, 4) + "/" + empreinte;
+        boolean nouveau = segments.trouver(chemin).isEmpty() && deplacer(fichier, racine.resolve(chemin));
+
+        log.info("📎 Pièce jointe {} ({} octets){}", empreinte, taille, nouveau ? "" : " déjà stockée");
+        return new Stockee(chemin, empreinte, taille, nouveau);
+    }
+
+    private boolean deplacer(Path temporaire, Path cible) throws IOException {
+        if (Files.exists(cible)) {
+            return false;
+        }
+        Files.createDirectories(cible.getParent());
+        try {
+            Files.move(temporaire, cible, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // Même contenu envoyé simultanément par une autre requête
+            return false;
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(temporaire, cible);
+                return true;
+            } catch (FileAlreadyExistsException ex) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Chemin absolu d'une pièce jointe stockée ; refuse tout chemin hors du répertoire de stockage.
+     */
+    public Path resoudre(String chemin) {
+        Path fichier = racine.resolve(chemin).normalize();
+        if (!fichier.startsWith(racine)) {
+            throw new RuntimeException("Chemin de pièce jointe invalide");
+        }
+        return fichier;
+    }
+
+    /**
+     * Supprime un contenu isolé associé à aucune facture (téléversement abandonné après son rangement).
+     * Un contenu déjà compacté dans un segment n'est pas concerné.
+     */
+    public void supprimer(String chemin) throws IOException {
+        if (Files.deleteIfExists(resoudre(chemin))) {
+            log.info("🗑️ Pièce jointe {} supprimée (non associée)", empreinte(chemin));
+        }
+    }
+
+    /**
+     * Emplacement d'un fichier stocké : dans un segment s'il a été compacté, sinon le fichier isolé.
+     */
+    public Optional<Contenu> localiser(String chemin) throws IOException {
+        Optional<Contenu> compacte = segments.trouver(chemin);
+        if (compacte.isPresent()) {
+            return compacte;
+        }
+        Path fichier = resoudre(chemin);
+        if (!Files.isRegularFile(fichier)) {
+            return Optional.empty();
+        }
+        long taille = Files.size(fichier);
+        return Optional.of(new Contenu(fichier, 0, taille, taille, false, false));
+    }
+
+    public InputStream ouvrir(Contenu contenu) throws IOException {
+        if (contenu.isCompacte()) {
+            return segments.ouvrir(contenu);
+        }
+        try {
+            return Files.newInputStream(contenu.getFichier());
+        } catch (NoSuchFileException e) {
+            // Fichier compacté puis supprimé depuis sa localisation : il se lit dans son segment
+            Optional<Contenu> compacte = segments.trouver(racine.relativize(contenu.getFichier()).toString());
+            if (compacte.isEmpty()) {
+                throw e;
+            }
+            return segments.ouvrir(compacte.get());
+        }
+    }
+
+    /**
+     * Type d'un fichier stocké, reconnu à sa signature (premiers octets) : le type déclaré par le
+     * client n'est pas retenu. Un contenu non reconnu est de l'application/octet-stream.
+     */
+    public String detecterType(String chemin) throws IOException {
+        Contenu contenu = localiser(chemin)
+                .orElseThrow(() -> new IOException("Pièce jointe introuvable: " + chemin));
+        byte[] entete;
+        try (InputStream entree = ouvrir(contenu)) {
+            entete = entree.readNBytes(SIGNATURE_PNG.length);
+        }
+        return typeDeSignature(entete);
+    }
+
+    static String typeDeSignature(byte[] entete) {
+        if (commencePar(entete, SIGNATURE_PDF)) {
+            return MediaType.APPLICATION_PDF_VALUE;
+        }
+        if (commencePar(entete, SIGNATURE_PNG)) {
+            return MediaType.IMAGE_PNG_VALUE;
+        }
+        if (commencePar(entete, SIGNATURE_JPEG)) {
+            return MediaType.IMAGE_JPEG_VALUE;
+        }
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private static boolean commencePar(byte[] entete, byte[] signature) {
+        return entete.length >= signature.length
+                && Arrays.equals(entete, 0, signature.length, signature, 0, signature.length);
+    }
+
+    /**
+     * Empreinte du contenu stocké, déduite de son adresse.
+     */
+    public static String empreinte(String chemin) {
+        return chemin.substring(chemin.lastIndexOf('/') + 1);
+    }
+
+    @lombok.Value
+    public static class Stockee {
+        String chemin;
+        String empreinte;
+        long taille;
+        boolean nouveau;
+    }
+
+    /**
+     * Octets d'un fichier stocké : {@code tailleStockee} octets à partir de {@code position} dans
+     * {@code fichier}, qui donnent {@code taille} octets une fois décompressés. Non compressé, le
+     * contenu peut être envoyé tel quel depuis le fichier.
+     */
+    @lombok.Value
+    public static class Contenu {
+        Path fichier;
+        long position;
+        long tailleStockee;
+        long taille;
+        boolean compacte;
+        boolean compresse;
+    }
+
+    @Getter
+    public static class FichierTropVolumineuxException extends RuntimeException {
+
+        private final long tailleMax;
+
+        FichierTropVolumineuxException(long tailleMax) {
+            super("Le fichier dépasse la taille maximale autorisée (" + DataSize.ofBytes(tailleMax).toMegabytes() + " Mo)");
+            this.tailleMax = tailleMax;
+        }
+    }
+}
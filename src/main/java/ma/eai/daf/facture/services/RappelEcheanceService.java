@@ -0,0 +1,201 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rappels d'échéance (J-7, J-3, J-0 par défaut) des factures non payées.
+ * <p>
+ * Les prochains rappels sont tenus dans une file de priorité ordonnée par date de déclenchement :
+ * chaque passage ne dépile que les rappels arrivés à terme, sans relire la table des factures.
+ * La file est reconstruite au démarrage puis corrigée à chaque modification de facture ; un rappel
+ * devenu caduc (facture payée, échéance modifiée) est simplement ignoré quand il sort de la file.
+ */
+@Service
+@Slf4j
+public class RappelEcheanceService {
+
+    private final FactureRepository factureRepository;
+    private final NotificationService notificationService;
+    // Seuils en jours avant l'échéance, du plus éloigné au plus proche
+    private final int[] seuils;
+
+    private final ReentrantLock verrou = new ReentrantLock();
+    private final PriorityQueue<Rappel> file = new PriorityQueue<>(Comparator.comparing(Rappel::getDeclenchement));
+    // Version courante de la planification de chaque facture ; les rappels d'une version antérieure sont caducs
+    private final Map<Long, Long> versions = new HashMap<>();
+    private long derniereVersion;
+
+    public RappelEcheanceService(FactureRepository factureRepository,
+                                 NotificationService notificationService,
+                                 @Value("${factures.rappels.seuils:7,3,0}") int[] seuils) {
+        this.factureRepository = factureRepository;
+        this.notificationService = notificationService;
+        this.seuils = Arrays.stream(seuils).boxed().sorted(Comparator.reverseOrder()).mapToInt(Integer::intValue).toArray();
+    }
+
+    // ===== PLANIFICATION =====
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void charger() {
+        long debut = System.currentTimeMillis();
+        LocalDate aujourdhui = LocalDate.now();
+        List<Object[]> echeances = factureRepository.findEcheancesOuvertes(aujourdhui);
+
+        verrou.lock();
+        try {
+            file.clear();
+            versions.clear();
+            echeances.forEach(echeance -> planifier(echeance, aujourdhui));
+            log.info("⏰ Rappels d'échéance planifiés: {} rappels pour {} factures en {} ms",
+                    file.size(), versions.size(), System.currentTimeMillis() - debut);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactureModifiee(FactureModifieeEvent event) {
+        Long factureId = event.getFactureId();
+        // Lecture sous le verrou : la dernière lecture de la facture est toujours celle appliquée
+        verrou.lock();
+        try {
+            versions.remove(factureId);
+            if (event.getType() != FactureModifieeEvent.TypeModification.SUPPRESSION) {
+                LocalDate aujourdhui = LocalDate.now();
+                factureRepository.findEcheanceOuverte(factureId).forEach(echeance -> planifier(echeance, aujourdhui));
+            }
+        } catch (Exception e) {
+            log.error("❌ Replanification des rappels impossible pour la facture {}: {}", factureId, e.getMessage());
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Planifie les rappels restants d'une facture (appelé sous le verrou). Parmi les seuils déjà
+     * dépassés, seul le plus proche de l'échéance est conservé : une facture saisie à J-2 reçoit
+     * le rappel J-3, pas aussi celui de J-7.
+     */
+    private void planifier(Object[] ligne, LocalDate aujourdhui) {
+        Long factureId = (Long) ligne[0];
+        LocalDate echeance = (LocalDate) ligne[1];
+        Integer seuilEnvoye = (Integer) ligne[2];
+        LocalDate echeanceRappelee = (LocalDate) ligne[3];
+        if (echeance == null || echeance.isBefore(aujourdhui)) {
+            return;
+        }
+
+        long version = ++derniereVersion;
+        versions.put(factureId, version);
+
+        Rappel depasse = null;
+        for (int seuil : seuils) {
+            if (echeance.equals(echeanceRappelee) && seuilEnvoye != null && seuilEnvoye <= seuil) {
+                continue;
+            }
+            Rappel rappel = new Rappel(factureId, echeance, seuil, echeance.minusDays(seuil), version);
+            if (rappel.getDeclenchement().isAfter(aujourdhui)) {
+                file.add(rappel);
+            } else {
+                depasse = rappel;
+            }
+        }
+        if (depasse != null) {
+            file.add(depasse);
+        }
+    }
+
+    // ===== DÉCLENCHEMENT =====
+
+    @Scheduled(fixedDelayString = "${factures.rappels.intervalle:PT5M}")
+    public void declencher() {
+        LocalDate aujourdhui = LocalDate.now();
+
+        // Un seul rappel par facture et par passage : le seuil le plus proche de l'échéance
+        Map<Long, Rappel> arrives = new LinkedHashMap<>();
+        verrou.lock();
+        try {
+            while (!file.isEmpty() && !file.peek().getDeclenchement().isAfter(aujourdhui)) {
+                Rappel rappel = file.poll();
+                if (estCourant(rappel)) {
+                    arrives.merge(rappel.getFactureId(), rappel,
+                            (a, b) -> a.getSeuil() <= b.getSeuil() ? a : b);
+                }
+            }
+        } finally {
+            verrou.unlock();
+        }
+
+        int envoyes = 0;
+        for (Rappel rappel : arrives.values()) {
+            try {
+                if (notificationService.envoyerRappelEcheance(rappel.getFactureId(), rappel.getEcheance(), rappel.getSeuil())) {
+                    envoyes++;
+                }
+            } catch (Exception e) {
+                log.error("❌ Rappel J-{} impossible pour la facture {}: {}",
+                        rappel.getSeuil(), rappel.getFactureId(), e.getMessage());
+                remettreEnFile(rappel);
+            }
+        }
+        if (envoyes > 0) {
+            log.info("⏰ {} rappels d'échéance envoyés", envoyes);
+        }
+    }
+
+    private boolean estCourant(Rappel rappel) {
+        return Long.valueOf(rappel.getVersion()).equals(versions.get(rappel.getFactureId()));
+    }
+
+    private void remettreEnFile(Rappel rappel) {
+        verrou.lock();
+        try {
+            if (estCourant(rappel)) {
+                file.add(rappel);
+            }
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    public Map<String, Object> getEtat() {
+        verrou.lock();
+        try {
+            Map<String, Object> etat = new LinkedHashMap<>();
+            etat.put("facturesSuivies", versions.size());
+            etat.put("rappelsEnFile", file.size());
+            etat.put("prochainRappel", file.isEmpty() ? null : file.peek().getDeclenchement());
+            etat.put("seuils", Arrays.stream(seuils).boxed().toList());
+            return etat;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    @lombok.Value
+    private static class Rappel {
+        Long factureId;
+        LocalDate echeance;
+        int seuil;
+        LocalDate declenchement;
+        long version;
+    }
+}
@@ -0,0 +1,312 @@
+package ma.eai.daf.facture.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Segments de pièces jointes froides.
+ * <p>
+ * Les fichiers rarement lus sont ajoutés bout à bout dans de gros fichiers {@code segment-NNNNNN.seg},
+ * chacun compressé séparément (ou laissé tel quel si la compression ne gagne rien, cas des PDF et
+ * JPEG). Un index {@code segment-NNNNNN.idx} associe le chemin d'origine à la position dans le
+ * segment : le stockage continue de résoudre les mêmes chemins, que le fichier soit isolé ou compacté.
+ * <p>
+ * Un segment n'est jamais réécrit : les données sont ajoutées et synchronisées avant l'entrée
+ * d'index, et le fichier isolé n'est supprimé qu'ensuite. Après un arrêt brutal, une entrée d'index
+ * incomplète est tronquée au chargement et le fichier isolé est toujours là.
+ */
+@Service
+@Slf4j
+public class SegmentsPiecesJointes {
+
+    private static final String REPERTOIRE = "segments";
+    private static final String EXTENSION_SEGMENT = ".seg";
+    private static final String EXTENSION_INDEX = ".idx";
+
+    private final Path repertoire;
+    private final long tailleMaxSegment;
+
+    // Chemin d'origine -> emplacement dans un segment
+    private final Map<String, PieceJointeStockage.Contenu> index = new ConcurrentHashMap<>();
+    // Projection mémoire de chaque segment, refaite quand le segment courant a grandi
+    private final Map<Path, MappedByteBuffer> projections = new ConcurrentHashMap<>();
+
+    private final ReentrantLock ecriture = new ReentrantLock();
+    private int segmentCourant = 1;
+
+    public SegmentsPiecesJointes(@Value("${application.file.uploads.photos-output-path:./uploads}") String racine,
+                                 @Value("${application.file.segments.taille-max:1GB}") DataSize tailleMaxSegment) {
+        this.repertoire = Paths.get(racine).toAbsolutePath().normalize().resolve(REPERTOIRE);
+        // Un segment est projeté d'un seul tenant : un MappedByteBuffer est limité à 2 Go
+        this.tailleMaxSegment = Math.min(tailleMaxSegment.toBytes(), Integer.MAX_VALUE);
+    }
+
+    @PostConstruct
+    public void charger() throws IOException {
+        Files.createDirectories(repertoire);
+        long debut = System.currentTimeMillis();
+        int segments = 0;
+
+        try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(repertoire, "segment-*" + EXTENSION_INDEX)) {
+            for (Path fichierIndex : fichiers) {
+                int numero = numero(fichierIndex);
+                chargerIndex(fichierIndex, fichierSegment(numero));
+                segmentCourant = Math.max(segmentCourant, numero);
+                segments++;
+            }
+        }
+
+        log.info("🗄️ Segments de pièces jointes: {} segments, {} fichiers compactés, chargés en {} ms",
+                segments, index.size(), System.currentTimeMillis() - debut);
+    }
+
+    // ===== LECTURE =====
+
+    public Optional<PieceJointeStockage.Contenu> trouver(String chemin) {
+        return Optional.ofNullable(index.get(chemin));
+    }
+
+    /**
+     * Lit une entrée depuis la projection mémoire du segment, décompressée au fil de la lecture.
+     */
+    public InputStream ouvrir(PieceJointeStockage.Contenu contenu) {
+        MappedByteBuffer projection = projeter(contenu.getFichier(), contenu.getPosition() + contenu.getTailleStockee());
+        ByteBuffer tranche = projection.slice((int) contenu.getPosition(), (int) contenu.getTailleStockee());
+        InputStream entree = new TrancheInputStream(tranche);
+        return contenu.isCompresse() ? new InflaterInputStream(entree) : entree;
+    }
+
+    private MappedByteBuffer projeter(Path segment, long fin) {
+        return projections.compute(segment, (fichier, projection) -> {
+            if (projection != null && projection.capacity() >= fin) {
+                return projection;
+            }
+            try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+                return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // ===== ÉCRITURE =====
+
+    /**
+     * Ajoute les fichiers au segment courant et retourne les chemins effectivement compactés :
+     * le segment plein, les fichiers restants attendent le passage suivant (segment neuf).
+     */
+    public List<String> ajouter(Map<String, Path> fichiers) throws IOException {
+        ecriture.lock();
+        try {
+            Path segment = fichierSegment(segmentCourant);
+            Map<String, PieceJointeStockage.Contenu> ajoutes = new LinkedHashMap<>();
+            boolean plein = false;
+
+            try (FileChannel canal = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                long position = canal.size();
+                for (Map.Entry<String, Path> fichier : fichiers.entrySet()) {
+                    if (index.containsKey(fichier.getKey())) {
+                        continue;
+                    }
+                    byte[] brut = Files.readAllBytes(fichier.getValue());
+                    byte[] compresse = compresser(brut);
+                    boolean gain = compresse.length < brut.length;
+                    byte[] donnees = gain ? compresse : brut;
+
+                    if (position > 0 && position + donnees.length > tailleMaxSegment) {
+                        plein = true;
+                        break;
+                    }
+                    ByteBuffer tampon = ByteBuffer.wrap(donnees);
+                    while (tampon.hasRemaining()) {
+                        canal.write(tampon, position + tampon.position());
+                    }
+                    ajoutes.put(fichier.getKey(), new PieceJointeStockage.Contenu(
+                            segment, position, donnees.length, brut.length, true, gain));
+                    position += donnees.length;
+                }
+                // Les données sont sur disque avant que l'index ne les désigne
+                canal.force(true);
+            }
+
+            ecrireIndex(segmentCourant, ajoutes);
+            index.putAll(ajoutes);
+            if (plein) {
+                segmentCourant++;
+                log.info("🗄️ Segment {} plein, passage au segment {}", segment.getFileName(), segmentCourant);
+            }
+            return new ArrayList<>(ajoutes.keySet());
+        } finally {
+            ecriture.unlock();
+        }
+    }
+
+    public Map<String, Object> getEtat() {
+        long stockes = 0;
+        long originaux = 0;
+        for (PieceJointeStockage.Contenu contenu : index.values()) {
+            stockes += contenu.getTailleStockee();
+            originaux += contenu.getTaille();
+        }
+        Map<String, Object> etat = new HashMap<>();
+        etat.put("segmentCourant", segmentCourant);
+        etat.put("fichiers", index.size());
+        etat.put("octetsOriginaux", originaux);
+        etat.put("octetsStockes", stockes);
+        return etat;
+    }
+
+    // ===== INDEX =====
+    // Entrée : longueur du chemin (short), chemin UTF-8, position, taille stockée, taille d'origine (long), compressé (byte)
+
+    private void chargerIndex(Path fichierIndex, Path segment) throws IOException {
+        ByteBuffer entrees = ByteBuffer.wrap(Files.readAllBytes(fichierIndex));
+        int valides = 0;
+        try {
+            while (entrees.hasRemaining()) {
+                byte[] chemin = new byte[entrees.getShort()];
+                entrees.get(chemin);
+                long position = entrees.getLong();
+                long tailleStockee = entrees.getLong();
+                long taille = entrees.getLong();
+                boolean compresse = entrees.get() != 0;
+                index.put(new String(chemin, StandardCharsets.UTF_8), new PieceJointeStockage.Contenu(
+                        segment, position, tailleStockee, taille, true, compresse));
+                valides = entrees.position();
+            }
+        } catch (BufferUnderflowException e) {
+            // Entrée interrompue par un arrêt brutal : le fichier isolé n'a pas été supprimé
+            log.warn("⚠️ Index {} tronqué à {} octets", fichierIndex.getFileName(), valides);
+            try (FileChannel canal = FileChannel.open(fichierIndex, StandardOpenOption.WRITE)) {
+                canal.truncate(valides);
+            }
+        }
+    }
+
+    private void ecrireIndex(int numero, Map<String, PieceJointeStockage.Contenu> ajoutes) throws IOException {
+        if (ajoutes.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream entrees = new ByteArrayOutputStream();
+        for (Map.Entry<String, PieceJointeStockage.Contenu> ajout : ajoutes.entrySet()) {
+            byte[] chemin = ajout.getKey().getBytes(StandardCharsets.UTF_8);
+            PieceJointeStockage.Contenu contenu = ajout.getValue();
+            ByteBuffer entree = ByteBuffer.allocate(Short.BYTES + chemin.length + 3 * Long.BYTES + 1);
+            entree.putShort((short) chemin.length)
+                    .put(chemin)
+                    .putLong(contenu.getPosition())
+                    .putLong(contenu.getTailleStockee())
+                    .putLong(contenu.getTaille())
+                    .put((byte) (contenu.isCompresse() ? 1 : 0));
+            entrees.write(entree.array(), 0, entree.position());
+        }
+
+        try (FileChannel canal = FileChannel.open(fichierIndex(numero),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer tampon = ByteBuffer.wrap(entrees.toByteArray());
+            while (tampon.hasRemaining()) {
+                canal.write(tampon);
+            }
+            canal.force(true);
+        }
+    }
+
+    private static byte[] compresser(byte[] donnees) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(donnees);
+            deflater.finish();
+            ByteArrayOutputStream sortie = new ByteArrayOutputStream(donnees.length / 2 + 64);
+            byte[] tampon = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                sortie.write(tampon, 0, deflater.deflate(tampon));
+            }
+            return sortie.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Path fichierSegment(int numero) {
+        return repertoire.resolve(String.format("segment-%06d%s", numero, EXTENSION_SEGMENT));
+    }
+
+    private Path fichierIndex(int numero) {
+        return repertoire.resolve(String.format("segment-%06d%s", numero, EXTENSION_INDEX));
+    }
+
+    private static int numero(Path fichierIndex) {
+        String nom = fichierIndex.getFileName().toString();
+        return Integer.parseInt(nom.substring("segment-".length(), nom.length() - EXTENSION_INDEX.length()));
+    }
+
+    /**
+     * Flux de lecture sur une tranche de la projection mémoire, sans copie préalable.
+     */
+    private static class TrancheInputStream extends InputStream {
+
+        private final ByteBuffer tranche;
+
+        TrancheInputStream(ByteBuffer tranche) {
+            this.tranche = tranche;
+        }
+
+        @Override
+        public int read() {
+            return tranche.hasRemaining() ? tranche.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!tranche.hasRemaining()) {
+                return -1;
+            }
+            int lus = Math.min(len, tranche.remaining());
+            tranche.get(b, off, lus);
+            return lus;
+        }
+
+        @Override
+        public long skip(long n) {
+            int sautes = (int) Math.max(0, Math.min(n, tranche.remaining()));
+            tranche.position(tranche.position() + sautes);
+            return sautes;
+        }
+
+        @Override
+        public int available() {
+            return tranche.remaining();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Facture;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Téléversement reprenable des pièces jointes volumineuses, sur le modèle du protocole tus.
+ * <p>
+ * Le client déclare la taille du fichier, puis envoie des morceaux en indiquant leur position :
+ * chaque morceau est écrit directement à sa place dans un fichier partiel, ce qui permet des envois
+ * en parallèle et la reprise après une coupure sans renvoyer ce qui est déjà reçu. Un morceau qui
+ * chevauche une plage déjà reçue ou en cours d'écriture est refusé. Une fois le fichier complet,
+ * il rejoint le stockage adressé par contenu et est associé à la facture.
+ * <p>
+ * Le téléversement n'est oublié qu'une fois la pièce jointe associée : si l'association échoue, le
+ * client peut relancer la finalisation, ou annuler (le contenu rangé pour rien est alors supprimé).
+ * <p>
+ * L'état des téléversements est tenu en mémoire : après un redémarrage, les fichiers partiels
+ * sont purgés et les clients recommencent.
+ */
+@Service
+@Slf4j
+public class TeleversementService {
+
+    private static final String REPERTOIRE = "partiels";
+    private static final String EXTENSION = ".part";
+    private static final int TAILLE_TAMPON = 64 * 1024;
+
+    private final FactureService factureService;
+    private final PieceJointeStockage stockage;
+    private final Duration expiration;
+
+    private final Map<String, Televersement> televersements = new ConcurrentHashMap<>();
+
+    public TeleversementService(FactureService factureService,
+                                PieceJointeStockage stockage,
+                                @Value("${application.file.uploads.expiration:PT24H}") Duration expiration) {
+        this.factureService = factureService;
+        this.stockage = stockage;
+        this.expiration = expiration;
+    }
+
+    // ===== PROTOCOLE =====
+
+    public Televersement creer(Long factureId, Long createurId, String nom, long taille) throws IOException {
+        if (taille <= 0) {
+            throw new RuntimeException("La taille du fichier est obligatoire");
+        }
+        if (taille > stockage.getTailleMax()) {
+            throw new PieceJointeStockage.FichierTropVolumineuxException(stockage.getTailleMax());
+        }
+        factureService.verifierDepotPieceJointe(factureId, createurId);
+
+        String id = UUID.randomUUID().toString();
+        Path fichier = stockage.repertoire(REPERTOIRE).resolve(id + EXTENSION);
+        Files.createFile(fichier);
+
+        Televersement televersement = new Televersement(id, factureId, createurId, nom, taille, fichier);
+        televersements.put(id, televersement);
+        log.info("📤 Téléversement {} ouvert pour la facture {}: {} ({} octets)", id, factureId, nom, taille);
+        return televersement;
+    }
+
+    public Televersement getTeleversement(String id, Long createurId) {
+        Televersement televersement = televersements.get(id);
+        if (televersement == null || !televersement.createurId.equals(createurId)) {
+            throw new TeleversementIntrouvableException();
+        }
+        return televersement;
+    }
+
+    /**
+     * Écrit un morceau de {@code longueur} octets à la position {@code position} et retourne
+     * le nombre d'octets contigus reçus depuis le début du fichier.
+     */
+    public long ecrire(String id, Long createurId, long position, long longueur, InputStream contenu) throws IOException {
+        Televersement televersement = getTeleversement(id, createurId);
+        televersement.reserver(position, longueur);
+
+        long ecrits = 0;
+        try (FileChannel canal = FileChannel.open(televersement.fichier, StandardOpenOption.WRITE)) {
+            byte[] tampon = new byte[TAILLE_TAMPON];
+            int lus;
+            while (ecrits < longueur
+                    && (lus = contenu.read(tampon, 0, (int) Math.min(tampon.length, longueur - ecrits))) != -1) {
+                ByteBuffer bloc = ByteBuffer.wrap(tampon, 0, lus);
+                while (bloc.hasRemaining()) {
+                    canal.write(bloc, position + ecrits + bloc.position());
+                }
+                ecrits += lus;
+            }
+        } finally {
+            // Ce qui a été écrit avant une coupure reste acquis
+            televersement.liberer(position, longueur, ecrits);
+        }
+        return televersement.getPosition();
+    }
+
+    /**
+     * Le fichier est complet : il rejoint le stockage des pièces jointes et est associé à la facture.
+     */
+    public Facture terminer(String id, Long createurId) throws IOException {
+        Televersement televersement = getTeleversement(id, createurId);
+        televersement.verrou.lock();
+        try {
+            televersement.verifierLibre();
+            if (televersement.stockee == null
+                    && (!televersement.enCours.isEmpty() || televersement.getPosition() != televersement.taille)) {
+                throw new RuntimeException("Le fichier n'est pas encore complet ("
+                        + televersement.getPosition() + "/" + televersement.taille + " octets)");
+            }
+            // Plus aucun morceau, annulation ni purge jusqu'à la fin de la finalisation
+            televersement.finalisation = true;
+        } finally {
+            televersement.verrou.unlock();
+        }
+
+        try {
+            // Fichier déjà rangé par une finalisation précédente dont l'association a échoué
+            if (televersement.stockee == null) {
+                try {
+                    televersement.stockee = stockage.stockerFichier(televersement.fichier);
+                } catch (IOException | RuntimeException e) {
+                    // Le fichier partiel n'est plus utilisable : le client recommence le téléversement
+                    televersements.remove(id);
+                    throw e;
+                }
+            }
+            Facture facture = factureService.attacherPieceJointe(televersement.factureId, createurId,
+                    televersement.nom, televersement.stockee);
+            televersements.remove(id);
+            log.info("📤 Téléversement {} terminé pour la facture {}", id, televersement.factureId);
+            return facture;
+        } finally {
+            televersement.verrou.lock();
+            try {
+                televersement.finalisation = false;
+                televersement.derniereActivite = Instant.now();
+            } finally {
+                televersement.verrou.unlock();
+            }
+        }
+    }
+
+    public void annuler(String id, Long createurId) throws IOException {
+        Televersement televersement = getTeleversement(id, createurId);
+        televersement.verrou.lock();
+        try {
+            televersement.verifierLibre();
+            televersements.remove(id);
+        } finally {
+            televersement.verrou.unlock();
+        }
+        nettoyer(televersement);
+        log.info("📤 Téléversement {} annulé", id);
+    }
+
+    /**
+     * Supprime le fichier partiel, ou le contenu rangé par une finalisation dont l'association a
+     * échoué s'il a été créé par ce téléversement et qu'aucune facture ne l'utilise entre-temps.
+     */
+    private void nettoyer(Televersement televersement) throws IOException {
+        Files.deleteIfExists(televersement.fichier);
+        PieceJointeStockage.Stockee stockee = televersement.stockee;
+        if (stockee != null && stockee.isNouveau() && !factureService.estPieceJointeUtilisee(stockee.getChemin())) {
+            stockage.supprimer(stockee.getChemin());
+        }
+    }
+
+    // ===== PURGE =====
+
+    /**
+     * Supprime les téléversements inactifs depuis plus que le délai d'expiration, ainsi que les
+     * fichiers partiels sans téléversement connu (laissés par un redémarrage).
+     */
+    @Scheduled(fixedDelayString = "${application.file.uploads.purge-interval:PT15M}")
+    public void purger() {
+        Instant limite = Instant.now().minus(expiration);
+        List<Televersement> expires = new ArrayList<>();
+        televersements.values().removeIf(televersement -> {
+            if (televersement.estExpire(limite)) {
+                expires.add(televersement);
+                return true;
+            }
+            return false;
+        });
+
+        int orphelins = 0;
+        try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(stockage.repertoire(REPERTOIRE), "*" + EXTENSION)) {
+            for (Televersement televersement : expires) {
+                nettoyer(televersement);
+            }
+            for (Path fichier : fichiers) {
+                String id = fichier.getFileName().toString().replace(EXTENSION, "");
+                if (!televersements.containsKey(id) && Files.getLastModifiedTime(fichier).toInstant().isBefore(limite)) {
+                    Files.deleteIfExists(fichier);
+                    orphelins++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("❌ Erreur lors de la purge des téléversements: {}", e.getMessage());
+        }
+
+        if (!expires.isEmpty() || orphelins > 0) {
+            log.info("🧹 Téléversements purgés: {} expirés, {} fichiers orphelins", expires.size(), orphelins);
+        }
+    }
+
+    // ===== ÉTAT D'UN TÉLÉVERSEMENT =====
+
+    public class Televersement {
+
+        @Getter private final String id;
+        @Getter private final Long factureId;
+        private final Long createurId;
+        @Getter private final String nom;
+        @Getter private final long taille;
+        private final Path fichier;
+        private volatile Instant derniereActivite = Instant.now();
+        // Finalisation en cours, et contenu déjà rangé si une association précédente a échoué
+        private boolean finalisation;
+        private volatile PieceJointeStockage.Stockee stockee;
+
+        private final ReentrantLock verrou = new ReentrantLock();
+        // Plages reçues et plages en cours d'écriture : début -> fin (exclue), sans chevauchement
+        private final TreeMap<Long, Long> recues = new TreeMap<>();
+        private final TreeMap<Long, Long> enCours = new TreeMap<>();
+
+        Televersement(String id, Long factureId, Long createurId, String nom, long taille, Path fichier) {
+            this.id = id;
+            this.factureId = factureId;
+            this.createurId = createurId;
+            this.nom = nom;
+            this.taille = taille;
+            this.fichier = fichier;
+        }
+
+        /**
+         * Nombre d'octets contigus reçus depuis le début : la position de reprise d'un envoi séquentiel.
+         */
+        public long getPosition() {
+            verrou.lock();
+            try {
+                Map.Entry<Long, Long> premiere = recues.firstEntry();
+                return premiere != null && premiere.getKey() == 0 ? premiere.getValue() : 0;
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        public List<long[]> getPlagesRecues() {
+            verrou.lock();
+            try {
+                List<long[]> plages = new ArrayList<>(recues.size());
+                recues.forEach((debut, fin) -> plages.add(new long[]{debut, fin}));
+                return plages;
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        public Instant getExpiration() {
+            return derniereActivite.plus(expiration);
+        }
+
+        void reserver(long position, long longueur) {
+            verrou.lock();
+            try {
+                if (position < 0 || longueur <= 0 || position + longueur > taille) {
+                    throw new PositionInvalideException("Le morceau [" + position + ", " + (position + longueur)
+                            + "[ sort du fichier (" + taille + " octets)");
+                }
+                if (finalisation || stockee != null) {
+                    throw new PositionInvalideException("Le fichier est complet, le téléversement est en cours de finalisation");
+                }
+                if (chevauche(recues, position, position + longueur) || chevauche(enCours, position, position + longueur)) {
+                    throw new PositionInvalideException("Le morceau [" + position + ", " + (position + longueur)
+                            + "[ chevauche une plage déjà reçue ou en cours d'envoi");
+                }
+                enCours.put(position, position + longueur);
+                derniereActivite = Instant.now();
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        void liberer(long position, long longueur, long ecrits) {
+            verrou.lock();
+            try {
+                enCours.remove(position);
+                if (ecrits > 0) {
+                    ajouterPlage(position, position + ecrits);
+                }
+                derniereActivite = Instant.now();
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        boolean estExpire(Instant limite) {
+            verrou.lock();
+            try {
+                return enCours.isEmpty() && !finalisation && derniereActivite.isBefore(limite);
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        // Appelé sous le verrou
+        private void verifierLibre() {
+            if (finalisation) {
+                throw new FinalisationEnCoursException();
+            }
+        }
+
+        // Fusionne la plage avec ses voisines contiguës
+        private void ajouterPlage(long debut, long fin) {
+            Map.Entry<Long, Long> precedente = recues.floorEntry(debut);
+            if (precedente != null && precedente.getValue() == debut) {
+                debut = precedente.getKey();
+                recues.remove(debut);
+            }
+            Long suivante = recues.get(fin);
+            if (suivante != null) {
+                recues.remove(fin);
+                fin = suivante;
+            }
+            recues.put(debut, fin);
+        }
+
+        private static boolean chevauche(TreeMap<Long, Long> plages, long debut, long fin) {
+            Map.Entry<Long, Long> precedente = plages.floorEntry(debut);
+            if (precedente != null && precedente.getValue() > debut) {
+                return true;
+            }
+            Long suivante = plages.ceilingKey(debut);
+            return suivante != null && suivante < fin;
+        }
+    }
+
+    /**
+     * Téléversement inconnu, expiré ou appartenant à un autre utilisateur.
+     */
+    public static class TeleversementIntrouvableException extends RuntimeException {
+        TeleversementIntrouvableException() {
+            super("Téléversement introuvable ou expiré");
+        }
+    }
+
+    /**
+     * Finalisation déjà lancée par une autre requête.
+     */
+    public static class FinalisationEnCoursException extends RuntimeException {
+        FinalisationEnCoursException() {
+            super("La finalisation de ce téléversement est déjà en cours");
+        }
+    }
+
+    /**
+     * Position de morceau incohérente avec ce qui est déjà reçu.
+     */
+    public static class PositionInvalideException extends RuntimeException {
+        PositionInvalideException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ma.eai.daf.facture.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.NaturalIdStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gestion du cache de second niveau Hibernate des utilisateurs : éviction après chaque
+ * modification et statistiques de taux de succès (aussi exposées par Micrometer sous hibernate.*).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserCacheService {
+
+    private static final String ENTITE_USER = User.class.getName();
+    private static final String REGION_REQUETES = "default-query-results-region";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Hibernate met déjà à jour l'entrée lors du commit (read-write) ; l'éviction couvre en plus
+     * les écritures qui ne passent pas par la session (requêtes de masse, scripts).
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUtilisateurModifie(UtilisateurModifieEvent event) {
+        if (event.getUserId() != null) {
+            entityManagerFactory.getCache().evict(User.class, event.getUserId());
+            log.debug("🗃️ Utilisateur {} retiré du cache de second niveau", event.getUserId());
+        }
+    }
+
+    public Map<String, Object> getStatistiques() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        CacheRegionStatistics entites = stats.getDomainDataRegionStatistics(User.CACHE_REGION);
+        result.put("entites", statistiquesRegion(entites.getHitCount(), entites.getMissCount(),
+                entites.getPutCount(), entites.getElementCountInMemory()));
+
+        NaturalIdStatistics naturalId = stats.getNaturalIdStatistics(ENTITE_USER);
+        result.put("email", statistiquesRegion(naturalId.getCacheHitCount(), naturalId.getCacheMissCount(),
+                naturalId.getCachePutCount(), -1));
+
+        CacheRegionStatistics requetes = stats.getQueryRegionStatistics(REGION_REQUETES);
+        if (requetes != null) {
+            result.put("requetesParRole", statistiquesRegion(requetes.getHitCount(), requetes.getMissCount(),
+                    requetes.getPutCount(), requetes.getElementCountInMemory()));
+        }
+
+        // Chargements d'utilisateurs depuis la base : doit tendre vers zéro en régime établi
+        result.put("chargementsDepuisBase", stats.getEntityStatistics(ENTITE_USER).getLoadCount());
+        return result;
+    }
+
+    private Map<String, Object> statistiquesRegion(long hits, long misses, long puts, long elements) {
+        Map<String, Object> region = new LinkedHashMap<>();
+        region.put("hits", hits);
+        region.put("misses", misses);
+        region.put("puts", puts);
+        if (elements >= 0) {
+            region.put("elements", elements);
+        }
+        long total = hits + misses;
+        region.put("tauxSucces", total > 0 ? Math.round(hits * 1000.0 / total) / 10.0 : 0.0);
+        return region;
+    }
+}
@@ -2,16 +2,22 @@ package ma.eai.daf.facture.services;
 
 import ma.eai.daf.facture.dto.UserUpdateDto;
 import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent.TypeModification;
 import ma.eai.daf.facture.enums.RoleType;
 import ma.eai.daf.facture.mappers.UserMapper;
 import ma.eai.daf.facture.repositories.UserRepository;
+import ma.eai.daf.facture.security.TokenRevocationService;
+import ma.eai.daf.facture.security.UserSecurityState;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -23,6 +29,8 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final UserMapper userMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TokenRevocationService tokenRevocationService;
 
     // ===== CRUD DE BASE =====
 
@@ -48,6 +56,9 @@ public class UserService {
         }
     }
 
+    // Lecture seule : sans vidage à la fin de la transaction. La session est celle de la requête (open-in-view)
+    // et une facture en cours de saisie, rattachée aux validateurs déjà chargés, y serait insérée incomplète.
+    @Transactional(readOnly = true)
     public Optional<User> getUserById(Long id) {
         try {
             log.debug("🔍 Recherche utilisateur avec ID: {}", id);
@@ -124,6 +135,7 @@ public class UserService {
             }
 
             User savedUser = userRepository.save(user);
+            publierModification(savedUser.getId(), TypeModification.CREATION);
             log.info("✅ Utilisateur créé avec succès: {} (ID: {})", savedUser.getNomComplet(), savedUser.getId());
 
             return savedUser;
@@ -149,6 +161,8 @@ public class UserService {
                 throw new IllegalArgumentException("L'utilisateur admin ne peut pas être modifié");
             }
 
+            UserSecurityState etatAvant = UserSecurityState.of(user);
+
             // Mise à jour des champs
             user.setNom(userUpdate.getNom());
             user.setPrenom(userUpdate.getPrenom() != null ? userUpdate.getPrenom() : "");
@@ -157,12 +171,17 @@ public class UserService {
             user.setActif(userUpdate.isActif());
 
             // Mise à jour du mot de passe si fourni
+            boolean motDePasseModifie = false;
             if (userUpdate.getMotDePasse() != null && !userUpdate.getMotDePasse().trim().isEmpty()) {
                 user.setMotDePasse(passwordEncoder.encode(userUpdate.getMotDePasse()));
+                motDePasseModifie = true;
                 log.debug("🔒 Mot de passe mis à jour pour l'utilisateur {}", user.getEmail());
             }
 
+            appliquerChangementsSecurite(user, etatAvant, motDePasseModifie);
+
             User savedUser = userRepository.save(user);
+            publierModification(savedUser.getId(), TypeModification.MODIFICATION);
             log.info("✅ Utilisateur mis à jour avec succès: {} (ID: {})", savedUser.getNomComplet(), savedUser.getId());
 
             return savedUser;
@@ -188,16 +207,23 @@ public class UserService {
                 throw new IllegalArgumentException("L'utilisateur admin ne peut pas être modifié");
             }
 
+            UserSecurityState etatAvant = UserSecurityState.of(user);
+
             // Utilisation du mapper pour la mise à jour
             userMapper.updateEntityFromDto(user, userUpdateDto);
 
             // Encoder le nouveau mot de passe si fourni
+            boolean motDePasseModifie = false;
             if (userUpdateDto.getNouveauMotDePasse() != null && !userUpdateDto.getNouveauMotDePasse().trim().isEmpty()) {
                 user.setMotDePasse(passwordEncoder.encode(userUpdateDto.getNouveauMotDePasse()));
+                motDePasseModifie = true;
                 log.debug("🔒 Mot de passe mis à jour pour l'utilisateur {}", user.getEmail());
             }
 
+            appliquerChangementsSecurite(user, etatAvant, motDePasseModifie);
+
             User savedUser = userRepository.save(user);
+            publierModification(savedUser.getId(), TypeModification.MODIFICATION);
             log.info("✅ Utilisateur mis à jour avec succès: {} (ID: {})", savedUser.getNomComplet(), savedUser.getId());
 
             return savedUser;
@@ -238,6 +264,8 @@ public class UserService {
             }
 
             userRepository.deleteById(id);
+            tokenRevocationService.revoquerSecurityStamp(id, user.getSecurityStamp());
+            publierModification(id, TypeModification.SUPPRESSION);
             log.info("✅ Utilisateur supprimé avec succès: {} (ID: {})", user.getNomComplet(), id);
 
         } catch (IllegalArgumentException e) {
@@ -355,6 +383,7 @@ public class UserService {
     public User saveUser(User user) {
         try {
             User savedUser = userRepository.save(user);
+            publierModification(savedUser.getId(), TypeModification.MODIFICATION);
             log.debug("💾 Utilisateur sauvegardé: {}", savedUser.getEmail());
             return savedUser;
         } catch (Exception e) {
@@ -363,6 +392,63 @@ public class UserService {
         }
     }
 
+    /**
+     * Change le mot de passe de l'utilisateur : l'ancienne empreinte est révoquée, les tokens émis
+     * avant le changement sont refusés et l'état de sécurité en cache est invalidé après le commit.
+     */
+    public User changerMotDePasse(Long userId, String nouveauMotDePasse) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'ID: " + userId));
+
+        UserSecurityState etatAvant = UserSecurityState.of(user);
+        user.setMotDePasse(passwordEncoder.encode(nouveauMotDePasse));
+        appliquerChangementsSecurite(user, etatAvant, true);
+
+        User savedUser = userRepository.save(user);
+        publierModification(savedUser.getId(), TypeModification.MODIFICATION);
+        log.info("🔒 Mot de passe modifié pour l'utilisateur {}", savedUser.getId());
+        return savedUser;
+    }
+
+    /**
+     * Remplace le hash du mot de passe par un hash ré-encodé avec les paramètres courants.
+     * Le mot de passe lui-même ne change pas : l'empreinte de sécurité est conservée.
+     */
+    public User mettreAJourHashMotDePasse(String email, String nouveauHash) {
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'email: " + email));
+
+        user.setMotDePasse(nouveauHash);
+        User savedUser = userRepository.save(user);
+        log.info("🔒 Hash du mot de passe ré-encodé pour l'utilisateur {}", savedUser.getId());
+        return savedUser;
+    }
+
+    /**
+     * Renouvelle l'empreinte de sécurité si un attribut porté par les tokens a changé
+     * (email, rôle, activation) ou si le mot de passe a été modifié.
+     */
+    private void appliquerChangementsSecurite(User user, UserSecurityState etatAvant, boolean motDePasseModifie) {
+        boolean changementSensible = motDePasseModifie
+                || user.isActif() != etatAvant.isActif()
+                || user.getRole() != etatAvant.getRole()
+                || !Objects.equals(user.getEmail(), etatAvant.getEmail());
+
+        if (changementSensible) {
+            // Révocation de l'ancienne empreinte : propagée aux autres instances
+            tokenRevocationService.revoquerSecurityStamp(user.getId(), etatAvant.getSecurityStamp());
+            user.renouvelerSecurityStamp();
+            log.info("🔐 Empreinte de sécurité renouvelée pour l'utilisateur {}", user.getId());
+        }
+    }
+
+    /**
+     * Les écouteurs (cache de sécurité, annuaire) sont notifiés après le commit de la transaction.
+     */
+    private void publierModification(Long userId, TypeModification type) {
+        eventPublisher.publishEvent(new UtilisateurModifieEvent(userId, type));
+    }
+
     // ===== STATISTIQUES =====
 
     public long countUsersByRole(RoleType role) {
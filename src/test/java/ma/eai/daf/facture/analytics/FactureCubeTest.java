@@ -0,0 +1,123 @@
+package ma.eai.daf.facture.analytics;
+
+import ma.eai.daf.facture.dto.PivotRequeteDto;
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FactureCubeTest {
+
+    private FactureRepository factureRepository;
+    private FactureCube cube;
+
+    @BeforeEach
+    void setUp() {
+        factureRepository = mock(FactureRepository.class);
+        List<Object[]> faits = new ArrayList<>();
+        faits.add(fait(1L, "Atlas Services", StatutFacture.SAISIE, "1000.00"));
+        faits.add(fait(2L, "Atlas Services", StatutFacture.SAISIE, "500.00"));
+        faits.add(fait(3L, "Maroc Bureau", StatutFacture.VALIDEE, "250.00"));
+        when(factureRepository.count()).thenReturn((long) faits.size());
+        when(factureRepository.findFaitsAnalytiques(anyLong(), any())).thenReturn(faits);
+
+        cube = new FactureCube(factureRepository, 100);
+        cube.charger();
+    }
+
+    @Test
+    void chargementInitialAgregeParStatut() {
+        assertThat(pivotParStatut()).containsOnly(
+                Map.entry("SAISIE", new BigDecimal("1500.00")),
+                Map.entry("VALIDEE", new BigDecimal("250.00")));
+    }
+
+    @Test
+    void transitionDeplaceLeMontantVersLeNouveauStatut() {
+        when(factureRepository.findFaitAnalytique(1L))
+                .thenReturn(List.<Object[]>of(fait(1L, "Atlas Services", StatutFacture.VALIDEE, "1000.00")));
+
+        cube.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.TRANSITION,
+                StatutFacture.SAISIE, StatutFacture.VALIDEE));
+
+        assertThat(pivotParStatut()).containsOnly(
+                Map.entry("SAISIE", new BigDecimal("500.00")),
+                Map.entry("VALIDEE", new BigDecimal("1250.00")));
+        assertThat(cube.getEtat()).containsEntry("factures", 3);
+    }
+
+    @Test
+    void creationAjouteUneLigneEtUnNouveauFournisseur() {
+        when(factureRepository.findFaitAnalytique(4L))
+                .thenReturn(List.<Object[]>of(fait(4L, "Sud Logistique", StatutFacture.SAISIE, "80.00")));
+
+        cube.onFactureModifiee(new FactureModifieeEvent(4L, TypeModification.CREATION, null, StatutFacture.SAISIE));
+
+        Map<String, Object> resultat = cube.pivoter(PivotRequeteDto.builder()
+                .groupBy(List.of(DimensionCube.FOURNISSEUR))
+                .build());
+        assertThat(resultat).containsEntry("facturesAnalysees", 4);
+        assertThat(montants(resultat, "fournisseur")).containsOnly(
+                Map.entry("Atlas Services", new BigDecimal("1500.00")),
+                Map.entry("Maroc Bureau", new BigDecimal("250.00")),
+                Map.entry("Sud Logistique", new BigDecimal("80.00")));
+    }
+
+    @Test
+    void suppressionRetireLaContribution() {
+        cube.onFactureModifiee(new FactureModifieeEvent(3L, TypeModification.SUPPRESSION, StatutFacture.VALIDEE, null));
+
+        assertThat(pivotParStatut()).containsOnly(Map.entry("SAISIE", new BigDecimal("1500.00")));
+        assertThat(cube.getEtat()).containsEntry("factures", 2);
+    }
+
+    @Test
+    void factureDisparueEntreLEvenementEtLaLectureEstRetiree() {
+        when(factureRepository.findFaitAnalytique(2L)).thenReturn(List.of());
+
+        cube.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.MODIFICATION,
+                StatutFacture.SAISIE, StatutFacture.SAISIE));
+
+        assertThat(pivotParStatut()).containsOnly(
+                Map.entry("SAISIE", new BigDecimal("1000.00")),
+                Map.entry("VALIDEE", new BigDecimal("250.00")));
+    }
+
+    private Map<String, BigDecimal> pivotParStatut() {
+        return montants(cube.pivoter(PivotRequeteDto.builder().groupBy(List.of(DimensionCube.STATUT)).build()), "statut");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, BigDecimal> montants(Map<String, Object> resultat, String champ) {
+        Map<String, BigDecimal> montants = new LinkedHashMap<>();
+        for (Map<String, Object> ligne : (List<Map<String, Object>>) resultat.get("lignes")) {
+            montants.put((String) ligne.get(champ), (BigDecimal) ligne.get("montantTTC"));
+        }
+        return montants;
+    }
+
+    // Même ordre de colonnes que FactureRepository.findFaitsAnalytiques
+    private static Object[] fait(Long id, String fournisseur, StatutFacture statut, String montantTTC) {
+        BigDecimal ttc = new BigDecimal(montantTTC);
+        return new Object[]{id, fournisseur, statut, ModaliteType.DELAI_60, FormeJuridiqueType.SARL,
+                LocalDate.of(2025, 1, 15), ttc.divide(new BigDecimal("1.2"), 2, RoundingMode.HALF_UP), ttc};
+    }
+}
@@ -0,0 +1,148 @@
+package ma.eai.daf.facture.analytics;
+
+import ma.eai.daf.facture.analytics.PrevisionDecaissements.Granularite;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PrevisionDecaissementsTest {
+
+    private static final LocalDate AUJOURDHUI = LocalDate.now();
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 9, 0);
+
+    private FactureRepository factureRepository;
+    private PrevisionDecaissements prevision;
+
+    @BeforeEach
+    void setUp() {
+        factureRepository = mock(FactureRepository.class);
+        List<Object[]> engagements = new ArrayList<>();
+        engagements.add(ligne(1L, StatutFacture.VALIDEE, AUJOURDHUI.plusDays(2), "1000.00", T0));
+        engagements.add(ligne(2L, StatutFacture.EN_TRESORERIE, AUJOURDHUI.plusDays(5), "400.00", T0));
+        engagements.add(ligne(3L, StatutFacture.VALIDEE, AUJOURDHUI.minusDays(3), "50.00", T0));
+        when(factureRepository.findEngagements(any())).thenReturn(engagements);
+
+        prevision = new PrevisionDecaissements(factureRepository, 0.6, 0.8, 0.95, 1.0);
+        prevision.charger();
+    }
+
+    @Test
+    void chargementRepartitEntreEchuEtHorizon() {
+        Map<String, Object> resultat = prevision.projeter(Granularite.JOUR, 10);
+
+        assertThat(total(resultat)).containsEntry("montantBrut", new BigDecimal("1400.00"))
+                .containsEntry("nombreFactures", 2L);
+        assertThat(echu(resultat)).containsEntry("montantBrut", new BigDecimal("50.00"));
+    }
+
+    @Test
+    void creationAjouteEtSuppressionRetire() {
+        when(factureRepository.findEngagement(4L))
+                .thenReturn(List.<Object[]>of(ligne(4L, StatutFacture.EN_VALIDATION_V1, AUJOURDHUI.plusDays(1), "200.00", T0)));
+
+        prevision.onFactureModifiee(new FactureModifieeEvent(4L, TypeModification.CREATION, null, StatutFacture.EN_VALIDATION_V1));
+        assertThat(total(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", new BigDecimal("1600.00"));
+
+        prevision.onFactureModifiee(new FactureModifieeEvent(4L, TypeModification.SUPPRESSION, StatutFacture.EN_VALIDATION_V1, null));
+        assertThat(total(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", new BigDecimal("1400.00"));
+    }
+
+    @Test
+    void paiementSortLaFactureDuCircuit() {
+        when(factureRepository.findEngagement(1L))
+                .thenReturn(List.<Object[]>of(ligne(1L, StatutFacture.PAYEE, AUJOURDHUI.plusDays(2), "1000.00", T0.plusHours(1))));
+
+        prevision.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.TRANSITION,
+                StatutFacture.VALIDEE, StatutFacture.PAYEE));
+
+        assertThat(total(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", new BigDecimal("400.00"))
+                .containsEntry("nombreFactures", 1L);
+    }
+
+    @Test
+    void lectureDepasseeParUneModificationPlusRecenteEstIgnoree() {
+        when(factureRepository.findEngagement(2L))
+                .thenReturn(List.<Object[]>of(ligne(2L, StatutFacture.VALIDEE, AUJOURDHUI.plusDays(5), "400.00", T0.plusHours(2))))
+                .thenReturn(List.<Object[]>of(ligne(2L, StatutFacture.EN_TRESORERIE, AUJOURDHUI.plusDays(5), "999.00", T0.plusHours(1))));
+
+        // Le second événement a lu la facture avant le premier mais s'applique après
+        prevision.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.TRANSITION,
+                StatutFacture.EN_TRESORERIE, StatutFacture.VALIDEE));
+        prevision.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.MODIFICATION,
+                StatutFacture.EN_TRESORERIE, StatutFacture.EN_TRESORERIE));
+
+        assertThat(total(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", new BigDecimal("1400.00"));
+    }
+
+    @Test
+    void lectureAnterieureAUneSuppressionNeFaitPasReapparaitreLaFacture() {
+        prevision.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.SUPPRESSION, StatutFacture.EN_TRESORERIE, null));
+        when(factureRepository.findEngagement(2L))
+                .thenReturn(List.<Object[]>of(ligne(2L, StatutFacture.EN_TRESORERIE, AUJOURDHUI.plusDays(5), "400.00", T0.plusHours(1))));
+
+        prevision.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.MODIFICATION,
+                StatutFacture.EN_TRESORERIE, StatutFacture.EN_TRESORERIE));
+
+        assertThat(total(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", new BigDecimal("1000.00"));
+    }
+
+    @Test
+    void facturesHorsCircuitPurgeesApresLaFenetre() {
+        when(factureRepository.findEngagement(1L))
+                .thenReturn(List.<Object[]>of(ligne(1L, StatutFacture.PAYEE, AUJOURDHUI.plusDays(2), "1000.00", T0.plusHours(1))));
+        prevision.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.TRANSITION,
+                StatutFacture.VALIDEE, StatutFacture.PAYEE));
+        prevision.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.SUPPRESSION, StatutFacture.EN_TRESORERIE, null));
+
+        // Encore dans la fenêtre : conservées pour départager les lectures en cours
+        assertThat(prevision.purger(Duration.ofMinutes(10))).isZero();
+        assertThat(prevision.purger(Duration.ZERO)).isEqualTo(2);
+
+        // Les factures en circuit restent suivies
+        assertThat(total(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", BigDecimal.ZERO.setScale(2));
+        assertThat(echu(prevision.projeter(Granularite.JOUR, 10))).containsEntry("montantBrut", new BigDecimal("50.00"));
+        assertThat(prevision.purger(Duration.ZERO)).isZero();
+    }
+
+    @Test
+    void echeanceLointaineNeFaitPasGrandirLeTableau() {
+        when(factureRepository.findEngagement(5L))
+                .thenReturn(List.<Object[]>of(ligne(5L, StatutFacture.VALIDEE, LocalDate.of(9999, 12, 31), "10.00", T0)));
+
+        prevision.onFactureModifiee(new FactureModifieeEvent(5L, TypeModification.CREATION, null, StatutFacture.VALIDEE));
+
+        Map<String, Object> resultat = prevision.projeter(Granularite.MOIS, 3 * 366);
+        assertThat(total(resultat)).containsEntry("montantBrut", new BigDecimal("1400.00"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> total(Map<String, Object> resultat) {
+        return (Map<String, Object>) resultat.get("total");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> echu(Map<String, Object> resultat) {
+        return (Map<String, Object>) resultat.get("echuNonPaye");
+    }
+
+    // Même ordre de colonnes que FactureRepository.findEngagement
+    private static Object[] ligne(Long id, StatutFacture statut, LocalDate echeance, String montantTTC, LocalDateTime modification) {
+        return new Object[]{id, statut, echeance, new BigDecimal(montantTTC), modification};
+    }
+}
@@ -0,0 +1,148 @@
+package ma.eai.daf.facture.bench;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.RoleType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.mappers.FactureMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark d'allocation des listes de factures : octets alloués et temps CPU par ligne, du
+ * mapping à l'écriture JSON, pour l'ancienne représentation (une HashMap par ligne, dates
+ * converties en chaînes) et pour {@code FactureListeDto} avec son sérialiseur dédié.
+ * <p>
+ * Le JSON est écrit dans un flux qui ignore les octets, comme le ferait la réponse HTTP ; les
+ * deux sorties sont comparées avant la mesure pour vérifier que le format de l'API est inchangé.
+ * <p>
+ * Exécution (aucune base requise) :
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp "$(cat cp.txt):target/classes:target/test-classes" \
+ *      ma.eai.daf.facture.bench.DtoAllocationBenchmark --rows=500 --iterations=2000
+ * </pre>
+ */
+public class DtoAllocationBenchmark {
+
+    // OutputStream.nullOutputStream() refuse d'écrire une fois fermé, et Jackson ferme le flux
+    private static final OutputStream NULLE = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int lignes = 500;
+        int iterations = 2000;
+
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "rows" -> lignes = Integer.parseInt(kv[1]);
+                case "iterations" -> iterations = Integer.parseInt(kv[1]);
+                default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+            }
+        }
+
+        // ObjectMapper construit comme celui de Spring MVC (modules java.time, Jdk8)
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        FactureMapper mapper = new FactureMapper(null);
+        List<Facture> factures = factures(lignes);
+
+        String attendu = objectMapper.writeValueAsString(ancienneListe(factures));
+        String obtenu = objectMapper.writeValueAsString(mapper.toListDtoList(factures));
+        if (!objectMapper.readTree(attendu).equals(objectMapper.readTree(obtenu))) {
+            throw new IllegalStateException("JSON différent :\n" + attendu.substring(0, 400) + "\n" + obtenu.substring(0, 400));
+        }
+
+        System.out.printf("Lignes par liste: %d, itérations: %d%n%n", lignes, iterations);
+        System.out.printf("%-12s %14s %14s%n", "mode", "octets/ligne", "ns CPU/ligne");
+
+        for (int passe = 0; passe < 2; passe++) {
+            // Première passe : chauffe du JIT, non affichée
+            boolean afficher = passe == 1;
+            mesurer("hashmap", lignes, iterations, afficher,
+                    () -> objectMapper.writeValue(NULLE, ancienneListe(factures)));
+            mesurer("record", lignes, iterations, afficher,
+                    () -> objectMapper.writeValue(NULLE, mapper.toListDtoList(factures)));
+        }
+    }
+
+    private static void mesurer(String mode, int lignes, int iterations, boolean afficher, Action action) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long octetsAvant = threads.getCurrentThreadAllocatedBytes();
+        long cpuAvant = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < iterations; i++) {
+            action.executer();
+        }
+        long octets = threads.getCurrentThreadAllocatedBytes() - octetsAvant;
+        long cpu = threads.getCurrentThreadCpuTime() - cpuAvant;
+        if (afficher) {
+            double total = (double) lignes * iterations;
+            System.out.printf("%-12s %14.1f %14.1f%n", mode, octets / total, cpu / total);
+        }
+    }
+
+    // Représentation d'avant FactureListeDto, conservée ici comme référence
+    private static List<Map<String, Object>> ancienneListe(List<Facture> factures) {
+        LocalDate dateReference = LocalDate.now();
+        List<Map<String, Object>> liste = new ArrayList<>();
+        for (Facture facture : factures) {
+            Map<String, Object> dto = new HashMap<>();
+            dto.put("id", facture.getId());
+            dto.put("numero", facture.getNumero() != null ? facture.getNumero() : "");
+            dto.put("nomFournisseur", facture.getNomFournisseur());
+            dto.put("montantTTC", facture.getMontantTTC() != null ? facture.getMontantTTC() : 0);
+            dto.put("dateFacture", facture.getDateFacture() != null ? facture.getDateFacture().toString() : "");
+            dto.put("dateEcheance", facture.getDateEcheance() != null ? facture.getDateEcheance().toString() : "");
+            dto.put("statut", facture.getStatut().name());
+            dto.put("createurNom", facture.getCreateur().getNomComplet());
+            dto.put("joursAvantEcheance", facture.getJoursAvantEcheance(dateReference));
+            dto.put("estEnRetard", facture.estEnRetard(dateReference));
+            liste.add(dto);
+        }
+        return liste;
+    }
+
+    private static List<Facture> factures(int nombre) {
+        User createur = User.builder().id(1L).nom("Alami").prenom("Sara").email("s.alami@example.ma").role(RoleType.U1).build();
+        StatutFacture[] statuts = StatutFacture.values();
+        LocalDate aujourdhui = LocalDate.now();
+        List<Facture> factures = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            LocalDate dateFacture = aujourdhui.minusDays(i % 120);
+            factures.add(Facture.builder()
+                    .id((long) i + 1)
+                    .numero(i % 17 == 0 ? null : "F-2025-" + (10000 + i))
+                    .nomFournisseur("Fournisseur " + (i % 50))
+                    .montantTTC(i % 23 == 0 ? null : new BigDecimal("1200.00").add(BigDecimal.valueOf(i, 2)))
+                    .dateFacture(dateFacture)
+                    .dateEcheance(i % 11 == 0 ? null : dateFacture.plusDays(60))
+                    .modalite(ModaliteType.values()[i % ModaliteType.values().length])
+                    .statut(statuts[i % statuts.length])
+                    .createur(createur)
+                    .build());
+        }
+        return factures;
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void executer() throws Exception;
+    }
+}
@@ -0,0 +1,198 @@
+package ma.eai.daf.facture.bench;
+
+import ma.eai.daf.facture.dto.FactureDetailDto;
+import ma.eai.daf.facture.dto.FactureListeDto;
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.Notification;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.RoleType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.mappers.FactureMapper;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import ma.eai.daf.facture.repositories.NotificationRepository;
+import ma.eai.daf.facture.security.JwtTokenProvider;
+import ma.eai.daf.facture.services.FactureService;
+import ma.eai.daf.facture.services.NotificationService;
+import ch.qos.logback.classic.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks JMH des chemins exécutés à chaque requête ou à chaque étape du circuit de validation :
+ * conversion des factures pour l'API, calcul des montants, vérification du token JWT, message des
+ * notifications et numéro de facture.
+ * <p>
+ * Aucune base ni contexte Spring : les dépendances sont instanciées à la main, les dépôts sont des
+ * proxys sans effet. Exécution et comparaison à la référence : voir {@link JmhRunner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Benchmark)
+public class HotPathsBenchmark {
+
+    private static final String SECRET = "mySecretKeyForJWTTokenGenerationThatShouldBeLongEnoughAndSecure12345";
+
+    private FactureMapper factureMapper;
+    private Facture facture;
+    private LocalDate dateReference;
+
+    private JwtTokenProvider jwtTokenProvider;
+    private String token;
+
+    private NotificationService notificationService;
+    private Notification derniereNotification;
+
+    private FactureService factureService;
+    private MethodHandle generateNumeroFacture;
+    private long idFacture;
+
+    @Setup
+    public void setup() throws Throwable {
+        // Les journaux INFO des services ne doivent pas être mesurés
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        User createur = utilisateur(1L, "Alami", "Sara", RoleType.U1);
+        User validateur1 = utilisateur(2L, "Bennani", "Youssef", RoleType.V1);
+        User validateur2 = utilisateur(3L, "Chraibi", "Nadia", RoleType.V2);
+        User tresorier = utilisateur(4L, "Idrissi", "Karim", RoleType.T1);
+
+        LocalDate aujourdhui = LocalDate.now();
+        facture = Facture.builder()
+                .id(4242L)
+                .numero("FACT20250314-04242")
+                .nomFournisseur("Maroc Telecom")
+                .formeJuridique(FormeJuridiqueType.values()[0])
+                .dateFacture(aujourdhui.minusDays(20))
+                .dateReception(aujourdhui.minusDays(18))
+                .dateEcheance(aujourdhui.plusDays(40))
+                .montantHT(new BigDecimal("125430.75"))
+                .tauxTVA(new BigDecimal("20"))
+                .rasTVA(new BigDecimal("1250.00"))
+                .modalite(ModaliteType.values()[0])
+                .designation("Abonnement liaisons louées - trimestre")
+                .refCommande("BC-2025-0117")
+                .periode("T1 2025")
+                .statut(StatutFacture.EN_TRESORERIE)
+                .createur(createur)
+                .validateur1(validateur1)
+                .validateur2(validateur2)
+                .tresorier(tresorier)
+                .dateCreation(LocalDateTime.now().minusDays(18))
+                .dateModification(LocalDateTime.now().minusDays(2))
+                .dateValidationV1(LocalDateTime.now().minusDays(10))
+                .dateValidationV2(LocalDateTime.now().minusDays(2))
+                .build();
+        facture.calculerMontants();
+        dateReference = aujourdhui;
+        factureMapper = new FactureMapper(null);
+
+        jwtTokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(jwtTokenProvider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtTokenProvider, "jwtExpirationInMs", 86_400_000);
+        ReflectionTestUtils.invokeMethod(jwtTokenProvider, "init");
+        token = jwtTokenProvider.generateToken(createur);
+
+        NotificationRepository notifications = depot(NotificationRepository.class, notification -> {
+            derniereNotification = (Notification) notification;
+            return notification;
+        });
+        notificationService = new NotificationService(notifications, depot(FactureRepository.class, argument -> null));
+
+        // Numéro de facture : méthode privée du service, appelée par un MethodHandle (aucun coût de réflexion)
+        Constructor<?> constructeur = FactureService.class.getConstructors()[0];
+        factureService = (FactureService) constructeur.newInstance(new Object[constructeur.getParameterCount()]);
+        generateNumeroFacture = MethodHandles.privateLookupIn(FactureService.class, MethodHandles.lookup())
+                .findVirtual(FactureService.class, "generateNumeroFacture", MethodType.methodType(String.class, Long.class));
+    }
+
+    // ===== CONVERSION POUR L'API =====
+
+    @Benchmark
+    public FactureListeDto toListDto() {
+        return factureMapper.toListDto(facture, dateReference);
+    }
+
+    @Benchmark
+    public FactureDetailDto toDetailDto() {
+        return factureMapper.toDetailDto(facture);
+    }
+
+    // ===== MONTANTS =====
+
+    @Benchmark
+    public BigDecimal calculerMontants() {
+        facture.calculerMontants();
+        return facture.getMontantTTC();
+    }
+
+    // ===== JWT =====
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtTokenProvider.validateToken(token);
+    }
+
+    @Benchmark
+    public String getUsernameFromToken() {
+        return jwtTokenProvider.getUsernameFromToken(token);
+    }
+
+    // ===== NOTIFICATIONS =====
+
+    @Benchmark
+    public String notifierTresorerie() {
+        notificationService.notifierTresorerie(facture);
+        return derniereNotification.getMessage();
+    }
+
+    // ===== NUMÉRO DE FACTURE =====
+
+    @Benchmark
+    public String generateNumeroFacture() throws Throwable {
+        return (String) generateNumeroFacture.invokeExact(factureService, Long.valueOf(++idFacture));
+    }
+
+    private static User utilisateur(Long id, String nom, String prenom, RoleType role) {
+        return User.builder()
+                .id(id)
+                .nom(nom)
+                .prenom(prenom)
+                .email(prenom.toLowerCase() + "." + nom.toLowerCase() + "@example.ma")
+                .role(role)
+                .securityStamp("a1b2c3d4")
+                .build();
+    }
+
+    // Dépôt Spring Data factice : save() délègue à l'action, le reste retourne null
+    @SuppressWarnings("unchecked")
+    private static <T> T depot(Class<T> type, java.util.function.UnaryOperator<Object> save) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, methode, args) ->
+                "save".equals(methode.getName()) ? save.apply(args[0]) : null);
+    }
+}
@@ -0,0 +1,130 @@
+package ma.eai.daf.facture.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lance les benchmarks JMH, écrit les résultats en JSON et les compare à la référence versionnée.
+ * <p>
+ * Les scores sont des temps moyens (plus bas = meilleur) : un benchmark plus lent que la référence
+ * au-delà du seuil est signalé comme régression et le code de sortie vaut 1. La référence n'a de
+ * sens que mesurée sur la même machine : la régénérer avec {@code -mettre-a-jour-reference} après
+ * un changement de matériel ou une amélioration voulue.
+ * <p>
+ * Exécution (profil Maven jmh, aucune base requise) :
+ * <pre>
+ * mvn -Pjmh -DskipTests test-compile exec:exec
+ * mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="-filtre=Jwt -seuil=5 -gc"
+ * </pre>
+ */
+public class JmhRunner {
+
+    private static final Path RESULTATS = Paths.get("target", "jmh-result.json");
+    private static final Path REFERENCE = Paths.get("src", "test", "resources", "bench", "jmh-baseline.json");
+
+    public static void main(String[] args) throws Exception {
+        String filtre = HotPathsBenchmark.class.getSimpleName();
+        double seuil = 10.0;
+        boolean gc = false;
+        boolean mettreAJour = false;
+
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^-+", "").split("=", 2);
+            switch (kv[0]) {
+                case "filtre" -> filtre = HotPathsBenchmark.class.getSimpleName() + ".*" + kv[1];
+                case "seuil" -> seuil = Double.parseDouble(kv[1]);
+                case "gc" -> gc = true;
+                case "mettre-a-jour-reference" -> mettreAJour = true;
+                default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+            }
+        }
+
+        Files.createDirectories(RESULTATS.getParent());
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(filtre)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULTATS.toString());
+        if (gc) {
+            // Octets alloués par opération (gc.alloc.rate.norm), hors comparaison
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+
+        if (mettreAJour) {
+            Files.createDirectories(REFERENCE.getParent());
+            Files.copy(RESULTATS, REFERENCE, StandardCopyOption.REPLACE_EXISTING);
+            System.out.printf("%nRéférence mise à jour: %s%n", REFERENCE);
+            return;
+        }
+        if (!Files.exists(REFERENCE)) {
+            System.out.printf("%nAucune référence (%s) : relancer avec -mettre-a-jour-reference%n", REFERENCE);
+            return;
+        }
+
+        if (comparer(scores(RESULTATS), scores(REFERENCE), seuil) > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int comparer(Map<String, Score> actuels, Map<String, Score> reference, double seuil) {
+        System.out.printf("%nComparaison à la référence (seuil de régression: +%.0f %%)%n", seuil);
+        System.out.printf("%-24s %16s %16s %9s%n", "benchmark", "référence", "actuel", "écart");
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> entree : actuels.entrySet()) {
+            Score actuel = entree.getValue();
+            Score avant = reference.get(entree.getKey());
+            if (avant == null) {
+                System.out.printf("%-24s %16s %16s %9s%n", entree.getKey(), "-", actuel, "nouveau");
+                continue;
+            }
+            double ecart = (actuel.valeur() - avant.valeur()) / avant.valeur() * 100.0;
+            // Écart inférieur à l'erreur de mesure cumulée : pas une régression
+            boolean regression = ecart > seuil
+                    && actuel.valeur() - avant.valeur() > actuel.erreur() + avant.erreur();
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-24s %16s %16s %+8.1f%%%s%n", entree.getKey(), avant, actuel,
+                    ecart, regression ? "  RÉGRESSION" : "");
+        }
+
+        System.out.println(regressions == 0 ? "\n✅ Aucune régression" : "\n❌ " + regressions + " régression(s)");
+        return regressions;
+    }
+
+    // Nom court du benchmark -> score
+    private static Map<String, Score> scores(Path fichier) throws Exception {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode resultat : new ObjectMapper().readTree(fichier.toFile())) {
+            String nom = resultat.get("benchmark").asText();
+            JsonNode metrique = resultat.get("primaryMetric");
+            double erreur = metrique.get("scoreError").asDouble();
+            scores.put(nom.substring(nom.lastIndexOf('.') + 1), new Score(
+                    metrique.get("score").asDouble(),
+                    Double.isNaN(erreur) ? 0 : erreur,
+                    metrique.get("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    private record Score(double valeur, double erreur, String unite) {
+
+        @Override
+        public String toString() {
+            return String.format("%.1f %s", valeur, unite);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ma.eai.daf.facture.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Benchmark de capacité : combien d'utilisateurs simultanés peuvent être servis quand chaque
+ * requête passe l'essentiel de son temps bloquée sur JDBC.
+ * <p>
+ * Compare un pool de threads de plateforme de la taille du pool Tomcat (200 par défaut) avec un
+ * thread virtuel par requête. L'option {@code --pinning} exécute l'appel bloquant dans un bloc
+ * synchronized pour montrer l'effet d'un épinglage sur le mode virtuel.
+ * <p>
+ * Exécution (aucune base requise, la latence JDBC est simulée) :
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes ma.eai.daf.facture.bench.VirtualThreadCapacityBenchmark \
+ *      --users=100,500,2000 --latency-ms=40 --duration-s=10
+ * </pre>
+ */
+public class VirtualThreadCapacityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] users = {100, 500, 2000};
+        long latenceMs = 40;
+        int dureeS = 10;
+        int threadsPlateforme = 200;
+        int connexions = 0;
+        boolean pinning = false;
+
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "users" -> users = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "latency-ms" -> latenceMs = Long.parseLong(kv[1]);
+                case "duration-s" -> dureeS = Integer.parseInt(kv[1]);
+                case "platform-threads" -> threadsPlateforme = Integer.parseInt(kv[1]);
+                case "db-connections" -> connexions = Integer.parseInt(kv[1]);
+                case "pinning" -> pinning = true;
+                default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+            }
+        }
+
+        System.out.printf("Latence JDBC simulée: %d ms, durée: %d s, pool plateforme: %d, connexions: %s, pinning: %s%n%n",
+                latenceMs, dureeS, threadsPlateforme, connexions > 0 ? connexions : "illimitées", pinning);
+        System.out.printf("%-10s %-8s %12s %10s %10s%n", "mode", "users", "req/s", "p50 ms", "p99 ms");
+
+        for (int nbUsers : users) {
+            Resultat plateforme = executer(Executors.newFixedThreadPool(threadsPlateforme),
+                    nbUsers, latenceMs, dureeS, connexions, pinning);
+            afficher("platform", nbUsers, plateforme);
+
+            Resultat virtuel = executer(Executors.newVirtualThreadPerTaskExecutor(),
+                    nbUsers, latenceMs, dureeS, connexions, pinning);
+            afficher("virtual", nbUsers, virtuel);
+        }
+    }
+
+    /**
+     * Chaque utilisateur envoie une requête, attend la réponse, puis recommence (charge fermée).
+     * La latence mesurée inclut l'attente d'un thread libre dans l'exécuteur.
+     */
+    private static Resultat executer(ExecutorService executor, int nbUsers, long latenceMs, int dureeS,
+                                     int connexions, boolean pinning) throws InterruptedException {
+        Semaphore pool = connexions > 0 ? new Semaphore(connexions) : null;
+        AtomicBoolean actif = new AtomicBoolean(true);
+        List<long[]> latencesParUser = new ArrayList<>();
+        List<int[]> compteursParUser = new ArrayList<>();
+        List<Thread> clients = new ArrayList<>();
+
+        for (int u = 0; u < nbUsers; u++) {
+            long[] latences = new long[1 << 16];
+            latencesParUser.add(latences);
+            int[] compteur = {0};
+            compteursParUser.add(compteur);
+            Thread client = Thread.ofVirtual().unstarted(() -> {
+                while (actif.get()) {
+                    long debut = System.nanoTime();
+                    try {
+                        executor.submit(() -> requete(pool, latenceMs, pinning)).get();
+                    } catch (Exception e) {
+                        return;
+                    }
+                    if (compteur[0] < latences.length) {
+                        latences[compteur[0]++] = System.nanoTime() - debut;
+                    }
+                }
+            });
+            clients.add(client);
+        }
+
+        long debut = System.nanoTime();
+        clients.forEach(Thread::start);
+        TimeUnit.SECONDS.sleep(dureeS);
+        actif.set(false);
+        for (Thread client : clients) {
+            client.join();
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        executor.shutdownNow();
+
+        long total = 0;
+        List<Long> toutes = new ArrayList<>();
+        for (int u = 0; u < nbUsers; u++) {
+            long[] latences = latencesParUser.get(u);
+            int n = compteursParUser.get(u)[0];
+            total += n;
+            for (int i = 0; i < n; i++) {
+                toutes.add(latences[i]);
+            }
+        }
+        long[] triees = toutes.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new Resultat(total / secondes, percentile(triees, 0.50), percentile(triees, 0.99));
+    }
+
+    private static Object requete(Semaphore pool, long latenceMs, boolean pinning) throws InterruptedException {
+        if (pool != null) {
+            pool.acquire();
+        }
+        try {
+            if (pinning) {
+                // Reproduit un pilote ou un cache qui bloque sous un moniteur
+                Object moniteur = new Object();
+                synchronized (moniteur) {
+                    Thread.sleep(latenceMs);
+                }
+            } else {
+                Thread.sleep(latenceMs);
+            }
+        } finally {
+            if (pool != null) {
+                pool.release();
+            }
+        }
+        return null;
+    }
+
+    private static double percentile(long[] triees, double p) {
+        if (triees.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.min(triees.length - 1, Math.ceil(p * triees.length) - 1);
+        return triees[Math.max(0, idx)] / 1e6;
+    }
+
+    private static void afficher(String mode, int users, Resultat r) {
+        System.out.printf("%-10s %-8d %12.0f %10.1f %10.1f%n", mode, users, r.debit(), r.p50(), r.p99());
+    }
+
+    private record Resultat(double debit, double p50, double p99) {
+    }
+}
@@ -0,0 +1,601 @@
+package ma.eai.daf.facture.bench;
+
+import ma.eai.daf.facture.FactureApplication;
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.RoleType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import ma.eai.daf.facture.repositories.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ch.qos.logback.classic.Level;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Test de charge de bout en bout du circuit des factures, sur une seule machine et sans réseau.
+ * <p>
+ * L'application démarre sur un PostgreSQL embarqué (binaires fournis par la dépendance, aucune
+ * installation) ou sur une base locale ({@code -jdbc-url}), avec un volume réaliste : utilisateurs
+ * de chaque rôle et factures réparties sur deux ans dans tous les statuts. Elle est démarrée une
+ * première fois pour créer le schéma et amorcer les données, puis une seconde fois pour que l'index
+ * plein texte, l'agrégat, le cube et les suggestions soient chargés sur ce volume, comme en production.
+ * <p>
+ * Trois scénarios arrivent à cadence fixe, indépendamment des réponses (modèle ouvert) :
+ * <ul>
+ *   <li>circuit : création par U1, soumission, validation V1 puis V2, paiement par le trésorier assigné ;</li>
+ *   <li>consultation : tableau de bord et liste de travail du rôle, sondage des notifications ;</li>
+ *   <li>connexion : authentification (BCrypt) d'un utilisateur pris au hasard.</li>
+ * </ul>
+ * Le rapport donne, par endpoint, le débit, le taux d'erreur et les percentiles p50/p95/p99 du temps
+ * de réponse ; par scénario, la durée mesurée depuis l'instant d'arrivée prévu, ce qui inclut
+ * l'attente quand le client ou le serveur prend du retard (pas d'omission coordonnée).
+ * <p>
+ * Avec {@code -jdbc-url}, la base doit être vide (les comptes et numéros de charge sont créés à chaque
+ * exécution). PostgreSQL refuse de s'exécuter en root : sous root, seule cette option est possible.
+ * <p>
+ * Exécution (profil Maven charge) :
+ * <pre>
+ * mvn -Pcharge -DskipTests test-compile exec:exec
+ * mvn -Pcharge -DskipTests test-compile exec:exec -Dcharge.args="-workflows-par-s=5 -duree-s=120 -factures=100000"
+ * mvn -Pcharge -DskipTests test-compile exec:exec \
+ *     -Dcharge.args="-jdbc-url=jdbc:postgresql://localhost:5432/facture_charge -jdbc-user=postgres -jdbc-password=postgres"
+ * </pre>
+ */
+public class WorkflowLoadTest {
+
+    private static final String MOT_DE_PASSE = "Charge123!";
+    private static final int LOT_AMORCAGE = 1000;
+    private static final int FOURNISSEURS = 300;
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.lire(args);
+        // Journaux du PostgreSQL embarqué, émis avant la configuration de Spring
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        Path travail = Files.createTempDirectory("charge-factures");
+
+        try (Base base = Base.ouvrir(options, travail)) {
+            Jeu jeu;
+            System.out.printf("Amorçage: %d utilisateurs par rôle, %d factures%n", options.utilisateurs, options.factures);
+            try (ConfigurableApplicationContext contexte = demarrer(options, base, travail.resolve("index-amorcage"))) {
+                jeu = amorcer(contexte, options);
+            }
+
+            System.out.println("Redémarrage sur les données amorcées (index, agrégat, cube, suggestions)");
+            long debut = System.nanoTime();
+            try (ConfigurableApplicationContext contexte = demarrer(options, base, travail.resolve("index"))) {
+                System.out.printf("Application prête en %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - debut));
+                int port = Integer.parseInt(contexte.getEnvironment().getProperty("local.server.port"));
+                new Charge(URI.create("http://localhost:" + port), jeu, options).executer();
+            }
+        }
+    }
+
+    // ===== DÉMARRAGE =====
+
+    private static ConfigurableApplicationContext demarrer(Options options, Base base, Path index) {
+        // Arguments de ligne de commande : prioritaires sur application.properties
+        List<String> arguments = List.of(
+                "--spring.datasource.url=" + base.url(),
+                "--spring.datasource.username=" + base.utilisateur(),
+                "--spring.datasource.password=" + base.motDePasse(),
+                "--server.port=0",
+                // Les traces SQL et DEBUG coûteraient plus cher que les requêtes mesurées
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.ma.eai.daf.facture=" + options.journaux,
+                "--logging.level.org.springframework.security=WARN",
+                "--logging.level.org.springframework.web=WARN",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--spring.main.banner-mode=off",
+                "--recherche.index.repertoire=" + index,
+                "--application.file.uploads.photos-output-path=" + index.resolveSibling("uploads"));
+
+        return new SpringApplicationBuilder(FactureApplication.class)
+                .profiles(options.profils)
+                .run(arguments.toArray(String[]::new));
+    }
+
+    // ===== AMORÇAGE =====
+
+    private static Jeu amorcer(ConfigurableApplicationContext contexte, Options options) {
+        UserRepository userRepository = contexte.getBean(UserRepository.class);
+        FactureRepository factureRepository = contexte.getBean(FactureRepository.class);
+        TransactionTemplate transaction = new TransactionTemplate(contexte.getBean(PlatformTransactionManager.class));
+
+        // Un seul hachage BCrypt, partagé par tous les comptes de charge
+        String hash = contexte.getBean(PasswordEncoder.class).encode(MOT_DE_PASSE);
+        Map<RoleType, List<Compte>> comptes = new EnumMap<>(RoleType.class);
+        Map<RoleType, List<User>> utilisateurs = new EnumMap<>(RoleType.class);
+        for (RoleType role : List.of(RoleType.U1, RoleType.V1, RoleType.V2, RoleType.T1)) {
+            List<User> crees = new ArrayList<>();
+            for (int i = 1; i <= options.utilisateurs; i++) {
+                crees.add(userRepository.save(User.builder()
+                        .nom("Charge " + role.name())
+                        .prenom("Agent " + i)
+                        .email("charge." + role.name().toLowerCase() + "." + i + "@factureapp.test")
+                        .motDePasse(hash)
+                        .role(role)
+                        .actif(true)
+                        .build()));
+            }
+            utilisateurs.put(role, crees);
+            comptes.put(role, crees.stream().map(u -> new Compte(u.getId(), u.getEmail(), role)).toList());
+        }
+
+        List<String> fournisseurs = new ArrayList<>(FOURNISSEURS);
+        for (int i = 1; i <= FOURNISSEURS; i++) {
+            fournisseurs.add("Fournisseur Charge " + i);
+        }
+
+        Random aleatoire = new Random(42);
+        LocalDate aujourdhui = LocalDate.now();
+        long debut = System.nanoTime();
+        for (int lot = 0; lot < options.factures; lot += LOT_AMORCAGE) {
+            int premier = lot;
+            int dernier = Math.min(options.factures, lot + LOT_AMORCAGE);
+            transaction.executeWithoutResult(statut -> {
+                List<Facture> factures = new ArrayList<>(dernier - premier);
+                for (int i = premier; i < dernier; i++) {
+                    factures.add(facture(i, aleatoire, aujourdhui, fournisseurs, utilisateurs));
+                }
+                factureRepository.saveAll(factures);
+            });
+        }
+        System.out.printf("%d factures insérées en %d ms%n", options.factures,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - debut));
+
+        return new Jeu(comptes, fournisseurs);
+    }
+
+    private static Facture facture(int i, Random aleatoire, LocalDate aujourdhui,
+                                   List<String> fournisseurs, Map<RoleType, List<User>> utilisateurs) {
+        // Quelques fournisseurs concentrent l'essentiel des factures
+        String fournisseur = fournisseurs.get((int) (fournisseurs.size() * aleatoire.nextDouble() * aleatoire.nextDouble()));
+        LocalDate dateFacture = aujourdhui.minusDays(aleatoire.nextInt(730));
+        ModaliteType modalite = ModaliteType.values()[aleatoire.nextInt(ModaliteType.values().length)];
+        StatutFacture statut = statutAmorcage(i % 20);
+        LocalDateTime saisie = dateFacture.plusDays(1 + aleatoire.nextInt(5)).atTime(9, 0);
+
+        Facture facture = Facture.builder()
+                .numero(String.format("CHARGE-%07d", i + 1))
+                .nomFournisseur(fournisseur)
+                .dateFacture(dateFacture)
+                .dateReception(saisie.toLocalDate())
+                .montantHT(BigDecimal.valueOf(50_000 + aleatoire.nextInt(50_000_000), 2))
+                .tauxTVA(aleatoire.nextInt(10) == 0 ? new BigDecimal("10") : new BigDecimal("20"))
+                .modalite(modalite)
+                .refacturable(false)
+                .designation("Prestation " + fournisseur + " - " + dateFacture.getMonth())
+                .refCommande("BC-" + (10_000 + i))
+                .statut(statut)
+                .createur(choisir(utilisateurs.get(RoleType.U1), aleatoire))
+                .validateur1(choisir(utilisateurs.get(RoleType.V1), aleatoire))
+                .validateur2(choisir(utilisateurs.get(RoleType.V2), aleatoire))
+                .build();
+
+        if (statut == StatutFacture.EN_VALIDATION_V2 || statut == StatutFacture.EN_TRESORERIE || statut == StatutFacture.PAYEE) {
+            facture.setDateValidationV1(saisie.plusDays(2));
+        }
+        if (statut == StatutFacture.EN_TRESORERIE || statut == StatutFacture.PAYEE) {
+            facture.setDateValidationV2(saisie.plusDays(4));
+            facture.setTresorier(choisir(utilisateurs.get(RoleType.T1), aleatoire));
+        }
+        if (statut == StatutFacture.PAYEE) {
+            facture.setDatePaiement(saisie.toLocalDate().plusDays(modalite.getDelaiJours()));
+            facture.setReferencePaiement("VIR-CHARGE-" + (i + 1));
+        }
+        if (statut == StatutFacture.REJETEE) {
+            facture.setCommentaires("Rejetée lors de l'amorçage");
+        }
+        return facture;
+    }
+
+    // 60 % payées, 10 % dans chaque étape du circuit, 5 % rejetées, 5 % en saisie
+    private static StatutFacture statutAmorcage(int vingtieme) {
+        if (vingtieme < 12) {
+            return StatutFacture.PAYEE;
+        }
+        return switch (vingtieme) {
+            case 12 -> StatutFacture.REJETEE;
+            case 13 -> StatutFacture.SAISIE;
+            case 14, 15 -> StatutFacture.EN_VALIDATION_V1;
+            case 16, 17 -> StatutFacture.EN_VALIDATION_V2;
+            default -> StatutFacture.EN_TRESORERIE;
+        };
+    }
+
+    private static <T> T choisir(List<T> elements, Random aleatoire) {
+        return elements.get(aleatoire.nextInt(elements.size()));
+    }
+
+    // ===== CHARGE =====
+
+    private static final class Charge {
+
+        private final URI racine;
+        private final Jeu jeu;
+        private final Options options;
+        private final ObjectMapper json = new ObjectMapper();
+        private final HttpClient client;
+        private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+        private final Map<String, Statistiques> endpoints = new ConcurrentHashMap<>();
+        private final Map<String, Statistiques> scenarios = new ConcurrentHashMap<>();
+
+        Charge(URI racine, Jeu jeu, Options options) {
+            this.racine = racine;
+            this.jeu = jeu;
+            this.options = options;
+            this.client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+        }
+
+        void executer() throws Exception {
+            for (List<Compte> comptes : jeu.comptes().values()) {
+                for (Compte compte : comptes) {
+                    tokens.put(compte.email(), connecter(compte));
+                }
+            }
+            System.out.printf("%d sessions ouvertes%n%n", tokens.size());
+
+            long debut = System.nanoTime();
+            long finEchauffement = debut + TimeUnit.SECONDS.toNanos(options.echauffementS);
+            long fin = finEchauffement + TimeUnit.SECONDS.toNanos(options.dureeS);
+            System.out.printf("Échauffement %d s puis mesure %d s : %.1f circuits/s, %.1f consultations/s, %.1f connexions/s%n",
+                    options.echauffementS, options.dureeS, options.workflowsParS, options.consultationsParS, options.connexionsParS);
+
+            try (ExecutorService requetes = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Thread> arrivees = List.of(
+                        arrivees("circuit", options.workflowsParS, fin, requetes, this::circuit),
+                        arrivees("consultation", options.consultationsParS, fin, requetes, this::consultation),
+                        arrivees("connexion", options.connexionsParS, fin, requetes, this::connexion));
+
+                LockSupport.parkNanos(finEchauffement - System.nanoTime());
+                endpoints.values().forEach(Statistiques::reinitialiser);
+                scenarios.values().forEach(Statistiques::reinitialiser);
+                for (Thread arrivee : arrivees) {
+                    arrivee.join();
+                }
+                // Fermeture : attend les scénarios encore en cours
+            }
+
+            rapport();
+        }
+
+        // Arrivées à intervalle fixe, sans attendre la fin des scénarios précédents
+        private Thread arrivees(String nom, double parSeconde, long fin, ExecutorService requetes, Scenario scenario) {
+            return Thread.ofPlatform().name("arrivees-" + nom).start(() -> {
+                if (parSeconde <= 0) {
+                    return;
+                }
+                long intervalle = (long) (TimeUnit.SECONDS.toNanos(1) / parSeconde);
+                for (long prevu = System.nanoTime(); prevu < fin; prevu += intervalle) {
+                    LockSupport.parkNanos(prevu - System.nanoTime());
+                    long instant = prevu;
+                    requetes.execute(() -> {
+                        Statistiques statistiques = scenarios.computeIfAbsent(nom, cle -> new Statistiques());
+                        try {
+                            scenario.executer();
+                            statistiques.enregistrer(System.nanoTime() - instant, true, 0);
+                        } catch (EchecAppel e) {
+                            statistiques.enregistrer(System.nanoTime() - instant, false, e.statut);
+                        } catch (Exception e) {
+                            statistiques.enregistrer(System.nanoTime() - instant, false, 0);
+                        }
+                    });
+                }
+            });
+        }
+
+        // ===== SCÉNARIOS =====
+
+        private void circuit() throws Exception {
+            ThreadLocalRandom aleatoire = ThreadLocalRandom.current();
+            Compte createur = jeu.auHasard(RoleType.U1);
+            Compte validateur1 = jeu.auHasard(RoleType.V1);
+            Compte validateur2 = jeu.auHasard(RoleType.V2);
+
+            Map<String, Object> saisie = new LinkedHashMap<>();
+            saisie.put("nomFournisseur", jeu.fournisseurs().get(aleatoire.nextInt(jeu.fournisseurs().size())));
+            saisie.put("dateFacture", LocalDate.now().minusDays(aleatoire.nextInt(60)).toString());
+            saisie.put("montantHT", BigDecimal.valueOf(aleatoire.nextLong(50_000, 50_000_000), 2));
+            saisie.put("tauxTVA", new BigDecimal("20"));
+            saisie.put("modalite", ModaliteType.DELAI_60);
+            saisie.put("designation", "Facture de charge");
+            saisie.put("validateur1Id", validateur1.id());
+            saisie.put("validateur2Id", validateur2.id());
+            // Montants aléatoires sur des fournisseurs connus : un doublon probable reste possible
+            long id = appeler("POST /api/factures", "POST", "/api/factures?forcerDoublon=true", createur, saisie)
+                    .path("factureId").asLong();
+            reflechir();
+
+            appeler("POST /api/factures/{id}/soumettre-v1", "POST", "/api/factures/" + id + "/soumettre-v1", createur, null);
+            reflechir();
+            appeler("POST /api/factures/{id}/valider-v1", "POST", "/api/factures/" + id + "/valider-v1", validateur1,
+                    Map.of("approuve", true, "commentaire", "Validé (charge)"));
+            reflechir();
+            appeler("POST /api/factures/{id}/valider-v2", "POST", "/api/factures/" + id + "/valider-v2", validateur2,
+                    Map.of("approuve", true, "commentaire", "Validé (charge)"));
+            reflechir();
+
+            // Le trésorier est assigné à la validation V2 : on le lit sur le détail, comme l'écran
+            long tresorierId = appeler("GET /api/factures/{id}", "GET", "/api/factures/" + id, jeu.auHasard(RoleType.T1), null)
+                    .path("tresorier").path("id").asLong();
+            Compte tresorier = jeu.compte(RoleType.T1, tresorierId);
+            appeler("POST /api/factures/{id}/payer", "POST", "/api/factures/" + id + "/payer", tresorier,
+                    Map.of("referencePaiement", "VIR-CHARGE-" + id));
+        }
+
+        private void consultation() throws Exception {
+            Compte compte = jeu.auHasard(null);
+            appeler("GET /api/notifications/count-non-lues", "GET", "/api/notifications/count-non-lues", compte, null);
+            appeler("GET /api/factures/tableau-bord", "GET", "/api/factures/tableau-bord", compte, null);
+            String liste = switch (compte.role()) {
+                case V1 -> "/api/factures/en-attente-v1";
+                case V2 -> "/api/factures/en-attente-v2";
+                case T1 -> "/api/factures/en-attente-tresorerie";
+                default -> "/api/factures/mes-factures";
+            };
+            appeler("GET " + liste, "GET", liste, compte, null);
+            if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                appeler("GET /api/notifications", "GET", "/api/notifications", compte, null);
+            }
+        }
+
+        private void connexion() throws Exception {
+            connecter(jeu.auHasard(null));
+        }
+
+        private String connecter(Compte compte) throws Exception {
+            JsonNode reponse = appeler("POST /auth/login", "POST", "/auth/login", null,
+                    Map.of("email", compte.email(), "password", MOT_DE_PASSE));
+            return reponse.path("token").asText();
+        }
+
+        private void reflechir() {
+            if (options.reflexionMs > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(
+                        ThreadLocalRandom.current().nextLong(options.reflexionMs / 2, options.reflexionMs * 3 / 2 + 1)));
+            }
+        }
+
+        // ===== HTTP =====
+
+        private JsonNode appeler(String endpoint, String methode, String chemin, Compte compte, Object corps) throws Exception {
+            HttpRequest.Builder requete = HttpRequest.newBuilder(racine.resolve(chemin))
+                    .timeout(Duration.ofSeconds(60))
+                    .header("Accept", "application/json");
+            if (compte != null) {
+                requete.header("Authorization", "Bearer " + tokens.get(compte.email()));
+            }
+            if (corps != null) {
+                requete.header("Content-Type", "application/json")
+                        .method(methode, HttpRequest.BodyPublishers.ofByteArray(json.writeValueAsBytes(corps)));
+            } else {
+                requete.method(methode, HttpRequest.BodyPublishers.noBody());
+            }
+
+            Statistiques statistiques = endpoints.computeIfAbsent(endpoint, cle -> new Statistiques());
+            long debut = System.nanoTime();
+            HttpResponse<byte[]> reponse;
+            try {
+                reponse = client.send(requete.build(), HttpResponse.BodyHandlers.ofByteArray());
+            } catch (IOException e) {
+                statistiques.enregistrer(System.nanoTime() - debut, false, 0);
+                throw new EchecAppel(endpoint, 0);
+            }
+            boolean succes = reponse.statusCode() < 400;
+            statistiques.enregistrer(System.nanoTime() - debut, succes, reponse.statusCode());
+            if (!succes) {
+                throw new EchecAppel(endpoint, reponse.statusCode());
+            }
+            return reponse.body().length == 0 ? json.missingNode() : json.readTree(reponse.body());
+        }
+
+        // ===== RAPPORT =====
+
+        private void rapport() {
+            double secondes = options.dureeS;
+            System.out.printf("%nEndpoints (temps de réponse, %d s de mesure)%n", options.dureeS);
+            tableau(endpoints, secondes);
+            System.out.printf("%nScénarios (depuis l'instant d'arrivée prévu)%n");
+            tableau(scenarios, secondes);
+        }
+
+        private static void tableau(Map<String, Statistiques> lignes, double secondes) {
+            System.out.printf("%-44s %8s %8s %7s %9s %9s %9s %9s  %s%n",
+                    "", "requêtes", "req/s", "err %", "p50 ms", "p95 ms", "p99 ms", "max ms", "erreurs");
+            lignes.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey(Comparator.naturalOrder()))
+                    .forEach(ligne -> {
+                        Statistiques s = ligne.getValue();
+                        Histogram h = s.latences.copy();
+                        long total = h.getTotalCount();
+                        long erreurs = s.erreurs.sum();
+                        System.out.printf("%-44s %8d %8.1f %7.2f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                                ligne.getKey(), total, total / secondes,
+                                total == 0 ? 0.0 : 100.0 * erreurs / total,
+                                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(95)),
+                                ms(h.getValueAtPercentile(99)), ms(h.getMaxValue()),
+                                s.codes.entrySet().stream()
+                                        .map(code -> (code.getKey() == 0 ? "réseau" : code.getKey()) + "×" + code.getValue().sum())
+                                        .collect(Collectors.joining(" ")));
+                    });
+        }
+
+        private static double ms(long micros) {
+            return BigDecimal.valueOf(micros).divide(BigDecimal.valueOf(1000), 1, RoundingMode.HALF_UP).doubleValue();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Scenario {
+        void executer() throws Exception;
+    }
+
+    private static final class EchecAppel extends Exception {
+        private final int statut;
+
+        EchecAppel(String endpoint, int statut) {
+            super(endpoint + " -> " + (statut == 0 ? "erreur réseau" : "HTTP " + statut), null, false, false);
+            this.statut = statut;
+        }
+    }
+
+    // Temps en microsecondes, jusqu'à 5 minutes avec 3 chiffres significatifs
+    private static final class Statistiques {
+        private final ConcurrentHistogram latences = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3);
+        private final LongAdder erreurs = new LongAdder();
+        private final Map<Integer, LongAdder> codes = new ConcurrentHashMap<>();
+
+        void enregistrer(long nanos, boolean succes, int statut) {
+            latences.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), latences.getHighestTrackableValue()));
+            if (!succes) {
+                erreurs.increment();
+                codes.computeIfAbsent(statut, code -> new LongAdder()).increment();
+            }
+        }
+
+        void reinitialiser() {
+            latences.reset();
+            erreurs.reset();
+            codes.clear();
+        }
+    }
+
+    // ===== DONNÉES =====
+
+    private record Compte(Long id, String email, RoleType role) {
+    }
+
+    private record Jeu(Map<RoleType, List<Compte>> comptes, List<String> fournisseurs) {
+
+        // role null : n'importe quel compte de charge
+        Compte auHasard(RoleType role) {
+            ThreadLocalRandom aleatoire = ThreadLocalRandom.current();
+            List<Compte> candidats = role != null
+                    ? comptes.get(role)
+                    : comptes.get(List.copyOf(comptes.keySet()).get(aleatoire.nextInt(comptes.size())));
+            return candidats.get(aleatoire.nextInt(candidats.size()));
+        }
+
+        // Trésorier assigné hors du jeu de charge (compte de démonstration) : un trésorier du jeu paie à sa place
+        Compte compte(RoleType role, long id) {
+            return comptes.get(role).stream()
+                    .filter(compte -> compte.id() == id)
+                    .findFirst()
+                    .orElseGet(() -> auHasard(role));
+        }
+    }
+
+    private record Base(String url, String utilisateur, String motDePasse, EmbeddedPostgres embarquee) implements AutoCloseable {
+
+        static Base ouvrir(Options options, Path travail) throws IOException {
+            if (options.jdbcUrl != null) {
+                System.out.printf("Base: %s%n", options.jdbcUrl);
+                return new Base(options.jdbcUrl, options.jdbcUser, options.jdbcPassword, null);
+            }
+            if ("root".equals(System.getProperty("user.name"))) {
+                throw new IllegalStateException("PostgreSQL refuse de démarrer sous root : lancer le test avec un autre "
+                        + "utilisateur ou fournir -jdbc-url=jdbc:postgresql://... vers une base vide");
+            }
+            EmbeddedPostgres postgres = EmbeddedPostgres.builder()
+                    .setDataDirectory(travail.resolve("pgdata"))
+                    .setCleanDataDirectory(true)
+                    .start();
+            String url = postgres.getJdbcUrl("postgres", "postgres");
+            System.out.printf("Base: PostgreSQL embarqué sur le port %d%n", postgres.getPort());
+            return new Base(url, "postgres", "", postgres);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (embarquee != null) {
+                embarquee.close();
+            }
+        }
+    }
+
+    private static final class Options {
+        long dureeS = 60;
+        long echauffementS = 15;
+        double workflowsParS = 2;
+        double consultationsParS = 20;
+        double connexionsParS = 0.5;
+        long reflexionMs = 0;
+        int utilisateurs = 5;
+        int factures = 20_000;
+        String jdbcUrl;
+        String jdbcUser = "postgres";
+        String jdbcPassword = "postgres";
+        String[] profils = new String[0];
+        String journaux = "WARN";
+
+        static Options lire(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                String[] kv = arg.replaceFirst("^-+", "").split("=", 2);
+                switch (kv[0]) {
+                    case "duree-s" -> options.dureeS = Long.parseLong(kv[1]);
+                    case "echauffement-s" -> options.echauffementS = Long.parseLong(kv[1]);
+                    case "workflows-par-s" -> options.workflowsParS = Double.parseDouble(kv[1]);
+                    case "consultations-par-s" -> options.consultationsParS = Double.parseDouble(kv[1]);
+                    case "connexions-par-s" -> options.connexionsParS = Double.parseDouble(kv[1]);
+                    case "reflexion-ms" -> options.reflexionMs = Long.parseLong(kv[1]);
+                    case "utilisateurs" -> options.utilisateurs = Integer.parseInt(kv[1]);
+                    case "factures" -> options.factures = Integer.parseInt(kv[1]);
+                    case "jdbc-url" -> options.jdbcUrl = kv[1];
+                    case "jdbc-user" -> options.jdbcUser = kv[1];
+                    case "jdbc-password" -> options.jdbcPassword = kv[1];
+                    case "profils" -> options.profils = kv[1].split(",");
+                    case "journaux" -> options.journaux = kv[1];
+                    default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+                }
+            }
+            return options;
+        }
+    }
+}
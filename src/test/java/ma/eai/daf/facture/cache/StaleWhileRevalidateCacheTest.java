@@ -0,0 +1,97 @@
+package ma.eai.daf.facture.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StaleWhileRevalidateCacheTest {
+
+    @Test
+    void valeurFraicheServieSansRecalcul() {
+        StaleWhileRevalidateCache cache = new StaleWhileRevalidateCache("test", Duration.ofMinutes(5), 3, 100, Runnable::run);
+        AtomicInteger appels = new AtomicInteger();
+
+        assertThat(cache.get("k", () -> "v" + appels.incrementAndGet())).isEqualTo("v1");
+        assertThat(cache.get("k", () -> "v" + appels.incrementAndGet())).isEqualTo("v1");
+
+        assertThat(appels).hasValue(1);
+    }
+
+    @Test
+    void chargementEnCoursPendantUnClearNestPasConserve() throws Exception {
+        StaleWhileRevalidateCache cache = new StaleWhileRevalidateCache("test", Duration.ofMinutes(5), 3, 100, Runnable::run);
+        CountDownLatch chargementCommence = new CountDownLatch(1);
+        CountDownLatch invalidationFaite = new CountDownLatch(1);
+
+        CompletableFuture<String> lecture = CompletableFuture.supplyAsync(() -> cache.get("k", () -> {
+            // Agrégat lu avant le commit, invalidé pendant le calcul
+            chargementCommence.countDown();
+            assertThat(invalidationFaite.await(5, TimeUnit.SECONDS)).isTrue();
+            return "ancienne";
+        }));
+        assertThat(chargementCommence.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.clear();
+        invalidationFaite.countDown();
+
+        // L'appelant en cours reçoit sa valeur, mais elle n'est pas réécrite dans le cache
+        assertThat(lecture.get(5, TimeUnit.SECONDS)).isEqualTo("ancienne");
+        assertThat(cache.get("k", () -> "nouvelle")).isEqualTo("nouvelle");
+    }
+
+    @Test
+    void chargementEnCoursPendantUnEvictNestPasConserve() throws Exception {
+        StaleWhileRevalidateCache cache = new StaleWhileRevalidateCache("test", Duration.ofMinutes(5), 3, 100, Runnable::run);
+        CountDownLatch chargementCommence = new CountDownLatch(1);
+        CountDownLatch invalidationFaite = new CountDownLatch(1);
+
+        CompletableFuture<String> lecture = CompletableFuture.supplyAsync(() -> cache.get("k", () -> {
+            chargementCommence.countDown();
+            assertThat(invalidationFaite.await(5, TimeUnit.SECONDS)).isTrue();
+            return "ancienne";
+        }));
+        assertThat(chargementCommence.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.evict("k");
+        // Un appel après l'invalidation n'attend pas le calcul commencé avant
+        assertThat(CompletableFuture.supplyAsync(() -> cache.get("k", () -> "nouvelle")).get(5, TimeUnit.SECONDS))
+                .isEqualTo("nouvelle");
+        invalidationFaite.countDown();
+        lecture.get(5, TimeUnit.SECONDS);
+
+        assertThat(cache.get("k", () -> "autre")).isEqualTo("nouvelle");
+    }
+
+    @Test
+    void rafraichissementEnArrierePlanPendantUnClearNestPasConserve() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            StaleWhileRevalidateCache cache = new StaleWhileRevalidateCache("test", Duration.ofMillis(1), 10_000, 100, executor);
+            cache.put("k", "initiale");
+            Thread.sleep(5);
+            CountDownLatch chargementCommence = new CountDownLatch(1);
+            CountDownLatch invalidationFaite = new CountDownLatch(1);
+
+            // Entrée périmée : servie telle quelle, recalcul lancé sur l'exécuteur
+            assertThat(cache.get("k", () -> {
+                chargementCommence.countDown();
+                assertThat(invalidationFaite.await(5, TimeUnit.SECONDS)).isTrue();
+                return "ancienne";
+            })).isEqualTo("initiale");
+            assertThat(chargementCommence.await(5, TimeUnit.SECONDS)).isTrue();
+            cache.clear();
+            invalidationFaite.countDown();
+            executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+            assertThat(cache.get("k", () -> "nouvelle")).isEqualTo("nouvelle");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ma.eai.daf.facture.controllers;
+
+import ma.eai.daf.facture.cache.VersionsListesFactures;
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.enums.RoleType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
+import ma.eai.daf.facture.events.UtilisateurModifieEvent;
+import ma.eai.daf.facture.mappers.FactureMapper;
+import ma.eai.daf.facture.recherche.FactureIndex;
+import ma.eai.daf.facture.recherche.SuggestionsFournisseurs;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import ma.eai.daf.facture.security.AuthenticatedUser;
+import ma.eai.daf.facture.services.AnnuaireUtilisateursService;
+import ma.eai.daf.facture.services.BalanceAgeeService;
+import ma.eai.daf.facture.services.FactureService;
+import ma.eai.daf.facture.services.ListeFacturesEnFlux;
+import ma.eai.daf.facture.services.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FactureControllerTest {
+
+    private static final Long CREATEUR = 3L;
+    private static final Long AUTRE = 4L;
+
+    private FactureService factureService;
+    private FactureRepository factureRepository;
+    private VersionsListesFactures versionsListes;
+    private FactureController controller;
+
+    @BeforeEach
+    void setUp() {
+        factureService = mock(FactureService.class);
+        factureRepository = mock(FactureRepository.class);
+        versionsListes = new VersionsListesFactures(factureRepository);
+        FactureMapper factureMapper = mock(FactureMapper.class);
+        when(factureMapper.toListDtoList(List.of())).thenReturn(List.of());
+        controller = new FactureController(factureService, mock(UserService.class), factureMapper,
+                mock(AnnuaireUtilisateursService.class), mock(BalanceAgeeService.class), mock(FactureIndex.class),
+                mock(SuggestionsFournisseurs.class), versionsListes, mock(ListeFacturesEnFlux.class));
+    }
+
+    @Test
+    void listeInchangeeRenvoie304SansLireLesFactures() {
+        String etag = mesFactures(null).getHeaders().getETag();
+        assertThat(etag).isNotNull();
+
+        MockHttpServletResponse revalidation = new MockHttpServletResponse();
+        ResponseEntity<?> reponse = controller.getMesFactures(utilisateur(CREATEUR), webRequest(etag, revalidation));
+
+        assertThat(reponse).isNull();
+        assertThat(revalidation.getStatus()).isEqualTo(304);
+        assertThat(revalidation.getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+        verify(factureService, times(1)).getFacturesParCreateur(CREATEUR);
+    }
+
+    @Test
+    void factureCreeeParLUtilisateurChangeSonEtag() {
+        String etag = mesFactures(null).getHeaders().getETag();
+        when(factureRepository.findIntervenants(10L)).thenReturn(List.<Object[]>of(new Object[]{CREATEUR, null, null, null}));
+
+        versionsListes.onFactureModifiee(new FactureModifieeEvent(10L, TypeModification.CREATION, null, StatutFacture.SAISIE));
+
+        ResponseEntity<?> reponse = mesFactures(etag);
+        assertThat(reponse.getStatusCode().value()).isEqualTo(200);
+        assertThat(reponse.getHeaders().getETag()).isNotEqualTo(etag);
+        verify(factureService, times(2)).getFacturesParCreateur(CREATEUR);
+    }
+
+    @Test
+    void factureDUnAutreUtilisateurLaisseLEtagInchange() {
+        String etag = mesFactures(null).getHeaders().getETag();
+        when(factureRepository.findIntervenants(11L)).thenReturn(List.<Object[]>of(new Object[]{AUTRE, null, null, null}));
+
+        versionsListes.onFactureModifiee(new FactureModifieeEvent(11L, TypeModification.CREATION, null, StatutFacture.SAISIE));
+
+        assertThat(mesFactures(etag)).isNull();
+    }
+
+    @Test
+    void modificationChangeLEtagDeTousLesUtilisateurs() {
+        String etag = mesFactures(null).getHeaders().getETag();
+
+        // Les anciens intervenants d'une facture réaffectée ne sont plus connus
+        versionsListes.onFactureModifiee(new FactureModifieeEvent(12L, TypeModification.MODIFICATION,
+                StatutFacture.SAISIE, StatutFacture.SAISIE));
+
+        assertThat(mesFactures(etag)).isNotNull();
+        verify(factureRepository, never()).findIntervenants(12L);
+    }
+
+    @Test
+    void fileParStatutInvalideeSeulementParSesStatuts() {
+        MockHttpServletResponse premiere = new MockHttpServletResponse();
+        ResponseEntity<?> reponse = controller.getFacturesUrgentes(webRequest(null, premiere), false);
+        String etag = reponse.getHeaders().getETag();
+
+        versionsListes.onFactureModifiee(new FactureModifieeEvent(13L, TypeModification.CREATION, null, StatutFacture.SAISIE));
+        assertThat(controller.getFacturesUrgentes(webRequest(etag, new MockHttpServletResponse()), false)).isNull();
+
+        versionsListes.onFactureModifiee(new FactureModifieeEvent(13L, TypeModification.TRANSITION,
+                StatutFacture.SAISIE, StatutFacture.EN_VALIDATION_V1));
+        assertThat(controller.getFacturesUrgentes(webRequest(etag, new MockHttpServletResponse()), false)).isNotNull();
+    }
+
+    @Test
+    void modificationDUnUtilisateurChangeLesEtagsDesListes() {
+        String mesFactures = mesFactures(null).getHeaders().getETag();
+        String urgentes = controller.getFacturesUrgentes(webRequest(null, new MockHttpServletResponse()), false)
+                .getHeaders().getETag();
+
+        // Nom complet du créateur affiché dans chaque ligne, sans modification des factures
+        versionsListes.onUtilisateurModifie(new UtilisateurModifieEvent(AUTRE, UtilisateurModifieEvent.TypeModification.MODIFICATION));
+
+        assertThat(mesFactures(mesFactures)).isNotNull();
+        assertThat(controller.getFacturesUrgentes(webRequest(urgentes, new MockHttpServletResponse()), false)).isNotNull();
+    }
+
+    @Test
+    void detailRevalideTantQueNiLaFactureNiLesUtilisateursNOntChange() {
+        when(factureService.getDateModification(1L)).thenReturn(Optional.of(LocalDateTime.of(2026, 3, 2, 10, 0)));
+        when(factureService.getFactureById(1L)).thenReturn(Optional.of(Facture.builder().id(1L).build()));
+        String etag = controller.getFactureById(1L, webRequest(null, new MockHttpServletResponse())).getHeaders().getETag();
+
+        assertThat(controller.getFactureById(1L, webRequest(etag, new MockHttpServletResponse()))).isNull();
+        verify(factureService, times(1)).getFactureById(1L);
+
+        versionsListes.onUtilisateurModifie(new UtilisateurModifieEvent(CREATEUR, UtilisateurModifieEvent.TypeModification.MODIFICATION));
+        ResponseEntity<?> reponse = controller.getFactureById(1L, webRequest(etag, new MockHttpServletResponse()));
+        assertThat(reponse.getStatusCode().value()).isEqualTo(200);
+        assertThat(reponse.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
+    private ResponseEntity<?> mesFactures(String ifNoneMatch) {
+        return controller.getMesFactures(utilisateur(CREATEUR), webRequest(ifNoneMatch, new MockHttpServletResponse()));
+    }
+
+    private static ServletWebRequest webRequest(String ifNoneMatch, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/factures/liste");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, response);
+    }
+
+    private static Authentication utilisateur(Long id) {
+        AuthenticatedUser principal = new AuthenticatedUser(id, "sara.alami@example.ma", RoleType.U1, "jti");
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+}
@@ -0,0 +1,139 @@
+package ma.eai.daf.facture.controllers;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.services.ApercuPieceJointeService;
+import ma.eai.daf.facture.services.FactureService;
+import ma.eai.daf.facture.services.PieceJointeStockage;
+import ma.eai.daf.facture.services.SegmentsPiecesJointes;
+import ma.eai.daf.facture.services.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PieceJointeControllerTest {
+
+    private static final byte[] HTML = "<html><script>alert(document.cookie)</script></html>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PDF = "%PDF-1.7\n%âãÏÓ\n1 0 obj\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    @TempDir
+    Path racine;
+
+    private FactureService factureService;
+    private PieceJointeStockage stockage;
+    private ApercuPieceJointeService apercuService;
+    private PieceJointeController controller;
+
+    @BeforeEach
+    void setUp() {
+        factureService = mock(FactureService.class);
+        stockage = new PieceJointeStockage(racine.toString(), DataSize.ofMegabytes(1), mock(SegmentsPiecesJointes.class));
+        apercuService = mock(ApercuPieceJointeService.class);
+        controller = new PieceJointeController(factureService, stockage, mock(UserService.class), apercuService);
+    }
+
+    @Test
+    void typeDetecteParSignature() throws Exception {
+        assertThat(stockage.detecterType(stocker(PDF))).isEqualTo("application/pdf");
+        assertThat(stockage.detecterType(stocker(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0})))
+                .isEqualTo("image/png");
+        assertThat(stockage.detecterType(stocker(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0})))
+                .isEqualTo("image/jpeg");
+        assertThat(stockage.detecterType(stocker(HTML))).isEqualTo("application/octet-stream");
+    }
+
+    @Test
+    void pdfServiEnLigne() throws Exception {
+        MockHttpServletResponse response = telecharger(stocker(PDF), "application/pdf", "facture.pdf");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("application/pdf");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).startsWith("inline");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+        assertThat(response.getContentAsByteArray()).isEqualTo(PDF);
+    }
+
+    @Test
+    void typeEnregistreNonAffichableServiEnPieceJointeBinaire() throws Exception {
+        // Type déclaré par le client avant la détection par signature
+        MockHttpServletResponse response = telecharger(stocker(HTML), "text/html", "facture.html");
+
+        assertThat(response.getContentType()).isEqualTo("application/octet-stream");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).startsWith("attachment");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+    }
+
+    @Test
+    void reponseNonModifieePorteAussiNosniff() throws Exception {
+        String chemin = stocker(PDF);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/factures/1/piece-jointe");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"" + PieceJointeStockage.empreinte(chemin) + "\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        when(factureService.getFactureById(1L)).thenReturn(Optional.of(facture(chemin, "application/pdf", "facture.pdf")));
+
+        controller.telecharger(1L, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+    }
+
+    @Test
+    void formatDApercuInconnuRefuse() throws Exception {
+        ResponseEntity<?> reponse = controller.getApercu(1L, "original", webRequest());
+
+        assertThat(reponse.getStatusCode().value()).isEqualTo(400);
+    }
+
+    @Test
+    void poolDApercuSatureRenvoie503AvecRetryAfter() throws Exception {
+        String chemin = stocker(PDF);
+        when(factureService.getFactureById(1L)).thenReturn(Optional.of(facture(chemin, "application/pdf", "facture.pdf")));
+        when(apercuService.trouver(chemin, ApercuPieceJointeService.Format.VIGNETTE)).thenReturn(Optional.empty());
+        when(apercuService.planifier(chemin, "application/pdf", "facture.pdf"))
+                .thenReturn(ApercuPieceJointeService.Planification.SATURE);
+
+        ResponseEntity<?> reponse = controller.getApercu(1L, "vignette", webRequest());
+
+        assertThat(reponse.getStatusCode().value()).isEqualTo(503);
+        assertThat(reponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+    }
+
+    private static ServletWebRequest webRequest() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/factures/1/piece-jointe/vignette"),
+                new MockHttpServletResponse());
+    }
+
+    private MockHttpServletResponse telecharger(String chemin, String typeMime, String nom) throws Exception {
+        when(factureService.getFactureById(1L)).thenReturn(Optional.of(facture(chemin, typeMime, nom)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.telecharger(1L, new MockHttpServletRequest("GET", "/api/factures/1/piece-jointe"), response);
+        return response;
+    }
+
+    private String stocker(byte[] contenu) throws Exception {
+        return stockage.stocker(new ByteArrayInputStream(contenu)).getChemin();
+    }
+
+    private static Facture facture(String chemin, String typeMime, String nom) {
+        return Facture.builder()
+                .id(1L)
+                .pieceJointeChemin(chemin)
+                .pieceJointeTypeMime(typeMime)
+                .pieceJointeNom(nom)
+                .build();
+    }
+}
@@ -0,0 +1,164 @@
+package ma.eai.daf.facture.recherche;
+
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FactureIndexTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 3, 2, 10, 0);
+
+    @TempDir
+    Path repertoire;
+
+    private FactureRepository factureRepository;
+    private FactureIndex index;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        factureRepository = mock(FactureRepository.class);
+        index = ouvrir();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (index != null) {
+            index.fermer();
+        }
+    }
+
+    @Test
+    void rechercheInsensibleAuxAccentsAvecFacettes() throws IOException {
+        charger(ligne(1L, "Électricité du siège", StatutFacture.PAYEE, T0),
+                ligne(2L, "Maintenance électrique", StatutFacture.EN_VALIDATION_V1, T0),
+                ligne(3L, "Fournitures de bureau", StatutFacture.PAYEE, T0));
+
+        FactureIndex.Resultat resultat = index.rechercher("electricite", null, null, 10);
+        assertThat(resultat.getIds()).containsExactly(1L);
+
+        // Facettes comptées sur le texte seul, avant le filtre de statut
+        FactureIndex.Resultat tout = index.rechercher("", StatutFacture.PAYEE, null, 10);
+        assertThat(tout.getIds()).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(tout.getTotal()).isEqualTo(2);
+        assertThat(tout.getFacettes().get("statut"))
+                .containsEntry("PAYEE", 2L)
+                .containsEntry("EN_VALIDATION_V1", 1L);
+    }
+
+    @Test
+    void modificationRelueEnBaseEtSuppression() throws Exception {
+        charger(ligne(1L, "Maintenance climatisation", StatutFacture.SAISIE, T0));
+        when(factureRepository.findDocumentRecherche(2L))
+                .thenReturn(List.<Object[]>of(ligne(2L, "Fournitures de bureau", StatutFacture.SAISIE, T0.plusMinutes(2))));
+
+        when(factureRepository.findDocumentRecherche(1L))
+                .thenReturn(List.<Object[]>of(ligne(1L, "Maintenance climatisation", StatutFacture.EN_VALIDATION_V1, T0.plusMinutes(1))));
+        index.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.TRANSITION,
+                StatutFacture.SAISIE, StatutFacture.EN_VALIDATION_V1));
+        attendreVisible("climatisation", StatutFacture.EN_VALIDATION_V1, 1L);
+        assertThat(index.rechercher("climatisation", StatutFacture.SAISIE, null, 10).getIds()).isEmpty();
+
+        index.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.SUPPRESSION, StatutFacture.EN_VALIDATION_V1, null));
+        index.onFactureModifiee(new FactureModifieeEvent(2L, TypeModification.CREATION, null, StatutFacture.SAISIE));
+        attendreVisible("bureau", null, 2L);
+        assertThat(index.rechercher("climatisation", null, null, 10).getIds()).isEmpty();
+    }
+
+    @Test
+    void redemarrageReindexeLesFacturesModifieesDepuisLeDernierCommit() throws Exception {
+        charger(ligne(1L, "Maintenance climatisation", StatutFacture.SAISIE, T0));
+        index.fermer();
+        clearInvocations(factureRepository);
+
+        // Modification validée en base mais jamais commitée dans l'index
+        when(factureRepository.findDocumentsRechercheModifiesDepuis(T0.minusMinutes(5)))
+                .thenReturn(List.<Object[]>of(ligne(1L, "Nettoyage des locaux", StatutFacture.SAISIE, T0.plusSeconds(30))));
+        when(factureRepository.count()).thenReturn(1L);
+        index = ouvrir();
+        index.charger();
+
+        attendreVisible("nettoyage", null, 1L);
+        assertThat(index.rechercher("climatisation", null, null, 10).getIds()).isEmpty();
+        assertThat(index.getEtat()).containsEntry("derniereModification", T0.plusSeconds(30).toString());
+        verify(factureRepository, never()).findDocumentsRecherche(anyLong(), any());
+    }
+
+    @Test
+    void indexDesynchroniseReconstruitAuDemarrage() throws IOException {
+        charger(ligne(1L, "Maintenance climatisation", StatutFacture.SAISIE, T0),
+                ligne(2L, "Nettoyage des locaux", StatutFacture.SAISIE, T0));
+        index.fermer();
+
+        // Suppression de la facture 2 perdue avec le commit
+        when(factureRepository.findDocumentsRechercheModifiesDepuis(any())).thenReturn(List.of());
+        when(factureRepository.count()).thenReturn(1L);
+        when(factureRepository.findDocumentsRecherche(anyLong(), any()))
+                .thenReturn(List.<Object[]>of(ligne(1L, "Maintenance climatisation", StatutFacture.SAISIE, T0)));
+        index = ouvrir();
+        index.charger();
+
+        assertThat(index.rechercher("nettoyage", null, null, 10).getIds()).isEmpty();
+        assertThat(index.getEtat()).containsEntry("documents", 1);
+    }
+
+    @Test
+    void modificationPendantLaReconstructionRejouee() throws Exception {
+        Object[] ancienne = ligne(1L, "Maintenance climatisation", StatutFacture.SAISIE, T0);
+        Object[] nouvelle = ligne(1L, "Nettoyage des locaux", StatutFacture.SAISIE, T0.plusMinutes(1));
+        when(factureRepository.findDocumentRecherche(1L)).thenReturn(List.<Object[]>of(nouvelle));
+        when(factureRepository.findDocumentsRecherche(anyLong(), any())).thenAnswer(invocation -> {
+            // Événement traité pendant que la page lue avant le commit est encore à écrire
+            index.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.MODIFICATION,
+                    StatutFacture.SAISIE, StatutFacture.SAISIE));
+            return List.<Object[]>of(ancienne);
+        });
+
+        index.reconstruire();
+
+        attendreVisible("nettoyage", null, 1L);
+        assertThat(index.rechercher("climatisation", null, null, 10).getIds()).isEmpty();
+    }
+
+    // Les écritures deviennent visibles à la réouverture du lecteur (au plus tard après 1 s)
+    private void attendreVisible(String texte, StatutFacture statut, Long id) throws Exception {
+        long limite = System.currentTimeMillis() + 5_000;
+        while (!index.rechercher(texte, statut, null, 10).getIds().contains(id)) {
+            assertThat(System.currentTimeMillis()).as("facture %d visible pour '%s'", id, texte).isLessThan(limite);
+            Thread.sleep(20);
+        }
+    }
+
+    private FactureIndex ouvrir() throws IOException {
+        return new FactureIndex(factureRepository, repertoire.toString(), 100);
+    }
+
+    private void charger(Object[]... lignes) {
+        when(factureRepository.findDocumentsRecherche(anyLong(), any())).thenReturn(List.of(lignes));
+        index.reconstruire();
+    }
+
+    private static Object[] ligne(Long id, String designation, StatutFacture statut, LocalDateTime modification) {
+        return new Object[]{id, "FAC-2026-" + id, "Atlas Services SARL", designation, null, "BC-" + id,
+                "Mars 2026", null, statut, ModaliteType.DELAI_30, modification};
+    }
+}
@@ -0,0 +1,130 @@
+package ma.eai.daf.facture.recherche;
+
+import ma.eai.daf.facture.enums.FormeJuridiqueType;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
+import ma.eai.daf.facture.events.FournisseurModifieEvent;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import ma.eai.daf.facture.repositories.FournisseurRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SuggestionsFournisseursTest {
+
+    private FournisseurRepository fournisseurRepository;
+    private FactureRepository factureRepository;
+    private SuggestionsFournisseurs suggestions;
+
+    private final List<Object[]> fournisseurs = new ArrayList<>();
+    private final List<Object[]> mois = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        fournisseurRepository = mock(FournisseurRepository.class);
+        factureRepository = mock(FactureRepository.class);
+        when(fournisseurRepository.findSuggestionsActives()).thenReturn(fournisseurs);
+        when(factureRepository.countParFournisseurEtMois()).thenReturn(mois);
+        suggestions = new SuggestionsFournisseurs(fournisseurRepository, factureRepository, Duration.ofDays(90));
+    }
+
+    @Test
+    void lesFacturesRecentesPrimentSurLeNombre() {
+        fournisseur(1L, "Alpha Transports", 2024, 1, 6);
+        fournisseur(2L, "Atlas Travaux", 2026, 1, 2);
+        suggestions.charger();
+
+        List<Map<String, Object>> resultat = suggestions.suggerer("a", 10);
+
+        assertThat(ids(resultat)).containsExactly(2L, 1L);
+        assertThat(resultat.get(1)).containsEntry("nombreFactures", 6).containsEntry("derniereFacture", "2024-01-15");
+    }
+
+    @Test
+    void prefixeReconnuEnDebutDeSecondMotSeulement() {
+        fournisseur(1L, "Société Générale", 2026, 1, 1);
+        suggestions.charger();
+
+        assertThat(ids(suggestions.suggerer("gén", 10))).containsExactly(1L);
+        assertThat(ids(suggestions.suggerer("soc gen", 10))).isEmpty();
+        assertThat(suggestions.suggerer("erale", 10)).isEmpty();
+        assertThat(suggestions.suggerer(" - ", 10)).isEmpty();
+    }
+
+    @Test
+    void uneEntreeEvinceeRevientQuandSonScoreAugmente() {
+        for (long id = 1; id <= 11; id++) {
+            fournisseur(id, String.format("Fournisseur %02d", id), 2025, 6, (int) id);
+        }
+        suggestions.charger();
+
+        // Onze candidats pour dix places sous « F » : le moins facturé est évincé
+        List<Map<String, Object>> avant = suggestions.suggerer("f", 20);
+        assertThat(avant).hasSize(suggestions.getTop());
+        assertThat(ids(avant)).startsWith(11L, 10L).doesNotContain(1L);
+
+        when(factureRepository.findFournisseurSuggestion(100L)).thenReturn(List.<Object[]>of(new Object[]{
+                1L, "Fournisseur 01", null, null, LocalDateTime.of(2026, 10, 1, 9, 0)}));
+        suggestions.onFactureModifiee(new FactureModifieeEvent(100L, TypeModification.CREATION, null, null));
+
+        List<Map<String, Object>> apres = suggestions.suggerer("f", 20);
+        assertThat(ids(apres)).hasSize(suggestions.getTop()).startsWith(1L, 11L).doesNotContain(2L);
+        assertThat(apres.get(0)).containsEntry("nombreFactures", 2);
+    }
+
+    @Test
+    void unPrefixePlusLongQueLaProfondeurEstFiltre() {
+        String commun = "Compagnie Marocaine des Transports ";
+        fournisseur(1L, commun + "Nord", 2026, 1, 3);
+        fournisseur(2L, commun + "Sud", 2026, 1, 1);
+        suggestions.charger();
+
+        assertThat(ids(suggestions.suggerer(commun, 10))).containsExactly(1L, 2L);
+        assertThat(ids(suggestions.suggerer(commun + "s", 10))).containsExactly(2L);
+        assertThat(ids(suggestions.suggerer("marocaine des transports nord", 10))).containsExactly(1L);
+    }
+
+    @Test
+    void fournisseurRenommePuisDesactive() {
+        for (long id = 1; id <= 11; id++) {
+            fournisseur(id, String.format("Fournisseur %02d", id), 2025, 6, (int) id);
+        }
+        suggestions.charger();
+
+        when(fournisseurRepository.findSuggestionActive(11L)).thenReturn(List.<Object[]>of(new Object[]{
+                11L, "Omega Fournitures", FormeJuridiqueType.SARL, ModaliteType.DELAI_60}));
+        suggestions.onFournisseurModifie(new FournisseurModifieEvent(11L));
+
+        // Renommé : l'historique suit le nouveau nom, l'ancien nom libère sa place
+        List<Map<String, Object>> omega = suggestions.suggerer("four", 10);
+        assertThat(ids(omega)).containsExactly(11L, 10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L);
+        assertThat(omega.get(0)).containsEntry("nom", "Omega Fournitures").containsEntry("nombreFactures", 11)
+                .containsEntry("formeJuridique", "SARL");
+        assertThat(ids(suggestions.suggerer("fournisseur", 10))).contains(1L).doesNotContain(11L);
+
+        when(fournisseurRepository.findSuggestionActive(11L)).thenReturn(List.of());
+        suggestions.onFournisseurModifie(new FournisseurModifieEvent(11L));
+
+        assertThat(suggestions.suggerer("omega", 10)).isEmpty();
+        assertThat(ids(suggestions.suggerer("f", 10))).hasSize(10).doesNotContain(11L).contains(1L);
+    }
+
+    private void fournisseur(Long id, String nom, int annee, int numeroMois, int nombre) {
+        fournisseurs.add(new Object[]{id, nom, null, null});
+        mois.add(new Object[]{id, annee, numeroMois, (long) nombre});
+    }
+
+    private static List<Long> ids(List<Map<String, Object>> suggestions) {
+        return suggestions.stream().map(s -> (Long) s.get("id")).toList();
+    }
+}
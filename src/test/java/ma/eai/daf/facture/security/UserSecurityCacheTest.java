@@ -0,0 +1,110 @@
+package ma.eai.daf.facture.security;
+
+import ma.eai.daf.facture.entities.User;
+import ma.eai.daf.facture.enums.RoleType;
+import ma.eai.daf.facture.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserSecurityCacheTest {
+
+    private UserRepository userRepository;
+    private UserSecurityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        cache = new UserSecurityCache(userRepository, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void lectureSuivanteServieDepuisLeCache() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(utilisateur(true, "s1")));
+
+        assertThat(cache.get(1L)).isPresent();
+        assertThat(cache.get(1L)).isPresent();
+
+        verify(userRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void invaliderForceUneNouvelleLecture() {
+        when(userRepository.findById(1L))
+                .thenReturn(Optional.of(utilisateur(true, "s1")))
+                .thenReturn(Optional.of(utilisateur(true, "s2")));
+
+        assertThat(cache.get(1L).orElseThrow().getSecurityStamp()).isEqualTo("s1");
+        cache.invalider(1L);
+
+        assertThat(cache.get(1L).orElseThrow().getSecurityStamp()).isEqualTo("s2");
+    }
+
+    @Test
+    void etatChargeAvantUneInvalidationNestPasConserve() throws Exception {
+        CountDownLatch chargementCommence = new CountDownLatch(1);
+        CountDownLatch invalidationFaite = new CountDownLatch(1);
+        when(userRepository.findById(1L))
+                .thenAnswer(invocation -> {
+                    // Lecture de l'état d'avant le commit, puis invalidation pendant le chargement
+                    chargementCommence.countDown();
+                    assertThat(invalidationFaite.await(5, TimeUnit.SECONDS)).isTrue();
+                    return Optional.of(utilisateur(true, "ancienne"));
+                })
+                .thenReturn(Optional.of(utilisateur(false, "nouvelle")));
+
+        CompletableFuture<Optional<UserSecurityState>> lecture = CompletableFuture.supplyAsync(() -> cache.get(1L));
+        assertThat(chargementCommence.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.invalider(1L);
+        invalidationFaite.countDown();
+        lecture.get(5, TimeUnit.SECONDS);
+
+        // Le compte désactivé après la lecture ne doit pas rester autorisé jusqu'à l'expiration
+        UserSecurityState etat = cache.get(1L).orElseThrow();
+        assertThat(etat.isActif()).isFalse();
+        assertThat(etat.getSecurityStamp()).isEqualTo("nouvelle");
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void invaliderToutRetireLesChargementsEnCours() throws Exception {
+        CountDownLatch chargementCommence = new CountDownLatch(1);
+        CountDownLatch invalidationFaite = new CountDownLatch(1);
+        when(userRepository.findById(7L))
+                .thenAnswer(invocation -> {
+                    chargementCommence.countDown();
+                    assertThat(invalidationFaite.await(5, TimeUnit.SECONDS)).isTrue();
+                    return Optional.of(utilisateur(true, "ancienne"));
+                })
+                .thenReturn(Optional.of(utilisateur(true, "nouvelle")));
+
+        CompletableFuture<Optional<UserSecurityState>> lecture = CompletableFuture.supplyAsync(() -> cache.get(7L));
+        assertThat(chargementCommence.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.invaliderTout();
+        invalidationFaite.countDown();
+        lecture.get(5, TimeUnit.SECONDS);
+
+        assertThat(cache.get(7L).orElseThrow().getSecurityStamp()).isEqualTo("nouvelle");
+    }
+
+    private static User utilisateur(boolean actif, String securityStamp) {
+        return User.builder()
+                .id(1L)
+                .email("sara.alami@example.ma")
+                .role(RoleType.U1)
+                .actif(actif)
+                .securityStamp(securityStamp)
+                .build();
+    }
+}
@@ -0,0 +1,174 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.services.ApercuPieceJointeService.Format;
+import ma.eai.daf.facture.services.ApercuPieceJointeService.Planification;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ApercuPieceJointeServiceTest {
+
+    @TempDir
+    Path racine;
+
+    private PieceJointeStockage stockage;
+    private ThreadPoolExecutor executor;
+    private ApercuPieceJointeService service;
+
+    @BeforeEach
+    void setUp() {
+        stockage = new PieceJointeStockage(racine.toString(), DataSize.ofMegabytes(10), mock(SegmentsPiecesJointes.class));
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        service = new ApercuPieceJointeService(stockage, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void formatReconnuSansTenirCompteDeLaCasse() {
+        assertThat(Format.depuis("vignette")).contains(Format.VIGNETTE);
+        assertThat(Format.depuis("APERCU")).contains(Format.APERCU);
+        assertThat(Format.depuis("original")).isEmpty();
+    }
+
+    @Test
+    void imageGeneree() throws Exception {
+        String chemin = stocker(png(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB)));
+
+        assertThat(service.planifier(chemin, "image/png", "scan.png")).isEqualTo(Planification.EN_COURS);
+        attendreLeRendu();
+
+        assertThat(dimensions(chemin, Format.APERCU)).containsExactly(1024, 512);
+        assertThat(dimensions(chemin, Format.VIGNETTE)).containsExactly(240, 120);
+        assertThat(service.planifier(chemin, "image/png", "scan.png")).isEqualTo(Planification.EN_COURS);
+    }
+
+    @Test
+    void imageSourceTropGrandeRefuseeSansEtreDecodee() throws Exception {
+        // En-tête PNG seul : 60 000 × 60 000 pixels annoncés, soit 14 Go une fois décodés
+        String chemin = stocker(enTetePng(60_000, 60_000));
+
+        service.planifier(chemin, "image/png", "scan.png");
+        attendreLeRendu();
+
+        assertThat(service.trouver(chemin, Format.APERCU)).isEmpty();
+        assertThat(service.planifier(chemin, "image/png", "scan.png")).isEqualTo(Planification.IMPOSSIBLE);
+    }
+
+    @Test
+    void pageTresHauteRendueDansUnCadreBorne() throws Exception {
+        String chemin = stocker(pdf(new PDRectangle(10, 20_000)));
+
+        service.planifier(chemin, "application/pdf", "rouleau.pdf");
+        attendreLeRendu();
+
+        int[] apercu = dimensions(chemin, Format.APERCU);
+        assertThat(apercu[1]).isLessThanOrEqualTo(4 * 1024);
+        assertThat(apercu[0]).isLessThanOrEqualTo(1024);
+    }
+
+    @Test
+    void formatNonGereImpossible() throws Exception {
+        String chemin = stocker(new byte[]{'P', 'K', 3, 4});
+
+        assertThat(service.planifier(chemin, "application/zip", "archive.zip")).isEqualTo(Planification.IMPOSSIBLE);
+    }
+
+    @Test
+    void poolSatureSignaleSansMarquerLEchec() throws Exception {
+        CountDownLatch liberer = new CountDownLatch(1);
+        CountDownLatch liberes = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            executor.execute(() -> {
+                attendre(liberer);
+                liberes.countDown();
+            });
+        }
+        String chemin = stocker(png(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+
+        assertThat(service.planifier(chemin, "image/png", "scan.png")).isEqualTo(Planification.SATURE);
+
+        liberer.countDown();
+        assertThat(liberes.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(service.planifier(chemin, "image/png", "scan.png")).isEqualTo(Planification.EN_COURS);
+    }
+
+    private void attendreLeRendu() throws Exception {
+        // Pool d'un seul thread : une tâche vide passe après le rendu
+        CountDownLatch fin = new CountDownLatch(1);
+        executor.execute(fin::countDown);
+        assertThat(fin.await(30, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void attendre(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int[] dimensions(String chemin, Format format) throws IOException {
+        PieceJointeStockage.Contenu apercu = service.trouver(chemin, format).orElseThrow();
+        try (InputStream entree = stockage.ouvrir(apercu)) {
+            BufferedImage image = ImageIO.read(entree);
+            return new int[]{image.getWidth(), image.getHeight()};
+        }
+    }
+
+    private String stocker(byte[] contenu) throws IOException {
+        return stockage.stocker(new ByteArrayInputStream(contenu)).getChemin();
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", sortie);
+        return sortie.toByteArray();
+    }
+
+    private static byte[] pdf(PDRectangle format) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage(format));
+            ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+            document.save(sortie);
+            return sortie.toByteArray();
+        }
+    }
+
+    // Signature et bloc IHDR valides, sans données d'image
+    private static byte[] enTetePng(int largeur, int hauteur) {
+        ByteBuffer ihdr = ByteBuffer.allocate(17).put(new byte[]{'I', 'H', 'D', 'R'})
+                .putInt(largeur).putInt(hauteur).put(new byte[]{8, 2, 0, 0, 0});
+        CRC32 crc = new CRC32();
+        crc.update(ihdr.array());
+        return ByteBuffer.allocate(8 + 4 + 17 + 4)
+                .put(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A})
+                .putInt(13).put(ihdr.array()).putInt((int) crc.getValue())
+                .array();
+    }
+}
@@ -0,0 +1,82 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.repositories.FactureRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CompactagePiecesJointesServiceTest {
+
+    @TempDir
+    Path racine;
+
+    private FactureRepository factureRepository;
+    private SegmentsPiecesJointes segments;
+    private PieceJointeStockage stockage;
+    private String chemin;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        factureRepository = mock(FactureRepository.class);
+        segments = new SegmentsPiecesJointes(racine.toString(), DataSize.ofMegabytes(1));
+        segments.charger();
+        stockage = new PieceJointeStockage(racine.toString(), DataSize.ofMegabytes(1), segments);
+        chemin = stockage.stocker(new ByteArrayInputStream("%PDF-1.7 facture froide".getBytes(StandardCharsets.UTF_8)))
+                .getChemin();
+        when(factureRepository.findPiecesJointesFroides(anyLong(), any(), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, chemin}));
+    }
+
+    @Test
+    void fichierCompacteConserveJusquALaFinDuDelai() {
+        CompactagePiecesJointesService service = service(Duration.ofHours(1));
+
+        service.compacter();
+        service.compacter();
+
+        assertThat(segments.trouver(chemin)).isPresent();
+        assertThat(Files.exists(stockage.resoudre(chemin))).isTrue();
+    }
+
+    @Test
+    void fichierCompacteSupprimeAuPassageSuivantLeDelai() {
+        CompactagePiecesJointesService service = service(Duration.ZERO);
+
+        service.compacter();
+        assertThat(Files.exists(stockage.resoudre(chemin))).isTrue();
+
+        assertThat(service.compacter()).containsEntry("fichiersSupprimes", 1);
+        assertThat(Files.exists(stockage.resoudre(chemin))).isFalse();
+    }
+
+    @Test
+    void fichierCompacteAvantUnRedemarrageRepris() {
+        service(Duration.ofHours(1)).compacter();
+
+        // Nouvelle instance : les suppressions différées en mémoire sont perdues
+        CompactagePiecesJointesService redemarre = service(Duration.ZERO);
+        redemarre.compacter();
+        redemarre.compacter();
+
+        assertThat(Files.exists(stockage.resoudre(chemin))).isFalse();
+    }
+
+    private CompactagePiecesJointesService service(Duration delaiSuppression) {
+        return new CompactagePiecesJointesService(factureRepository, stockage, segments, true, Duration.ofDays(365),
+                DataSize.ofMegabytes(256), DataSize.ofMegabytes(16), delaiSuppression);
+    }
+}
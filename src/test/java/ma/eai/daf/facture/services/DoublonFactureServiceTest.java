@@ -0,0 +1,171 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import ma.eai.daf.facture.services.DoublonFactureService.DoublonException;
+import ma.eai.daf.facture.services.DoublonFactureService.Mode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class DoublonFactureServiceTest {
+
+    private DoublonFactureService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DoublonFactureService(mock(FactureRepository.class), Mode.BLOQUER, Period.ofYears(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void deuxiemeSaisieDeLaMemeFactureEstBloquee() {
+        creer(facture(1L, "F-001"), false);
+
+        assertThatThrownBy(() -> creer(facture(2L, "F-002"), false))
+                .isInstanceOf(DoublonException.class)
+                .extracting("numeroExistant").isEqualTo("F-001");
+    }
+
+    @Test
+    void saisieAnnuleeLibereLEmpreinte() {
+        transaction(() -> service.verifierCreation(facture(null, "F-001"), false), TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThatCode(() -> creer(facture(2L, "F-002"), false)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void doublonForceReprendLEmpreinteQuandLOriginalEstRetire() {
+        creer(facture(1L, "F-001"), false);
+        creer(facture(2L, "F-002"), true);
+
+        service.retirer(1L);
+
+        assertThatThrownBy(() -> creer(facture(3L, "F-003"), false))
+                .isInstanceOf(DoublonException.class)
+                .extracting("factureExistanteId").isEqualTo(2L);
+    }
+
+    @Test
+    void retirerUnDoublonForceConserveLEmpreinteDeLOriginal() {
+        creer(facture(1L, "F-001"), false);
+        creer(facture(2L, "F-002"), true);
+
+        service.retirer(2L);
+
+        assertThatThrownBy(() -> creer(facture(3L, "F-003"), false))
+                .isInstanceOf(DoublonException.class)
+                .extracting("factureExistanteId").isEqualTo(1L);
+    }
+
+    @Test
+    void retirerUneFactureModifieeNeLibereQueSaNouvelleEmpreinte() {
+        creer(facture(1L, "F-001"), false);
+        Facture modifiee = facture(1L, "F-001");
+        modifiee.setMontantTTC(new BigDecimal("999.00"));
+        service.verifierModification(modifiee);
+
+        // L'ancienne empreinte est libre, puis reprise par une autre facture
+        creer(facture(2L, "F-002"), false);
+        service.retirer(1L);
+
+        assertThatThrownBy(() -> creer(facture(3L, "F-003"), false))
+                .isInstanceOf(DoublonException.class)
+                .extracting("factureExistanteId").isEqualTo(2L);
+    }
+
+    @Test
+    void derniereFactureRetireeLibereLEmpreinte() {
+        creer(facture(1L, "F-001"), false);
+        creer(facture(2L, "F-002"), true);
+
+        service.retirer(1L);
+        service.retirer(2L);
+
+        assertThatCode(() -> creer(facture(3L, "F-003"), false)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void doublonsForcesReprennentLEmpreinteDansLOrdreDeSaisie() {
+        creer(facture(1L, "F-001"), false);
+        creer(facture(2L, "F-002"), true);
+        creer(facture(3L, "F-003"), true);
+
+        service.retirer(1L);
+        assertThatThrownBy(() -> creer(facture(4L, "F-004"), false))
+                .extracting("factureExistanteId").isEqualTo(2L);
+
+        service.retirer(2L);
+        assertThatThrownBy(() -> creer(facture(4L, "F-004"), false))
+                .extracting("factureExistanteId").isEqualTo(3L);
+    }
+
+    @Test
+    void saisieAnnuleeCedeLEmpreinteAuDoublonForceConcurrent() {
+        TransactionSynchronizationManager.initSynchronization();
+        Facture premiere = facture(null, "F-001");
+        service.verifierCreation(premiere, false);
+        List<TransactionSynchronization> reservation = List.copyOf(TransactionSynchronizationManager.getSynchronizations());
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Seconde saisie forcée pendant la réservation, validée avant l'annulation de la première
+        creer(facture(2L, "F-002"), true);
+        reservation.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertThatThrownBy(() -> creer(facture(3L, "F-003"), false))
+                .extracting("factureExistanteId").isEqualTo(2L);
+    }
+
+    // Vérification dans une transaction simulée ; l'id est attribué à l'enregistrement, avant le commit
+    private void creer(Facture facture, boolean forcer) {
+        Long id = facture.getId();
+        facture.setId(null);
+        transaction(() -> {
+            service.verifierCreation(facture, forcer);
+            facture.setId(id);
+        }, TransactionSynchronization.STATUS_COMMITTED);
+    }
+
+    private static void transaction(Runnable corps, int statut) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            corps.run();
+            List<TransactionSynchronization> synchronisations = TransactionSynchronizationManager.getSynchronizations();
+            if (statut == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronisations.forEach(TransactionSynchronization::afterCommit);
+            }
+            synchronisations.forEach(s -> s.afterCompletion(statut));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Facture facture(Long id, String numero) {
+        return Facture.builder()
+                .id(id)
+                .numero(numero)
+                .nomFournisseur("Atlas Services SARL")
+                .dateFacture(LocalDate.now().minusDays(10))
+                .montantTTC(new BigDecimal("1200.00"))
+                .refCommande("BC-2025-114")
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.entities.FactureRollup;
+import ma.eai.daf.facture.entities.Fournisseur;
+import ma.eai.daf.facture.enums.ModaliteType;
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.repositories.FactureRollupRepository;
+import ma.eai.daf.facture.services.FactureRollupService.Contribution;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class FactureRollupServiceTest {
+
+    private static final LocalDate ECHEANCE = LocalDate.of(2025, 3, 31);
+    private static final LocalDate PAIEMENT = LocalDate.of(2025, 4, 10);
+
+    private FactureRollupRepository rollupRepository;
+    private FactureRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        rollupRepository = mock(FactureRollupRepository.class);
+        service = new FactureRollupService(rollupRepository, mock(CacheManager.class));
+    }
+
+    @Test
+    void creationAjouteLaContribution() {
+        Facture facture = facture(StatutFacture.SAISIE, "1200.00");
+
+        service.enregistrer(null, service.capturer(facture));
+
+        verify(rollupRepository).appliquerDelta(ECHEANCE, "SAISIE", 7L, "DELAI_60", 1, new BigDecimal("1200.00"));
+        verifyNoMoreInteractions(rollupRepository);
+    }
+
+    @Test
+    void suppressionRetireLaContribution() {
+        Facture facture = facture(StatutFacture.VALIDEE, "1200.00");
+
+        service.enregistrer(service.capturer(facture), null);
+
+        verify(rollupRepository).appliquerDelta(ECHEANCE, "VALIDEE", 7L, "DELAI_60", -1, new BigDecimal("-1200.00"));
+        verifyNoMoreInteractions(rollupRepository);
+    }
+
+    @Test
+    void paiementDeplaceLaContributionVersLeJourDePaiement() {
+        Facture facture = facture(StatutFacture.EN_TRESORERIE, "500.00");
+        Contribution avant = service.capturer(facture);
+        facture.setStatut(StatutFacture.PAYEE);
+        facture.setDatePaiement(PAIEMENT);
+
+        service.enregistrer(avant, service.capturer(facture));
+
+        verify(rollupRepository).appliquerDelta(ECHEANCE, "EN_TRESORERIE", 7L, "DELAI_60", -1, new BigDecimal("-500.00"));
+        verify(rollupRepository).appliquerDelta(PAIEMENT, "PAYEE", 7L, "DELAI_60", 1, new BigDecimal("500.00"));
+        verifyNoMoreInteractions(rollupRepository);
+    }
+
+    @Test
+    void modificationSansEffetSurLaCelluleNEcritRien() {
+        Facture facture = facture(StatutFacture.SAISIE, "1200.00");
+        Contribution avant = service.capturer(facture);
+        facture.setDesignation("Prestation de maintenance");
+
+        service.enregistrer(avant, service.capturer(facture));
+
+        verify(rollupRepository, never()).appliquerDelta(any(), anyString(), anyLong(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void factureSansFournisseurNiModaliteVaDansLaCelluleParDefaut() {
+        Facture facture = facture(StatutFacture.SAISIE, "300.00");
+        facture.setFournisseur(null);
+        facture.setModalite(null);
+
+        Contribution contribution = service.capturer(facture);
+
+        assertThat(contribution.getFournisseurId()).isEqualTo(FactureRollup.FOURNISSEUR_INCONNU);
+        assertThat(contribution.getModalite()).isEqualTo(FactureRollup.MODALITE_AUCUNE);
+    }
+
+    private static Facture facture(StatutFacture statut, String montantTTC) {
+        return Facture.builder()
+                .id(42L)
+                .fournisseur(Fournisseur.builder().id(7L).nom("Atlas Services").build())
+                .modalite(ModaliteType.DELAI_60)
+                .dateFacture(LocalDate.of(2025, 1, 30))
+                .dateEcheance(ECHEANCE)
+                .montantTTC(new BigDecimal(montantTTC))
+                .statut(statut)
+                .build();
+    }
+}
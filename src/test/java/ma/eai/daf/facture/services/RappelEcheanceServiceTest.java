@@ -0,0 +1,131 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.enums.StatutFacture;
+import ma.eai.daf.facture.events.FactureModifieeEvent;
+import ma.eai.daf.facture.events.FactureModifieeEvent.TypeModification;
+import ma.eai.daf.facture.repositories.FactureRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RappelEcheanceServiceTest {
+
+    private static final LocalDate AUJOURDHUI = LocalDate.now();
+
+    private FactureRepository factureRepository;
+    private NotificationService notificationService;
+    private RappelEcheanceService service;
+    private final List<Object[]> echeances = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        factureRepository = mock(FactureRepository.class);
+        notificationService = mock(NotificationService.class);
+        when(factureRepository.findEcheancesOuvertes(any())).thenReturn(echeances);
+        when(notificationService.envoyerRappelEcheance(anyLong(), any(), anyInt())).thenReturn(true);
+        service = new RappelEcheanceService(factureRepository, notificationService, new int[]{7, 3, 0});
+    }
+
+    @Test
+    void seulLeSeuilDepasseLePlusProcheEstEnvoyeUneFois() {
+        // Saisie à J-2 : J-7 et J-3 sont dépassés, seul J-3 part
+        echeances.add(echeance(1L, AUJOURDHUI.plusDays(2), null, null));
+        service.charger();
+
+        service.declencher();
+        service.declencher();
+
+        verify(notificationService, times(1)).envoyerRappelEcheance(1L, AUJOURDHUI.plusDays(2), 3);
+        verify(notificationService, times(1)).envoyerRappelEcheance(anyLong(), any(), anyInt());
+        assertThat(service.getEtat()).containsEntry("rappelsEnFile", 1)
+                .containsEntry("prochainRappel", AUJOURDHUI.plusDays(2));
+    }
+
+    @Test
+    void rappelDejaEnvoyeAvantLeRedemarrageNEstPasRejoue() {
+        echeances.add(echeance(1L, AUJOURDHUI.plusDays(2), 3, AUJOURDHUI.plusDays(2)));
+        service.charger();
+
+        service.declencher();
+
+        verify(notificationService, never()).envoyerRappelEcheance(anyLong(), any(), anyInt());
+        assertThat(service.getEtat()).containsEntry("rappelsEnFile", 1);
+    }
+
+    @Test
+    void echeanceModifieeRendLesAnciensRappelsCaducs() {
+        echeances.add(echeance(1L, AUJOURDHUI.plusDays(1), null, null));
+        service.charger();
+        when(factureRepository.findEcheanceOuverte(1L))
+                .thenReturn(List.<Object[]>of(echeance(1L, AUJOURDHUI.plusDays(30), null, null)));
+
+        service.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.MODIFICATION,
+                StatutFacture.VALIDEE, StatutFacture.VALIDEE));
+        service.declencher();
+
+        // Le J-3 de l'ancienne échéance est dépilé sans envoi ; son J-0 restera caduc
+        verify(notificationService, never()).envoyerRappelEcheance(anyLong(), any(), anyInt());
+        assertThat(service.getEtat()).containsEntry("facturesSuivies", 1);
+    }
+
+    @Test
+    void facturePayeeNeRecoitPlusDeRappel() {
+        echeances.add(echeance(1L, AUJOURDHUI, null, null));
+        service.charger();
+        when(factureRepository.findEcheanceOuverte(1L)).thenReturn(List.of());
+
+        service.onFactureModifiee(new FactureModifieeEvent(1L, TypeModification.TRANSITION,
+                StatutFacture.EN_TRESORERIE, StatutFacture.PAYEE));
+        service.declencher();
+
+        verify(notificationService, never()).envoyerRappelEcheance(anyLong(), any(), anyInt());
+        assertThat(service.getEtat()).containsEntry("facturesSuivies", 0);
+    }
+
+    @Test
+    void envoiEnEchecEstRetenteAuPassageSuivantUneSeuleFois() {
+        echeances.add(echeance(1L, AUJOURDHUI, null, null));
+        service.charger();
+        when(notificationService.envoyerRappelEcheance(1L, AUJOURDHUI, 0))
+                .thenThrow(new IllegalStateException("Base indisponible"))
+                .thenReturn(true);
+
+        service.declencher();
+        service.declencher();
+        service.declencher();
+
+        verify(notificationService, times(2)).envoyerRappelEcheance(1L, AUJOURDHUI, 0);
+        assertThat(service.getEtat()).containsEntry("rappelsEnFile", 0);
+    }
+
+    @Test
+    void rappelRefuseParLaBaseNEstPasRetente() {
+        // marquerRappelEnvoye n'a rien mis à jour : un autre passage l'a déjà envoyé
+        echeances.add(echeance(1L, AUJOURDHUI, null, null));
+        service.charger();
+        when(notificationService.envoyerRappelEcheance(1L, AUJOURDHUI, 0)).thenReturn(false);
+
+        service.declencher();
+        service.declencher();
+
+        verify(notificationService, times(1)).envoyerRappelEcheance(1L, AUJOURDHUI, 0);
+    }
+
+    // Même ordre de colonnes que FactureRepository.findEcheancesOuvertes
+    private static Object[] echeance(Long id, LocalDate dateEcheance, Integer seuilEnvoye, LocalDate echeanceRappelee) {
+        return new Object[]{id, dateEcheance, seuilEnvoye, echeanceRappelee};
+    }
+}
@@ -0,0 +1,140 @@
+package ma.eai.daf.facture.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentsPiecesJointesTest {
+
+    @TempDir
+    Path racine;
+
+    @Test
+    void entreeDIndexInterrompueTronqueeAuChargement() throws Exception {
+        SegmentsPiecesJointes segments = segments(DataSize.ofMegabytes(1));
+        segments.ajouter(Map.of("sha256/aa/bb/a", fichier("a", texte(2_000))));
+        Path index = racine.resolve("segments/segment-000001.idx");
+        long valide = Files.size(index);
+
+        // Arrêt brutal au milieu de l'écriture de l'entrée suivante
+        Files.write(index, new byte[]{0, 14, 's', 'h', 'a'}, StandardOpenOption.APPEND);
+
+        SegmentsPiecesJointes rechargees = segments(DataSize.ofMegabytes(1));
+        assertThat(rechargees.trouver("sha256/aa/bb/a")).isPresent();
+        assertThat(Files.size(index)).isEqualTo(valide);
+
+        // L'ajout suivant repart de la dernière entrée complète
+        rechargees.ajouter(Map.of("sha256/cc/dd/b", fichier("b", texte(500))));
+        assertThat(segments(DataSize.ofMegabytes(1)).trouver("sha256/cc/dd/b")).isPresent();
+    }
+
+    @Test
+    void lecturePartielleDUneEntreeCompressee() throws Exception {
+        SegmentsPiecesJointes segments = segments(DataSize.ofMegabytes(1));
+        byte[] contenu = texte(50_000);
+        segments.ajouter(Map.of("sha256/aa/bb/a", fichier("a", contenu)));
+
+        PieceJointeStockage.Contenu entree = segments.trouver("sha256/aa/bb/a").orElseThrow();
+        assertThat(entree.isCompresse()).isTrue();
+        assertThat(entree.getTailleStockee()).isLessThan(contenu.length);
+        assertThat(entree.getTaille()).isEqualTo(contenu.length);
+
+        // Plage demandée au milieu du contenu décompressé, comme un en-tête Range
+        ByteArrayOutputStream plage = new ByteArrayOutputStream();
+        try (InputStream entreeFlux = segments.ouvrir(entree)) {
+            StreamUtils.copyRange(entreeFlux, plage, 30_000, 30_999);
+        }
+        assertThat(plage.toByteArray()).isEqualTo(Arrays.copyOfRange(contenu, 30_000, 31_000));
+    }
+
+    @Test
+    void contenuIncompressibleStockeTelQuel() throws Exception {
+        SegmentsPiecesJointes segments = segments(DataSize.ofMegabytes(1));
+        byte[] contenu = aleatoire(4_000);
+        segments.ajouter(Map.of("sha256/aa/bb/a", fichier("a", contenu)));
+
+        PieceJointeStockage.Contenu entree = segments.trouver("sha256/aa/bb/a").orElseThrow();
+        assertThat(entree.isCompresse()).isFalse();
+        try (InputStream flux = segments.ouvrir(entree)) {
+            assertThat(flux.readAllBytes()).isEqualTo(contenu);
+        }
+    }
+
+    @Test
+    void segmentPleinLesFichiersRestantsVontAuSegmentSuivant() throws Exception {
+        SegmentsPiecesJointes segments = segments(DataSize.ofBytes(5_000));
+        Map<String, Path> lot = new LinkedHashMap<>();
+        lot.put("sha256/aa/bb/a", fichier("a", aleatoire(3_000)));
+        lot.put("sha256/cc/dd/b", fichier("b", aleatoire(3_000)));
+
+        assertThat(segments.ajouter(lot)).containsExactly("sha256/aa/bb/a");
+        assertThat(segments.ajouter(lot)).containsExactly("sha256/cc/dd/b");
+
+        SegmentsPiecesJointes rechargees = segments(DataSize.ofBytes(5_000));
+        assertThat(rechargees.trouver("sha256/aa/bb/a").orElseThrow().getFichier().getFileName())
+                .hasToString("segment-000001.seg");
+        assertThat(rechargees.trouver("sha256/cc/dd/b").orElseThrow().getFichier().getFileName())
+                .hasToString("segment-000002.seg");
+        assertThat(rechargees.getEtat()).containsEntry("segmentCourant", 2);
+        try (InputStream flux = rechargees.ouvrir(rechargees.trouver("sha256/cc/dd/b").orElseThrow())) {
+            assertThat(flux.readAllBytes()).isEqualTo(Files.readAllBytes(lot.get("sha256/cc/dd/b")));
+        }
+    }
+
+    @Test
+    void fichierIsoleSupprimeLuDepuisSonSegment() throws Exception {
+        SegmentsPiecesJointes segments = segments(DataSize.ofMegabytes(1));
+        PieceJointeStockage stockage = new PieceJointeStockage(racine.toString(), DataSize.ofMegabytes(1), segments);
+        byte[] contenu = texte(3_000);
+        String chemin = stockage.stocker(new ByteArrayInputStream(contenu)).getChemin();
+
+        // Localisé avant le compactage, ouvert après la suppression du fichier isolé
+        PieceJointeStockage.Contenu localise = stockage.localiser(chemin).orElseThrow();
+        segments.ajouter(Map.of(chemin, stockage.resoudre(chemin)));
+        Files.delete(stockage.resoudre(chemin));
+
+        try (InputStream flux = stockage.ouvrir(localise)) {
+            assertThat(flux.readAllBytes()).isEqualTo(contenu);
+        }
+    }
+
+    private SegmentsPiecesJointes segments(DataSize tailleMax) throws IOException {
+        SegmentsPiecesJointes segments = new SegmentsPiecesJointes(racine.toString(), tailleMax);
+        segments.charger();
+        return segments;
+    }
+
+    private Path fichier(String nom, byte[] contenu) throws IOException {
+        return Files.write(Files.createDirectories(racine.resolve("isoles")).resolve(nom), contenu);
+    }
+
+    private static byte[] texte(int taille) {
+        StringBuilder texte = new StringBuilder();
+        for (int ligne = 0; texte.length() < taille; ligne++) {
+            texte.append("Ligne ").append(ligne).append(" : prestation de maintenance, 1 200,00 MAD\n");
+        }
+        return texte.substring(0, taille).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] aleatoire(int taille) {
+        byte[] octets = new byte[taille];
+        new Random(taille).nextBytes(octets);
+        return octets;
+    }
+}
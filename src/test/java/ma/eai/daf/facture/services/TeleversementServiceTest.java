@@ -0,0 +1,166 @@
+package ma.eai.daf.facture.services;
+
+import ma.eai.daf.facture.entities.Facture;
+import ma.eai.daf.facture.services.TeleversementService.PositionInvalideException;
+import ma.eai.daf.facture.services.TeleversementService.Televersement;
+import ma.eai.daf.facture.services.TeleversementService.TeleversementIntrouvableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TeleversementServiceTest {
+
+    private static final Long FACTURE = 10L;
+    private static final Long CREATEUR = 3L;
+    private static final byte[] CONTENU = "%PDF-1.7 facture numérisée, page 1 sur 1".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path racine;
+
+    private FactureService factureService;
+    private PieceJointeStockage stockage;
+    private TeleversementService service;
+
+    @BeforeEach
+    void setUp() {
+        factureService = mock(FactureService.class);
+        stockage = new PieceJointeStockage(racine.toString(), DataSize.ofMegabytes(1), mock(SegmentsPiecesJointes.class));
+        service = new TeleversementService(factureService, stockage, Duration.ofHours(24));
+    }
+
+    @Test
+    void morceauxDansLDesordreFusionnesEnPlagesContigues() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+
+        assertThat(ecrire(televersement, 20, CONTENU.length - 20)).isZero();
+        assertThat(ecrire(televersement, 0, 10)).isEqualTo(10);
+        assertThat(televersement.getPlagesRecues())
+                .containsExactly(new long[]{0, 10}, new long[]{20, CONTENU.length});
+
+        assertThat(ecrire(televersement, 10, 10)).isEqualTo(CONTENU.length);
+        assertThat(televersement.getPlagesRecues()).containsExactly(new long[]{0, CONTENU.length});
+    }
+
+    @Test
+    void morceauChevauchantOuHorsFichierRefuse() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+        ecrire(televersement, 0, 10);
+
+        assertThatThrownBy(() -> ecrire(televersement, 5, 10)).isInstanceOf(PositionInvalideException.class);
+        assertThatThrownBy(() -> ecrire(televersement, 30, CONTENU.length)).isInstanceOf(PositionInvalideException.class);
+        assertThat(televersement.getPosition()).isEqualTo(10);
+    }
+
+    @Test
+    void morceauInterrompuConserveCeQuiAEteRecu() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+        InputStream coupe = new ByteArrayInputStream(CONTENU, 0, 12);
+
+        service.ecrire(televersement.getId(), CREATEUR, 0, CONTENU.length, coupe);
+
+        assertThat(televersement.getPosition()).isEqualTo(12);
+        assertThat(ecrire(televersement, 12, CONTENU.length - 12)).isEqualTo(CONTENU.length);
+    }
+
+    @Test
+    void terminerRefuseUnFichierIncomplet() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+        ecrire(televersement, 0, 10);
+
+        assertThatThrownBy(() -> service.terminer(televersement.getId(), CREATEUR))
+                .hasMessageContaining("pas encore complet");
+        assertThat(service.getTeleversement(televersement.getId(), CREATEUR)).isSameAs(televersement);
+    }
+
+    @Test
+    void echecDeLAssociationPermetDeRelancerLaFinalisation() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+        ecrire(televersement, 0, CONTENU.length);
+        Facture facture = Facture.builder().id(FACTURE).build();
+        when(factureService.attacherPieceJointe(eq(FACTURE), eq(CREATEUR), eq("scan.pdf"), any()))
+                .thenThrow(new RuntimeException("Cette facture ne peut plus être modifiée"))
+                .thenReturn(facture);
+
+        assertThatThrownBy(() -> service.terminer(televersement.getId(), CREATEUR))
+                .hasMessage("Cette facture ne peut plus être modifiée");
+        // Toujours connu, mais plus aucun morceau n'est accepté : le fichier est déjà rangé
+        assertThat(service.getTeleversement(televersement.getId(), CREATEUR)).isSameAs(televersement);
+        assertThatThrownBy(() -> ecrire(televersement, 0, 1)).isInstanceOf(PositionInvalideException.class);
+
+        assertThat(service.terminer(televersement.getId(), CREATEUR)).isSameAs(facture);
+        verify(factureService, times(2)).attacherPieceJointe(eq(FACTURE), eq(CREATEUR), eq("scan.pdf"), any());
+        assertThatThrownBy(() -> service.getTeleversement(televersement.getId(), CREATEUR))
+                .isInstanceOf(TeleversementIntrouvableException.class);
+        assertThat(contenuStocke()).isEqualTo(CONTENU);
+    }
+
+    @Test
+    void annulationApresUnEchecSupprimeLeContenuNonUtilise() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+        ecrire(televersement, 0, CONTENU.length);
+        when(factureService.attacherPieceJointe(any(), any(), anyString(), any()))
+                .thenThrow(new RuntimeException("Facture non trouvée"));
+        assertThatThrownBy(() -> service.terminer(televersement.getId(), CREATEUR)).isInstanceOf(RuntimeException.class);
+
+        service.annuler(televersement.getId(), CREATEUR);
+
+        assertThat(fichiersStockes()).isEmpty();
+        assertThatThrownBy(() -> service.getTeleversement(televersement.getId(), CREATEUR))
+                .isInstanceOf(TeleversementIntrouvableException.class);
+    }
+
+    @Test
+    void annulationConserveUnContenuUtiliseParUneAutreFacture() throws IOException {
+        Televersement televersement = service.creer(FACTURE, CREATEUR, "scan.pdf", CONTENU.length);
+        ecrire(televersement, 0, CONTENU.length);
+        when(factureService.attacherPieceJointe(any(), any(), anyString(), any()))
+                .thenThrow(new RuntimeException("Facture non trouvée"));
+        when(factureService.estPieceJointeUtilisee(anyString())).thenReturn(true);
+        assertThatThrownBy(() -> service.terminer(televersement.getId(), CREATEUR)).isInstanceOf(RuntimeException.class);
+
+        service.annuler(televersement.getId(), CREATEUR);
+
+        assertThat(contenuStocke()).isEqualTo(CONTENU);
+    }
+
+    private long ecrire(Televersement televersement, int position, int longueur) throws IOException {
+        return service.ecrire(televersement.getId(), CREATEUR, position, longueur,
+                new ByteArrayInputStream(Arrays.copyOfRange(CONTENU, position, Math.min(CONTENU.length, position + longueur))));
+    }
+
+    private List<Path> fichiersStockes() throws IOException {
+        Path sha = racine.resolve("sha256");
+        if (!Files.exists(sha)) {
+            return List.of();
+        }
+        try (var fichiers = Files.walk(sha)) {
+            return fichiers.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private byte[] contenuStocke() throws IOException {
+        assertThat(fichiersStockes()).hasSize(1);
+        return Files.readAllBytes(fichiersStockes().get(0));
+    }
+}